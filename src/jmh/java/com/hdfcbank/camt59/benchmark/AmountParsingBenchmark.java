@@ -0,0 +1,84 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.utils.Paise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message amount handling: the old double path (sumAmounts plus
+ * BigDecimal.valueOf(Double.parseDouble(..)) per audit row) against one Paise.parse per item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmountParsingBenchmark {
+
+    @Param({"100", "10000"})
+    public int items;
+
+    private String[] amounts;
+    private boolean[] fc;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        amounts = new String[items];
+        fc = new boolean[items];
+        for (int i = 0; i < items; i++) {
+            amounts[i] = random.nextInt(1_000_000) + "." + String.format("%02d", random.nextInt(100));
+            fc[i] = random.nextInt(10) < 5;
+        }
+    }
+
+    @Benchmark
+    public void doubleSumAndBigDecimal(Blackhole bh) {
+        double fcTotal = 0;
+        double ephTotal = 0;
+        for (int i = 0; i < items; i++) {
+            if (fc[i]) {
+                fcTotal += Double.parseDouble(amounts[i]);
+            } else {
+                ephTotal += Double.parseDouble(amounts[i]);
+            }
+        }
+        for (String amount : amounts) {
+            bh.consume(BigDecimal.valueOf(Double.parseDouble(amount)));
+        }
+        bh.consume(BigDecimal.valueOf(fcTotal));
+        bh.consume(BigDecimal.valueOf(ephTotal));
+    }
+
+    @Benchmark
+    public void paiseSinglePass(Blackhole bh) {
+        long fcTotal = 0;
+        long ephTotal = 0;
+        for (int i = 0; i < items; i++) {
+            long paise = Paise.parse(amounts[i]);
+            if (fc[i]) {
+                fcTotal += paise;
+            } else {
+                ephTotal += paise;
+            }
+            bh.consume(Paise.toBigDecimal(paise));
+        }
+        bh.consume(Paise.toBigDecimal(fcTotal));
+        bh.consume(Paise.toBigDecimal(ephTotal));
+    }
+}
@@ -0,0 +1,96 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.ReqPayload;
+import com.hdfcbank.camt59.utils.NILRouterCommonUtility;
+import com.hdfcbank.camt59.utils.PayloadBufferPool;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NILRouterCommonUtility.convertToMap: Dapr envelope JSON, Base64 and the ReqPayload read.
+ * treeModel is the former readTree / asText / decode / new String / readValue chain, kept as
+ * the baseline for the streaming decoder. The bodyAs* pair starts from the request bytes, as
+ * /process receives them: read into a String as the @RequestBody String handler did, or into a
+ * pooled buffer as it does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeDecodeBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int items;
+
+    @Param({"50"})
+    public int fcPercent;
+
+    private ObjectMapper objectMapper;
+    private NILRouterCommonUtility utility;
+    private String request;
+    private byte[] requestBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        utility = new NILRouterCommonUtility();
+        Fields.set(utility, "objectMapper", objectMapper);
+        request = Camt59Payloads.daprEnvelope(objectMapper,
+                Camt59Payloads.inward(Camt59Payloads.requestPayload(items, fcPercent, 42)));
+        requestBytes = request.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ReqPayload convertToMap() {
+        return utility.convertToMap(request);
+    }
+
+    @Benchmark
+    public String convertToMapAndRead() {
+        return utility.convertToMap(request).getBody().getPayload();
+    }
+
+    @Benchmark
+    public String treeModel() throws Exception {
+        JsonNode rootNode = objectMapper.readTree(request);
+        String base64Data = rootNode.get("data_base64").asText();
+        String reqPayloadString = new String(Base64.getDecoder().decode(base64Data), StandardCharsets.UTF_8);
+        return objectMapper.readValue(reqPayloadString, ReqPayload.class).getBody().getPayload();
+    }
+
+    @Benchmark
+    public ReqPayload bodyAsString() throws Exception {
+        byte[] body = new ByteArrayInputStream(requestBytes).readNBytes(requestBytes.length);
+        return utility.convertToMap(new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ReqPayload bodyAsPooledBuffer() throws Exception {
+        ByteBuf body = PayloadBufferPool.read(new ByteArrayInputStream(requestBytes), requestBytes.length, requestBytes.length);
+        try {
+            return utility.convertToMap(body);
+        } finally {
+            body.release();
+        }
+    }
+}
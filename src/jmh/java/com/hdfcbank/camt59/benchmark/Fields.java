@@ -0,0 +1,28 @@
+package com.hdfcbank.camt59.benchmark;
+
+import java.lang.reflect.Field;
+
+/**
+ * Sets @Autowired / @Value fields on beans the benchmarks build without Spring.
+ */
+public final class Fields {
+
+    private Fields() {
+    }
+
+    public static void set(Object target, String name, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // keep looking in the superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " on " + target.getClass());
+    }
+}
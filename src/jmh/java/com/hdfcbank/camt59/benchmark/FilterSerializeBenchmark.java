@@ -0,0 +1,65 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.Camt59SplitResult;
+import com.hdfcbank.camt59.service.Camt59StreamingSplitter;
+import com.hdfcbank.camt59.service.Camt59XmlProcessor;
+import com.hdfcbank.camt59.utils.XmlFactoryPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the FC and EPH outputs: filterOrgnlItmAndSts + documentToXml on a parsed Document,
+ * against the one-pass streaming splitter working from the raw payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterSerializeBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int items;
+
+    @Param({"0", "50", "100"})
+    public int fcPercent;
+
+    private Camt59XmlProcessor processor;
+    private Camt59StreamingSplitter splitter;
+    private String xml;
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        processor = new Camt59XmlProcessor();
+        splitter = new Camt59StreamingSplitter();
+        xml = Camt59Payloads.requestPayload(items, fcPercent, 42);
+        document = XmlFactoryPool.parse(xml);
+    }
+
+    @Benchmark
+    public void filterAndSerialize(Blackhole bh) throws Exception {
+        bh.consume(processor.documentToXml(Camt59XmlProcessor.filterOrgnlItmAndSts(document, 0, 4)));
+        bh.consume(processor.documentToXml(Camt59XmlProcessor.filterOrgnlItmAndSts(document, 5, 9)));
+    }
+
+    @Benchmark
+    public Camt59SplitResult streamingSplit() throws Exception {
+        return splitter.split(xml, 0, 4, 5, 9);
+    }
+}
@@ -0,0 +1,60 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.Camt59AppHdr;
+import com.hdfcbank.camt59.service.Camt59FieldExtractor;
+import com.hdfcbank.camt59.utils.UtilityMethods;
+import com.hdfcbank.camt59.utils.XPathRegistry;
+import com.hdfcbank.camt59.utils.XmlFactoryPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the AppHdr fields of a parsed message, by batch size. readAppHdr is what the DOM engine
+ * does once per message; xpath is the four evaluations it replaced (BizMsgIdr twice, CreDt,
+ * MsgDefIdr). Each XPath evaluation indexes the whole document, so xpath grows with the batch
+ * while readAppHdr must stay flat; a readAppHdr score that rises with items is a regression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderReadBenchmark {
+
+    @Param({"10", "1000", "10000", "50000"})
+    public int items;
+
+    private final UtilityMethods utilityMethods = new UtilityMethods();
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = XmlFactoryPool.parse(Camt59Payloads.requestPayload(items, 50, 42));
+    }
+
+    @Benchmark
+    public Camt59AppHdr readAppHdr() {
+        return Camt59FieldExtractor.readAppHdr(document);
+    }
+
+    @Benchmark
+    public Camt59AppHdr xpath() throws Exception {
+        XPathRegistry.evaluate(XPathRegistry.REQUEST_BIZ_MSG_IDR, document);
+        return new Camt59AppHdr(utilityMethods.getBizMsgIdr(document), utilityMethods.getMsgDefIdr(document),
+                XPathRegistry.evaluate(XPathRegistry.REQUEST_CRE_DT, document));
+    }
+}
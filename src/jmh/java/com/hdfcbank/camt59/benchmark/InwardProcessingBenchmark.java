@@ -0,0 +1,116 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
+import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.model.PublishResult;
+import com.hdfcbank.camt59.model.ReqPayload;
+import com.hdfcbank.camt59.model.TransactionAudit;
+import com.hdfcbank.camt59.service.Camt59FieldExtractor;
+import com.hdfcbank.camt59.service.Camt59StreamingParser;
+import com.hdfcbank.camt59.service.Camt59StreamingSplitter;
+import com.hdfcbank.camt59.service.Camt59XmlProcessor;
+import com.hdfcbank.camt59.service.MessageDeduplicator;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.UtilityMethods;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camt59XmlProcessor.processXML end to end (parse, extract, FC/EPH split, tracker and audit
+ * row building) with the database and Dapr replaced by sinks that only consume their input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InwardProcessingBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int items;
+
+    @Param({"0", "50", "100"})
+    public int fcPercent;
+
+    @Param({"DOM", "STAX"})
+    public String engine;
+
+    private Camt59XmlProcessor processor;
+    private ReqPayload payload;
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        processor = new Camt59XmlProcessor();
+        Fields.set(processor, "processingEngine", engine);
+        Fields.set(processor, "fcTopic", "fc-topic");
+        Fields.set(processor, "ephTopic", "eph-topic");
+        Fields.set(processor, "dao", new ConsumingRepository(bh));
+        Fields.set(processor, "kafkaUtils", new ConsumingKafkaUtils(bh));
+        Fields.set(processor, "utilityMethods", new UtilityMethods());
+        Fields.set(processor, "streamingParser", new Camt59StreamingParser());
+        Fields.set(processor, "streamingSplitter", new Camt59StreamingSplitter());
+        Fields.set(processor, "fieldExtractor", new Camt59FieldExtractor());
+        Fields.set(processor, "metrics", new Camt59Metrics(new SimpleMeterRegistry()));
+        // every invocation replays the same message
+        MessageDeduplicator deduplicator = new MessageDeduplicator();
+        Fields.set(deduplicator, "enabled", false);
+        Fields.set(processor, "deduplicator", deduplicator);
+        payload = Camt59Payloads.inward(Camt59Payloads.requestPayload(items, fcPercent, 42));
+    }
+
+    @Benchmark
+    public void processXML() {
+        processor.processXML(payload);
+    }
+
+    static class ConsumingRepository extends NilRepository {
+        private final Blackhole bh;
+
+        ConsumingRepository(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void saveMessage(List<MsgEventTracker> trackers, List<TransactionAudit> transactionAudits) {
+            bh.consume(trackers);
+            bh.consume(transactionAudits);
+        }
+
+        @Override
+        public void markSent(List<MsgEventTracker> trackers) {
+            bh.consume(trackers);
+        }
+    }
+
+    static class ConsumingKafkaUtils extends KafkaUtils {
+        private final Blackhole bh;
+
+        ConsumingKafkaUtils(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public Mono<PublishResult> publishAsync(String message, String topic, String msgid) {
+            bh.consume(message);
+            return Mono.just(PublishResult.success(topic, msgid));
+        }
+    }
+}
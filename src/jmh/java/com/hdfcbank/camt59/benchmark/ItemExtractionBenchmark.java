@@ -0,0 +1,88 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.Camt59Fields;
+import com.hdfcbank.camt59.service.Camt59FieldExtractor;
+import com.hdfcbank.camt59.service.RoutingTable;
+import com.hdfcbank.camt59.utils.XPathRegistry;
+import com.hdfcbank.camt59.utils.XmlFactoryPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DOM item extraction (Camt59FieldExtractor) by batch size and worker count, to pick
+ * processing.extraction.parallel-threshold. workers=1 is the sequential reader; run on a pod
+ * shape with 4 and 8 CPUs, since the parallel rows only mean something with that many cores.
+ * xpath is the former per-item XPath extraction, for reference; it is quadratic in the batch
+ * size (17.5 s/op at 2000 items against 0.57 ms/op for extract), so limit it to small batches:
+ * gradle jmh -PjmhArgs="ItemExtractionBenchmark.xpath -p items=500 -p workers=1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemExtractionBenchmark {
+
+    @Param({"500", "2000", "10000", "50000"})
+    public int items;
+
+    @Param({"1", "4", "8"})
+    public int workers;
+
+    private Camt59FieldExtractor extractor;
+    private NodeList orgnlItmAndSts;
+
+    @Setup
+    public void setUp() throws Exception {
+        Document document = XmlFactoryPool.parse(Camt59Payloads.requestPayload(items, 50, 42));
+        orgnlItmAndSts = (NodeList) XPathRegistry.evaluate(XPathRegistry.REQUEST_ORGNL_ITM_AND_STS,
+                document, XPathConstants.NODESET);
+        extractor = new Camt59FieldExtractor();
+        Fields.set(extractor, "parallelThreshold", 0);
+        Fields.set(extractor, "parallelism", workers);
+        extractor.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Benchmark
+    public List<Camt59Fields> extract() {
+        return extractor.extract(orgnlItmAndSts, "RBIP000000000000000042", RoutingTable.DEFAULT);
+    }
+
+    @Benchmark
+    public List<Camt59Fields> xpath() throws Exception {
+        List<Camt59Fields> fields = new ArrayList<>(orgnlItmAndSts.getLength());
+        for (int i = 0; i < orgnlItmAndSts.getLength(); i++) {
+            Element item = (Element) orgnlItmAndSts.item(i);
+            fields.add(new Camt59Fields("RBIP000000000000000042",
+                    XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_END_TO_END_ID, item),
+                    XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_ITM_ID, item),
+                    XPathRegistry.evaluate(XPathRegistry.ITEM_AMT, item), ""));
+        }
+        return fields;
+    }
+}
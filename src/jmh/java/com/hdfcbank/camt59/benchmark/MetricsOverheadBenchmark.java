@@ -0,0 +1,50 @@
+package com.hdfcbank.camt59.benchmark;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.Camt59Metrics.Stage;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-stage recording against the Prometheus registry; gc.alloc.rate.norm should stay at 0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    private Camt59Metrics metrics;
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        metrics = new Camt59Metrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        payload = Camt59Payloads.requestPayload(1, 50, 42);
+    }
+
+    @Benchmark
+    public void recordStage() {
+        metrics.record(Stage.PUBLISH, Camt59Metrics.FC, true, System.nanoTime());
+    }
+
+    @Benchmark
+    public void recordMessage() {
+        metrics.message(true, 1, payload);
+    }
+}
@@ -0,0 +1,122 @@
+package com.hdfcbank.camt59.dao;
+
+import com.hdfcbank.camt59.benchmark.Fields;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.model.TransactionAudit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NilRepository parameter building: the named-parameter batch, the COPY CSV rows and the
+ * msg_event_tracker insert, with a JDBC template that only consumes what it is given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryParamsBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int items;
+
+    @Param({"50"})
+    public int fcPercent;
+
+    private NilRepository repository;
+    private List<TransactionAudit> audits;
+    private MsgEventTracker tracker;
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        repository = new NilRepository();
+        Fields.set(repository, "meterRegistry", new SimpleMeterRegistry());
+        repository.initTxnTargetCache();
+        repository.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate()) {
+            @Override
+            public int[] batchUpdate(String sql, SqlParameterSource[] batchArgs) {
+                bh.consume(batchArgs);
+                return new int[batchArgs.length];
+            }
+
+            @Override
+            public int update(String sql, SqlParameterSource paramSource) {
+                bh.consume(paramSource);
+                return 1;
+            }
+        };
+
+        audits = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            TransactionAudit tx = new TransactionAudit();
+            tx.setMsgId("RBIP000000000000000042");
+            tx.setTxnId("HDFCN520250828" + (i % 100 < fcPercent ? "1" : "7") + String.format("%07d", i));
+            tx.setEndToEndId("E2E" + String.format("%012d", i));
+            tx.setSource("SFMS");
+            tx.setTarget(i % 100 < fcPercent ? "DISPATCHED_FC" : "DISPATCHED_EPH");
+            tx.setFlowType("INWARD");
+            tx.setMsgType("camt.059.001.06");
+            tx.setAmount(BigDecimal.valueOf(1_000_000L + i, 2));
+            tx.setBatchDate(LocalDate.of(2025, 8, 28));
+            tx.setBatchTime(LocalDateTime.of(2025, 8, 28, 10, 15, 30));
+            audits.add(tx);
+        }
+
+        tracker = new MsgEventTracker();
+        tracker.setMsgId("RBIP000000000000000042");
+        tracker.setSource("SFMS");
+        tracker.setTarget("DISPATCHER_FC");
+        tracker.setFlowType("INWARD");
+        tracker.setMsgType("camt.059.001.06");
+        String xml = Camt59Payloads.requestPayload(items, fcPercent, 42);
+        tracker.setOrgnlReq("CBS" + xml);
+        tracker.setOrgnlReqCount(items);
+        tracker.setIntermediateReq("CBS" + xml);
+        tracker.setIntermediateCount(items);
+        tracker.setConsolidateAmt(BigDecimal.valueOf(1_000_000L * items, 2));
+        tracker.setTransformedJsonReq(Camt59Payloads.inward(xml));
+    }
+
+    @Benchmark
+    public void batchParams() {
+        repository.saveAllTransactionAudits(audits);
+    }
+
+    @Benchmark
+    public StringBuilder copyRows() {
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder csv = new StringBuilder(items * 200);
+        for (TransactionAudit tx : audits) {
+            TransactionAuditCsv.appendRow(csv, tx, now);
+        }
+        return csv;
+    }
+
+    @Benchmark
+    public void trackerParams() throws Exception {
+        repository.saveDataInMsgEventTracker(tracker);
+    }
+}
@@ -0,0 +1,113 @@
+package com.hdfcbank.camt59.loadtest;
+
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.model.TransactionAudit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the Postgres-backed repository in offline runs. Rows are counted rather than stored,
+ * and each write can be made to take db-latency-ms to model a commit round trip.
+ */
+class InMemoryNilRepository extends NilRepository {
+
+    private final long latencyMs;
+    private final Set<String> msgIds = ConcurrentHashMap.newKeySet();
+    private final LongAdder trackerRows = new LongAdder();
+    private final LongAdder auditRows = new LongAdder();
+
+    InMemoryNilRepository(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * No txn_id cache: the target lookups below are answered without one, and the real
+     * repository bean already registers the cache metrics under the same name.
+     */
+    @Override
+    public void initTxnTargetCache() {
+    }
+
+    @Override
+    public void saveMessage(List<MsgEventTracker> trackers, List<TransactionAudit> transactionAudits) {
+        simulateRoundTrip();
+        trackers.forEach(this::record);
+        auditRows.add(transactionAudits.size());
+    }
+
+    @Override
+    public void saveDataInMsgEventTracker(MsgEventTracker msgEventTracker) {
+        simulateRoundTrip();
+        record(msgEventTracker);
+    }
+
+    @Override
+    public void saveAllTransactionAudits(List<TransactionAudit> transactionAudits) {
+        simulateRoundTrip();
+        auditRows.add(transactionAudits.size());
+    }
+
+    @Override
+    public boolean existsByMsgId(String msgId) {
+        simulateRoundTrip();
+        return msgIds.contains(msgId);
+    }
+
+    @Override
+    public Boolean isPublished(String msgId) {
+        simulateRoundTrip();
+        // stored rows are counted, not kept, so a stored message reads as published
+        return msgIds.contains(msgId) ? Boolean.TRUE : null;
+    }
+
+    @Override
+    public void markSent(List<MsgEventTracker> trackers) {
+        simulateRoundTrip();
+    }
+
+    @Override
+    public String findTargetByTxnId(String txnId) {
+        simulateRoundTrip();
+        return null;
+    }
+
+    @Override
+    public Map<String, String> findTargetsByTxnIds(Collection<String> txnIds) {
+        simulateRoundTrip();
+        return Map.of();
+    }
+
+    long getTrackerRows() {
+        return trackerRows.sum();
+    }
+
+    long getAuditRows() {
+        return auditRows.sum();
+    }
+
+    int getDistinctMessages() {
+        return msgIds.size();
+    }
+
+    private void record(MsgEventTracker tracker) {
+        msgIds.add(tracker.getMsgId());
+        trackerRows.increment();
+    }
+
+    private void simulateRoundTrip() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.hdfcbank.camt59.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the outcome of every measured request. Latencies of every response are kept in
+ * full, overall and by status, so percentiles are exact rather than bucketed and a service
+ * shedding load with 429 or 503 cannot report a better p99 than it served. Throughput counts
+ * only the messages the service processed: 200 responses to copies that were not duplicates.
+ */
+class LatencyRecorder {
+
+    private final Samples all = new Samples();
+    private final Map<Integer, Samples> byStatus = new TreeMap<>();
+    private long processed;
+    private long items;
+    private long duplicates;
+    private long errors;
+
+    synchronized void response(int status, long latencyNanos, int items, boolean duplicate) {
+        all.add(latencyNanos);
+        byStatus.computeIfAbsent(status, s -> new Samples()).add(latencyNanos);
+        if (duplicate) {
+            duplicates++;
+        } else if (status == 200) {
+            processed++;
+            this.items += items;
+        }
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized Report report(double seconds) {
+        Map<Integer, Latency> statuses = new TreeMap<>();
+        byStatus.forEach((status, samples) -> statuses.put(status, samples.latency()));
+        return new Report(all.count + errors, statuses, errors, duplicates, processed / seconds, items / seconds,
+                all.latency());
+    }
+
+    private static final class Samples {
+
+        private long[] latencies = new long[1 << 16];
+        private int count;
+
+        void add(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        Latency latency() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return new Latency(count, percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    sorted.length == 0 ? 0 : millis(sorted[sorted.length - 1]));
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return millis(sorted[Math.max(0, index)]);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    record Latency(long responses, double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+
+        String format() {
+            return String.format("p50 %.2f  p99 %.2f  p999 %.2f  max %.2f", p50Millis, p99Millis, p999Millis, maxMillis);
+        }
+    }
+
+    record Report(long requests, Map<Integer, Latency> statuses, long errors, long duplicates,
+                  double messagesPerSecond, double itemsPerSecond, Latency latency) {
+
+        String format() {
+            StringBuilder report = new StringBuilder(String.format(
+                    "requests    %d  (transport errors %d, duplicates sent %d)%n" +
+                            "throughput  %.1f msg/s, %.0f items/s processed, duplicates excluded%n" +
+                            "latency ms  %s  (all responses)",
+                    requests, errors, duplicates, messagesPerSecond, itemsPerSecond, latency.format()));
+            statuses.forEach((status, latency) -> report.append(String.format("%n  status %d  %d responses, %s",
+                    status, latency.responses(), latency.format())));
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.hdfcbank.camt59.loadtest;
+
+import com.hdfcbank.camt59.Camt59ProcessorApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives POST /process with synthetic camt.059 messages and reports latency percentiles and
+ * throughput for the measured window. Latency covers every response, broken down by status;
+ * throughput covers only the messages processed, not the duplicates sent with --duplicate-rate.
+ * <p>
+ * With --rate the requests follow a fixed schedule (open loop) and latency is taken from each
+ * request's scheduled send time, so a stalled service shows up as latency instead of silently
+ * lowering the offered load. Without it, --concurrency senders each wait for their previous
+ * response (closed loop). When no --url is given the service is started in this JVM with the
+ * Dapr sidecar and Postgres replaced by {@link OfflineStandIns}.
+ */
+public final class LoadGenerator {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ConfigurableApplicationContext service = null;
+        String url = options.url;
+        if (url == null) {
+            service = startOfflineService(options);
+            url = "http://localhost:" + service.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            System.out.println("camt.059 load test: " + options.describe());
+            URI target = URI.create(url.replaceAll("/+$", "") + "/process");
+            LatencyRecorder recorder = options.isOpenLoop() ? runOpenLoop(options, target) : runClosedLoop(options, target);
+            System.out.println(recorder.report(options.durationSeconds).format());
+            if (service != null) {
+                InMemoryNilRepository repository = service.getBean(InMemoryNilRepository.class);
+                OfflineStandIns.OfflineDaprProducer producer = service.getBean(OfflineStandIns.OfflineDaprProducer.class);
+                System.out.printf("stand-ins   %d events published, %d tracker rows, %d audit rows, %d distinct messages%n",
+                        producer.getPublished(), repository.getTrackerRows(), repository.getAuditRows(),
+                        repository.getDistinctMessages());
+            }
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startOfflineService(LoadTestOptions options) {
+        // system properties outrank application.yml, and --name=value service args outrank these
+        Map<String, String> defaults = Map.of(
+                "server.port", "0",
+                "spring.datasource.url", "jdbc:h2:mem:camt59-loadtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.driver-class-name", "org.h2.Driver",
+                "spring.datasource.username", "sa",
+                "spring.datasource.password", "",
+                "logging.level.root", "WARN",
+                "loadtest.publish-latency-ms", String.valueOf(options.publishLatencyMs),
+                "loadtest.db-latency-ms", String.valueOf(options.dbLatencyMs));
+        defaults.forEach((key, value) -> {
+            if (System.getProperty(key) == null) {
+                System.setProperty(key, value);
+            }
+        });
+        return new SpringApplicationBuilder(Camt59ProcessorApplication.class, OfflineStandIns.class)
+                .run(options.serviceArgs.toArray(new String[0]));
+    }
+
+    private static LatencyRecorder runClosedLoop(LoadTestOptions options, URI target) throws Exception {
+        HttpClient client = newClient();
+        LatencyRecorder recorder = new LatencyRecorder();
+        long msgIdBase = msgIdBase();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < options.concurrency; i++) {
+            PayloadSource source = new PayloadSource(options, msgIdBase, i, options.concurrency);
+            Thread sender = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    try {
+                        PayloadSource.Request request = source.next();
+                        long sentAt = System.nanoTime();
+                        HttpResponse<Void> response = client.send(post(target, request), HttpResponse.BodyHandlers.discarding());
+                        if (sentAt >= measureFrom && sentAt < end) {
+                            record(recorder, request, response.statusCode(), System.nanoTime() - sentAt);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        recorder.error();
+                    }
+                }
+            }, "camt59-load-" + i);
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        return recorder;
+    }
+
+    private static LatencyRecorder runOpenLoop(LoadTestOptions options, URI target) throws Exception {
+        HttpClient client = newClient();
+        LatencyRecorder recorder = new LatencyRecorder();
+        PayloadSource source = new PayloadSource(options, msgIdBase(), 0, 1);
+        AtomicLong inFlight = new AtomicLong();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        for (long i = 0; ; i++) {
+            long scheduledAt = start + (long) (i * intervalNanos);
+            if (scheduledAt >= end) {
+                break;
+            }
+            // build the next body before its slot so generation cost stays off the measured path
+            PayloadSource.Request request = source.next();
+            long wait = scheduledAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = scheduledAt >= measureFrom;
+            inFlight.incrementAndGet();
+            client.sendAsync(post(target, request), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (measured) {
+                            if (error != null) {
+                                recorder.error();
+                            } else {
+                                record(recorder, request, response.statusCode(), System.nanoTime() - scheduledAt);
+                            }
+                        }
+                        inFlight.decrementAndGet();
+                    });
+        }
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return recorder;
+    }
+
+    private static void record(LatencyRecorder recorder, PayloadSource.Request request, int status, long latencyNanos) {
+        recorder.response(status, latencyNanos, request.items(), request.duplicate());
+    }
+
+    private static HttpClient newClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private static HttpRequest post(URI target, PayloadSource.Request request) {
+        return HttpRequest.newBuilder(target)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(request.body()))
+                .build();
+    }
+
+    // distinct per run so repeated runs against a persistent database do not collide
+    private static long msgIdBase() {
+        return System.currentTimeMillis() * 1_000_000L;
+    }
+}
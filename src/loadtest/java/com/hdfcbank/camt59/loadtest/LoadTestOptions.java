@@ -0,0 +1,91 @@
+package com.hdfcbank.camt59.loadtest;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command line options of the load generator, given as --name=value. Options it does not know are
+ * handed to the embedded service, so e.g. --processing.engine=STAX works in offline runs.
+ */
+public class LoadTestOptions {
+
+    /** Base URL of a running service; when absent the service is started in-process with offline stand-ins. */
+    String url;
+    /** Target messages per second (open loop); 0 runs closed loop with {@link #concurrency} senders. */
+    double rate = 0;
+    int concurrency = 16;
+    int durationSeconds = 30;
+    int warmupSeconds = 5;
+    int minItems = 100;
+    int maxItems = 100;
+    int[] digitWeights = {1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
+    /** Share of requests that resend an earlier message unchanged. */
+    double duplicateRate = 0;
+    /** Distinct payload bodies generated up front; message ids are still unique per request. */
+    int templates = 32;
+    long seed = 42;
+    long publishLatencyMs = 0;
+    long dbLatencyMs = 0;
+    List<String> serviceArgs = new ArrayList<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "url" -> options.url = value;
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "concurrency" -> options.concurrency = Integer.parseInt(value);
+                case "duration" -> options.durationSeconds = Integer.parseInt(value);
+                case "warmup" -> options.warmupSeconds = Integer.parseInt(value);
+                case "items" -> {
+                    int dash = value.indexOf('-');
+                    options.minItems = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+                    options.maxItems = Integer.parseInt(dash < 0 ? value : value.substring(dash + 1));
+                }
+                case "fc-percent" -> options.digitWeights = Camt59Payloads.fcPercentWeights(Integer.parseInt(value));
+                case "digits" -> options.digitWeights = Arrays.stream(value.split(",")).map(String::trim)
+                        .mapToInt(Integer::parseInt).toArray();
+                case "duplicate-rate" -> options.duplicateRate = Double.parseDouble(value);
+                case "templates" -> options.templates = Integer.parseInt(value);
+                case "seed" -> options.seed = Long.parseLong(value);
+                case "publish-latency-ms" -> options.publishLatencyMs = Long.parseLong(value);
+                case "db-latency-ms" -> options.dbLatencyMs = Long.parseLong(value);
+                default -> options.serviceArgs.add(arg);
+            }
+        }
+        if (options.minItems < 1 || options.maxItems < options.minItems) {
+            throw new IllegalArgumentException("--items must be N or MIN-MAX with 1 <= MIN <= MAX");
+        }
+        if (options.digitWeights.length != 10) {
+            throw new IllegalArgumentException("--digits needs ten comma-separated weights, one per digit 0-9");
+        }
+        if (options.duplicateRate < 0 || options.duplicateRate > 1) {
+            throw new IllegalArgumentException("--duplicate-rate must be between 0 and 1");
+        }
+        if (options.rate <= 0 && options.concurrency < 1) {
+            throw new IllegalArgumentException("--concurrency must be at least 1 in closed-loop runs");
+        }
+        return options;
+    }
+
+    boolean isOpenLoop() {
+        return rate > 0;
+    }
+
+    String describe() {
+        String mode = isOpenLoop() ? String.format("open loop, %.1f msg/s", rate) : "closed loop, " + concurrency + " senders";
+        String items = minItems == maxItems ? String.valueOf(minItems) : minItems + "-" + maxItems;
+        return String.format("%s, %s items/msg, digits %s, %.1f%% duplicates, %d s (+%d s warmup) against %s",
+                mode, items, Arrays.toString(digitWeights), duplicateRate * 100, durationSeconds, warmupSeconds,
+                url == null ? "in-process service with offline stand-ins" : url);
+    }
+}
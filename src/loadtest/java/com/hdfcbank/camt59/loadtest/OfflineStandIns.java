@@ -0,0 +1,59 @@
+package com.hdfcbank.camt59.loadtest;
+
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.messageconnect.config.PubSubOptions;
+import com.hdfcbank.messageconnect.dapr.producer.DaprProducer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replaces the Dapr sidecar and Postgres for in-process load runs. The real beans are still
+ * created but the stand-ins are primary, so the service wires against them.
+ */
+@Configuration
+public class OfflineStandIns {
+
+    @Bean
+    @Primary
+    public OfflineDaprProducer offlineDaprProducer(@Value("${loadtest.publish-latency-ms:0}") long latencyMs) {
+        return new OfflineDaprProducer(latencyMs);
+    }
+
+    @Bean
+    @Primary
+    public NilRepository offlineNilRepository(@Value("${loadtest.db-latency-ms:0}") long latencyMs) {
+        return new InMemoryNilRepository(latencyMs);
+    }
+
+    /**
+     * Acknowledges every publish after publish-latency-ms without leaving the process.
+     */
+    public static class OfflineDaprProducer extends DaprProducer {
+
+        private final long latencyMs;
+        private final LongAdder published = new LongAdder();
+
+        OfflineDaprProducer(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public Mono<String> invokeDaprPublishEvent(PubSubOptions options) {
+            Mono<String> ack = Mono.fromSupplier(() -> {
+                published.increment();
+                return "OK";
+            });
+            return latencyMs > 0 ? ack.delaySubscription(Duration.ofMillis(latencyMs)) : ack;
+        }
+
+        long getPublished() {
+            return published.sum();
+        }
+    }
+}
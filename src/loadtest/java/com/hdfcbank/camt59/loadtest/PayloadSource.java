@@ -0,0 +1,65 @@
+package com.hdfcbank.camt59.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Produces the request bodies: a fixed set of generated payload templates, each request getting a
+ * fresh BizMsgIdr unless it is picked as a duplicate of one of the recently sent messages.
+ * Not thread-safe; every sender owns one.
+ */
+class PayloadSource {
+
+    private static final String MSG_ID_PLACEHOLDER = "@@BIZ_MSG_IDR@@";
+    private static final int RECENT = 64;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> templates = new ArrayList<>();
+    private final List<Integer> templateItems = new ArrayList<>();
+    private final Request[] recent = new Request[RECENT];
+    private final double duplicateRate;
+    private final long msgIdBase;
+    private final int msgIdStride;
+    private final Random random;
+    private long sequence;
+    private int sent;
+
+    /**
+     * @param sender      index of this sender, keeps message ids unique across senders
+     * @param senderCount number of senders sharing the run
+     */
+    PayloadSource(LoadTestOptions options, long msgIdBase, int sender, int senderCount) {
+        this.duplicateRate = options.duplicateRate;
+        this.msgIdBase = msgIdBase + sender;
+        this.msgIdStride = senderCount;
+        this.random = new Random(options.seed + sender);
+        // the same seed gives every sender the same templates
+        Random templateRandom = new Random(options.seed);
+        for (int i = 0; i < options.templates; i++) {
+            int items = options.minItems + templateRandom.nextInt(options.maxItems - options.minItems + 1);
+            templates.add(Camt59Payloads.requestPayload(MSG_ID_PLACEHOLDER, items, options.digitWeights, templateRandom));
+            templateItems.add(items);
+        }
+    }
+
+    Request next() throws Exception {
+        if (sent > 0 && random.nextDouble() < duplicateRate) {
+            Request original = recent[random.nextInt(Math.min(sent, RECENT))];
+            return new Request(original.body(), original.items(), true);
+        }
+        int template = random.nextInt(templates.size());
+        String msgId = Camt59Payloads.bizMsgIdr(msgIdBase + sequence++ * msgIdStride);
+        String xml = templates.get(template).replace(MSG_ID_PLACEHOLDER, msgId);
+        Request request = new Request(Camt59Payloads.daprEnvelope(objectMapper, Camt59Payloads.inward(xml)),
+                templateItems.get(template), false);
+        recent[sent++ % RECENT] = request;
+        return request;
+    }
+
+    record Request(String body, int items, boolean duplicate) {
+    }
+}
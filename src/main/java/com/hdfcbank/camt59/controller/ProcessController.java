@@ -1,13 +1,22 @@
 package com.hdfcbank.camt59.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hdfcbank.camt59.exception.NILException;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import com.hdfcbank.camt59.model.BulkSubscribeRequest;
 import com.hdfcbank.camt59.model.ReqPayload;
 import com.hdfcbank.camt59.model.Response;
+import com.hdfcbank.camt59.service.Camt59BulkProcessor;
 import com.hdfcbank.camt59.service.Camt59XmlProcessor;
+import com.hdfcbank.camt59.service.MemoryAdmissionController;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Admission;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Credit;
 import com.hdfcbank.camt59.utils.NILRouterCommonUtility;
+import com.hdfcbank.camt59.utils.PayloadBufferPool;
+import com.hdfcbank.camt59.utils.ProcessingScheduler;
+import io.netty.buffer.ByteBuf;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -19,19 +28,33 @@ import org.springframework.web.bind.annotation.*;
 import org.w3c.dom.Document;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @RestController
 public class ProcessController {
 
+    // admission.max-request-mb when the admission controller is not wired (unit tests)
+    private static final long DEFAULT_MAX_REQUEST_BYTES = 64L * 1024 * 1024;
 
     @Autowired
     Camt59XmlProcessor camt59XmlProcessor;
 
     @Autowired
     NILRouterCommonUtility nilRouterCommonUtility;
+
+    @Autowired
+    ProcessingScheduler processingScheduler;
+
+    @Autowired
+    Camt59BulkProcessor camt59BulkProcessor;
+
+    @Autowired
+    MemoryAdmissionController admissionController;
+
     @CrossOrigin
     @GetMapping(path = "/healthz")
     public ResponseEntity<?> healthz() {
@@ -49,24 +72,126 @@ public class ProcessController {
 
     @CrossOrigin
     @PostMapping("/process")
-    public Mono<ResponseEntity<Response>> process(@RequestBody String request) throws JsonProcessingException {
+    public Mono<ResponseEntity<Response>> process(HttpServletRequest request) throws IOException {
         log.info("....CAMT59 Processing Started.... ");
-        return Mono.fromCallable(() -> {
+        // admitted on its declared length before a byte of it is buffered
+        long contentLength = request.getContentLengthLong();
+        Admission requestAdmission;
+        try {
+            requestAdmission = admissionController != null ? admissionController.admitRequest(contentLength) : null;
+        } catch (ProcessingRejectedException ex) {
+            return Mono.just(rejected(ex));
+        }
+        // the body is held off-heap until the CloudEvent is decoded, rather than as a String;
+        // whichever of the worker and the cleanup below claims it first releases it
+        ByteBuf body;
+        try {
+            body = PayloadBufferPool.read(request.getInputStream(), contentLength, maxRequestBytes());
+        } catch (ProcessingRejectedException ex) {
+            // a chunked body, or one longer than it declared, only shows its size while it is read
+            releaseAdmission(requestAdmission);
+            return Mono.just(rejected(ex));
+        } catch (IOException | RuntimeException ex) {
+            releaseAdmission(requestAdmission);
+            throw ex;
+        }
+        AtomicBoolean claimed = new AtomicBoolean();
+        return processingScheduler.execute(() -> {
             try {
-                ReqPayload requestMap = nilRouterCommonUtility.convertToMap(request);
+                if (!claimed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Request cancelled");
+                }
+                ReqPayload requestMap;
+                try {
+                    requestMap = nilRouterCommonUtility.convertToMap(body);
+                } finally {
+                    body.release();
+                }
                 if(!camt59XmlProcessor.validateRequest(requestMap)){
-                    camt59XmlProcessor.processXML(requestMap);
+                    // the message draws on the budget its request holds rather than waiting for it
+                    camt59XmlProcessor.processXML(requestMap, new Credit(requestAdmission));
                 }
                 return ResponseEntity.ok(new Response("SUCCESS", "Message Processed."));
+            } catch (ProcessingRejectedException ex) {
+                throw ex;
             } catch (Exception ex) {
                 log.error("Failed in consuming the message: {}", ex);
                 throw new NILException("Failed in consuming the message", ex);
             } finally {
                 log.info("....CAMT59 Processing Completed.... ");
             }
+        }).doFinally(signal -> {
+            if (claimed.compareAndSet(false, true)) {
+                body.release();
+            }
+            releaseAdmission(requestAdmission);
+        }).onErrorResume(ProcessingRejectedException.class, ex -> {
+            return Mono.just(rejected(ex));
         }).onErrorResume(ex -> {
             return Mono.just(new ResponseEntity<>(new Response("ERROR", "Message Processing Failed"), HttpStatus.INTERNAL_SERVER_ERROR));
         });
     }
 
+    private static ResponseEntity<Response> rejected(ProcessingRejectedException ex) {
+        log.warn("CAMT59 message rejected: {}", ex.getMessage());
+        return new ResponseEntity<>(new Response("ERROR", ex.getMessage()), ex.getStatus());
+    }
+
+    private long maxRequestBytes() {
+        return admissionController != null ? admissionController.getMaxRequestBytes() : DEFAULT_MAX_REQUEST_BYTES;
+    }
+
+    private void releaseAdmission(Admission admission) {
+        if (admissionController != null) {
+            admissionController.release(admission);
+        }
+    }
+
+    /**
+     * Dapr bulk-subscribe route. Answers 200 with a SUCCESS/RETRY/DROP status per entry, so one
+     * bad message does not fail the whole delivery. The envelope is admitted and capped like a
+     * single message, and holds its budget until every entry is answered.
+     */
+    @CrossOrigin
+    @PostMapping("/process/batch")
+    public Mono<ResponseEntity<?>> processBatch(HttpServletRequest request) throws IOException {
+        log.info("....CAMT59 Bulk Processing Started.... ");
+        long contentLength = request.getContentLengthLong();
+        Admission requestAdmission;
+        try {
+            requestAdmission = admissionController != null ? admissionController.admitRequest(contentLength) : null;
+        } catch (ProcessingRejectedException ex) {
+            return Mono.just(rejected(ex));
+        }
+        BulkSubscribeRequest bulkRequest;
+        try {
+            ByteBuf body = PayloadBufferPool.read(request.getInputStream(), contentLength, maxRequestBytes());
+            try {
+                bulkRequest = camt59BulkProcessor.parse(body);
+            } finally {
+                body.release();
+            }
+        } catch (ProcessingRejectedException ex) {
+            releaseAdmission(requestAdmission);
+            return Mono.just(rejected(ex));
+        } catch (NILException ex) {
+            releaseAdmission(requestAdmission);
+            log.error("Rejected CAMT59 bulk request: {}", ex.getMessage());
+            return Mono.just(new ResponseEntity<>(new Response("ERROR", ex.getMessage()), HttpStatus.BAD_REQUEST));
+        } catch (IOException | RuntimeException ex) {
+            releaseAdmission(requestAdmission);
+            throw ex;
+        }
+        return camt59BulkProcessor.process(bulkRequest, new Credit(requestAdmission))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .doFinally(signal -> {
+                    releaseAdmission(requestAdmission);
+                    log.info("....CAMT59 Bulk Processing Completed.... ");
+                })
+                .onErrorResume(ex -> {
+                    log.error("Failed in consuming the bulk message: {}", ex.getMessage(), ex);
+                    return Mono.just(new ResponseEntity<>(new Response("ERROR", "Message Processing Failed"), HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
 }
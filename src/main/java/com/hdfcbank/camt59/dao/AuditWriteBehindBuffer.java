@@ -0,0 +1,390 @@
+package com.hdfcbank.camt59.dao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.model.TransactionAudit;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Optional write-behind buffer for transaction_audit rows (audit.write-behind.enabled).
+ * <p>
+ * Rows from many messages are appended to a local spill segment and held in memory until
+ * the flusher writes them to the database in one group commit, either every flush-interval-ms
+ * or as soon as batch-size rows are waiting. A segment is deleted only after its rows are
+ * stored, and segments left behind by a crash are replayed on startup. When capacity rows
+ * are already waiting, the caller's rows are written synchronously instead.
+ * <p>
+ * A crash after a group commit but before its segment is deleted leaves rows on disk that are
+ * already stored. The rows of one {@link #write} always share a segment and a commit, so a
+ * replayed segment skips every message that already has transaction_audit rows rather than
+ * inserting them twice.
+ * <p>
+ * A segment whose group commit the database refuses max-attempts times in a row, for example
+ * over a constraint violation, is set aside as a .failed file for an operator, so that it does
+ * not hold back the segments behind it. Failures to reach the database are not counted.
+ */
+@Slf4j
+@Component
+public class AuditWriteBehindBuffer {
+
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    @Autowired
+    NilRepository nilRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    MeterRegistry meterRegistry;
+
+    @Value("${audit.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${audit.write-behind.capacity:50000}")
+    private int capacity = 50000;
+
+    @Value("${audit.write-behind.batch-size:2000}")
+    private int batchSize = 2000;
+
+    @Value("${audit.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+
+    @Value("${audit.write-behind.spill-dir:${java.io.tmpdir}/camt59-audit-spill}")
+    private String spillDir;
+
+    @Value("${audit.write-behind.fsync:true}")
+    private boolean fsync = true;
+
+    @Value("${audit.write-behind.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+
+    // guarded by lock: rows of the open segment
+    private List<TransactionAudit> pending = new ArrayList<>();
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentSeq;
+
+    // guarded by flushLock: closed segments not yet stored, and refused commits of the first
+    private final Deque<SealedSegment> sealed = new ArrayDeque<>();
+    private int headAttempts;
+
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private ScheduledExecutorService flusher;
+
+    private Timer flushed;
+    private Timer flushFailed;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path dir = Paths.get(spillDir);
+        Files.createDirectories(dir);
+        if (meterRegistry != null) {
+            bindTo(meterRegistry);
+        }
+        recover(dir);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "audit-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Audit write-behind enabled: capacity {}, batch-size {}, flush-interval {} ms, spill-dir {}",
+                capacity, batchSize, flushIntervalMs, dir);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        flushQuietly();
+        synchronized (lock) {
+            closeSegment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Accepts the rows for a later group commit once they are in the spill segment, or stores
+     * them synchronously when the buffer is full.
+     */
+    public void write(List<TransactionAudit> transactionAudits) throws IOException {
+        if (transactionAudits.isEmpty()) {
+            return;
+        }
+        boolean accepted;
+        synchronized (lock) {
+            accepted = queueDepth.get() + transactionAudits.size() <= capacity;
+            if (accepted) {
+                appendToSegment(transactionAudits);
+                pending.addAll(transactionAudits);
+                queueDepth.addAndGet(transactionAudits.size());
+            }
+        }
+        if (!accepted) {
+            log.warn("Audit write-behind buffer full ({} rows), writing {} rows synchronously",
+                    queueDepth.get(), transactionAudits.size());
+            nilRepository.saveAllTransactionAudits(transactionAudits);
+            return;
+        }
+        if (pendingSize() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Writes every buffered row to the database, oldest segment first. A segment that fails is
+     * kept, with everything after it, for the next flush, unless it was refused max-attempts
+     * times: then it is set aside and the flush goes on with the next one.
+     */
+    public void flush() throws IOException, SQLException {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            synchronized (lock) {
+                if (!pending.isEmpty()) {
+                    sealed.addLast(new SealedSegment(segmentPath, pending, false));
+                    closeSegment();
+                    pending = new ArrayList<>();
+                }
+            }
+            while (!sealed.isEmpty()) {
+                SealedSegment next = sealed.peekFirst();
+                try {
+                    store(next);
+                } catch (RuntimeException e) {
+                    if (!refused(e) || ++headAttempts < maxAttempts) {
+                        throw e;
+                    }
+                    setAside(next, e);
+                    continue;
+                }
+                queueDepth.addAndGet(-next.rows.size());
+                sealed.removeFirst();
+                headAttempts = 0;
+                if (next.path != null) {
+                    Files.deleteIfExists(next.path);
+                }
+            }
+        }
+    }
+
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Audit write-behind flush failed, {} rows kept for retry: {}", queueDepth.get(), e.getMessage(), e);
+        }
+    }
+
+    private void store(SealedSegment segment) {
+        if (segment.rows.isEmpty()) {
+            return;
+        }
+        List<TransactionAudit> rows = segment.recovered ? notYetStored(segment.rows) : segment.rows;
+        if (!rows.isEmpty()) {
+            store(rows);
+        }
+    }
+
+    // the database answered and refused the rows, rather than not being reachable
+    private static boolean refused(RuntimeException e) {
+        return !(e instanceof DataAccessResourceFailureException || e instanceof TransientDataAccessException);
+    }
+
+    private void setAside(SealedSegment segment, RuntimeException e) throws IOException {
+        sealed.removeFirst();
+        headAttempts = 0;
+        queueDepth.addAndGet(-segment.rows.size());
+        failedRows.addAndGet(segment.rows.size());
+        Path failed = null;
+        if (segment.path != null) {
+            failed = segment.path.resolveSibling(segment.path.getFileName() + FAILED_SUFFIX);
+            Files.move(segment.path, failed, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.error("{} audit rows refused {} times, set aside in {}: {}", segment.rows.size(), maxAttempts,
+                failed, e.getMessage(), e);
+    }
+
+    private void store(List<TransactionAudit> rows) {
+        long start = System.nanoTime();
+        boolean stored = false;
+        try {
+            nilRepository.saveAllTransactionAudits(rows);
+            stored = true;
+        } finally {
+            record(stored ? flushed : flushFailed, start);
+        }
+        flushCount.incrementAndGet();
+        flushedRows.addAndGet(rows.size());
+    }
+
+    // rows of a replayed segment, less the messages its interrupted flush already stored
+    private List<TransactionAudit> notYetStored(List<TransactionAudit> rows) {
+        Set<String> stored = nilRepository.findAuditedMsgIds(rows.stream().map(TransactionAudit::getMsgId).toList());
+        if (stored.isEmpty()) {
+            return rows;
+        }
+        List<TransactionAudit> remaining = rows.stream().filter(tx -> !stored.contains(tx.getMsgId())).toList();
+        log.info("Skipping {} replayed audit rows of {} messages already stored", rows.size() - remaining.size(), stored.size());
+        return remaining;
+    }
+
+    private void bindTo(MeterRegistry registry) {
+        Gauge.builder("camt59.audit.buffer.depth", queueDepth, AtomicLong::get)
+                .description("Audit rows accepted by the write-behind buffer and not yet stored")
+                .register(registry);
+        FunctionCounter.builder("camt59.audit.buffer.flushed", flushedRows, AtomicLong::get)
+                .description("Audit rows stored by write-behind group commits")
+                .register(registry);
+        FunctionCounter.builder("camt59.audit.buffer.failed", failedRows, AtomicLong::get)
+                .description("Audit rows set aside in .failed spill segments after max-attempts refused commits")
+                .register(registry);
+        flushed = flushTimer(registry, "success");
+        flushFailed = flushTimer(registry, "failure");
+    }
+
+    private static Timer flushTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("camt59.audit.buffer.flush")
+                .description("Time of one write-behind group commit of audit rows")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private int pendingSize() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void appendToSegment(List<TransactionAudit> transactionAudits) throws IOException {
+        if (segment == null) {
+            String name = String.format("audit-%d-%06d%s", System.currentTimeMillis(), segmentSeq++, SEGMENT_SUFFIX);
+            segmentPath = Paths.get(spillDir, name);
+            segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (TransactionAudit tx : transactionAudits) {
+            lines.append(objectMapper.writeValueAsString(tx)).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            segment.write(bytes);
+        }
+        if (fsync) {
+            segment.force(false);
+        }
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Failed to close audit spill segment {}: {}", segmentPath, e.getMessage());
+            }
+        }
+        segment = null;
+        segmentPath = null;
+    }
+
+    private void recover(Path dir) throws IOException {
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.list(dir)) {
+            leftovers = files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path path : leftovers) {
+            List<TransactionAudit> rows = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    rows.add(objectMapper.readValue(line, TransactionAudit.class));
+                } catch (IOException e) {
+                    // only the last line of a segment can be torn by a crash
+                    log.warn("Skipping unreadable audit spill line in {}: {}", path, e.getMessage());
+                }
+            }
+            synchronized (flushLock) {
+                sealed.addLast(new SealedSegment(path, rows, true));
+            }
+            queueDepth.addAndGet(rows.size());
+            log.info("Recovered {} audit rows from spill segment {}", rows.size(), path);
+        }
+    }
+
+    private record SealedSegment(Path path, List<TransactionAudit> rows, boolean recovered) {
+    }
+}
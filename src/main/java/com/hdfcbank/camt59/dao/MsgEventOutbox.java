@@ -0,0 +1,181 @@
+package com.hdfcbank.camt59.dao;
+
+import com.hdfcbank.camt59.model.MsgEvent;
+import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.utils.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Outbox of the msg_event_tracker event feed (msg-event-feed.enabled).
+ * <p>
+ * Events are rows of network_il.msg_event_outbox until they are relayed. The RECEIVED event of
+ * a message is appended by {@link NilRepository#saveMessage} in the transaction that writes its
+ * tracker rows, and its SENT_TO_DISPATCHER events by {@link NilRepository#markSent} in the one
+ * that moves them out of PUBLISH_PENDING, so those events exist exactly when the state they
+ * report was committed. FAILED events report no stored state and are appended on their own,
+ * best effort: one is lost if the database refuses it or the process dies before appending it.
+ * <p>
+ * The relay claims the oldest unclaimed rows for claim-lease-ms in one short statement, with
+ * SKIP LOCKED so several instances share the backlog, and publishes them outside any
+ * transaction. Published rows are then deleted and the claim on the rest is released for the
+ * next relay; the rows of a relay that died mid-way are claimed again once the lease runs out.
+ * With several instances relaying, SKIP LOCKED can hand the events of one message to different
+ * instances, which then publish them concurrently.
+ * See db/msg-event-outbox.sql for the table.
+ */
+@Slf4j
+@Repository
+public class MsgEventOutbox {
+
+    private static final int MAX_REASON = 256;
+
+    private static final String INSERT_SQL = "INSERT INTO network_il.msg_event_outbox " +
+            "(msg_id, status, target, msg_type, item_count, amount, reason, event_time) " +
+            "VALUES (:msg_id, :status, :target, :msg_type, :item_count, :amount, :reason, :event_time)";
+
+    private static final String CLAIM_SQL = "UPDATE network_il.msg_event_outbox " +
+            "SET claimed_until = now() + :lease_ms * interval '1 millisecond' " +
+            "WHERE id IN (SELECT id FROM network_il.msg_event_outbox " +
+            "WHERE claimed_until IS NULL OR claimed_until < now() ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, msg_id, status, target, msg_type, item_count, amount, reason, event_time";
+
+    private static final String DELETE_SQL = "DELETE FROM network_il.msg_event_outbox WHERE id IN (:ids)";
+
+    private static final String RELEASE_SQL = "UPDATE network_il.msg_event_outbox SET claimed_until = NULL WHERE id IN (:ids)";
+
+    @Autowired
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Value("${msg-event-feed.enabled:false}")
+    private boolean enabled;
+
+    @Value("${msg-event-feed.claim-lease-ms:120000}")
+    private long claimLeaseMs = 120000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends a RECEIVED event per message, when its tracker rows are stored.
+     */
+    public void appendReceived(List<MsgEventTracker> trackers) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, MsgEvent> received = new LinkedHashMap<>();
+        for (MsgEventTracker tracker : trackers) {
+            MsgEvent message = received.computeIfAbsent(tracker.getMsgId(), msgId -> new MsgEvent(null, msgId,
+                    Constants.RECEIVED, null, tracker.getMsgType(), tracker.getOrgnlReqCount(), BigDecimal.ZERO, null, now));
+            if (tracker.getConsolidateAmt() != null) {
+                message.setAmount(message.getAmount().add(tracker.getConsolidateAmt()));
+            }
+        }
+        append(new ArrayList<>(received.values()));
+    }
+
+    /**
+     * Appends a SENT_TO_DISPATCHER event per tracker row, when its output was published.
+     */
+    public void appendSent(List<MsgEventTracker> trackers) {
+        LocalDateTime now = LocalDateTime.now();
+        List<MsgEvent> sent = new ArrayList<>(trackers.size());
+        for (MsgEventTracker tracker : trackers) {
+            sent.add(new MsgEvent(null, tracker.getMsgId(), Constants.SENT_TO_DISPATCHER, tracker.getTarget(),
+                    tracker.getMsgType(), tracker.getIntermediateCount(), tracker.getConsolidateAmt(), null, now));
+        }
+        append(sent);
+    }
+
+    public void append(List<MsgEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] batch = new MapSqlParameterSource[events.size()];
+        for (int i = 0; i < batch.length; i++) {
+            MsgEvent event = events.get(i);
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            params.addValue("msg_id", event.getMsgId());
+            params.addValue("status", event.getStatus());
+            params.addValue("target", event.getTarget());
+            params.addValue("msg_type", event.getMsgType());
+            params.addValue("item_count", event.getItemCount());
+            params.addValue("amount", event.getAmount());
+            params.addValue("reason", StringUtils.truncate(event.getReason(), MAX_REASON));
+            params.addValue("event_time", event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now());
+            batch[i] = params;
+        }
+        namedParameterJdbcTemplate.batchUpdate(INSERT_SQL, batch);
+    }
+
+    /**
+     * Claims up to limit of the oldest events, hands them to the publisher, which returns the
+     * ids it published, deletes those and releases the others. No transaction is held while the
+     * publisher runs.
+     *
+     * @return the number of events published
+     */
+    public int relay(int limit, Function<List<MsgEvent>, Collection<Long>> publisher) {
+        List<MsgEvent> events = claim(limit);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        Collection<Long> published;
+        try {
+            published = publisher.apply(events);
+        } catch (RuntimeException e) {
+            release(events.stream().map(MsgEvent::getId).toList());
+            throw e;
+        }
+        if (!published.isEmpty()) {
+            namedParameterJdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource("ids", published));
+        }
+        Set<Long> deleted = new HashSet<>(published);
+        List<Long> unpublished = events.stream().map(MsgEvent::getId).filter(id -> !deleted.contains(id)).toList();
+        release(unpublished);
+        return published.size();
+    }
+
+    // one statement, so the rows are locked only while it runs
+    private List<MsgEvent> claim(int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("limit", limit);
+        params.addValue("lease_ms", claimLeaseMs);
+        List<MsgEvent> events = namedParameterJdbcTemplate.query(CLAIM_SQL, params, (rs, rowNum) -> new MsgEvent(
+                rs.getLong("id"),
+                rs.getString("msg_id"),
+                rs.getString("status"),
+                rs.getString("target"),
+                rs.getString("msg_type"),
+                (Integer) rs.getObject("item_count"),
+                rs.getBigDecimal("amount"),
+                rs.getString("reason"),
+                rs.getObject("event_time", LocalDateTime.class)));
+        // RETURNING does not keep the ORDER BY of the subquery
+        List<MsgEvent> ordered = new ArrayList<>(events);
+        ordered.sort(Comparator.comparing(MsgEvent::getId));
+        return ordered;
+    }
+
+    private void release(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            namedParameterJdbcTemplate.update(RELEASE_SQL, new MapSqlParameterSource("ids", ids));
+        }
+    }
+}
@@ -3,22 +3,50 @@ package com.hdfcbank.camt59.dao;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hdfcbank.camt59.model.Body;
 import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.model.ReqPayload;
 import com.hdfcbank.camt59.model.TransactionAudit;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.Camt59Metrics.Stage;
+import com.hdfcbank.camt59.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.postgresql.util.PGobject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Repository
@@ -31,31 +59,302 @@ public class NilRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private Camt59Metrics metrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PayloadStore payloadStore;
+
+    @Autowired
+    private MsgEventOutbox eventOutbox;
+
+    @Value("${audit.copy-threshold:500}")
+    private int copyThreshold = 500;
+
+    @Value("${txn-target-cache.max-size:200000}")
+    private long txnTargetCacheSize = 200000;
+
+    @Value("${txn-target-cache.ttl-minutes:30}")
+    private long txnTargetCacheTtlMinutes = 30;
+
+    // txn_id -> transaction_audit.target of txn_ids with exactly one row, filled on lookup misses
+    // and invalidated when rows are written, since a new row can make the target ambiguous
+    private Cache<String, String> txnTargets;
+
+    private static final String AUDIT_COPY_SQL =
+            "COPY network_il.transaction_audit (" + TransactionAuditCsv.COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+
+    private static final String TRACKER_SQL = "INSERT INTO network_il.msg_event_tracker\n" +
+            "(msg_id, \"source\", target, batch_id, flow_type, msg_type, original_req, invalid_msg, \n" +
+            " replay_count, original_req_count, consolidate_amt,transformed_json_req, intermediate_req, intemdiate_count, \n" +
+            " status, batch_creation_date, batch_timestamp, created_time, modified_timestamp, \"version\")\n" +
+            "VALUES" +
+            " (:msg_id, :source, :target,:batch_id, :flow_type, :msg_type, :original_req, :invalid_msg," +
+            " :replay_count, :original_req_count, :consolidate_amt,:transformed_json_req,  :intermediate_req, :intemdiate_count," +
+            " :status,:batch_creation_date,:batch_timestamp, :created_time, :modified_timestamp,:version )";
+
+    // payload_ref only exists once db/payload-store.sql has been applied
+    private static final String TRACKER_BY_REF_SQL = "INSERT INTO network_il.msg_event_tracker\n" +
+            "(msg_id, \"source\", target, batch_id, flow_type, msg_type, original_req, payload_ref, invalid_msg, \n" +
+            " replay_count, original_req_count, consolidate_amt,transformed_json_req, intermediate_req, intemdiate_count, \n" +
+            " status, batch_creation_date, batch_timestamp, created_time, modified_timestamp, \"version\")\n" +
+            "VALUES" +
+            " (:msg_id, :source, :target,:batch_id, :flow_type, :msg_type, :original_req, :payload_ref, :invalid_msg," +
+            " :replay_count, :original_req_count, :consolidate_amt,:transformed_json_req,  :intermediate_req, :intemdiate_count," +
+            " :status,:batch_creation_date,:batch_timestamp, :created_time, :modified_timestamp,:version )";
+
+    // null without rows; bool_and is false as soon as one row is still pending
+    private static final String PUBLISHED_SQL = "SELECT bool_and(status <> :pending) " +
+            "FROM network_il.msg_event_tracker WHERE msg_id = :msgId";
+
+    private static final String UNPUBLISHED_SQL = "SELECT msg_id, target, msg_type, status, original_req_count, " +
+            "consolidate_amt, intermediate_req, intemdiate_count FROM network_il.msg_event_tracker " +
+            "WHERE msg_id = :msgId AND status = :pending";
+
+    private static final String MARK_SENT_SQL = "UPDATE network_il.msg_event_tracker " +
+            "SET status = :status, modified_timestamp = :modified_timestamp " +
+            "WHERE msg_id = :msg_id AND target = :target AND status = :pending";
+
+    // rows are streamed to the server in chunks of roughly this many chars
+    private static final int COPY_CHUNK_CHARS = 64 * 1024;
+
+    private static final String TXN_TARGET_CACHE = "txnTargets";
 
+    private static final String TXN_TARGETS_SQL =
+            "SELECT txn_id, target FROM network_il.transaction_audit WHERE txn_id = ANY(?)";
+
+    private static final String AUDITED_MSG_IDS_SQL =
+            "SELECT DISTINCT msg_id FROM network_il.transaction_audit WHERE msg_id = ANY(?)";
+
+    @PostConstruct
+    public void initTxnTargetCache() {
+        txnTargets = Caffeine.newBuilder()
+                .maximumSize(txnTargetCacheSize)
+                .expireAfterWrite(Duration.ofMinutes(txnTargetCacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, txnTargets, TXN_TARGET_CACHE);
+    }
+
+    /**
+     * Target of a transaction, or null when there is no row or more than one. Database errors
+     * (timeouts included) are thrown rather than reported as a missing row.
+     */
     public String findTargetByTxnId(String txnId) {
+        String cached = txnTargets.getIfPresent(txnId);
+        if (cached != null) {
+            return cached;
+        }
         String sql = "SELECT target FROM network_il.transaction_audit WHERE txn_id = :txnId";
 
         MapSqlParameterSource params = new MapSqlParameterSource();
         params.addValue("txnId", txnId);
 
         try {
-            return namedParameterJdbcTemplate.queryForObject(sql, params, String.class);
-        } catch (Exception e) {
-            // log and return null or handle accordingly
+            String target = namedParameterJdbcTemplate.queryForObject(sql, params, String.class);
+            if (target != null) {
+                txnTargets.put(txnId, target);
+            }
+            return target;
+        } catch (EmptyResultDataAccessException e) {
             return null;
+        } catch (IncorrectResultSizeDataAccessException e) {
+            log.warn("txnId {} has {} transaction_audit rows, target is ambiguous", txnId, e.getActualSize());
+            return null;
+        }
+    }
+
+    /**
+     * Targets of many transactions: cached ones from memory, the rest in one ANY(?) query.
+     * Transactions without exactly one row are left out of the result.
+     */
+    public Map<String, String> findTargetsByTxnIds(Collection<String> txnIds) {
+        Map<String, String> targets = new HashMap<>(txnTargets.getAllPresent(txnIds));
+        String[] misses = txnIds.stream()
+                .filter(txnId -> txnId != null && !targets.containsKey(txnId))
+                .distinct()
+                .toArray(String[]::new);
+        if (misses.length == 0) {
+            return targets;
+        }
+
+        Map<String, String> loaded = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        jdbcTemplate.query(TXN_TARGETS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", misses)),
+                (RowCallbackHandler) rs -> {
+                    String txnId = rs.getString(1);
+                    if (loaded.putIfAbsent(txnId, rs.getString(2)) != null) {
+                        ambiguous.add(txnId);
+                    }
+                });
+        ambiguous.forEach(loaded::remove);
+        loaded.forEach((txnId, target) -> {
+            if (target != null) {
+                txnTargets.put(txnId, target);
+                targets.put(txnId, target);
+            }
+        });
+        return targets;
+    }
+
+    /**
+     * The messages among msgIds that already have transaction_audit rows.
+     */
+    public Set<String> findAuditedMsgIds(Collection<String> msgIds) {
+        String[] ids = msgIds.stream().filter(msgId -> msgId != null).distinct().toArray(String[]::new);
+        Set<String> audited = new HashSet<>();
+        if (ids.length == 0) {
+            return audited;
+        }
+        jdbcTemplate.query(AUDITED_MSG_IDS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids)),
+                (RowCallbackHandler) rs -> audited.add(rs.getString(1)));
+        return audited;
+    }
+
+    public boolean existsByMsgId(String msgId) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM network_il.msg_event_tracker WHERE msg_id = :msgId)";
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("msgId", msgId);
+
+        return Boolean.TRUE.equals(namedParameterJdbcTemplate.queryForObject(sql, params, Boolean.class));
+    }
+
+    /**
+     * Whether the outputs of a stored message were all published: null when the message has no
+     * tracker rows, false while any of them is still PUBLISH_PENDING.
+     */
+    public Boolean isPublished(String msgId) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("msgId", msgId);
+        params.addValue("pending", Constants.PUBLISH_PENDING);
+
+        return namedParameterJdbcTemplate.queryForObject(PUBLISHED_SQL, params, Boolean.class);
+    }
+
+    /**
+     * The tracker rows of a message whose output was stored but not published, with what is
+     * needed to publish it again.
+     */
+    public List<MsgEventTracker> findUnpublished(String msgId) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("msgId", msgId);
+        params.addValue("pending", Constants.PUBLISH_PENDING);
+
+        return namedParameterJdbcTemplate.query(UNPUBLISHED_SQL, params, (rs, rowNum) -> {
+            MsgEventTracker tracker = new MsgEventTracker();
+            tracker.setMsgId(rs.getString("msg_id"));
+            tracker.setTarget(rs.getString("target"));
+            tracker.setMsgType(rs.getString("msg_type"));
+            tracker.setStatus(rs.getString("status"));
+            tracker.setOrgnlReqCount((Integer) rs.getObject("original_req_count"));
+            tracker.setConsolidateAmt(rs.getBigDecimal("consolidate_amt"));
+            tracker.setIntermediateReq(rs.getString("intermediate_req"));
+            tracker.setIntermediateCount((Integer) rs.getObject("intemdiate_count"));
+            return tracker;
+        });
+    }
+
+    /**
+     * Moves the tracker rows whose output was published from PUBLISH_PENDING to
+     * SENT_TO_DISPATCHER. With the event feed on, the SENT_TO_DISPATCHER events of the rows this
+     * call moved go into the outbox in the same commit; rows another copy moved first get none.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void markSent(List<MsgEventTracker> trackers) {
+        if (trackers.isEmpty()) {
+            return;
+        }
+        LocalDateTime timestamp = LocalDateTime.now();
+        MapSqlParameterSource[] batch = new MapSqlParameterSource[trackers.size()];
+        for (int i = 0; i < batch.length; i++) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            params.addValue("msg_id", trackers.get(i).getMsgId());
+            params.addValue("target", trackers.get(i).getTarget());
+            params.addValue("status", Constants.SENT_TO_DISPATCHER);
+            params.addValue("pending", Constants.PUBLISH_PENDING);
+            params.addValue("modified_timestamp", timestamp);
+            batch[i] = params;
+        }
+        int[] counts = namedParameterJdbcTemplate.batchUpdate(MARK_SENT_SQL, batch);
+        trackers.forEach(tracker -> tracker.setStatus(Constants.SENT_TO_DISPATCHER));
+        if (eventOutbox != null && eventOutbox.isEnabled()) {
+            List<MsgEventTracker> moved = new ArrayList<>(trackers.size());
+            for (int i = 0; i < trackers.size(); i++) {
+                if (counts != null && i < counts.length && counts[i] == 1) {
+                    moved.add(trackers.get(i));
+                }
+            }
+            if (!moved.isEmpty()) {
+                eventOutbox.appendSent(moved);
+            }
+        }
+    }
+
+    /**
+     * Writes every msg_event_tracker row and transaction_audit row of one message in a single
+     * transaction, so the message costs one commit and is either fully recorded or not at all.
+     * With the event feed on, the message's RECEIVED event goes into the outbox in the same commit.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void saveMessage(List<MsgEventTracker> trackers, List<TransactionAudit> transactionAudits)
+            throws JsonProcessingException, SQLException {
+        long start = System.nanoTime();
+        boolean stored = false;
+        try {
+            if (payloadStore != null && payloadStore.isEnabled()) {
+                storePayloads(trackers);
+            }
+            for (MsgEventTracker tracker : trackers) {
+                saveDataInMsgEventTracker(tracker);
+            }
+            if (eventOutbox != null && eventOutbox.isEnabled()) {
+                eventOutbox.appendReceived(trackers);
+            }
+            stored = true;
+        } finally {
+            metrics.record(Stage.TRACKER_INSERT, null, stored, start);
+        }
+        if (!transactionAudits.isEmpty()) {
+            start = System.nanoTime();
+            stored = false;
+            try {
+                saveAllTransactionAudits(transactionAudits);
+                stored = true;
+            } finally {
+                metrics.record(Stage.AUDIT_BATCH, null, stored, start);
+            }
+        }
+    }
+
+    /**
+     * Writes each distinct original request once to the payload store and points the trackers
+     * at it. The FC and EPH trackers of a message share one original request.
+     */
+    private void storePayloads(List<MsgEventTracker> trackers) {
+        Map<String, String> refs = new HashMap<>();
+        for (MsgEventTracker tracker : trackers) {
+            if (tracker.getOrgnlReq() != null && tracker.getPayloadRef() == null) {
+                tracker.setPayloadRef(refs.computeIfAbsent(tracker.getOrgnlReq(), payloadStore::store));
+            }
         }
+    }
 
+    private static ReqPayload withoutPayload(ReqPayload payload) {
+        if (payload == null || payload.getBody() == null) {
+            return payload;
+        }
+        return new ReqPayload(payload.getHeader(), new Body());
     }
 
     public void saveDataInMsgEventTracker(MsgEventTracker msgEventTracker) throws JsonProcessingException, SQLException {
-        String sql = "INSERT INTO network_il.msg_event_tracker\n" +
-                "(msg_id, \"source\", target, batch_id, flow_type, msg_type, original_req, invalid_msg, \n" +
-                " replay_count, original_req_count, consolidate_amt,transformed_json_req, intermediate_req, intemdiate_count, \n" +
-                " status, batch_creation_date, batch_timestamp, created_time, modified_timestamp, \"version\")\n" +
-                "VALUES" +
-                " (:msg_id, :source, :target,:batch_id, :flow_type, :msg_type, :original_req, :invalid_msg," +
-                " :replay_count, :original_req_count, :consolidate_amt,:transformed_json_req,  :intermediate_req, :intemdiate_count," +
-                " :status,:batch_creation_date,:batch_timestamp, :created_time, :modified_timestamp,:version )";
+        boolean byRef = msgEventTracker.getPayloadRef() != null;
+        String sql = byRef ? TRACKER_BY_REF_SQL : TRACKER_SQL;
 
         LocalDateTime timestamp = LocalDateTime.now();
 
@@ -66,7 +365,8 @@ public class NilRepository {
         params.addValue("target", msgEventTracker.getTarget());
         params.addValue("flow_type", msgEventTracker.getFlowType());
         params.addValue("msg_type", msgEventTracker.getMsgType());
-        params.addValue("original_req", msgEventTracker.getOrgnlReq());
+        params.addValue("original_req", byRef ? null : msgEventTracker.getOrgnlReq());
+        params.addValue("payload_ref", msgEventTracker.getPayloadRef());
         params.addValue("original_req_count", msgEventTracker.getOrgnlReqCount());
         params.addValue("batch_id", " ");
         params.addValue("version",1);
@@ -86,7 +386,9 @@ public class NilRepository {
 
 //        try {
         // 1. Convert the ReqPayload object to JSON string
-        String jsonString = objectMapper.writeValueAsString(msgEventTracker.getTransformedJsonReq());
+        // by reference, the payload is left out of the JSON copy as well
+        String jsonString = objectMapper.writeValueAsString(byRef
+                ? withoutPayload(msgEventTracker.getTransformedJsonReq()) : msgEventTracker.getTransformedJsonReq());
 
         // 2. Wrap the string as a PGobject
         PGobject jsonObject = new PGobject();
@@ -177,7 +479,44 @@ public class NilRepository {
 //    }
 
 
+    /**
+     * Inserts the audit rows, switching to COPY once the batch reaches audit.copy-threshold rows.
+     * Both paths run on the JdbcTemplate's connection, so either joins the caller's transaction
+     * when there is one and is a single statement otherwise.
+     */
     public void saveAllTransactionAudits(List<TransactionAudit> transactionAudits) {
+        if (copyThreshold > 0 && transactionAudits.size() >= copyThreshold) {
+            copyTransactionAudits(transactionAudits);
+        } else {
+            batchInsertTransactionAudits(transactionAudits);
+        }
+        invalidateTxnTargets(transactionAudits);
+    }
+
+    // a replay under a new BizMsgIdr adds a second row for a txn_id, so the next lookup decides;
+    // inside a transaction the entries are dropped once it commits
+    private void invalidateTxnTargets(List<TransactionAudit> transactionAudits) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeTxnTargets(transactionAudits);
+                }
+            });
+        } else {
+            removeTxnTargets(transactionAudits);
+        }
+    }
+
+    private void removeTxnTargets(List<TransactionAudit> transactionAudits) {
+        for (TransactionAudit tx : transactionAudits) {
+            if (tx.getTxnId() != null) {
+                txnTargets.invalidate(tx.getTxnId());
+            }
+        }
+    }
+
+    private void batchInsertTransactionAudits(List<TransactionAudit> transactionAudits) {
         String sql = "INSERT INTO network_il.transaction_audit (" +
                 "msg_id, txn_id, end_to_end_id,batch_id, return_id,  source, target, " +
                 "flow_type, msg_type, amount, status,version, batch_creation_date,batch_timestamp ,created_time, modified_timestamp) " +
@@ -214,4 +553,35 @@ public class NilRepository {
         namedParameterJdbcTemplate.batchUpdate(sql, batchParams.toArray(new MapSqlParameterSource[0]));
     }
 
+    private void copyTransactionAudits(List<TransactionAudit> transactionAudits) {
+        LocalDateTime timestamp = LocalDateTime.now();
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(AUDIT_COPY_SQL);
+            try {
+                StringBuilder chunk = new StringBuilder(COPY_CHUNK_CHARS + 1024);
+                for (TransactionAudit tx : transactionAudits) {
+                    TransactionAuditCsv.appendRow(chunk, tx, timestamp);
+                    if (chunk.length() >= COPY_CHUNK_CHARS) {
+                        writeToCopy(copyIn, chunk);
+                    }
+                }
+                writeToCopy(copyIn, chunk);
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+        log.info("Copied {} transaction_audit rows", rows);
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+        if (chunk.length() > 0) {
+            byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            chunk.setLength(0);
+        }
+    }
+
 }
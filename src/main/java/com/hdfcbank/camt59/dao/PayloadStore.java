@@ -0,0 +1,152 @@
+package com.hdfcbank.camt59.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store for original request payloads (payload-store.enabled).
+ * <p>
+ * Each distinct payload is written once to network_il.msg_payload under the SHA-256 of its
+ * UTF-8 bytes, and msg_event_tracker rows carry that hash in payload_ref instead of their own
+ * copy in original_req. Payloads of at least compress-min-bytes can be deflated by the service
+ * (codec DEFLATE); with codec NONE they are stored as-is and left to the column's TOAST
+ * compression. See db/payload-store.sql for the table, the backfill and the resolving view.
+ */
+@Slf4j
+@Repository
+public class PayloadStore {
+
+    public enum Codec { NONE, DEFLATE }
+
+    private static final String INSERT_SQL = "INSERT INTO network_il.msg_payload " +
+            "(payload_hash, codec, original_size, payload, created_time) " +
+            "VALUES (:payload_hash, :codec, :original_size, :payload, :created_time) " +
+            "ON CONFLICT (payload_hash) DO NOTHING";
+
+    private static final String SELECT_SQL =
+            "SELECT codec, payload FROM network_il.msg_payload WHERE payload_hash = :payload_hash";
+
+    private static final String ORIGINAL_REQ_SQL = "SELECT original_req, payload_ref FROM network_il.msg_event_tracker " +
+            "WHERE msg_id = :msg_id ORDER BY created_time LIMIT 1";
+
+    @Autowired
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Value("${payload-store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${payload-store.codec:NONE}")
+    private Codec codec = Codec.NONE;
+
+    @Value("${payload-store.compress-min-bytes:4096}")
+    private int compressMinBytes = 4096;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stores the payload unless a row with the same hash exists, and returns the hash.
+     */
+    public String store(String payload) {
+        byte[] utf8 = payload.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(utf8);
+        Codec used = codec == Codec.DEFLATE && utf8.length >= compressMinBytes ? Codec.DEFLATE : Codec.NONE;
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("payload_hash", hash);
+        params.addValue("codec", used.name());
+        params.addValue("original_size", utf8.length);
+        params.addValue("payload", used == Codec.DEFLATE ? deflate(utf8) : utf8);
+        params.addValue("created_time", LocalDateTime.now());
+        namedParameterJdbcTemplate.update(INSERT_SQL, params);
+        return hash;
+    }
+
+    /**
+     * The payload stored under the hash, or null when there is none.
+     */
+    public String load(String hash) {
+        MapSqlParameterSource params = new MapSqlParameterSource("payload_hash", hash);
+        List<String> payloads = namedParameterJdbcTemplate.query(SELECT_SQL, params,
+                (rs, rowNum) -> decode(Codec.valueOf(rs.getString("codec")), rs.getBytes("payload")));
+        return payloads.isEmpty() ? null : payloads.get(0);
+    }
+
+    /**
+     * The original request of a message, whether its tracker rows hold it inline or by reference.
+     */
+    public String findOriginalReq(String msgId) {
+        MapSqlParameterSource params = new MapSqlParameterSource("msg_id", msgId);
+        List<String[]> rows = namedParameterJdbcTemplate.query(ORIGINAL_REQ_SQL, params,
+                (rs, rowNum) -> new String[]{rs.getString("original_req"), rs.getString("payload_ref")});
+        if (rows.isEmpty()) {
+            return null;
+        }
+        String[] row = rows.get(0);
+        return row[0] != null || row[1] == null ? row[0] : load(row[1]);
+    }
+
+    static String hash(byte[] utf8) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(utf8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static byte[] deflate(byte[] utf8) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, utf8.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decode(Codec codec, byte[] stored) {
+        if (codec == Codec.NONE) {
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated DEFLATE payload");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt DEFLATE payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.hdfcbank.camt59.dao;
+
+import com.hdfcbank.camt59.model.TransactionAudit;
+
+import java.time.LocalDateTime;
+
+/**
+ * CSV encoding of transaction_audit rows for COPY ... FROM STDIN (FORMAT csv).
+ * Text values are always quoted so that an empty string stays distinct from NULL,
+ * which COPY reads from an unquoted empty field.
+ */
+final class TransactionAuditCsv {
+
+    static final String COLUMNS = "msg_id, txn_id, end_to_end_id, batch_id, return_id, source, target, " +
+            "flow_type, msg_type, amount, status, version, batch_creation_date, batch_timestamp, created_time, modified_timestamp";
+
+    private TransactionAuditCsv() {
+    }
+
+    /**
+     * Appends one row with the same values the JDBC batch insert binds.
+     */
+    static void appendRow(StringBuilder out, TransactionAudit tx, LocalDateTime timestamp) {
+        text(out, tx.getMsgId()).append(',');
+        text(out, tx.getTxnId()).append(',');
+        text(out, tx.getEndToEndId()).append(',');
+        text(out, " ").append(',');
+        text(out, tx.getReturnId()).append(',');
+        text(out, tx.getSource()).append(',');
+        text(out, tx.getTarget()).append(',');
+        text(out, tx.getFlowType()).append(',');
+        text(out, tx.getMsgType()).append(',');
+        value(out, tx.getAmount() != null ? tx.getAmount().toPlainString() : null).append(',');
+        text(out, "INPROGRESS").append(',');
+        out.append('1').append(',');
+        value(out, tx.getBatchDate()).append(',');
+        value(out, tx.getBatchTime()).append(',');
+        value(out, timestamp).append(',');
+        value(out, timestamp).append('\n');
+    }
+
+    private static StringBuilder text(StringBuilder out, String value) {
+        if (value == null) {
+            return out;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private static StringBuilder value(StringBuilder out, Object value) {
+        return value != null ? out.append(value) : out;
+    }
+}
@@ -0,0 +1,23 @@
+package com.hdfcbank.camt59.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Raised when a message is not admitted for processing: 429 when the worker queue is full or
+ * the memory budget stays exhausted, 503 when the workers are shutting down. Also raised with
+ * 503 for a message that was not stored or whose outputs were not published, so that it is
+ * redelivered rather than acked.
+ */
+public class ProcessingRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final HttpStatus status;
+
+    public ProcessingRejectedException(String message, HttpStatus status) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,406 @@
+package com.hdfcbank.camt59.kafkaproducer;
+
+import io.dapr.client.DaprClientBuilder;
+import io.dapr.client.DaprPreviewClient;
+import io.dapr.client.domain.BulkPublishEntry;
+import io.dapr.client.domain.BulkPublishRequest;
+import io.dapr.client.domain.BulkPublishResponse;
+import io.dapr.client.domain.BulkPublishResponseFailedEntry;
+import io.dapr.config.Properties;
+import io.dapr.config.Property;
+import io.dapr.serializer.DefaultObjectSerializer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces publishes to the same topic into Dapr bulk publish requests.
+ * <p>
+ * Events are buffered per pub/sub and topic and sent as one request when max-entries events or
+ * max-bytes characters are waiting, or linger-ms after the first of them arrived, whichever
+ * comes first. Each event keeps its own partitionKey (the msgId) in its entry metadata, and the
+ * sidecar's per-entry failures are handed back to the caller of each failed event alone; an
+ * error of the whole request fails every event in it. Entries carry no content type unless one
+ * is configured, so the client serializes them exactly as it does single publishes.
+ * <p>
+ * The preview client is built from the dapr.* settings, whose defaults are the Dapr SDK's own
+ * DAPR_* variables that message-connect's DaprProducer client resolves, with the same default
+ * serializer, so single and bulk publishes reach the same sidecar with the same timeouts. An
+ * event whose caller cancelled, for example on a timeout, is dropped if it has not been sent
+ * yet. Shutdown sends what is waiting and gives the requests in flight up to timeout-ms to be
+ * answered before the client is closed.
+ */
+@Slf4j
+@Service
+public class DaprBulkPublisher {
+
+    private static final String PARTITION_KEY = "partitionKey";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${publish.batch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${publish.batch.max-entries:64}")
+    private int maxEntries = 64;
+
+    @Value("${publish.batch.max-bytes:1048576}")
+    private long maxBytes = 1048576;
+
+    @Value("${publish.batch.linger-ms:5}")
+    private long lingerMs = 5;
+
+    @Value("${publish.batch.content-type:}")
+    private String contentType = "";
+
+    @Value("${publish.timeout-ms:10000}")
+    private long publishTimeoutMs = 10000;
+
+    @Value("${dapr.sidecar-ip:}")
+    private String sidecarIp = "";
+
+    @Value("${dapr.grpc-port:}")
+    private String grpcPort = "";
+
+    @Value("${dapr.grpc-endpoint:}")
+    private String grpcEndpoint = "";
+
+    @Value("${dapr.api-timeout-ms:}")
+    private String apiTimeoutMs = "";
+
+    @Value("${dapr.max-retries:}")
+    private String maxRetries = "";
+
+    @Value("${dapr.api-token:}")
+    private String apiToken = "";
+
+    private DaprPreviewClient client;
+
+    private final Object sendsLock = new Object();
+
+    // guarded by sendsLock: bulk requests sent and not yet answered
+    private int sendsInFlight;
+
+    private ScheduledExecutorService linger;
+
+    private final Map<String, TopicBatch> batches = new ConcurrentHashMap<>();
+
+    private enum Trigger { COUNT, BYTES, LINGER, SHUTDOWN }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (client == null) {
+            client = new DaprClientBuilder()
+                    .withPropertyOverrides(clientProperties())
+                    .withObjectSerializer(new DefaultObjectSerializer())
+                    .buildPreviewClient();
+        }
+        linger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dapr-bulk-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Bulk publishing: up to {} events or {} chars per request, linger {} ms", maxEntries, maxBytes, lingerMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (linger == null) {
+            return;
+        }
+        linger.shutdown();
+        batches.values().forEach(batch -> batch.flush(Trigger.SHUTDOWN, -1));
+        if (!awaitSends(publishTimeoutMs)) {
+            log.warn("Closing the Dapr preview client with {} bulk publish requests unanswered", unansweredSends());
+        }
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.warn("Dapr preview client not closed cleanly: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Overrides of the Dapr SDK properties for the settings that are given; the rest keep the
+     * SDK's defaults.
+     */
+    Map<Property<?>, String> clientProperties() {
+        Map<Property<?>, String> overrides = new LinkedHashMap<>();
+        putIfSet(overrides, Properties.SIDECAR_IP, sidecarIp);
+        putIfSet(overrides, Properties.GRPC_PORT, grpcPort);
+        putIfSet(overrides, Properties.GRPC_ENDPOINT, grpcEndpoint);
+        putIfSet(overrides, Properties.TIMEOUT, apiTimeoutMs);
+        putIfSet(overrides, Properties.MAX_RETRIES, maxRetries);
+        putIfSet(overrides, Properties.API_TOKEN, apiToken);
+        return overrides;
+    }
+
+    private static void putIfSet(Map<Property<?>, String> overrides, Property<?> property, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            overrides.put(property, value.trim());
+        }
+    }
+
+    private boolean awaitSends(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (sendsLock) {
+            while (sendsInFlight > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    sendsLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private int unansweredSends() {
+        synchronized (sendsLock) {
+            return sendsInFlight;
+        }
+    }
+
+    private void sendStarted() {
+        synchronized (sendsLock) {
+            sendsInFlight++;
+        }
+    }
+
+    private void sendEnded() {
+        synchronized (sendsLock) {
+            sendsInFlight--;
+            sendsLock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues one event for its topic's next bulk request when subscribed to. Completes once the
+     * request carrying it was answered, with an error if the sidecar did not accept this event.
+     */
+    public Mono<Void> publish(String pubsubName, String topic, String message, String msgId) {
+        return Mono.create(sink -> {
+            TopicBatch batch = batches.computeIfAbsent(pubsubName + '\u0000' + topic,
+                    key -> new TopicBatch(pubsubName, topic));
+            Pending event = new Pending(message, msgId, sink);
+            sink.onCancel(() -> batch.cancel(event));
+            batch.add(event);
+        });
+    }
+
+    private record Pending(String message, String msgId, MonoSink<Void> sink, AtomicBoolean cancelled) {
+
+        Pending(String message, String msgId, MonoSink<Void> sink) {
+            this(message, msgId, sink, new AtomicBoolean());
+        }
+
+        long length() {
+            return message != null ? message.length() : 0;
+        }
+    }
+
+    private final class TopicBatch {
+
+        private final String pubsubName;
+        private final String topic;
+        private final DistributionSummary sizes;
+        private final DistributionSummary bytes;
+        private final Timer lingered;
+        private final Counter[] flushes = new Counter[Trigger.values().length];
+
+        private List<Pending> pending = new ArrayList<>();
+        private long pendingBytes;
+        private long firstQueued;
+        private long generation;
+
+        TopicBatch(String pubsubName, String topic) {
+            this.pubsubName = pubsubName;
+            this.topic = topic;
+            if (meterRegistry != null) {
+                sizes = DistributionSummary.builder("camt59.publish.batch.size")
+                        .description("Events per Dapr bulk publish request")
+                        .tag("topic", topic)
+                        .register(meterRegistry);
+                bytes = DistributionSummary.builder("camt59.publish.batch.bytes")
+                        .description("Characters of event data per Dapr bulk publish request")
+                        .baseUnit("bytes")
+                        .tag("topic", topic)
+                        .register(meterRegistry);
+                lingered = Timer.builder("camt59.publish.batch.linger")
+                        .description("Time the first event of a bulk publish request waited for the request to be sent")
+                        .tag("topic", topic)
+                        .register(meterRegistry);
+                for (Trigger trigger : Trigger.values()) {
+                    flushes[trigger.ordinal()] = Counter.builder("camt59.publish.batch.flushes")
+                            .description("Bulk publish requests sent, by what sent them")
+                            .tag("topic", topic)
+                            .tag("trigger", trigger.name().toLowerCase(Locale.ROOT))
+                            .register(meterRegistry);
+                }
+            } else {
+                sizes = null;
+                bytes = null;
+                lingered = null;
+            }
+        }
+
+        void add(Pending event) {
+            Trigger trigger = null;
+            long scheduleFor = -1;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    firstQueued = System.nanoTime();
+                    scheduleFor = generation;
+                }
+                pending.add(event);
+                pendingBytes += event.length();
+                if (pending.size() >= maxEntries) {
+                    trigger = Trigger.COUNT;
+                } else if (pendingBytes >= maxBytes) {
+                    trigger = Trigger.BYTES;
+                }
+            }
+            if (trigger != null) {
+                flush(trigger, -1);
+            } else if (scheduleFor >= 0) {
+                long batchGeneration = scheduleFor;
+                linger.schedule(() -> flush(Trigger.LINGER, batchGeneration), lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Takes a cancelled event out of the batch that has not been sent yet.
+         */
+        void cancel(Pending event) {
+            event.cancelled().set(true);
+            synchronized (this) {
+                if (pending.remove(event)) {
+                    pendingBytes -= event.length();
+                }
+            }
+        }
+
+        /**
+         * Sends what is waiting. A linger flush names the batch it was scheduled for and does
+         * nothing when that batch has already gone out.
+         */
+        void flush(Trigger trigger, long forGeneration) {
+            List<Pending> events;
+            long eventBytes;
+            long queued;
+            synchronized (this) {
+                if (pending.isEmpty() || (forGeneration >= 0 && forGeneration != generation)) {
+                    return;
+                }
+                events = pending;
+                eventBytes = pendingBytes;
+                queued = firstQueued;
+                pending = new ArrayList<>();
+                pendingBytes = 0;
+                generation++;
+            }
+            // cancelled between the batch being taken and now
+            events.removeIf(event -> event.cancelled().get());
+            if (events.isEmpty()) {
+                return;
+            }
+            if (sizes != null) {
+                sizes.record(events.size());
+                bytes.record(eventBytes);
+                lingered.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+                flushes[trigger.ordinal()].increment();
+            }
+            send(events);
+        }
+
+        private void send(List<Pending> events) {
+            List<BulkPublishEntry<String>> entries = new ArrayList<>(events.size());
+            for (int i = 0; i < events.size(); i++) {
+                Pending event = events.get(i);
+                Map<String, String> metadata = new HashMap<>();
+                metadata.put(PARTITION_KEY, event.msgId());
+                entries.add(new BulkPublishEntry<>(Integer.toString(i), event.message(),
+                        contentType.isBlank() ? null : contentType, metadata));
+            }
+            BulkPublishRequest<String> request = new BulkPublishRequest<>(pubsubName, topic, entries);
+            Mono<BulkPublishResponse<String>> response;
+            try {
+                response = client.publishEvents(request);
+            } catch (RuntimeException e) {
+                response = Mono.error(e);
+            }
+            sendStarted();
+            response.timeout(Duration.ofMillis(publishTimeoutMs))
+                    .doFinally(signal -> sendEnded())
+                    .subscribe(result -> complete(events, result), error -> {
+                        log.error("Bulk publish of {} events to topic {} failed: {}", events.size(), topic, error.toString());
+                        events.forEach(event -> event.sink().error(error));
+                    });
+        }
+
+        private void complete(List<Pending> events, BulkPublishResponse<String> result) {
+            String[] errors = new String[events.size()];
+            List<BulkPublishResponseFailedEntry<String>> failed = result != null ? result.getFailedEntries() : null;
+            if (failed != null) {
+                for (BulkPublishResponseFailedEntry<String> entry : failed) {
+                    int index = entryIndex(entry);
+                    if (index >= 0 && index < errors.length) {
+                        errors[index] = entry.getErrorMessage() != null ? entry.getErrorMessage() : "rejected";
+                    }
+                }
+            }
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] == null) {
+                    events.get(i).sink().success();
+                } else {
+                    log.error("Bulk publish of msgId {} to topic {} failed: {}", events.get(i).msgId(), topic, errors[i]);
+                    events.get(i).sink().error(new IllegalStateException("Event rejected by the sidecar: " + errors[i]));
+                }
+            }
+        }
+
+        private int entryIndex(BulkPublishResponseFailedEntry<String> entry) {
+            try {
+                return entry.getEntry() != null ? Integer.parseInt(entry.getEntry().getEntryId()) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
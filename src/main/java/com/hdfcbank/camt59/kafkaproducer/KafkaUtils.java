@@ -2,14 +2,19 @@ package com.hdfcbank.camt59.kafkaproducer;
 
 import com.hdfcbank.messageconnect.config.PubSubOptions;
 import com.hdfcbank.messageconnect.dapr.producer.DaprProducer;
+import com.hdfcbank.camt59.model.PublishResult;
 import com.hdfcbank.camt59.utils.Constants;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
@@ -18,24 +23,73 @@ public class KafkaUtils {
     @Autowired
     DaprProducer daprProducer;
 
+    @Autowired(required = false)
+    DaprBulkPublisher bulkPublisher;
 
-    public void publishToResponseTopic(String message, String topic, String msgid) {
-        Map<String, String> metadata = new HashMap<>();
-//        metadata.put(RAW_PAYLOAD, TRUE);  // optional, for raw XML/string
-        metadata.put("partitionKey",msgid);
+    @Value("${publish.max-in-flight:64}")
+    private int maxInFlight = 64;
 
-        var kafkaBinding = PubSubOptions.builder().requestData(message).topic(topic)
-                .pubsubName(Constants.KAFKA_RESPONSE_TOPIC_DAPR_BINDING)
-                .metadata(metadata)
-                .build();
-        var resp = daprProducer.invokeDaprPublishEvent(kafkaBinding);
-        resp.doOnSuccess(res -> {
-            log.info("Response published to response topic successfully");
-        }).onErrorResume(res -> {
-            log.info("Error on publishing the response to response topic");
-            return Mono.empty();
-        }).share().block();
+    @Value("${publish.timeout-ms:10000}")
+    private long publishTimeoutMs = 10000;
 
+    private PublishPermits inFlight;
 
+    @PostConstruct
+    void init() {
+        inFlight = new PublishPermits(maxInFlight);
+    }
+
+    /**
+     * Publishes without blocking the caller on the Dapr round-trip. At most publish.max-in-flight
+     * publishes are outstanding; a subscriber that finds none free is queued, without holding a
+     * thread, for up to publish.timeout-ms until one is released. Failures and timeouts complete
+     * the Mono with an unpublished result rather than an error.
+     * With publish.batch.enabled the event goes out in its topic's next bulk request instead, so
+     * max-in-flight should be at least publish.batch.max-entries for count-triggered flushes.
+     */
+    public Mono<PublishResult> publishAsync(String message, String topic, String msgid) {
+        return Mono.defer(() -> {
+            PublishPermits permits = inFlight;
+            return permits.acquire()
+                    .timeout(Duration.ofMillis(publishTimeoutMs))
+                    .then(Mono.defer(() -> send(message, topic, msgid)
+                            .doFinally(signal -> permits.release())))
+                    .onErrorResume(TimeoutException.class, e -> {
+                        log.error("No publish slot free within {} ms for msgId {} on topic {}", publishTimeoutMs, msgid, topic);
+                        return Mono.just(PublishResult.failure(topic, msgid,
+                                new TimeoutException(maxInFlight + " publishes already in flight")));
+                    });
+        });
+    }
+
+    private Mono<PublishResult> send(String message, String topic, String msgid) {
+        Mono<?> publish;
+        if (bulkPublisher != null && bulkPublisher.isEnabled()) {
+            publish = bulkPublisher.publish(Constants.KAFKA_RESPONSE_TOPIC_DAPR_BINDING, topic, message, msgid);
+        } else {
+            Map<String, String> metadata = new HashMap<>();
+//            metadata.put(RAW_PAYLOAD, TRUE);  // optional, for raw XML/string
+            metadata.put("partitionKey", msgid);
+
+            var kafkaBinding = PubSubOptions.builder().requestData(message).topic(topic)
+                    .pubsubName(Constants.KAFKA_RESPONSE_TOPIC_DAPR_BINDING)
+                    .metadata(metadata)
+                    .build();
+            publish = Mono.defer(() -> daprProducer.invokeDaprPublishEvent(kafkaBinding));
+        }
+        return publish
+                .timeout(Duration.ofMillis(publishTimeoutMs))
+                .then(Mono.fromCallable(() -> {
+                    log.info("Response published to response topic successfully");
+                    return PublishResult.success(topic, msgid);
+                }))
+                .onErrorResume(e -> {
+                    log.error("Error on publishing msgId {} to topic {}: {}", msgid, topic, e.toString());
+                    return Mono.just(PublishResult.failure(topic, msgid, e));
+                });
+    }
+
+    public PublishResult publishToResponseTopic(String message, String topic, String msgid) {
+        return publishAsync(message, topic, msgid).block();
     }
 }
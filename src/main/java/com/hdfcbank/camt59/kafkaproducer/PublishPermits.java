@@ -0,0 +1,100 @@
+package com.hdfcbank.camt59.kafkaproducer;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the publishes in flight without blocking a thread while one waits for a slot.
+ * <p>
+ * {@link #acquire()} completes at once while a permit is free; otherwise the subscriber is
+ * queued and its Mono completes on the thread of the {@link #release()} that hands it the permit.
+ * A waiter that is cancelled, for example by a timeout, leaves the queue, and a permit handed to
+ * it in the same instant is passed on instead of being lost.
+ */
+final class PublishPermits {
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    private final int limit;
+
+    // guarded by this
+    private int available;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    PublishPermits(int limit) {
+        this.limit = limit;
+        this.available = limit;
+    }
+
+    /**
+     * Completes empty once a permit is held; the holder must {@link #release()} it.
+     */
+    Mono<Void> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (available > 0) {
+                    available--;
+                    waiter = null;
+                } else {
+                    waiter = new Waiter(sink);
+                    waiters.addLast(waiter);
+                }
+            }
+            if (waiter == null) {
+                sink.success();
+                return;
+            }
+            sink.onCancel(() -> {
+                if (waiter.state.compareAndSet(WAITING, CANCELLED)) {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                } else {
+                    // granted while being cancelled: the permit goes to the next waiter
+                    release();
+                }
+            });
+        });
+    }
+
+    void release() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = waiters.pollFirst();
+                if (next == null) {
+                    available = Math.min(limit, available + 1);
+                    return;
+                }
+            }
+            if (next.state.compareAndSet(WAITING, GRANTED)) {
+                next.sink.success();
+                return;
+            }
+        }
+    }
+
+    synchronized int available() {
+        return available;
+    }
+
+    synchronized int waiting() {
+        return waiters.size();
+    }
+
+    private static final class Waiter {
+        final MonoSink<Void> sink;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Void> sink) {
+            this.sink = sink;
+        }
+    }
+}
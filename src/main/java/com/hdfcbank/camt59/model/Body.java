@@ -1,12 +1,107 @@
 package com.hdfcbank.camt59.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message body. A payload read from JSON is kept as UTF-8 bytes and only turned into a String
+ * the first time {@link #getPayload()} is called, so messages dropped before processing (not
+ * INWARD, duplicates) never build the large XML String.
+ */
 @Data
 @NoArgsConstructor
 public class Body {
 
     private String payload;
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] payloadUtf8;
+
+    @JsonProperty("payload")
+    public String getPayload() {
+        if (payload == null && payloadUtf8 != null) {
+            payload = new String(payloadUtf8, StandardCharsets.UTF_8);
+            payloadUtf8 = null;
+        }
+        return payload;
+    }
+
+    @JsonIgnore
+    public void setPayload(String payload) {
+        this.payload = payload;
+        this.payloadUtf8 = null;
+    }
+
+    @JsonProperty("payload")
+    @JsonDeserialize(using = Utf8TextDeserializer.class)
+    private void setPayloadUtf8(byte[] payloadUtf8) {
+        this.payload = null;
+        this.payloadUtf8 = payloadUtf8;
+    }
+
+    /**
+     * The payload as UTF-8, without materialising it when it is still held as bytes.
+     */
+    @JsonIgnore
+    public InputStream openPayload() {
+        if (payloadUtf8 != null) {
+            return new ByteArrayInputStream(payloadUtf8);
+        }
+        return payload != null ? new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)) : null;
+    }
+
+    /**
+     * Up to the first maxChars characters of the payload, decoded on their own when the payload
+     * is still held as bytes; enough to read header fields such as AppHdr/BizMsgIdr.
+     */
+    @JsonIgnore
+    public String getPayloadHead(int maxChars) {
+        if (payloadUtf8 == null) {
+            return payload == null || payload.length() <= maxChars ? payload : payload.substring(0, maxChars);
+        }
+        // a multi-byte character cut at the end decodes to U+FFFD, which no tag contains
+        return new String(payloadUtf8, 0, Math.min(maxChars, payloadUtf8.length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a JSON string straight into UTF-8 bytes, chunk by chunk, without building a String.
+     */
+    static final class Utf8TextDeserializer extends JsonDeserializer<byte[]> {
+
+        @Override
+        public byte[] deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() != JsonToken.VALUE_STRING) {
+                return p.currentToken() == JsonToken.VALUE_NULL ? null
+                        : p.getValueAsString("").getBytes(StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(p.getTextLength());
+            Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+            p.getText(writer);
+            writer.flush();
+            return bytes.toByteArray();
+        }
+    }
 }
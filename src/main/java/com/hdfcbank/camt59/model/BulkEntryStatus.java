@@ -0,0 +1,22 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Per-entry answer to a bulk delivery. Dapr acknowledges SUCCESS, redelivers RETRY and
+ * discards DROP.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkEntryStatus {
+
+    public static final String SUCCESS = "SUCCESS";
+    public static final String RETRY = "RETRY";
+    public static final String DROP = "DROP";
+
+    private String entryId;
+    private String status;
+}
@@ -0,0 +1,22 @@
+package com.hdfcbank.camt59.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BulkSubscribeEntry {
+
+    private String entryId;
+    // the CloudEvent, as a JSON object or, for raw payloads, a string
+    private JsonNode event;
+    private String contentType;
+    private Map<String, String> metadata;
+}
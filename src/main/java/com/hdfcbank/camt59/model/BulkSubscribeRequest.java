@@ -0,0 +1,26 @@
+package com.hdfcbank.camt59.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Envelope Dapr posts to a bulk-subscribe route: one request carrying many CloudEvents.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BulkSubscribeRequest {
+
+    private String id;
+    private String pubsubname;
+    private String topic;
+    private String type;
+    private Map<String, String> metadata;
+    private List<BulkSubscribeEntry> entries;
+}
@@ -0,0 +1,15 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkSubscribeResponse {
+
+    private List<BulkEntryStatus> statuses;
+}
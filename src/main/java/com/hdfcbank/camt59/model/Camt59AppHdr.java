@@ -0,0 +1,16 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+@Data
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class Camt59AppHdr {
+    String bizMsgIdr;
+    String msgDefIdr;
+    String creDt;
+}
@@ -0,0 +1,48 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Per-message values read once from the AppHdr and the Dapr header, and handed to every stage
+ * that builds tracker or audit rows, instead of each stage going back to the document.
+ */
+@Value
+public class Camt59MessageContext {
+
+    /** AppHdr BizMsgIdr as written, as the items carry it */
+    String bizMsgIdr;
+    /** BizMsgIdr trimmed: msg_event_tracker.msg_id and the audit rows' msg_id */
+    String msgId;
+    String msgDefIdr;
+    String creDt;
+    LocalDate batchCreationDate;
+    LocalDateTime batchCreationTime;
+    String flowType;
+    String prefix;
+    boolean invalidPayload;
+    boolean replayInd;
+
+    /**
+     * @throws java.time.format.DateTimeParseException when CreDt is not an ISO instant
+     */
+    public static Camt59MessageContext of(Camt59AppHdr appHdr, Header header) {
+        String creDt = appHdr.getCreDt();
+        return new Camt59MessageContext(
+                appHdr.getBizMsgIdr(),
+                appHdr.getBizMsgIdr().trim(),
+                appHdr.getMsgDefIdr().trim(),
+                creDt,
+                Instant.parse(creDt).atZone(ZoneOffset.UTC).toLocalDate(),
+                LocalDateTime.parse(creDt, DateTimeFormatter.ISO_DATE_TIME),
+                header.getFlowType(),
+                header.getPrefix(),
+                header.isInvalidPayload(),
+                header.isReplayInd());
+    }
+}
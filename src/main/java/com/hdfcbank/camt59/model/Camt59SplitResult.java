@@ -0,0 +1,13 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Camt59SplitResult {
+    private String fcXml;
+    private String ephXml;
+}
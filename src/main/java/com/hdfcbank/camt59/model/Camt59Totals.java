@@ -0,0 +1,28 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.Data;
+
+/**
+ * FC and EPH consolidated amounts of one message, in paise, and the items behind them.
+ */
+@Data
+public class Camt59Totals {
+    private long fcPaise;
+    private long ephPaise;
+    private int fcItems;
+    private int ephItems;
+
+    public void add(String swtch, long paise) {
+        if ("DISPATCHED_FC".equals(swtch)) {
+            fcPaise = Math.addExact(fcPaise, paise);
+            fcItems++;
+        } else if ("DISPATCHED_EPH".equals(swtch)) {
+            ephPaise = Math.addExact(ephPaise, paise);
+            ephItems++;
+        }
+    }
+
+    public long getTotalPaise() {
+        return Math.addExact(fcPaise, ephPaise);
+    }
+}
@@ -0,0 +1,30 @@
+package com.hdfcbank.camt59.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One state transition of a message on the msg_event_tracker feed. The id is the outbox row id,
+ * unique per event, so a consumer can drop an event that is delivered twice.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MsgEvent {
+
+    private Long id;
+    private String msgId;
+    private String status;
+    private String target;
+    private String msgType;
+    private Integer itemCount;
+    private BigDecimal amount;
+    private String reason;
+    private LocalDateTime eventTime;
+}
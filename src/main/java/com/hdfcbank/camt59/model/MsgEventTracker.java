@@ -21,6 +21,8 @@ public class MsgEventTracker {
     private String msgType;
     private String batchId;
     private String orgnlReq;
+    // msg_payload hash standing in for orgnlReq when the payload store is on
+    private String payloadRef;
     private Integer orgnlReqCount;
     private BigDecimal consolidateAmt;
     private  ReqPayload transformedJsonReq;
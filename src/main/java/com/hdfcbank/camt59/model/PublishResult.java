@@ -0,0 +1,23 @@
+package com.hdfcbank.camt59.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PublishResult {
+    private String topic;
+    private String msgId;
+    private boolean published;
+    private String error;
+
+    public static PublishResult success(String topic, String msgId) {
+        return new PublishResult(topic, msgId, true, null);
+    }
+
+    public static PublishResult failure(String topic, String msgId, Throwable error) {
+        return new PublishResult(topic, msgId, false, error.toString());
+    }
+}
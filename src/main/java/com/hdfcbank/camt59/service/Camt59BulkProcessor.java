@@ -0,0 +1,204 @@
+package com.hdfcbank.camt59.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.exception.NILException;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import com.hdfcbank.camt59.model.BulkEntryStatus;
+import com.hdfcbank.camt59.model.BulkSubscribeEntry;
+import com.hdfcbank.camt59.model.BulkSubscribeRequest;
+import com.hdfcbank.camt59.model.BulkSubscribeResponse;
+import com.hdfcbank.camt59.model.ReqPayload;
+import com.hdfcbank.camt59.service.Camt59XmlProcessor.PreparedMessage;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Credit;
+import com.hdfcbank.camt59.utils.NILRouterCommonUtility;
+import com.hdfcbank.camt59.utils.ProcessingScheduler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Processes a Dapr bulk-subscribe delivery.
+ * <p>
+ * Entries are parsed and prepared on the processing workers, at most max-parallelism at a time,
+ * then the rows of every prepared message are stored in one shared transaction and the outputs
+ * are published together, as one more task on the processing workers; when that task is not
+ * admitted every prepared entry is retried. If the shared write fails the messages are stored one by one, so a
+ * single bad message only fails its own entry. An entry whose event or XML cannot be read is
+ * dropped; one that could not be admitted, stored or published is retried. Entries draw on the
+ * budget the envelope reserved before they reserve their own.
+ */
+@Slf4j
+@Service
+public class Camt59BulkProcessor {
+
+    @Autowired
+    Camt59XmlProcessor camt59XmlProcessor;
+
+    @Autowired
+    NILRouterCommonUtility nilRouterCommonUtility;
+
+    @Autowired
+    ProcessingScheduler processingScheduler;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${processing.bulk.max-parallelism:8}")
+    private int maxParallelism = 8;
+
+    public BulkSubscribeRequest parse(ByteBuf request) {
+        try {
+            return objectMapper.readValue((InputStream) new ByteBufInputStream(request.duplicate()), BulkSubscribeRequest.class);
+        } catch (Exception e) {
+            throw new NILException("Invalid bulk request format. Expecting a bulk-subscribe envelope.", e);
+        }
+    }
+
+    /**
+     * @param credit the budget the envelope reserved, or null when it holds none
+     */
+    public Mono<BulkSubscribeResponse> process(BulkSubscribeRequest request, Credit credit) {
+        List<BulkSubscribeEntry> entries = request.getEntries() != null ? request.getEntries() : List.of();
+        return Flux.fromIterable(entries)
+                .flatMapSequential(entry -> processingScheduler.execute(() -> prepare(entry, credit))
+                        .onErrorResume(ex -> {
+                            log.warn("Bulk entry {} not admitted: {}", entry.getEntryId(), ex.getMessage());
+                            return Mono.just(new EntryResult(entry.getEntryId(), BulkEntryStatus.RETRY, null));
+                        }), Math.max(1, maxParallelism))
+                .collectList()
+                // the shared write and the publishes block, so they take a worker like the entries did
+                .flatMap(results -> processingScheduler.execute(() -> commit(results))
+                        .onErrorResume(ProcessingRejectedException.class, ex -> {
+                            log.warn("Bulk commit of {} entries not admitted: {}", results.size(), ex.getMessage());
+                            return Mono.just(retryPrepared(results));
+                        }));
+    }
+
+    // nothing was stored: the prepared messages give their claims back and are redelivered
+    private BulkSubscribeResponse retryPrepared(List<EntryResult> results) {
+        List<BulkEntryStatus> statuses = new ArrayList<>(results.size());
+        for (EntryResult result : results) {
+            String status = result.status;
+            if (result.message != null) {
+                camt59XmlProcessor.fail(result.message);
+                status = BulkEntryStatus.RETRY;
+            }
+            statuses.add(new BulkEntryStatus(result.entryId, status));
+        }
+        return new BulkSubscribeResponse(statuses);
+    }
+
+    private EntryResult prepare(BulkSubscribeEntry entry, Credit credit) {
+        String entryId = entry.getEntryId();
+        ReqPayload payload;
+        try {
+            payload = nilRouterCommonUtility.convertToMap(eventJson(entry.getEvent()));
+        } catch (Exception e) {
+            log.error("Dropping bulk entry {}: unreadable event: {}", entryId, e.getMessage());
+            return new EntryResult(entryId, BulkEntryStatus.DROP, null);
+        }
+        if (payload == null) {
+            log.error("Dropping bulk entry {}: empty event", entryId);
+            return new EntryResult(entryId, BulkEntryStatus.DROP, null);
+        }
+
+        try {
+            if (camt59XmlProcessor.validateRequest(payload)) {
+                return new EntryResult(entryId, BulkEntryStatus.SUCCESS, null);
+            }
+        } catch (Exception e) {
+            log.error("Retrying bulk entry {}: {}", entryId, e.getMessage(), e);
+            return new EntryResult(entryId, BulkEntryStatus.RETRY, null);
+        }
+
+        try {
+            // null when there is nothing to store: not INWARD, or a duplicate
+            return new EntryResult(entryId, BulkEntryStatus.SUCCESS, camt59XmlProcessor.prepareInward(payload, credit));
+        } catch (ProcessingRejectedException e) {
+            // over the memory budget, or in progress in another copy: a redelivery is processed
+            log.warn("Retrying bulk entry {}: {}", entryId, e.getMessage());
+            return new EntryResult(entryId, BulkEntryStatus.RETRY, null);
+        } catch (Exception e) {
+            // a redelivery would fail on the same XML
+            log.error("Dropping bulk entry {}: {}", entryId, e.getMessage(), e);
+            return new EntryResult(entryId, BulkEntryStatus.DROP, null);
+        }
+    }
+
+    private BulkSubscribeResponse commit(List<EntryResult> results) {
+        List<PreparedMessage> prepared = new ArrayList<>();
+        for (EntryResult result : results) {
+            if (result.message != null) {
+                prepared.add(result.message);
+            }
+        }
+        if (!prepared.isEmpty()) {
+            persist(prepared);
+            List<Map.Entry<PreparedMessage, Boolean>> publishes = Flux.fromIterable(prepared)
+                    .filter(message -> message.persisted)
+                    .flatMap(message -> camt59XmlProcessor.publish(message)
+                            .onErrorReturn(false)
+                            .map(published -> Map.entry(message, published)))
+                    .collectList()
+                    .block();
+            // completed here rather than on the publishing threads: marking them sent is a write
+            if (publishes != null) {
+                publishes.forEach(publish -> camt59XmlProcessor.complete(publish.getKey(), publish.getValue()));
+            }
+        }
+
+        List<BulkEntryStatus> statuses = new ArrayList<>(results.size());
+        for (EntryResult result : results) {
+            String status = result.status;
+            if (result.message != null && !result.message.persisted) {
+                camt59XmlProcessor.fail(result.message);
+                status = BulkEntryStatus.RETRY;
+            } else if (result.message != null && !result.message.published) {
+                // stored but not published: the redelivery publishes the stored outputs
+                status = BulkEntryStatus.RETRY;
+            }
+            statuses.add(new BulkEntryStatus(result.entryId, status));
+        }
+        return new BulkSubscribeResponse(statuses);
+    }
+
+    private void persist(List<PreparedMessage> prepared) {
+        try {
+            camt59XmlProcessor.persist(prepared);
+            return;
+        } catch (Exception e) {
+            log.warn("Shared write of {} bulk messages failed, storing them one by one: {}", prepared.size(), e.getMessage());
+        }
+        for (PreparedMessage message : prepared) {
+            if (message.persisted) {
+                continue;
+            }
+            try {
+                camt59XmlProcessor.persist(List.of(message));
+            } catch (Exception e) {
+                log.error("Error storing CAMT.59 msgId {}: {}", message.msgKey, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static String eventJson(JsonNode event) {
+        if (event == null || event.isNull()) {
+            return null;
+        }
+        return event.isTextual() ? event.asText() : event.toString();
+    }
+
+    private record EntryResult(String entryId, String status, PreparedMessage message) {
+    }
+}
@@ -0,0 +1,192 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.model.Camt59AppHdr;
+import com.hdfcbank.camt59.model.Camt59Fields;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the Camt59Fields of the DOM engine from the OrgnlItmAndSts elements.
+ * <p>
+ * Each item is read by walking its child elements rather than with XPath, which touches only
+ * plain node fields and so is safe to run from several threads on a parsed (non-deferred)
+ * document. Batches of at least parallel-threshold items are split across a dedicated
+ * ForkJoinPool of parallelism workers; smaller ones, or parallelism 1, stay on the caller's
+ * thread. Either way the fields come back in document order, routed with the one
+ * {@link RoutingTable} the caller took for the message.
+ */
+@Slf4j
+@Component
+public class Camt59FieldExtractor {
+
+    @Value("${processing.extraction.parallel-threshold:5000}")
+    private int parallelThreshold = 5000;
+
+    @Value("${processing.extraction.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (workers > 1) {
+            pool = new ForkJoinPool(workers, p -> {
+                var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("camt59-extract-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        log.info("Item extraction: parallel from {} items on {} workers", parallelThreshold, workers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    public List<Camt59Fields> extract(NodeList orgnlItmAndStsList, String bizMsgIdr, RoutingTable routing) {
+        // NodeList implementations are not safe to share, so the items are collected first
+        Element[] items = new Element[orgnlItmAndStsList.getLength()];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (orgnlItmAndStsList.item(i) instanceof Element element) {
+                items[count++] = element;
+            }
+        }
+        Element[] elements = count == items.length ? items : Arrays.copyOf(items, count);
+
+        if (pool == null || elements.length < parallelThreshold) {
+            List<Camt59Fields> fields = new ArrayList<>(elements.length);
+            for (Element element : elements) {
+                fields.add(read(element, bizMsgIdr, routing));
+            }
+            return fields;
+        }
+        try {
+            return pool.submit(() -> Arrays.stream(elements)
+                    .parallel()
+                    .map(element -> read(element, bizMsgIdr, routing))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while extracting items", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Item extraction failed", e.getCause());
+        }
+    }
+
+    /**
+     * Same values as ./Amt, ./OrgnlItmId and ./OrgnlEndToEndId: the text of the first child
+     * element with that local name, or "" when there is none.
+     */
+    static Camt59Fields read(Element item, String bizMsgIdr, RoutingTable routing) {
+        String amount = null;
+        String orgnlItmId = null;
+        String orgnlEndToEndId = null;
+        for (Node child = item.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String name = child.getLocalName();
+            if (amount == null && "Amt".equals(name)) {
+                amount = child.getTextContent();
+            } else if (orgnlItmId == null && "OrgnlItmId".equals(name)) {
+                orgnlItmId = child.getTextContent();
+            } else if (orgnlEndToEndId == null && "OrgnlEndToEndId".equals(name)) {
+                orgnlEndToEndId = child.getTextContent();
+            }
+        }
+        orgnlItmId = orgnlItmId != null ? orgnlItmId : "";
+        String dbtrAgt = routing.usesDbtrAgt() ? dbtrAgtId(enclosingRef(item)) : null;
+        return new Camt59Fields(bizMsgIdr, orgnlEndToEndId != null ? orgnlEndToEndId : "", orgnlItmId,
+                amount != null ? amount : "", routing.resolve(orgnlItmId, dbtrAgt));
+    }
+
+    /**
+     * BizMsgIdr, MsgDefIdr and CreDt of RequestPayload/AppHdr, as the streaming parser reads them:
+     * the string value of the first of each, or "" when there is none. One walk of the header
+     * children, where each XPath evaluation would index the whole document.
+     */
+    public static Camt59AppHdr readAppHdr(Document document) {
+        String bizMsgIdr = null;
+        String msgDefIdr = null;
+        String creDt = null;
+        Element root = document.getDocumentElement();
+        if (root != null && "RequestPayload".equals(root.getLocalName())) {
+            for (Node appHdr = root.getFirstChild(); appHdr != null; appHdr = appHdr.getNextSibling()) {
+                if (appHdr.getNodeType() != Node.ELEMENT_NODE || !"AppHdr".equals(appHdr.getLocalName())) {
+                    continue;
+                }
+                for (Node child = appHdr.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child.getNodeType() != Node.ELEMENT_NODE) {
+                        continue;
+                    }
+                    String name = child.getLocalName();
+                    if (bizMsgIdr == null && "BizMsgIdr".equals(name)) {
+                        bizMsgIdr = child.getTextContent();
+                    } else if (msgDefIdr == null && "MsgDefIdr".equals(name)) {
+                        msgDefIdr = child.getTextContent();
+                    } else if (creDt == null && "CreDt".equals(name)) {
+                        creDt = child.getTextContent();
+                    }
+                }
+            }
+        }
+        return new Camt59AppHdr(bizMsgIdr != null ? bizMsgIdr : "", msgDefIdr != null ? msgDefIdr : "",
+                creDt != null ? creDt : "");
+    }
+
+    /**
+     * The DbtrAgt MmbId (IFSC) of an OrgnlNtfctnRef: the trimmed string value of the first MmbId
+     * in its first DbtrAgt, or null. Reads plain node fields only, like {@link #read}.
+     */
+    static String dbtrAgtId(Element ref) {
+        Node dbtrAgt = ref != null ? firstDescendant(ref, "DbtrAgt") : null;
+        Node mmbId = dbtrAgt != null ? firstDescendant(dbtrAgt, "MmbId") : null;
+        return mmbId != null ? mmbId.getTextContent().trim() : null;
+    }
+
+    private static Element enclosingRef(Element item) {
+        for (Node node = item.getParentNode(); node != null; node = node.getParentNode()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && "OrgnlNtfctnRef".equals(node.getLocalName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    // items are not searched, as the streaming engine reads them whole
+    private static Node firstDescendant(Node root, String localName) {
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE || "OrgnlItmAndSts".equals(child.getLocalName())) {
+                continue;
+            }
+            if (localName.equals(child.getLocalName())) {
+                return child;
+            }
+            Node found = firstDescendant(child, localName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+}
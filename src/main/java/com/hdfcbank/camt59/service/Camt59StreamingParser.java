@@ -0,0 +1,230 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.model.Camt59AppHdr;
+import com.hdfcbank.camt59.model.Camt59Fields;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Single-pass StAX reader for inbound camt.059 payloads.
+ * <p>
+ * Reads the AppHdr fields and every OrgnlItmAndSts under Document in one pass, handing each
+ * item to the sink as soon as its end tag is seen. Field selection mirrors the XPath
+ * expressions used by the DOM path (first matching child, string value, untrimmed). When the
+ * routing table has DbtrAgt overrides, the items of an OrgnlNtfctnRef are held until the ref
+ * closes, so they are routed on its DbtrAgt wherever that appears in the ref.
+ */
+@Slf4j
+@Component
+public class Camt59StreamingParser {
+
+    private final XMLInputFactory inputFactory;
+
+    public Camt59StreamingParser() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    public Camt59AppHdr parse(String xml, Consumer<Camt59Fields> sink) throws XMLStreamException {
+        return parse(xml, RoutingTable.DEFAULT, sink);
+    }
+
+    public Camt59AppHdr parse(String xml, RoutingTable routing, Consumer<Camt59Fields> sink) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            return parse(reader, routing, sink);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Camt59AppHdr parse(XMLStreamReader reader, RoutingTable routing, Consumer<Camt59Fields> sink)
+            throws XMLStreamException {
+        String bizMsgIdr = null;
+        String msgDefIdr = null;
+        String creDt = null;
+
+        // depth of the current element; 1 = RequestPayload, 2 = AppHdr/Document
+        int depth = 0;
+        boolean rootMatched = false;
+        boolean inAppHdr = false;
+        boolean inDocument = false;
+
+        // items of the open OrgnlNtfctnRef waiting for its DbtrAgt (overrides only)
+        boolean holdItems = routing.usesDbtrAgt();
+        int refDepth = 0;
+        String dbtrAgt = null;
+        List<Camt59Fields> held = new ArrayList<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+
+                if (depth == 1) {
+                    rootMatched = "RequestPayload".equals(name);
+                    if (!rootMatched) {
+                        break;
+                    }
+                } else if (depth == 2) {
+                    inAppHdr = "AppHdr".equals(name);
+                    inDocument = "Document".equals(name);
+                } else if (depth == 3 && inAppHdr) {
+                    if ("BizMsgIdr".equals(name) && bizMsgIdr == null) {
+                        bizMsgIdr = readStringValue(reader);
+                        depth--;
+                    } else if ("MsgDefIdr".equals(name) && msgDefIdr == null) {
+                        msgDefIdr = readStringValue(reader);
+                        depth--;
+                    } else if ("CreDt".equals(name) && creDt == null) {
+                        creDt = readStringValue(reader);
+                        depth--;
+                    }
+                } else if (inDocument && holdItems && refDepth == 0 && "OrgnlNtfctnRef".equals(name)) {
+                    refDepth = depth;
+                } else if (refDepth > 0 && dbtrAgt == null && "DbtrAgt".equals(name)) {
+                    dbtrAgt = readFirstDescendant(reader, "MmbId");
+                    depth--;
+                } else if (inDocument && "OrgnlItmAndSts".equals(name)) {
+                    Camt59Fields item = readItem(reader, bizMsgIdr);
+                    if (refDepth > 0) {
+                        held.add(item);
+                    } else {
+                        item.setSwtch(routing.resolve(item.getTxId(), null));
+                        sink.accept(item);
+                    }
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == refDepth) {
+                    for (Camt59Fields item : held) {
+                        item.setSwtch(routing.resolve(item.getTxId(), dbtrAgt));
+                        sink.accept(item);
+                    }
+                    held.clear();
+                    refDepth = 0;
+                    dbtrAgt = null;
+                }
+                if (depth == 2) {
+                    inAppHdr = false;
+                    inDocument = false;
+                }
+                depth--;
+            }
+        }
+
+        return new Camt59AppHdr(
+                bizMsgIdr != null ? bizMsgIdr : "",
+                msgDefIdr != null ? msgDefIdr : "",
+                creDt != null ? creDt : "");
+    }
+
+    /**
+     * Reads one OrgnlItmAndSts element, leaving the reader on its end tag. The switch is set by
+     * the caller once the item is routed.
+     */
+    private Camt59Fields readItem(XMLStreamReader reader, String bizMsgIdr) throws XMLStreamException {
+        String amount = null;
+        String orgnlItmId = null;
+        String orgnlEndToEndId = null;
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == 1) {
+                    String name = reader.getLocalName();
+                    if ("Amt".equals(name) && amount == null) {
+                        amount = readStringValue(reader);
+                        continue;
+                    } else if ("OrgnlItmId".equals(name) && orgnlItmId == null) {
+                        orgnlItmId = readStringValue(reader);
+                        continue;
+                    } else if ("OrgnlEndToEndId".equals(name) && orgnlEndToEndId == null) {
+                        orgnlEndToEndId = readStringValue(reader);
+                        continue;
+                    }
+                }
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        orgnlItmId = orgnlItmId != null ? orgnlItmId : "";
+        return new Camt59Fields(bizMsgIdr != null ? bizMsgIdr : "",
+                orgnlEndToEndId != null ? orgnlEndToEndId : "",
+                orgnlItmId,
+                amount != null ? amount : "",
+                null);
+    }
+
+    /**
+     * Returns the trimmed string value of the first descendant with the local name, or null, and
+     * leaves the reader on the end tag of the current element.
+     */
+    private static String readFirstDescendant(XMLStreamReader reader, String localName) throws XMLStreamException {
+        String value = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (value == null && localName.equals(reader.getLocalName())) {
+                    value = readStringValue(reader).trim();
+                    continue;
+                }
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the XPath string value (all descendant text) of the current element and
+     * leaves the reader on its end tag.
+     */
+    private static String readStringValue(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        String single = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    String chunk = reader.getText();
+                    if (single == null) {
+                        single = chunk;
+                    } else {
+                        if (text == null) {
+                            text = new StringBuilder(single);
+                        }
+                        text.append(chunk);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        if (text != null) {
+            return text.toString();
+        }
+        return single != null ? single : "";
+    }
+}
@@ -0,0 +1,570 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.model.Camt59SplitResult;
+import com.hdfcbank.camt59.utils.PayloadBufferPool;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One-pass FC/EPH splitter for inbound camt.059 payloads.
+ * <p>
+ * Produces the same bytes as {@code documentToXml(filterOrgnlItmAndSts(doc, min, max))} on a
+ * namespace-aware document, for both targets at once: AppHdr, GrpHdr and each DbtrAgt are
+ * serialized a single time and shared, and every OrgnlItmAndSts is written straight into the
+ * buffer of the target its OrgnlItmId digit selects. Namespace declarations, attribute order
+ * and empty-element collapsing follow the JDK identity Transformer.
+ */
+@Slf4j
+@Component
+public class Camt59StreamingSplitter {
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    // the Transformer writes standalone="no" unless the filter marked the document standalone,
+    // which it only does once a Document element has been copied
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String DECLARATION_NOT_STANDALONE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+
+    public Camt59StreamingSplitter() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        // keep CDATA sections apart from text, as the DOM does
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        if (inputFactory.isPropertySupported(REPORT_CDATA)) {
+            inputFactory.setProperty(REPORT_CDATA, true);
+        }
+        outputFactory = XMLOutputFactory.newInstance();
+    }
+
+    /**
+     * Splits on the routing table, the DbtrAgt of each OrgnlNtfctnRef included; every item goes
+     * to exactly one output.
+     */
+    public Camt59SplitResult split(String xml, RoutingTable routing) throws XMLStreamException {
+        return split(xml, (orgnlItmId, dbtrAgt) -> routing.target(orgnlItmId, dbtrAgt) == RoutingTable.FC ? TO_FC : TO_EPH);
+    }
+
+    /**
+     * Splits on OrgnlItmId digit ranges alone, as {@code filterOrgnlItmAndSts(doc, min, max)}.
+     */
+    public Camt59SplitResult split(String xml, int fcMinDigit, int fcMaxDigit,
+                                   int ephMinDigit, int ephMaxDigit) throws XMLStreamException {
+        return split(xml, (orgnlItmId, dbtrAgt) -> {
+            int digit = Camt59XmlProcessor.extractOrgnlItmIdDigit(orgnlItmId);
+            return (digit >= fcMinDigit && digit <= fcMaxDigit ? TO_FC : 0)
+                    | (digit >= ephMinDigit && digit <= ephMaxDigit ? TO_EPH : 0);
+        });
+    }
+
+    private Camt59SplitResult split(String xml, ItemRouter router) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+        StringWriter buffer = new StringWriter(256);
+        FragmentWriter out = new FragmentWriter(outputFactory.createXMLStreamWriter(buffer), buffer);
+        DocumentParts parts = new DocumentParts();
+        try {
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip prolog
+            }
+            if (!reader.isStartElement()) {
+                throw new XMLStreamException("camt.059 payload has no root element");
+            }
+
+            String rootQName = qName(reader.getPrefix(), reader.getLocalName());
+            boolean isRequestPayload = "RequestPayload".equals(reader.getLocalName());
+            String rootOpen = out.openTag(reader);
+
+            String appHdr = null;
+            String documentOpen = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("AppHdr".equals(name) && appHdr == null) {
+                    appHdr = out.copy(reader, null, false);
+                } else if ("Document".equals(name) && isRequestPayload && documentOpen == null) {
+                    documentOpen = out.openDocument(reader.getNamespaceURI());
+                    readDocument(reader, out, parts, router);
+                    out.closeTag();
+                } else {
+                    skip(reader);
+                }
+            }
+
+            return new Camt59SplitResult(
+                    assemble(rootOpen, rootQName, appHdr, documentOpen, parts.grpHdr, parts.fcRefs),
+                    assemble(rootOpen, rootQName, appHdr, documentOpen, parts.grpHdr, parts.ephRefs));
+        } finally {
+            reader.close();
+            out.writer.close();
+            parts.fcRefs.release();
+            parts.ephRefs.release();
+        }
+    }
+
+    private static void readDocument(XMLStreamReader reader, FragmentWriter out, DocumentParts parts,
+                                     ItemRouter router) throws XMLStreamException {
+        int depth = 1;
+        int refDepth = 0;
+        String dbtrAgt = null;
+        String dbtrAgtId = null;
+        List<String> items = new ArrayList<>();
+        List<String> orgnlItmIds = new ArrayList<>();
+
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("GrpHdr".equals(name) && parts.grpHdr == null) {
+                    parts.grpHdr = out.copy(reader, null, false);
+                    continue;
+                }
+                if (refDepth == 0 && "OrgnlNtfctnRef".equals(name)) {
+                    refDepth = depth + 1;
+                } else if (refDepth > 0 && "DbtrAgt".equals(name) && dbtrAgt == null) {
+                    dbtrAgt = out.copy(reader, "MmbId", true);
+                    dbtrAgtId = out.captured != null ? out.captured.trim() : null;
+                    continue;
+                } else if (refDepth > 0 && "OrgnlItmAndSts".equals(name)) {
+                    items.add(out.copy(reader, "OrgnlItmId", false));
+                    orgnlItmIds.add(out.captured);
+                    continue;
+                }
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == refDepth) {
+                    // DbtrAgt may follow the items, so refs are only written once closed
+                    for (int i = 0; i < items.size(); i++) {
+                        int targets = router.targets(orgnlItmIds.get(i), dbtrAgtId);
+                        if ((targets & TO_FC) != 0) {
+                            appendRef(parts.fcRefs, dbtrAgt, items.get(i));
+                        }
+                        if ((targets & TO_EPH) != 0) {
+                            appendRef(parts.ephRefs, dbtrAgt, items.get(i));
+                        }
+                    }
+                    refDepth = 0;
+                    dbtrAgt = null;
+                    dbtrAgtId = null;
+                    items.clear();
+                    orgnlItmIds.clear();
+                }
+                depth--;
+            }
+        }
+    }
+
+    private static void appendRef(ByteBuf refs, String dbtrAgt, String item) {
+        refs.writeCharSequence("<OrgnlNtfctnRef>", StandardCharsets.US_ASCII);
+        if (dbtrAgt != null) {
+            ByteBufUtil.writeUtf8(refs, dbtrAgt);
+        }
+        ByteBufUtil.writeUtf8(refs, item);
+        refs.writeCharSequence("</OrgnlNtfctnRef>", StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Builds an output in a pooled buffer and decodes it into its String in one allocation.
+     */
+    private static String assemble(String rootOpen, String rootQName, String appHdr,
+                                   String documentOpen, String grpHdr, ByteBuf refs) {
+        ByteBuf xml = PayloadBufferPool.buffer(ByteBufUtil.utf8MaxBytes(rootOpen.length()
+                + (appHdr != null ? appHdr.length() : 0) + (grpHdr != null ? grpHdr.length() : 0) + 200)
+                + refs.readableBytes());
+        try {
+            write(xml, documentOpen != null ? DECLARATION : DECLARATION_NOT_STANDALONE);
+
+            if (appHdr == null && documentOpen == null) {
+                write(xml, rootOpen.subSequence(0, rootOpen.length() - 1));
+                write(xml, "/>");
+                return PayloadBufferPool.toUtf8String(xml);
+            }
+
+            write(xml, rootOpen);
+            if (appHdr != null) {
+                write(xml, appHdr);
+            }
+            if (documentOpen != null) {
+                write(xml, documentOpen);
+                if (grpHdr == null && !refs.isReadable()) {
+                    write(xml, "<NtfctnToRcvStsRpt/>");
+                } else {
+                    write(xml, "<NtfctnToRcvStsRpt>");
+                    if (grpHdr != null) {
+                        write(xml, grpHdr);
+                    }
+                    if (refs.isReadable()) {
+                        write(xml, "<OrgnlNtfctnAndSts>");
+                        xml.writeBytes(refs, refs.readerIndex(), refs.readableBytes());
+                        write(xml, "</OrgnlNtfctnAndSts>");
+                    }
+                    write(xml, "</NtfctnToRcvStsRpt>");
+                }
+                write(xml, "</Document>");
+            }
+            write(xml, "</");
+            write(xml, rootQName);
+            write(xml, ">");
+            return PayloadBufferPool.toUtf8String(xml);
+        } finally {
+            xml.release();
+        }
+    }
+
+    private static void write(ByteBuf buffer, CharSequence text) {
+        ByteBufUtil.writeUtf8(buffer, text);
+    }
+
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String qName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String nz(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static final int TO_FC = 1;
+    private static final int TO_EPH = 2;
+
+    /**
+     * The outputs (TO_FC, TO_EPH or both) an item is written to.
+     */
+    private interface ItemRouter {
+        int targets(String orgnlItmId, String dbtrAgt);
+    }
+
+    // the refs of a large batch run to megabytes, so they are gathered off-heap
+    private static final class DocumentParts {
+        String grpHdr;
+        final ByteBuf fcRefs = PayloadBufferPool.buffer(4096);
+        final ByteBuf ephRefs = PayloadBufferPool.buffer(4096);
+    }
+
+    /**
+     * Serializes element subtrees through one XMLStreamWriter and hands back each fragment as a
+     * String. Namespace declarations are tracked here rather than by the writer so that they
+     * are emitted exactly where the Transformer would emit them for imported DOM nodes.
+     */
+    private static final class FragmentWriter {
+
+        private final XMLStreamWriter writer;
+        private final StringWriter buffer;
+
+        // in-scope prefix bindings of the output document, innermost last
+        private final List<String> scopePrefixes = new ArrayList<>();
+        private final List<String> scopeUris = new ArrayList<>();
+        private int[] marks = new int[16];
+        private int markDepth;
+
+        // start tag of the element read last, held back until we know whether it is empty
+        private String pendingQName;
+        private final List<String> pendingNames = new ArrayList<>();
+        private final List<String> pendingValues = new ArrayList<>();
+        private final List<Boolean> pendingIsNamespace = new ArrayList<>();
+
+        String captured;
+
+        FragmentWriter(XMLStreamWriter writer, StringWriter buffer) {
+            this.writer = writer;
+            this.buffer = buffer;
+            scopePrefixes.add("");
+            scopeUris.add("");
+        }
+
+        String take() throws XMLStreamException {
+            // closes a start tag the writer still holds open
+            writer.writeCharacters("");
+            writer.flush();
+            String fragment = buffer.toString();
+            buffer.getBuffer().setLength(0);
+            return fragment;
+        }
+
+        /**
+         * Writes the start tag of the current element and keeps it open for the children that follow.
+         */
+        String openTag(XMLStreamReader reader) throws XMLStreamException {
+            readStartTag(reader);
+            flushStartTag(false);
+            return take();
+        }
+
+        /**
+         * Writes the start tag of the {@code Document} element the filter creates with
+         * {@code createElementNS(nsUri, "Document")}.
+         */
+        String openDocument(String nsUri) throws XMLStreamException {
+            pushMark();
+            pendingQName = "Document";
+            clearPending();
+            declare("", nz(nsUri));
+            flushStartTag(false);
+            return take();
+        }
+
+        void closeTag() {
+            popMark();
+        }
+
+        /**
+         * Serializes the current element and its subtree, leaving the reader on its end tag.
+         * When {@code captureChild} is set, the string value of the first direct child with that
+         * local name, or with {@code descendants} of the first such element at any depth, is left
+         * in {@link #captured}.
+         */
+        String copy(XMLStreamReader reader, String captureChild, boolean descendants) throws XMLStreamException {
+            captured = null;
+            StringBuilder capture = null;
+            int captureDepth = 0;
+            boolean pending;
+
+            readStartTag(reader);
+            pending = true;
+            int depth = 1;
+
+            while (depth > 0) {
+                int event = reader.next();
+                if (pending && event != XMLStreamConstants.END_ELEMENT) {
+                    flushStartTag(false);
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        depth++;
+                        if ((depth == 2 || descendants) && captured == null && capture == null
+                                && reader.getLocalName().equals(captureChild)) {
+                            capture = new StringBuilder();
+                            captureDepth = depth;
+                        }
+                        readStartTag(reader);
+                        pending = true;
+                        continue;
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (pending) {
+                            flushStartTag(true);
+                        } else {
+                            writer.writeEndElement();
+                        }
+                        popMark();
+                        if (capture != null && depth == captureDepth) {
+                            captured = capture.toString();
+                            capture = null;
+                        }
+                        depth--;
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE -> {
+                        if (capture != null) {
+                            capture.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        writeText(reader.getText());
+                    }
+                    case XMLStreamConstants.CDATA -> {
+                        if (capture != null) {
+                            capture.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        writer.writeCData(reader.getText());
+                    }
+                    case XMLStreamConstants.COMMENT -> writer.writeComment(reader.getText());
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        String data = reader.getPIData();
+                        if (data == null || data.isEmpty()) {
+                            writer.writeProcessingInstruction(reader.getPITarget());
+                        } else {
+                            writer.writeProcessingInstruction(reader.getPITarget(), data);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+                pending = false;
+            }
+            return take();
+        }
+
+        /**
+         * The Transformer writes carriage returns and supplementary characters as character
+         * references; everything else it escapes the same way as the writer.
+         */
+        private void writeText(String text) throws XMLStreamException {
+            int from = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\r' || Character.isHighSurrogate(c)) {
+                    if (i > from) {
+                        writer.writeCharacters(text.substring(from, i));
+                    }
+                    int codePoint = text.codePointAt(i);
+                    writer.writeEntityRef("#" + codePoint);
+                    i += Character.charCount(codePoint) - 1;
+                    from = i + 1;
+                }
+            }
+            if (from < text.length()) {
+                writer.writeCharacters(from == 0 ? text : text.substring(from));
+            }
+        }
+
+        /**
+         * Captures the current start tag the way the Transformer would write it: the element's own
+         * namespace declarations first, then its attributes (both in DOM attribute order, i.e.
+         * sorted by qualified name) with any missing prefix declared just before the attribute,
+         * and finally a declaration for the element's own namespace if it is not in scope.
+         */
+        private void readStartTag(XMLStreamReader reader) {
+            pushMark();
+            pendingQName = qName(reader.getPrefix(), reader.getLocalName());
+            clearPending();
+
+            int nsCount = reader.getNamespaceCount();
+            if (nsCount > 0) {
+                String[] declNames = new String[nsCount];
+                for (int i = 0; i < nsCount; i++) {
+                    String prefix = nz(reader.getNamespacePrefix(i));
+                    declNames[i] = prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+                }
+                for (int i : sortedIndexes(declNames)) {
+                    declare(nz(reader.getNamespacePrefix(i)), nz(reader.getNamespaceURI(i)));
+                }
+            }
+
+            int attrCount = reader.getAttributeCount();
+            if (attrCount > 0) {
+                String[] attrNames = new String[attrCount];
+                for (int i = 0; i < attrCount; i++) {
+                    attrNames[i] = qName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                }
+                for (int i : sortedIndexes(attrNames)) {
+                    String attrUri = nz(reader.getAttributeNamespace(i));
+                    if (!attrUri.isEmpty()) {
+                        declare(nz(reader.getAttributePrefix(i)), attrUri);
+                    }
+                    addPending(attrNames[i], reader.getAttributeValue(i), false);
+                }
+            }
+
+            declare(nz(reader.getPrefix()), nz(reader.getNamespaceURI()));
+        }
+
+        private void flushStartTag(boolean empty) throws XMLStreamException {
+            if (empty) {
+                writer.writeEmptyElement(pendingQName);
+            } else {
+                writer.writeStartElement(pendingQName);
+            }
+            for (int i = 0; i < pendingNames.size(); i++) {
+                String name = pendingNames.get(i);
+                String value = pendingValues.get(i);
+                if (!pendingIsNamespace.get(i)) {
+                    writer.writeAttribute(name, value);
+                } else if (name.isEmpty()) {
+                    writer.writeDefaultNamespace(value);
+                } else {
+                    writer.writeNamespace(name, value);
+                }
+            }
+            pendingQName = null;
+        }
+
+        /**
+         * Binds {@code prefix} in the current element unless the same binding is already in scope,
+         * and queues the declaration. Mirrors the serializer's NamespaceMappings: "xml*" prefixes
+         * are never declared and a prefix bound to the empty URI is tracked but not written.
+         */
+        private void declare(String prefix, String uri) {
+            if (prefix.startsWith("xml")) {
+                return;
+            }
+            for (int i = scopePrefixes.size() - 1; i >= 0; i--) {
+                if (scopePrefixes.get(i).equals(prefix)) {
+                    if (scopeUris.get(i).equals(uri)) {
+                        return;
+                    }
+                    break;
+                }
+            }
+            scopePrefixes.add(prefix);
+            scopeUris.add(uri);
+            if (prefix.isEmpty() || !uri.isEmpty()) {
+                addPending(prefix, uri, true);
+            }
+        }
+
+        private void addPending(String name, String value, boolean isNamespace) {
+            pendingNames.add(name);
+            pendingValues.add(value);
+            pendingIsNamespace.add(isNamespace);
+        }
+
+        private void clearPending() {
+            pendingNames.clear();
+            pendingValues.clear();
+            pendingIsNamespace.clear();
+        }
+
+        private void pushMark() {
+            if (markDepth == marks.length) {
+                marks = Arrays.copyOf(marks, markDepth * 2);
+            }
+            marks[markDepth++] = scopePrefixes.size();
+        }
+
+        private void popMark() {
+            int size = marks[--markDepth];
+            while (scopePrefixes.size() > size) {
+                scopePrefixes.remove(scopePrefixes.size() - 1);
+                scopeUris.remove(scopeUris.size() - 1);
+            }
+        }
+
+        private static int[] sortedIndexes(String[] names) {
+            int[] order = new int[names.length];
+            for (int i = 0; i < order.length; i++) {
+                int j = i;
+                while (j > 0 && names[order[j - 1]].compareTo(names[i]) > 0) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = i;
+            }
+            return order;
+        }
+    }
+}
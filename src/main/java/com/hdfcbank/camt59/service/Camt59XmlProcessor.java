@@ -1,39 +1,46 @@
 package com.hdfcbank.camt59.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.hdfcbank.camt59.dao.AuditWriteBehindBuffer;
 import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
 import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
 import com.hdfcbank.camt59.model.*;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Admission;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Credit;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.Camt59Metrics.Stage;
 import com.hdfcbank.camt59.utils.Constants;
+import com.hdfcbank.camt59.utils.Paise;
 import com.hdfcbank.camt59.utils.UtilityMethods;
+import com.hdfcbank.camt59.utils.XPathRegistry;
+import com.hdfcbank.camt59.utils.XmlFactoryPool;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.*;
-import org.xml.sax.InputSource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.TransformerException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BiPredicate;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 @Slf4j
 @Service
 public class Camt59XmlProcessor {
 
+    private static final String DISPATCHER = "DISPATCHER_";
+
     @Value("${topic.sfmstopic}")
     private String sfmsTopic;
 
@@ -43,8 +50,8 @@ public class Camt59XmlProcessor {
     @Value("${topic.ephtopic}")
     private String ephTopic;
 
-    @Value("${topic.msgeventtrackertopic}")
-    private String msgEventTrackerTopic;
+    @Value("${processing.engine:DOM}")
+    private String processingEngine;
 
     @Autowired
     private NilRepository dao;
@@ -58,170 +65,516 @@ public class Camt59XmlProcessor {
     @Autowired
     ErrorHandling errorHandling;
 
+    @Autowired
+    private Camt59StreamingParser streamingParser;
+
+    @Autowired
+    private Camt59StreamingSplitter streamingSplitter;
+
+    @Autowired
+    private AuditWriteBehindBuffer auditBuffer;
+
+    @Autowired
+    private Camt59Metrics metrics;
+
+    @Autowired
+    private MessageDeduplicator deduplicator;
+
+    @Autowired
+    private Camt59FieldExtractor fieldExtractor;
+
+    @Autowired
+    private RoutingEngine routingEngine;
+
+    @Autowired
+    private MemoryAdmissionController admissionController;
+
+    @Autowired
+    private MsgEventFeed eventFeed;
+
     public void processXML(ReqPayload payload) {
-        Optional.ofNullable(payload.getHeader())
-                .filter(header -> "INWARD".equalsIgnoreCase(header.getFlowType()))
-                .ifPresent(header -> processCamt59InwardMessage(payload.getBody().getPayload(), payload));
+        processXML(payload, null);
     }
 
-    private void processCamt59InwardMessage(String xml, ReqPayload payload) {
+    /**
+     * Processes a message whose request already reserved budget, which it draws on first.
+     */
+    public void processXML(ReqPayload payload, Credit credit) {
+        PreparedMessage message;
         try {
-            Document document = DocumentBuilderFactory.newInstance()
-                    .newDocumentBuilder()
-                    .parse(new InputSource(new StringReader(xml)));
+            message = prepareInward(payload, credit);
+        } catch (ProcessingRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing CAMT.59: {}", e.getMessage(), e);
+            return;
+        }
+        if (message == null) {
+            return;
+        }
+        Boolean published;
+        try {
+            persist(List.of(message));
+            published = publish(message).block();
+        } catch (Exception e) {
+            log.error("Error processing CAMT.59: {}", e.getMessage(), e);
+            fail(message);
+            throw new ProcessingRejectedException("CAMT.59 msgId " + message.msgKey + " not processed, retry it",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (!complete(message, published)) {
+            // not acked: the redelivery publishes the stored outputs
+            throw new ProcessingRejectedException("Outputs of CAMT.59 msgId " + message.msgKey + " not published, retry it",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
 
-            XPath xpath = XPathFactory.newInstance().newXPath();
+    /**
+     * Claims and prepares an inward message for {@link #persist}, or returns null when there is
+     * nothing to do (not INWARD, or a duplicate). A message that was stored but not published is
+     * prepared from its stored outputs instead, see {@link #prepareRepublish}, and a copy of a
+     * message still in progress is rejected with 503 to be redelivered. A message that
+     * cannot be prepared gives its claim back before the exception is rethrown. The message holds its share of the memory
+     * budget while it is parsed, extracted and split, drawing first on the credit of its request;
+     * one the budget cannot take gives its claim back and is rejected with
+     * {@link ProcessingRejectedException}, to be redelivered. The reservation is held until
+     * {@link #complete} or {@link #fail}.
+     */
+    PreparedMessage prepareInward(ReqPayload payload, Credit credit) throws Exception {
+        Header header = payload.getHeader();
+        if (header == null || !"INWARD".equalsIgnoreCase(header.getFlowType())) {
+            return null;
+        }
+        // redeliveries and replays are dropped before any XML work
+        String msgKey = MessageDeduplicator.messageKey(payload);
+        MessageDeduplicator.Claim claim = deduplicator.claim(msgKey);
+        if (claim == MessageDeduplicator.Claim.DUPLICATE) {
+            log.info("Skipping duplicate CAMT.59 msgId {} (replayInd {})", msgKey, header.isReplayInd());
+            return null;
+        }
+        if (claim == MessageDeduplicator.Claim.IN_FLIGHT) {
+            // acking this copy would lose the message if the copy in progress fails
+            throw new ProcessingRejectedException("CAMT.59 msgId " + msgKey + " is in progress, retry it",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (claim == MessageDeduplicator.Claim.UNPUBLISHED) {
+            return prepareRepublish(payload, msgKey);
+        }
+        String xml = payload.getBody().getPayload();
+        Admission admission = null;
+        if (admissionController != null && admissionController.isEnabled()) {
+            try {
+                admission = admissionController.admit(xml, isStreamingEngine(), credit);
+            } catch (ProcessingRejectedException e) {
+                deduplicator.release(msgKey);
+                log.warn("CAMT.59 msgId {} not admitted: {}", msgKey, e.getMessage());
+                throw e;
+            }
+        }
+        boolean streaming = admission != null
+                ? admission.streaming() && streamingParser != null && streamingSplitter != null
+                : isStreamingEngine();
+        long started = System.nanoTime();
+        PreparedMessage message;
+        try {
+            message = prepare(xml, payload, msgKey, started, streaming);
+        } catch (Exception e) {
+            releaseAdmission(admission);
+            deduplicator.release(msgKey);
+            recordMessage(started, false, 0, xml);
+            emitFailed(msgKey, e.getMessage());
+            throw e;
+        }
+        // the outputs stay live until they are stored and published, so the budget is held until then
+        message.admission = admission;
+        return message;
+    }
 
-            String bizMsgIdr = xpath.evaluate("/*[local-name()='RequestPayload']/*[local-name()='AppHdr']/*[local-name()='BizMsgIdr']", document);
-            String batchCreationTime = xpath.evaluate("/*[local-name()='RequestPayload']/*[local-name()='AppHdr']/*[local-name()='CreDt']", document);
+    /**
+     * Prepares a redelivered message whose rows were stored but whose outputs were not all
+     * published: the PUBLISH_PENDING outputs are read back and published again, and nothing is
+     * stored. Returns null when another copy published them meanwhile.
+     */
+    private PreparedMessage prepareRepublish(ReqPayload payload, String msgKey) {
+        long started = System.nanoTime();
+        List<MsgEventTracker> trackers;
+        try {
+            trackers = dao.findUnpublished(msgKey);
+        } catch (RuntimeException e) {
+            deduplicator.unpublished(msgKey);
+            throw new ProcessingRejectedException("Stored outputs of CAMT.59 msgId " + msgKey + " not read: "
+                    + e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (trackers.isEmpty()) {
+            log.info("Skipping CAMT.59 msgId {}: its outputs were published meanwhile", msgKey);
+            deduplicator.done(msgKey);
+            return null;
+        }
+        // intermediate_req was stored as the header prefix followed by the output, as concatenated
+        String prefix = String.valueOf(payload.getHeader().getPrefix());
+        int itemCount = 0;
+        List<Mono<PublishResult>> publishes = new ArrayList<>(trackers.size());
+        for (MsgEventTracker tracker : trackers) {
+            String target = StringUtils.removeStart(tracker.getTarget(), DISPATCHER);
+            String topic = Camt59Metrics.FC.equals(target) ? fcTopic : ephTopic;
+            publishes.add(publishOutput(tracker.getMsgId(), StringUtils.removeStart(tracker.getIntermediateReq(), prefix),
+                    topic, target));
+            itemCount = tracker.getOrgnlReqCount() != null ? tracker.getOrgnlReqCount() : itemCount;
+        }
+        log.info("Publishing {} stored outputs of CAMT.59 msgId {} again", trackers.size(), msgKey);
+        PreparedMessage message = new PreparedMessage(msgKey, payload.getBody().getPayload(), itemCount, started,
+                trackers, List.of(), publishes);
+        message.persisted = true;
+        return message;
+    }
 
-            LocalDateTime batchCreationTimeStamp = LocalDateTime.parse(batchCreationTime, DateTimeFormatter.ISO_DATE_TIME);
-            LocalDate batchCreationDate = Instant.parse(batchCreationTime).atZone(ZoneId.of("UTC")).toLocalDate();
+    /**
+     * Parses, extracts and splits one message into its tracker and audit rows and its lazy
+     * publishes. Nothing is stored or sent yet.
+     */
+    private PreparedMessage prepare(String xml, ReqPayload payload, String msgKey, long started, boolean streaming)
+            throws Exception {
+        Document document = null;
+        Camt59AppHdr appHdr;
+        List<Camt59Fields> camt59Fields;
+
+        // one snapshot routes every item of the message, even if the rules are reloaded meanwhile
+        RoutingTable routing = routingEngine != null ? routingEngine.table() : RoutingTable.DEFAULT;
+
+        long stageStart = System.nanoTime();
+        if (streaming) {
+            // single StAX pass replaces the per-item XPath evaluations below
+            camt59Fields = new ArrayList<>();
+            appHdr = streamingParser.parse(xml, routing, camt59Fields::add);
+            metrics.record(Stage.PARSE, stageStart);
+            stageStart = System.nanoTime();
+        } else {
+            document = XmlFactoryPool.parse(xml);
+            metrics.record(Stage.PARSE, stageStart);
+            stageStart = System.nanoTime();
+
+            // the header is read once here and travels in the message context from now on
+            appHdr = Camt59FieldExtractor.readAppHdr(document);
+
+            NodeList orgnlItmAndStsList = (NodeList) XPathRegistry.evaluate(
+                    XPathRegistry.REQUEST_ORGNL_ITM_AND_STS, document, XPathConstants.NODESET);
+
+            // large batches are read on several workers, in document order
+            camt59Fields = fieldExtractor.extract(orgnlItmAndStsList, appHdr.getBizMsgIdr(), routing);
+        }
+        Camt59MessageContext context = Camt59MessageContext.of(appHdr, payload.getHeader());
+
+        // one pass parses every Amt once, building the audit rows and the FC/EPH totals together
+        Camt59Totals totals = new Camt59Totals();
+        List<TransactionAudit> transactionAudits = extractCamt59Transactions(context, camt59Fields, totals);
+        metrics.record(Stage.EXTRACT, stageStart);
+        if (document != null) {
+            crossCheckTotal(context.getMsgId(), document, totals);
+        }
 
-            NodeList orgnlItmAndStsList = (NodeList) xpath.evaluate(
-                    "/*[local-name()='RequestPayload']/*[local-name()='Document']//*[local-name()='OrgnlItmAndSts']",
-                    document, XPathConstants.NODESET);
+        // the streaming engine writes the FC and EPH outputs in one pass over the payload
+        Camt59SplitResult split = null;
+        if (document == null && !camt59Fields.isEmpty()) {
+            stageStart = System.nanoTime();
+            split = streamingSplitter.split(xml, routing);
+            metrics.record(Stage.SPLIT, stageStart);
+        }
 
-            List<Camt59Fields> camt59Fields = IntStream.range(0, orgnlItmAndStsList.getLength())
-                    .mapToObj(orgnlItmAndStsList::item)
-                    .filter(Element.class::isInstance)
-                    .map(Element.class::cast)
-                    .map(elem -> buildCamt59Field(elem, xpath, bizMsgIdr))
-                    .collect(Collectors.toList());
+        // built once and shared by the FC and EPH trackers
+        String originalReq = context.getPrefix() + xml;
 
-            boolean invalidReq = payload.getHeader().isInvalidPayload();
-            String prefix = payload.getHeader().getPrefix();
-            String flowType = payload.getHeader().getFlowType();
+        // publishAsync is lazy, so nothing is sent until the rows are committed
+        List<MsgEventTracker> trackers = new ArrayList<>(2);
+        List<Mono<PublishResult>> publishes = new ArrayList<>(2);
+        if (totals.getFcItems() > 0) {
+            String outputXml = split != null ? split.getFcXml() : filterAndSerialize(document, Camt59Metrics.FC, routing, RoutingTable.FC);
+            publishes.add(handleTarget(trackers, payload, context, outputXml, originalReq, camt59Fields.size(),
+                    totals.getFcItems(), Camt59Metrics.FC, Paise.toBigDecimal(totals.getFcPaise()), fcTopic));
+        }
+        if (totals.getEphItems() > 0) {
+            String outputXml = split != null ? split.getEphXml() : filterAndSerialize(document, Camt59Metrics.EPH, routing, RoutingTable.EPH);
+            publishes.add(handleTarget(trackers, payload, context, outputXml, originalReq, camt59Fields.size(),
+                    totals.getEphItems(), Camt59Metrics.EPH, Paise.toBigDecimal(totals.getEphPaise()), ephTopic));
+        }
+        return new PreparedMessage(msgKey, xml, camt59Fields.size(), started, trackers, transactionAudits, publishes);
+    }
 
-            double consolidateAmountFC = sumAmounts(camt59Fields, "DISPATCHED_FC");
-            double consolidateAmountEPH = sumAmounts(camt59Fields, "DISPATCHED_EPH");
+    /**
+     * Stores the tracker and audit rows of all the given messages in one transaction and marks
+     * them persisted. With write-behind auditing only the trackers go into that transaction.
+     * Messages already stored, being published again, are skipped.
+     */
+    void persist(List<PreparedMessage> messages) throws Exception {
+        List<PreparedMessage> unstored = messages.stream().filter(message -> !message.persisted).toList();
+        if (unstored.isEmpty()) {
+            return;
+        }
+        List<MsgEventTracker> trackers = new ArrayList<>(unstored.size() * 2);
+        List<TransactionAudit> transactionAudits = new ArrayList<>();
+        for (PreparedMessage message : unstored) {
+            trackers.addAll(message.trackers);
+            transactionAudits.addAll(message.transactionAudits);
+        }
 
-            List<String> targets = camt59Fields.stream()
-                    .map(Camt59Fields::getSwtch)
-                    .distinct()
-                    .collect(Collectors.toList());
+        long stageStart = System.nanoTime();
+        boolean stored = false;
+        try {
+            // audit rows are group-committed later when write-behind is on; only the trackers are written now
+            dao.saveMessage(trackers, isWriteBehindAudit() ? List.of() : transactionAudits);
+            stored = true;
+        } finally {
+            metrics.record(Stage.PERSIST, null, stored, stageStart);
+        }
+        unstored.forEach(message -> message.persisted = true);
+        if (eventFeed != null) {
+            // their RECEIVED events were committed with the trackers
+            eventFeed.nudge();
+        }
 
-            if (targets.contains("DISPATCHED_FC")) {
-                handleTarget(payload,document, xml, camt59Fields, "FC", 0, 4, consolidateAmountFC,
-                        batchCreationDate, batchCreationTimeStamp, invalidReq, prefix, flowType, fcTopic);
-            }
-            if (targets.contains("DISPATCHED_EPH")) {
-                handleTarget(payload,document, xml, camt59Fields, "EPH", 5, 9, consolidateAmountEPH,
-                        batchCreationDate, batchCreationTimeStamp, invalidReq, prefix, flowType, ephTopic);
+        if (isWriteBehindAudit()) {
+            // the trackers are committed, so a failure here must not keep the outputs from going out
+            stageStart = System.nanoTime();
+            try {
+                auditBuffer.write(transactionAudits);
+                metrics.record(Stage.AUDIT_BUFFER, stageStart);
+            } catch (Exception e) {
+                log.warn("Audit write-behind failed, writing {} rows synchronously: {}", transactionAudits.size(), e.getMessage());
+                writeAuditsSynchronously(unstored, transactionAudits);
             }
+        }
+    }
 
-            List<TransactionAudit> transactionAudits =
-                    extractCamt59Transactions(document, xml, camt59Fields, batchCreationDate, batchCreationTimeStamp);
+    private void writeAuditsSynchronously(List<PreparedMessage> messages, List<TransactionAudit> transactionAudits) {
+        try {
             dao.saveAllTransactionAudits(transactionAudits);
+        } catch (RuntimeException e) {
+            log.error("{} audit rows of msgIds {} not stored: {}", transactionAudits.size(),
+                    messages.stream().map(message -> message.msgKey).toList(), e.getMessage(), e);
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Error processing CAMT.59: {}", e.getMessage(), e);
+    /**
+     * Sends the FC and EPH outputs of a persisted message together and emits whether all of
+     * them were published.
+     */
+    Mono<Boolean> publish(PreparedMessage message) {
+        return Flux.merge(message.publishes)
+                .filter(result -> !result.isPublished())
+                .doOnNext(result -> log.error("Failed to publish msgId {} to {}: {}",
+                        result.getMsgId(), result.getTopic(), result.getError()))
+                .count()
+                .map(failedPublishes -> failedPublishes == 0);
+    }
+
+    /**
+     * Records a persisted message once its publishes are done. Its tracker rows move from
+     * PUBLISH_PENDING to SENT_TO_DISPATCHER only when every output was published; otherwise, or
+     * when that update fails, its claim is handed to the next redelivery to publish them again.
+     *
+     * @return whether the message is done and may be acked
+     */
+    boolean complete(PreparedMessage message, Boolean published) {
+        releaseAdmission(message.takeAdmission());
+        boolean sent = Boolean.TRUE.equals(published) && markSent(message);
+        message.published = sent;
+        recordMessage(message.started, sent, message.itemCount, message.xml);
+        if (!sent) {
+            deduplicator.unpublished(message.msgKey);
+            emitFailed(message.msgKey, "publish failed");
+            return false;
         }
+        deduplicator.done(message.msgKey);
+        if (eventFeed != null) {
+            eventFeed.nudge();
+        }
+        return true;
     }
 
-    private Camt59Fields buildCamt59Field(Element item, XPath xpath, String bizMsgIdr) {
+    private boolean markSent(PreparedMessage message) {
         try {
-            String amount = xpath.evaluate("./*[local-name()='Amt']", item);
-            String orgnlItmId = xpath.evaluate("./*[local-name()='OrgnlItmId']", item);
-            String orgnlEndToEndId = xpath.evaluate("./*[local-name()='OrgnlEndToEndId']", item);
+            dao.markSent(message.trackers);
+            return true;
+        } catch (RuntimeException e) {
+            // the outputs left but still read as pending; the redelivery sends them once more
+            log.error("Published outputs of msgId {} not marked sent: {}", message.msgKey, e.getMessage(), e);
+            return false;
+        }
+    }
 
-            int digit = extractOrgnlItmIdDigit(orgnlItmId);
-            String swtch = (digit >= 0 && digit <= 4) ? "DISPATCHED_FC" : "DISPATCHED_EPH";
+    /**
+     * Records a message that could not be finished. Its claim is given back when nothing was
+     * stored, so a redelivery is processed again, and handed to the redelivery to publish the
+     * stored outputs otherwise.
+     */
+    void fail(PreparedMessage message) {
+        releaseAdmission(message.takeAdmission());
+        if (message.persisted) {
+            deduplicator.unpublished(message.msgKey);
+        } else {
+            deduplicator.release(message.msgKey);
+        }
+        recordMessage(message.started, false, message.itemCount, message.xml);
+        emitFailed(message.msgKey, message.persisted ? "publish failed" : "not stored");
+    }
 
-            return new Camt59Fields(bizMsgIdr, orgnlEndToEndId, orgnlItmId, amount, swtch);
-        } catch (Exception e) {
-            log.error("Error building Camt59Fields: {}", e.getMessage());
-            return null;
+    private void releaseAdmission(Admission admission) {
+        if (admission != null) {
+            admissionController.release(admission);
+        }
+    }
+
+    private void emitFailed(String msgKey, String reason) {
+        if (eventFeed != null) {
+            eventFeed.failed(msgKey, reason);
         }
     }
 
-    private void handleTarget(ReqPayload payload,Document document, String xml, List<Camt59Fields> camt59Fields,
-                              String target, int minDigit, int maxDigit, double consolidateAmount,
-                              LocalDate batchDate, LocalDateTime batchTime, boolean invalidReq,
-                              String prefix, String flowType, String topic) throws Exception {
+    private void recordMessage(long started, boolean success, int itemCount, String xml) {
+        metrics.record(Stage.TOTAL, null, success, started);
+        metrics.message(success, itemCount, xml);
+    }
 
-        Document filteredDoc = filterOrgnlItmAndSts(document, minDigit, maxDigit);
-        String outputXml = documentToXml(filteredDoc);
+    private String filterAndSerialize(Document document, String target, RoutingTable routing, int routingTarget) throws Exception {
+        long stageStart = System.nanoTime();
+        Document filtered = filterOrgnlItmAndSts(document, routing, routingTarget);
+        metrics.record(Stage.FILTER, target, true, stageStart);
+        stageStart = System.nanoTime();
+        String outputXml = documentToXml(filtered);
+        metrics.record(Stage.SERIALIZE, target, true, stageStart);
+        return outputXml;
+    }
+
+    private Mono<PublishResult> handleTarget(List<MsgEventTracker> trackers, ReqPayload payload,
+                                             Camt59MessageContext context, String outputXml, String originalReq,
+                                             int itemCount, int targetItemCount, String target,
+                                             BigDecimal consolidateAmount, String topic) {
 
         MsgEventTracker tracker = new MsgEventTracker();
-        tracker.setMsgId(utilityMethods.getBizMsgIdr(document));
+        tracker.setMsgId(context.getMsgId());
         tracker.setSource("SFMS");
-        tracker.setTarget("DISPATCHER_" + target);
-        tracker.setFlowType(flowType);
+        tracker.setTarget(DISPATCHER + target);
+        tracker.setFlowType(context.getFlowType());
         tracker.setBatchId(" ");
-        tracker.setStatus(Constants.SENT_TO_DISPATCHER);
-        tracker.setMsgType(utilityMethods.getMsgDefIdr(document));
-        tracker.setOrgnlReq(prefix + xml);
-        tracker.setBatchCreationTime(batchTime);
-        tracker.setBatchCreationDate(batchDate);
-        tracker.setInvalidPayload(invalidReq);
-        tracker.setConsolidateAmt(BigDecimal.valueOf(consolidateAmount));
+        tracker.setStatus(Constants.PUBLISH_PENDING);
+        tracker.setMsgType(context.getMsgDefIdr());
+        tracker.setOrgnlReq(originalReq);
+        tracker.setBatchCreationTime(context.getBatchCreationTime());
+        tracker.setBatchCreationDate(context.getBatchCreationDate());
+        tracker.setInvalidPayload(context.isInvalidPayload());
+        tracker.setConsolidateAmt(consolidateAmount);
         tracker.setTransformedJsonReq(payload);
-        tracker.setIntermediateReq(prefix + outputXml);
+        tracker.setIntermediateReq(context.getPrefix() + outputXml);
 
-        long count = camt59Fields.stream()
-                .filter(f -> f.getSwtch().equals("DISPATCHED_" + target))
-                .count();
+        tracker.setIntermediateCount(targetItemCount);
+        tracker.setOrgnlReqCount(itemCount);
+        metrics.output(target, targetItemCount, outputXml);
 
-        tracker.setIntermediateCount((int) count);
-        tracker.setOrgnlReqCount(camt59Fields.size());
+        trackers.add(tracker);
+        return publishOutput(tracker.getMsgId(), outputXml, topic, target);
+    }
 
-        dao.saveDataInMsgEventTracker(tracker);
-        kafkaUtils.publishToResponseTopic(outputXml, topic,tracker.getMsgId());
+    private Mono<PublishResult> publishOutput(String msgId, String outputXml, String topic, String target) {
+        return Mono.defer(() -> {
+            long publishStart = System.nanoTime();
+            return kafkaUtils.publishAsync(outputXml, topic, msgId)
+                    .doOnNext(result -> metrics.record(Stage.PUBLISH, target, result.isPublished(), publishStart));
+        });
     }
 
-    private double sumAmounts(List<Camt59Fields> fields, String swtch) {
-        return fields.stream()
-                .filter(f -> swtch.equals(f.getSwtch()))
-                .mapToDouble(f -> Double.parseDouble(f.getAmount()))
-                .sum();
+    /**
+     * Compares the item totals with GrpHdr/TtlIntrBkSttlmAmt when the message declares one.
+     */
+    private void crossCheckTotal(String msgId, Document document, Camt59Totals totals) {
+        BigDecimal declared;
+        try {
+            declared = utilityMethods.getTotalAmount(document);
+        } catch (NumberFormatException | XPathExpressionException e) {
+            return; // camt.059 GrpHdr normally carries no total
+        }
+        if (declared != null && declared.compareTo(Paise.toBigDecimal(totals.getTotalPaise())) != 0) {
+            log.warn("Item amounts of msgId {} add up to {} but GrpHdr declares {}", msgId,
+                    Paise.toBigDecimal(totals.getTotalPaise()), declared);
+        }
     }
 
-    public List<TransactionAudit> extractCamt59Transactions(Document doc, String xml,
-                                                            List<Camt59Fields> fields,
-                                                            LocalDate batchDate, LocalDateTime batchTime) {
-        return fields.stream()
-                .map(f -> {
-                    TransactionAudit t = new TransactionAudit();
-                    try {
-                        t.setMsgId(utilityMethods.getBizMsgIdr(doc));
-                    } catch (XPathExpressionException e) {
-                        throw new RuntimeException(e);
-                    }
-                    t.setEndToEndId(f.getEndToEndId());
-                    t.setTxnId(f.getTxId());
-                    t.setMsgType("camt.059.001.06");
-                    t.setSource("SFMS");
-                    t.setAmount(BigDecimal.valueOf(Double.parseDouble(f.getAmount())));
-                    t.setTarget(f.getSwtch());
-                    t.setBatchDate(batchDate);
-                    t.setBatchTime(batchTime);
-                    t.setFlowType("INWARD");
-                    t.setReqPayload(xml);
-                    return t;
-                })
-                .collect(Collectors.toList());
+    /**
+     * Builds the audit rows and adds each item's amount to the FC/EPH totals.
+     */
+    public List<TransactionAudit> extractCamt59Transactions(Camt59MessageContext context, List<Camt59Fields> fields,
+                                                            Camt59Totals totals) {
+        return buildAudits(context.getMsgId(), fields, context.getBatchCreationDate(), context.getBatchCreationTime(), totals);
+    }
+
+    private static List<TransactionAudit> buildAudits(String msgId, List<Camt59Fields> fields, LocalDate batchDate,
+                                                      LocalDateTime batchTime, Camt59Totals totals) {
+        List<TransactionAudit> audits = new ArrayList<>(fields.size());
+        for (Camt59Fields f : fields) {
+            long paise;
+            try {
+                paise = Paise.parse(f.getAmount());
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Amt of item " + f.getTxId() + ": " + e.getMessage());
+            }
+            totals.add(f.getSwtch(), paise);
+
+            TransactionAudit t = new TransactionAudit();
+            t.setMsgId(msgId);
+            t.setEndToEndId(f.getEndToEndId());
+            t.setTxnId(f.getTxId());
+            t.setMsgType("camt.059.001.06");
+            t.setSource("SFMS");
+            t.setAmount(Paise.toBigDecimal(paise));
+            t.setTarget(f.getSwtch());
+            t.setBatchDate(batchDate);
+            t.setBatchTime(batchTime);
+            t.setFlowType("INWARD");
+            audits.add(t);
+        }
+        return audits;
     }
 
     public String documentToXml(Document doc) throws TransformerException {
-        StringWriter writer = new StringWriter();
-        javax.xml.transform.TransformerFactory.newInstance()
-                .newTransformer()
-                .transform(new javax.xml.transform.dom.DOMSource(doc),
-                        new javax.xml.transform.stream.StreamResult(writer));
-        return writer.toString();
+        return XmlFactoryPool.toXml(doc);
+    }
+
+    private boolean isWriteBehindAudit() {
+        return auditBuffer != null && auditBuffer.isEnabled();
+    }
+
+    private boolean isStreamingEngine() {
+        return "STAX".equalsIgnoreCase(processingEngine) && streamingParser != null && streamingSplitter != null;
     }
 
-    private static int extractOrgnlItmIdDigit(String orgnlItmId) {
+    /**
+     * The switch of an item under the default rules, without counting it as a routing decision.
+     */
+    static String resolveSwitch(String orgnlItmId) {
+        return RoutingTable.DEFAULT.target(orgnlItmId, null) == RoutingTable.FC ? "DISPATCHED_FC" : "DISPATCHED_EPH";
+    }
+
+    static int extractOrgnlItmIdDigit(String orgnlItmId) {
         if (orgnlItmId != null && orgnlItmId.length() >= 15) {
             return Character.getNumericValue(orgnlItmId.charAt(14));
         }
         return -1;
     }
     public static Document filterOrgnlItmAndSts(Document document, int minDigit, int maxDigit) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        Document newDoc = factory.newDocumentBuilder().newDocument();
+        return filterOrgnlItmAndSts(document, (orgnlItmId, ref) -> {
+            int digit = extractOrgnlItmIdDigit(orgnlItmId);
+            return digit >= minDigit && digit <= maxDigit;
+        });
+    }
+
+    /**
+     * Keeps the items the routing table sends to the target (RoutingTable.FC or EPH).
+     */
+    public static Document filterOrgnlItmAndSts(Document document, RoutingTable routing, int target) throws Exception {
+        return filterOrgnlItmAndSts(document, (orgnlItmId, ref) -> routing.target(orgnlItmId,
+                routing.usesDbtrAgt() ? Camt59FieldExtractor.dbtrAgtId(ref) : null) == target);
+    }
+
+    private static Document filterOrgnlItmAndSts(Document document, BiPredicate<String, Element> keep) throws Exception {
+        Document newDoc = XmlFactoryPool.newDocument();
 
         // Copy <RequestPayload> root
         Element root = (Element) newDoc.importNode(document.getDocumentElement(), false);
@@ -235,10 +588,8 @@ public class Camt59XmlProcessor {
                 .findFirst()
                 .ifPresent(appHdr -> root.appendChild(newDoc.importNode(appHdr, true)));
 
-        XPath xpath = XPathFactory.newInstance().newXPath();
-
         // Get <Document> node
-        NodeList docNodes = (NodeList) xpath.evaluate("/*[local-name()='RequestPayload']/*[local-name()='Document']",
+        NodeList docNodes = (NodeList) XPathRegistry.evaluate(XPathRegistry.REQUEST_DOCUMENT,
                 document, XPathConstants.NODESET);
 
         if (docNodes.getLength() == 0) {
@@ -276,10 +627,9 @@ public class Camt59XmlProcessor {
                             .map(Element.class::cast)
                             .forEach(itmAndSts -> {
                                 try {
-                                    String orgnlItmId = xpath.evaluate("./*[local-name()='OrgnlItmId']", itmAndSts);
-                                    int digit = extractOrgnlItmIdDigit(orgnlItmId);
+                                    String orgnlItmId = XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_ITM_ID, itmAndSts);
 
-                                    if (digit >= minDigit && digit <= maxDigit) {
+                                    if (keep.test(orgnlItmId, ref)) {
                                         Element newRef = newDoc.createElementNS(nsUri, "OrgnlNtfctnRef");
 
                                         NodeList dbtrAgtList = ref.getElementsByTagNameNS("*", "DbtrAgt");
@@ -312,4 +662,38 @@ public class Camt59XmlProcessor {
         }
         return isValid;
     }
+
+    /**
+     * One message between {@link #prepareInward} and {@link #complete} or {@link #fail}.
+     */
+    static final class PreparedMessage {
+        final String msgKey;
+        final String xml;
+        final int itemCount;
+        final long started;
+        final List<MsgEventTracker> trackers;
+        final List<TransactionAudit> transactionAudits;
+        final List<Mono<PublishResult>> publishes;
+        volatile boolean persisted;
+        volatile boolean published;
+        // memory budget held from admission until complete or fail
+        private volatile Admission admission;
+
+        PreparedMessage(String msgKey, String xml, int itemCount, long started, List<MsgEventTracker> trackers,
+                        List<TransactionAudit> transactionAudits, List<Mono<PublishResult>> publishes) {
+            this.msgKey = msgKey;
+            this.xml = xml;
+            this.itemCount = itemCount;
+            this.started = started;
+            this.trackers = trackers;
+            this.transactionAudits = transactionAudits;
+            this.publishes = publishes;
+        }
+
+        synchronized Admission takeAdmission() {
+            Admission held = admission;
+            admission = null;
+            return held;
+        }
+    }
 }
@@ -0,0 +1,327 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits messages for XML processing against a global memory budget.
+ * <p>
+ * The working memory of a message, from parse to the FC/EPH outputs, is estimated from its
+ * length and item count: about bytes-per-byte times the payload for the DOM engine (the tree,
+ * the filtered copies and their serialized text) plus bytes-per-item for the item fields and
+ * audit rows, and far less for the streaming engine. A message is admitted on the engine
+ * asked for when its estimate fits in what is left of the budget; a DOM message that does not
+ * fit but whose streaming estimate does is moved to the streaming engine; otherwise it waits up
+ * to max-wait-ms for budget to be released and is then rejected with 429 so that it is
+ * redelivered. A message larger than the whole budget is admitted on the streaming engine once
+ * nothing else holds budget, so it is delayed rather than refused forever.
+ * <p>
+ * A request body is admitted before it is read, on its declared length: one over
+ * max-request-mb is refused with 413, and the body and the payload decoded from it reserve
+ * request.bytes-per-byte times that length until the request is answered. The messages of the
+ * request draw on that reservation through a {@link Credit} before they reserve more, so a
+ * message is never kept waiting for budget that its own request holds. A message whose siblings
+ * in a bulk delivery hold budget is rejected at once rather than waiting, since their budget is
+ * only released after the whole delivery is committed.
+ */
+@Slf4j
+@Component
+public class MemoryAdmissionController {
+
+    // matches both tags of an item, with or without a namespace prefix
+    private static final String ITEM_TAG = "OrgnlItmAndSts>";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${admission.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${admission.budget-mb:0}")
+    private long budgetMb;
+
+    @Value("${admission.heap-fraction:0.5}")
+    private double heapFraction = 0.5;
+
+    @Value("${admission.max-wait-ms:5000}")
+    private long maxWaitMs = 5000;
+
+    @Value("${admission.max-request-mb:64}")
+    private long maxRequestMb = 64;
+
+    @Value("${admission.request.bytes-per-byte:2}")
+    private double requestBytesPerByte = 2;
+
+    @Value("${admission.dom.bytes-per-byte:6}")
+    private double domBytesPerByte = 6;
+
+    @Value("${admission.dom.bytes-per-item:800}")
+    private long domBytesPerItem = 800;
+
+    @Value("${admission.streaming.bytes-per-byte:2}")
+    private double streamingBytesPerByte = 2;
+
+    @Value("${admission.streaming.bytes-per-item:500}")
+    private long streamingBytesPerItem = 500;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private long budget;
+    private long reserved;
+
+    private Counter admitted;
+    private Counter streamed;
+    private Counter queued;
+    private Counter rejected;
+    private Counter tooLarge;
+
+    /**
+     * Budget held by one admitted message, handed back with {@link #release}: bytes reserved on
+     * top of the credited bytes drawn from the request's {@link Credit}.
+     */
+    public record Admission(long bytes, boolean streaming, Credit credit, long credited) {
+
+        public Admission(long bytes, boolean streaming) {
+            this(bytes, streaming, null, 0);
+        }
+    }
+
+    /**
+     * The budget a request reserved for its body, which the messages decoded from it draw on.
+     * Guarded by the controller's lock.
+     */
+    public static final class Credit {
+
+        private long available;
+        private int holders;
+
+        public Credit(Admission request) {
+            this.available = request != null ? request.bytes() : 0;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        budget = budgetMb > 0 ? budgetMb * 1024 * 1024 : (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+        if (meterRegistry != null) {
+            admitted = admissions("admitted");
+            streamed = admissions("streaming");
+            queued = admissions("queued");
+            rejected = admissions("rejected");
+            tooLarge = admissions("too_large");
+            Gauge.builder("camt59.admission.budget.utilization", this, MemoryAdmissionController::getUtilization)
+                    .description("Share of the XML processing memory budget reserved by messages in progress")
+                    .register(meterRegistry);
+            Gauge.builder("camt59.admission.budget.reserved", this, MemoryAdmissionController::getReserved)
+                    .description("Estimated working memory reserved by messages in progress")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+        log.info("Admission {}: budget {} MB, max-wait {} ms", enabled ? "enabled" : "disabled",
+                budget / (1024 * 1024), maxWaitMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserves budget for a message, waiting for it if need be.
+     *
+     * @param streaming whether the message would be processed on the streaming engine anyway
+     * @return the reservation, whose {@link Admission#streaming()} tells the engine to use
+     * @throws ProcessingRejectedException (429) when no budget became free within max-wait-ms
+     */
+    public Admission admit(String xml, boolean streaming) {
+        return admit(xml, streaming, null);
+    }
+
+    /**
+     * Reserves budget for a message of a request, drawing on the budget the request already
+     * holds first. The message is rejected at once when the budget does not fit while other
+     * messages of the request hold theirs.
+     *
+     * @param credit the request's reservation, or null when it holds none
+     */
+    public Admission admit(String xml, boolean streaming, Credit credit) {
+        int items = countItems(xml);
+        long domCost = estimate(xml.length(), items, domBytesPerByte, domBytesPerItem);
+        long streamingCost = Math.min(budget, estimate(xml.length(), items, streamingBytesPerByte, streamingBytesPerItem));
+
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            boolean waited = false;
+            while (true) {
+                long available = credit != null ? credit.available : 0;
+                if (!streaming && reserved + domCost - Math.min(domCost, available) <= budget) {
+                    return reserve(domCost, false, credit);
+                }
+                if (reserved + streamingCost - Math.min(streamingCost, available) <= budget) {
+                    if (!streaming) {
+                        log.info("Processing a {}-item, {}-char message on the streaming engine to stay within the memory budget",
+                                items, xml.length());
+                        increment(streamed);
+                    }
+                    return reserve(streamingCost, true, credit);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || (credit != null && credit.holders > 0)) {
+                    increment(rejected);
+                    throw new ProcessingRejectedException("Memory budget exhausted", HttpStatus.TOO_MANY_REQUESTS);
+                }
+                if (!waited) {
+                    waited = true;
+                    increment(queued);
+                }
+                released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            increment(rejected);
+            throw new ProcessingRejectedException("Interrupted while waiting for memory budget", HttpStatus.SERVICE_UNAVAILABLE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves budget for a request body before it is read, waiting for it if need be.
+     *
+     * @param contentLength the declared length, or -1 when unknown
+     * @return the reservation, or null when nothing was reserved (disabled, or length unknown)
+     * @throws ProcessingRejectedException 413 over max-request-mb, 429 when no budget became free
+     *                                     within max-wait-ms
+     */
+    public Admission admitRequest(long contentLength) {
+        if (contentLength > getMaxRequestBytes()) {
+            increment(tooLarge);
+            throw new ProcessingRejectedException("Request of " + contentLength + " bytes is over the "
+                    + maxRequestMb + " MB limit", HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        if (!enabled || contentLength <= 0) {
+            return null;
+        }
+        long cost = Math.min(budget, (long) (contentLength * requestBytesPerByte));
+
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            boolean waited = false;
+            while (reserved + cost > budget) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    increment(rejected);
+                    throw new ProcessingRejectedException("Memory budget exhausted", HttpStatus.TOO_MANY_REQUESTS);
+                }
+                if (!waited) {
+                    waited = true;
+                    increment(queued);
+                }
+                released.awaitNanos(remaining);
+            }
+            return reserve(cost, false, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            increment(rejected);
+            throw new ProcessingRejectedException("Interrupted while waiting for memory budget", HttpStatus.SERVICE_UNAVAILABLE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The largest request body accepted, whether or not admission is enabled.
+     */
+    public long getMaxRequestBytes() {
+        return maxRequestMb * 1024 * 1024;
+    }
+
+    public void release(Admission admission) {
+        if (admission == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            reserved -= admission.bytes();
+            Credit credit = admission.credit();
+            if (credit != null) {
+                credit.available += admission.credited();
+                credit.holders--;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getUtilization() {
+        return budget > 0 ? (double) getReserved() / budget : 0;
+    }
+
+    /**
+     * Items in the payload, counted from their tags without parsing.
+     */
+    static int countItems(String xml) {
+        int tags = 0;
+        for (int at = xml.indexOf(ITEM_TAG); at >= 0; at = xml.indexOf(ITEM_TAG, at + ITEM_TAG.length())) {
+            tags++;
+        }
+        return (tags + 1) / 2;
+    }
+
+    private static long estimate(int chars, int items, double bytesPerByte, long bytesPerItem) {
+        return (long) (chars * bytesPerByte) + items * bytesPerItem;
+    }
+
+    private Admission reserve(long cost, boolean streaming, Credit credit) {
+        long credited = 0;
+        if (credit != null) {
+            credited = Math.min(cost, credit.available);
+            credit.available -= credited;
+            credit.holders++;
+        }
+        reserved += cost - credited;
+        increment(admitted);
+        return new Admission(cost - credited, streaming, credit, credited);
+    }
+
+    private Counter admissions(String outcome) {
+        return Counter.builder("camt59.admission")
+                .description("Admission decisions for XML processing against the memory budget")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
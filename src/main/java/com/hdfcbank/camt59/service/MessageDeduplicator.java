@@ -0,0 +1,239 @@
+package com.hdfcbank.camt59.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.model.Body;
+import com.hdfcbank.camt59.model.ReqPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Drops redelivered and replayed messages before any XML work.
+ * <p>
+ * Messages are keyed on the AppHdr BizMsgIdr, which is what msg_event_tracker.msg_id holds. A
+ * message is claimed in a bounded in-memory index that evicts entries after dedup.ttl-minutes;
+ * on a miss, msg_event_tracker is checked too (dedup.db-check) so that copies arriving after a
+ * restart, an eviction or on another instance are still caught. A claim is released when the
+ * message could not be stored, so a redelivery is processed again. A message that was stored
+ * but whose outputs were not all published is not a duplicate either: its redelivery is claimed
+ * as {@link Claim#UNPUBLISHED}, to publish the stored outputs again. A copy that arrives while
+ * the message is still in progress is {@link Claim#IN_FLIGHT} rather than a duplicate, and is to
+ * be redelivered: the message in progress may still fail, and only a message marked
+ * {@link #done} makes later copies duplicates.
+ */
+@Slf4j
+@Component
+public class MessageDeduplicator {
+
+    private static final String BIZ_MSG_IDR_TAG = "BizMsgIdr>";
+
+    // AppHdr comes first, so the key is normally found without decoding the whole payload
+    private static final int HEAD_CHARS = 8192;
+
+    @Autowired
+    private NilRepository nilRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${dedup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${dedup.max-size:200000}")
+    private long maxSize = 200000;
+
+    @Value("${dedup.ttl-minutes:1440}")
+    private long ttlMinutes = 1440;
+
+    @Value("${dedup.db-check:true}")
+    private boolean dbCheck = true;
+
+    /**
+     * Outcome of {@link #claim}.
+     */
+    public enum Claim {
+        /** not seen before: process it */
+        NEW,
+        /** stored, but some outputs are not published yet: publish the stored ones */
+        UNPUBLISHED,
+        /** in progress on this instance: redeliver it, as the copy in progress may still fail */
+        IN_FLIGHT,
+        /** already processed: skip it */
+        DUPLICATE
+    }
+
+    private enum State {
+        IN_FLIGHT, UNPUBLISHED, DONE
+    }
+
+    private Cache<String, State> claimed;
+    private Counter hits;
+    private Counter inFlight;
+    private Counter databaseHits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        claimed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        hits = lookups("hit");
+        databaseHits = lookups("database_hit");
+        inFlight = lookups("in_flight");
+        misses = lookups("miss");
+        Gauge.builder("camt59.dedup.size", claimed, Cache::estimatedSize)
+                .description("Message ids held in the dedup index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Claims the message for processing.
+     *
+     * @return DUPLICATE when the message was already processed and must be skipped, IN_FLIGHT
+     * when it is in progress and must be redelivered
+     */
+    public Claim claim(String msgId) {
+        if (!enabled || msgId == null) {
+            return Claim.NEW;
+        }
+        State previous = claimed.asMap().putIfAbsent(msgId, State.IN_FLIGHT);
+        if (previous == State.UNPUBLISHED && claimed.asMap().replace(msgId, State.UNPUBLISHED, State.IN_FLIGHT)) {
+            return Claim.UNPUBLISHED;
+        }
+        if (previous == State.DONE) {
+            hits.increment();
+            return Claim.DUPLICATE;
+        }
+        if (previous != null) {
+            inFlight.increment();
+            return Claim.IN_FLIGHT;
+        }
+        Boolean published = dbCheck ? isPublished(msgId) : null;
+        if (Boolean.TRUE.equals(published)) {
+            // kept so further copies are answered from memory
+            claimed.put(msgId, State.DONE);
+            databaseHits.increment();
+            return Claim.DUPLICATE;
+        }
+        misses.increment();
+        return published == null ? Claim.NEW : Claim.UNPUBLISHED;
+    }
+
+    /**
+     * Records a claimed message as processed, so that further copies are duplicates.
+     */
+    public void done(String msgId) {
+        if (enabled && msgId != null) {
+            claimed.put(msgId, State.DONE);
+        }
+    }
+
+    /**
+     * Forgets a claimed message that could not be stored, so that a redelivery is processed.
+     */
+    public void release(String msgId) {
+        if (enabled && msgId != null) {
+            claimed.invalidate(msgId);
+        }
+    }
+
+    /**
+     * Gives back the claim of a message that was stored but not fully published, so that a
+     * redelivery publishes its stored outputs.
+     */
+    public void unpublished(String msgId) {
+        if (enabled && msgId != null) {
+            claimed.put(msgId, State.UNPUBLISHED);
+        }
+    }
+
+    public long getHitCount() {
+        return hits == null ? 0 : (long) (hits.count() + databaseHits.count());
+    }
+
+    public long getMissCount() {
+        return misses == null ? 0 : (long) misses.count();
+    }
+
+    /**
+     * The AppHdr BizMsgIdr, read with a plain scan of the payload, or the header msgId when the
+     * payload has none.
+     */
+    public static String messageKey(ReqPayload payload) {
+        Body body = payload.getBody();
+        String head = body != null ? body.getPayloadHead(HEAD_CHARS) : null;
+        String bizMsgIdr = head != null ? findBizMsgIdr(head) : null;
+        if (bizMsgIdr == null && head != null) {
+            bizMsgIdr = findBizMsgIdr(body.getPayload());
+        }
+        if (StringUtils.isNotBlank(bizMsgIdr)) {
+            return bizMsgIdr;
+        }
+        String headerMsgId = payload.getHeader() != null ? payload.getHeader().getMsgId() : null;
+        return StringUtils.isNotBlank(headerMsgId) ? headerMsgId.trim() : null;
+    }
+
+    /**
+     * Text of the first BizMsgIdr start tag, with or without a namespace prefix.
+     */
+    static String findBizMsgIdr(String xml) {
+        int tag = xml.indexOf(BIZ_MSG_IDR_TAG);
+        while (tag > 0) {
+            if (isStartTag(xml, xml.lastIndexOf('<', tag), tag)) {
+                int start = tag + BIZ_MSG_IDR_TAG.length();
+                int end = xml.indexOf('<', start);
+                return end < 0 ? null : xml.substring(start, end).trim();
+            }
+            tag = xml.indexOf(BIZ_MSG_IDR_TAG, tag + 1);
+        }
+        return null;
+    }
+
+    // <BizMsgIdr> or <prefix:BizMsgIdr>, not an end tag or a longer name such as OrgnlBizMsgIdr
+    private static boolean isStartTag(String xml, int open, int tag) {
+        if (open < 0) {
+            return false;
+        }
+        if (open + 1 == tag) {
+            return true;
+        }
+        if (xml.charAt(tag - 1) != ':') {
+            return false;
+        }
+        for (int i = open + 1; i < tag - 1; i++) {
+            char c = xml.charAt(i);
+            if (c == '/' || c == '>' || c == ':' || Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Boolean isPublished(String msgId) {
+        try {
+            return nilRepository.isPublished(msgId);
+        } catch (Exception e) {
+            // the insert that follows fails as well if the database is really down
+            log.warn("Dedup lookup for msgId {} failed, processing it: {}", msgId, e.getMessage());
+            return null;
+        }
+    }
+
+    private Counter lookups(String result) {
+        return Counter.builder("camt59.dedup.lookups")
+                .description("Dedup index lookups by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
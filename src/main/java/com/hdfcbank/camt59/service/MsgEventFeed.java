@@ -0,0 +1,214 @@
+package com.hdfcbank.camt59.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.dao.MsgEventOutbox;
+import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
+import com.hdfcbank.camt59.model.MsgEvent;
+import com.hdfcbank.camt59.utils.Constants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the msg_event_tracker state transitions of each message (RECEIVED,
+ * SENT_TO_DISPATCHER, FAILED) to topic.msgeventtrackertopic as compact JSON events, for
+ * consumers that would otherwise poll the table (msg-event-feed.enabled).
+ * <p>
+ * Nothing is published on the request path. Events are taken from the {@link MsgEventOutbox} by
+ * one relay thread every poll-interval-ms, and at once when a message was stored or failed, in
+ * batches of batch-size. Events of one message in a batch are published in order, keyed on its
+ * msgId, and stop at the first that fails so that none overtakes it on the next relay; events of
+ * different messages go out concurrently within the publish.max-in-flight bound. That order
+ * holds only within a batch: with several instances relaying, two events of one message can be
+ * claimed in different batches and published concurrently, so a consumer orders the events of a
+ * message by event id. Delivery is at least once: a consumer drops repeats by event id.
+ */
+@Slf4j
+@Component
+public class MsgEventFeed {
+
+    private static final long UNPUBLISHED = -1;
+
+    @Autowired
+    private MsgEventOutbox outbox;
+
+    @Autowired
+    private KafkaUtils kafkaUtils;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${topic.msgeventtrackertopic}")
+    private String msgEventTrackerTopic;
+
+    @Value("${msg-event-feed.enabled:false}")
+    private boolean enabled;
+
+    @Value("${msg-event-feed.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${msg-event-feed.poll-interval-ms:200}")
+    private long pollIntervalMs = 200;
+
+    private final AtomicBoolean relayRequested = new AtomicBoolean();
+
+    private ScheduledExecutorService relayer;
+
+    private Counter published;
+    private Counter unpublished;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (meterRegistry != null) {
+            published = events("published");
+            unpublished = events("unpublished");
+        }
+        relayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "msg-event-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relayer.scheduleWithFixedDelay(this::relayQuietly, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Msg event feed enabled: topic {}, batch-size {}, poll-interval {} ms",
+                msgEventTrackerTopic, batchSize, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (relayer == null) {
+            return;
+        }
+        relayer.shutdown();
+        relayer.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Asks for a relay now, after events were committed to the outbox.
+     */
+    public void nudge() {
+        if (relayer != null && relayRequested.compareAndSet(false, true)) {
+            relayer.execute(this::relayQuietly);
+        }
+    }
+
+    /**
+     * Records a FAILED event for the message off the caller's thread and relays it. Best effort:
+     * the event is lost if the outbox insert fails or the process dies before it runs.
+     */
+    public void failed(String msgId, String reason) {
+        if (relayer == null || msgId == null) {
+            return;
+        }
+        MsgEvent event = new MsgEvent(null, msgId, Constants.FAILED, null, null, null, null, reason, LocalDateTime.now());
+        relayer.execute(() -> {
+            try {
+                outbox.append(List.of(event));
+            } catch (RuntimeException e) {
+                log.error("FAILED event of msgId {} not recorded: {}", msgId, e.getMessage());
+                return;
+            }
+            relayQuietly();
+        });
+    }
+
+    /**
+     * Publishes outbox events until a batch comes back short or with failures.
+     *
+     * @return the number of events published
+     */
+    public int relay() {
+        relayRequested.set(false);
+        int total = 0;
+        while (true) {
+            int relayed = outbox.relay(batchSize, this::publish);
+            total += relayed;
+            if (relayed < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (Exception e) {
+            log.error("Msg event relay failed, events kept in the outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Publishes the events and returns the ids of those that were.
+     */
+    Collection<Long> publish(List<MsgEvent> events) {
+        // grouped up front: a groupBy group cancelled after a failure would reopen for the next event
+        Map<String, List<MsgEvent>> byMessage = new LinkedHashMap<>();
+        for (MsgEvent event : events) {
+            byMessage.computeIfAbsent(event.getMsgId(), msgId -> new ArrayList<>()).add(event);
+        }
+        List<Long> ids = Flux.fromIterable(byMessage.values())
+                .flatMap(message -> Flux.fromIterable(message)
+                        .concatMap(this::publish)
+                        .takeWhile(id -> id != UNPUBLISHED), Integer.MAX_VALUE)
+                .collectList()
+                .block();
+        List<Long> publishedIds = ids != null ? ids : List.of();
+        increment(published, publishedIds.size());
+        increment(unpublished, events.size() - publishedIds.size());
+        return publishedIds;
+    }
+
+    // the event id when published, else UNPUBLISHED
+    private Mono<Long> publish(MsgEvent event) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            log.error("Event {} of msgId {} not serialized: {}", event.getId(), event.getMsgId(), e.getMessage());
+            return Mono.just(UNPUBLISHED);
+        }
+        return kafkaUtils.publishAsync(json, msgEventTrackerTopic, event.getMsgId())
+                .map(result -> result.isPublished() ? event.getId() : UNPUBLISHED);
+    }
+
+    private Counter events(String outcome) {
+        return Counter.builder("camt59.msg.events")
+                .description("Msg event tracker events relayed from the outbox, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void increment(Counter counter, int amount) {
+        if (counter != null && amount > 0) {
+            counter.increment(amount);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.service.RoutingTable.Mode;
+import com.hdfcbank.camt59.service.RoutingTable.Rule;
+import com.hdfcbank.camt59.service.RoutingTable.Rules;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the current {@link RoutingTable} and swaps it when the rules change.
+ * <p>
+ * The table is compiled at startup from the item-routing.* and mod_logic.* settings. When
+ * item-routing.rules-file is set, that properties file (keys mode, digit-ranges, default-target,
+ * overrides, mod-denominator, eph-percentage; missing keys keep the configured value) is laid
+ * over them, and it is checked every reload-interval-ms: a changed file is compiled and swapped
+ * in without a restart, while one that does not compile is logged and the current table kept.
+ * Decisions are counted per target and rule in camt59.routing.decisions across reloads.
+ */
+@Slf4j
+@Component
+public class RoutingEngine {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${item-routing.mode:DIGIT}")
+    private String mode = "DIGIT";
+
+    @Value("${item-routing.digit-ranges:0-4:FC,5-9:EPH}")
+    private String digitRanges = "0-4:FC,5-9:EPH";
+
+    @Value("${item-routing.default-target:EPH}")
+    private String defaultTarget = "EPH";
+
+    @Value("${item-routing.overrides:}")
+    private String overrides = "";
+
+    @Value("${mod_logic.mod_denominator:100}")
+    private int modDenominator = 100;
+
+    @Value("${mod_logic.eph_percentage:30}")
+    private int ephPercentage = 30;
+
+    @Value("${item-routing.rules-file:}")
+    private String rulesFile = "";
+
+    @Value("${item-routing.reload-interval-ms:10000}")
+    private long reloadIntervalMs = 10000;
+
+    private final LongAdder[] decisions = RoutingTable.newDecisionCounters();
+
+    private volatile RoutingTable table = RoutingTable.DEFAULT;
+
+    private long rulesFileModified;
+
+    private ScheduledExecutorService watcher;
+
+    @PostConstruct
+    public void init() throws IOException {
+        // a rule set that does not compile stops startup rather than routing with defaults
+        table = RoutingTable.compile(loadRules(), decisions);
+        log.info("Routing: {}", table);
+
+        if (meterRegistry != null) {
+            for (int target = 0; target < RoutingTable.TARGETS.length; target++) {
+                for (Rule rule : Rule.values()) {
+                    FunctionCounter.builder("camt59.routing.decisions",
+                                    decisions[RoutingTable.counterIndex(target, rule)], LongAdder::sum)
+                            .description("Items routed, by target and the rule that placed them")
+                            .tag("target", RoutingTable.TARGETS[target])
+                            .tag("rule", rule.name().toLowerCase(Locale.ROOT))
+                            .register(meterRegistry);
+                }
+            }
+        }
+
+        if (!rulesFile.isBlank() && reloadIntervalMs > 0) {
+            watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "routing-rules-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+
+    /**
+     * The rules in force. Take it once per message and route every item of the message with it.
+     */
+    public RoutingTable table() {
+        return table;
+    }
+
+    /**
+     * Re-reads the rules and swaps in the new table.
+     *
+     * @return false when the rules did not compile and the current table was kept
+     */
+    public synchronized boolean reload() {
+        try {
+            RoutingTable reloaded = RoutingTable.compile(loadRules(), decisions);
+            table = reloaded;
+            log.info("Routing rules reloaded: {}", reloaded);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Routing rules not reloaded, keeping {}: {}", table, e.getMessage());
+            return false;
+        }
+    }
+
+    public long getDecisionCount(int target, Rule rule) {
+        return decisions[RoutingTable.counterIndex(target, rule)].sum();
+    }
+
+    private synchronized void reloadIfChanged() {
+        try {
+            long modified = Files.getLastModifiedTime(Paths.get(rulesFile)).toMillis();
+            if (modified != rulesFileModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("Routing rules file {} not readable: {}", rulesFile, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Routing rules check failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private Rules loadRules() throws IOException {
+        Properties file = new Properties();
+        if (!rulesFile.isBlank()) {
+            Path path = Paths.get(rulesFile);
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                file.load(reader);
+            }
+            rulesFileModified = modified;
+        }
+        try {
+            return new Rules(
+                    Mode.valueOf(file.getProperty("mode", mode).trim().toUpperCase(Locale.ROOT)),
+                    file.getProperty("digit-ranges", digitRanges),
+                    file.getProperty("default-target", defaultTarget),
+                    file.getProperty("overrides", overrides),
+                    Integer.parseInt(file.getProperty("mod-denominator", String.valueOf(modDenominator)).trim()),
+                    Integer.parseInt(file.getProperty("eph-percentage", String.valueOf(ephPercentage)).trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid routing rules: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FC/EPH routing rules compiled into lookup arrays.
+ * <p>
+ * An item goes to the target of its DbtrAgt when the rules name that IFSC, or its 4-letter bank
+ * code, as an override. Otherwise in DIGIT mode the 15th character of OrgnlItmId indexes a
+ * ten-entry array filled from the digit ranges, and in MODULO mode the digits of OrgnlItmId
+ * taken mod the denominator index a residue array whose lowest eph-percentage % go to EPH.
+ * Items the rules do not place (no digit, no digits at all, a digit outside every range) go to
+ * the default target. A table never changes once built; a reload swaps in a new one, so a
+ * message routed against one snapshot is extracted and split consistently.
+ */
+public final class RoutingTable {
+
+    public enum Mode { DIGIT, MODULO }
+
+    /** which rule placed an item, as counted in camt59.routing.decisions */
+    public enum Rule { OVERRIDE, DIGIT, MODULO, DEFAULT }
+
+    public static final int FC = 0;
+    public static final int EPH = 1;
+
+    static final String[] TARGETS = {Camt59Metrics.FC, Camt59Metrics.EPH};
+    private static final String[] SWITCHES = {"DISPATCHED_FC", "DISPATCHED_EPH"};
+
+    private static final int BANK_CODE_LENGTH = 4;
+    private static final int MAX_DENOMINATOR = 1_000_000;
+
+    /** the split the service always had: 15th character 0-4 to FC, anything else to EPH */
+    public static final RoutingTable DEFAULT = compile(new Rules(Mode.DIGIT, "0-4:FC,5-9:EPH", "EPH", "", 100, 30),
+            newDecisionCounters());
+
+    /**
+     * Rule set as configured: digit ranges such as {@code 0-4:FC,5-9:EPH} and overrides such as
+     * {@code SBIN0000123:FC,ICIC:EPH}.
+     */
+    public record Rules(Mode mode, String digitRanges, String defaultTarget, String overrides,
+                        int modDenominator, int ephPercentage) {
+    }
+
+    private final Rules rules;
+    private final Mode mode;
+    private final int defaultCode;
+    // DIGIT mode: rule and target per digit 0-9
+    private final int[] digitCodes;
+    // MODULO mode: target per residue
+    private final byte[] residueTargets;
+    private final Map<String, Integer> overrides;
+    private final LongAdder[] decisions;
+
+    private RoutingTable(Rules rules, int defaultTarget, int[] digitCodes, byte[] residueTargets,
+                         Map<String, Integer> overrides, LongAdder[] decisions) {
+        this.rules = rules;
+        this.mode = rules.mode();
+        this.defaultCode = code(Rule.DEFAULT, defaultTarget);
+        this.digitCodes = digitCodes;
+        this.residueTargets = residueTargets;
+        this.overrides = overrides;
+        this.decisions = decisions;
+    }
+
+    /**
+     * @param decisions counters, one per target and rule, that {@link #resolve} adds to; shared
+     *                  by the tables that replace each other on reload
+     * @throws IllegalArgumentException when the rules cannot be compiled
+     */
+    public static RoutingTable compile(Rules rules, LongAdder[] decisions) {
+        if (rules.mode() == null) {
+            throw new IllegalArgumentException("Routing mode is required");
+        }
+        int defaultTarget = parseTarget(rules.defaultTarget());
+
+        int[] digitCodes = new int[10];
+        Arrays.fill(digitCodes, -1);
+        for (String entry : entries(rules.digitRanges())) {
+            int colon = entry.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Digit range '" + entry + "' has no target");
+            }
+            String range = entry.substring(0, colon).trim();
+            int dash = range.indexOf('-');
+            int from = parseDigit(dash < 0 ? range : range.substring(0, dash), entry);
+            int to = parseDigit(dash < 0 ? range : range.substring(dash + 1), entry);
+            if (from > to) {
+                throw new IllegalArgumentException("Digit range '" + entry + "' is empty");
+            }
+            int code = code(Rule.DIGIT, parseTarget(entry.substring(colon + 1)));
+            for (int digit = from; digit <= to; digit++) {
+                if (digitCodes[digit] >= 0 && digitCodes[digit] != code) {
+                    throw new IllegalArgumentException("Digit " + digit + " is routed to two targets");
+                }
+                digitCodes[digit] = code;
+            }
+        }
+
+        byte[] residueTargets = null;
+        if (rules.mode() == Mode.MODULO) {
+            int denominator = rules.modDenominator();
+            if (denominator < 1 || denominator > MAX_DENOMINATOR) {
+                throw new IllegalArgumentException("mod_denominator must be between 1 and " + MAX_DENOMINATOR);
+            }
+            if (rules.ephPercentage() < 0 || rules.ephPercentage() > 100) {
+                throw new IllegalArgumentException("eph_percentage must be between 0 and 100");
+            }
+            residueTargets = new byte[denominator];
+            int ephResidues = (int) ((long) denominator * rules.ephPercentage() / 100);
+            for (int residue = 0; residue < denominator; residue++) {
+                residueTargets[residue] = (byte) (residue < ephResidues ? EPH : FC);
+            }
+        }
+
+        Map<String, Integer> overrides = new HashMap<>();
+        for (String entry : entries(rules.overrides())) {
+            int colon = entry.lastIndexOf(':');
+            String key = colon < 0 ? "" : entry.substring(0, colon).trim();
+            if (key.isEmpty()) {
+                throw new IllegalArgumentException("Override '" + entry + "' needs an IFSC or bank code and a target");
+            }
+            overrides.put(key, parseTarget(entry.substring(colon + 1)));
+        }
+        return new RoutingTable(rules, defaultTarget, digitCodes, residueTargets, Map.copyOf(overrides), decisions);
+    }
+
+    public static LongAdder[] newDecisionCounters() {
+        LongAdder[] counters = new LongAdder[TARGETS.length * Rule.values().length];
+        Arrays.setAll(counters, i -> new LongAdder());
+        return counters;
+    }
+
+    static int counterIndex(int target, Rule rule) {
+        return rule.ordinal() * TARGETS.length + target;
+    }
+
+    /**
+     * The switch (DISPATCHED_FC / DISPATCHED_EPH) of one item, counted as a routing decision.
+     *
+     * @param dbtrAgt the DbtrAgt MmbId (IFSC) of the item's OrgnlNtfctnRef, or null
+     */
+    public String resolve(String orgnlItmId, String dbtrAgt) {
+        int code = decide(orgnlItmId, dbtrAgt);
+        decisions[code].increment();
+        return SWITCHES[code % TARGETS.length];
+    }
+
+    /**
+     * {@link #FC} or {@link #EPH} for one item; used when splitting items already counted by
+     * {@link #resolve}.
+     */
+    public int target(String orgnlItmId, String dbtrAgt) {
+        return decide(orgnlItmId, dbtrAgt) % TARGETS.length;
+    }
+
+    /**
+     * Whether routing depends on DbtrAgt, so callers can skip reading it when it does not.
+     */
+    public boolean usesDbtrAgt() {
+        return !overrides.isEmpty();
+    }
+
+    public Rules getRules() {
+        return rules;
+    }
+
+    private int decide(String orgnlItmId, String dbtrAgt) {
+        if (dbtrAgt != null && !overrides.isEmpty()) {
+            Integer target = overrides.get(dbtrAgt);
+            if (target == null && dbtrAgt.length() > BANK_CODE_LENGTH) {
+                target = overrides.get(dbtrAgt.substring(0, BANK_CODE_LENGTH));
+            }
+            if (target != null) {
+                return code(Rule.OVERRIDE, target);
+            }
+        }
+        if (mode == Mode.DIGIT) {
+            int digit = Camt59XmlProcessor.extractOrgnlItmIdDigit(orgnlItmId);
+            int code = digit >= 0 && digit <= 9 ? digitCodes[digit] : -1;
+            return code >= 0 ? code : defaultCode;
+        }
+        if (orgnlItmId == null) {
+            return defaultCode;
+        }
+        int denominator = residueTargets.length;
+        int residue = 0;
+        boolean anyDigit = false;
+        for (int i = 0, n = orgnlItmId.length(); i < n; i++) {
+            char c = orgnlItmId.charAt(i);
+            if (c >= '0' && c <= '9') {
+                residue = (residue * 10 + (c - '0')) % denominator;
+                anyDigit = true;
+            }
+        }
+        return anyDigit ? code(Rule.MODULO, residueTargets[residue]) : defaultCode;
+    }
+
+    private static int code(Rule rule, int target) {
+        return counterIndex(target, rule);
+    }
+
+    private static int parseTarget(String value) {
+        String target = value == null ? "" : value.trim().toUpperCase(Locale.ROOT);
+        for (int i = 0; i < TARGETS.length; i++) {
+            if (TARGETS[i].equals(target)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown routing target '" + value + "', expected FC or EPH");
+    }
+
+    private static int parseDigit(String value, String entry) {
+        String digit = value.trim();
+        if (digit.length() != 1 || digit.charAt(0) < '0' || digit.charAt(0) > '9') {
+            throw new IllegalArgumentException("Digit range '" + entry + "' must use digits 0-9");
+        }
+        return digit.charAt(0) - '0';
+    }
+
+    private static String[] entries(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return new String[0];
+        }
+        return Arrays.stream(spec.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.DIGIT
+                ? "DIGIT " + rules.digitRanges() + ", default " + TARGETS[defaultCode % TARGETS.length] + ", " + overrides.size() + " overrides"
+                : "MODULO " + rules.ephPercentage() + "% of " + rules.modDenominator() + " to EPH, " + overrides.size() + " overrides";
+    }
+}
@@ -0,0 +1,164 @@
+package com.hdfcbank.camt59.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage timers, size distributions and counters for camt.059 processing.
+ * <p>
+ * Every meter is registered up front and looked up by array index, so recording on the hot path
+ * is a clock read and an update of an existing meter, with no tag or sample objects allocated.
+ * Callers take {@link System#nanoTime()} when a stage starts and hand it to {@link #record}.
+ * Histogram buckets for Prometheus are switched on with management.metrics.distribution.
+ */
+@Component
+public class Camt59Metrics {
+
+    public enum Stage {
+        /** payload to item fields: DOM parse, or the whole StAX pass */
+        PARSE,
+        /** XPath field extraction (DOM) and audit row building */
+        EXTRACT,
+        FILTER,
+        SERIALIZE,
+        /** one-pass FC/EPH output of the streaming engine */
+        SPLIT,
+        /** saveMessage: tracker and audit rows up to the commit */
+        PERSIST,
+        TRACKER_INSERT,
+        AUDIT_BATCH,
+        AUDIT_BUFFER,
+        PUBLISH,
+        /** the whole message, outcome failure if any stage threw or a publish failed */
+        TOTAL
+    }
+
+    public static final String FC = "FC";
+    public static final String EPH = "EPH";
+
+    private static final String[] TARGETS = {"none", FC, EPH};
+    private static final String[] OUTCOMES = {"success", "failure"};
+
+    private final Timer[] timers;
+    private final DistributionSummary items;
+    private final DistributionSummary payloadBytes;
+    private final DistributionSummary[] outputBytes;
+    private final Counter[] messages;
+    private final Counter[] routedItems;
+
+    public Camt59Metrics(MeterRegistry registry) {
+        Stage[] stages = Stage.values();
+        timers = new Timer[stages.length * TARGETS.length * OUTCOMES.length];
+        for (Stage stage : stages) {
+            for (int target = 0; target < TARGETS.length; target++) {
+                for (int outcome = 0; outcome < OUTCOMES.length; outcome++) {
+                    timers[index(stage, target, outcome)] = Timer.builder("camt59.stage")
+                            .description("Time spent in one stage of camt.059 processing")
+                            .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                            .tag("target", TARGETS[target])
+                            .tag("outcome", OUTCOMES[outcome])
+                            .register(registry);
+                }
+            }
+        }
+        items = DistributionSummary.builder("camt59.message.items")
+                .description("OrgnlItmAndSts entries per message")
+                .register(registry);
+        payloadBytes = DistributionSummary.builder("camt59.message.payload")
+                .description("UTF-8 size of the inbound camt.059 payload")
+                .baseUnit("bytes")
+                .register(registry);
+        outputBytes = new DistributionSummary[TARGETS.length];
+        routedItems = new Counter[TARGETS.length];
+        for (int target = 1; target < TARGETS.length; target++) {
+            outputBytes[target] = DistributionSummary.builder("camt59.output.payload")
+                    .description("UTF-8 size of the payload published to a target")
+                    .baseUnit("bytes")
+                    .tag("target", TARGETS[target])
+                    .register(registry);
+            routedItems[target] = Counter.builder("camt59.items")
+                    .description("Items routed to a target")
+                    .tag("target", TARGETS[target])
+                    .register(registry);
+        }
+        messages = new Counter[OUTCOMES.length];
+        for (int outcome = 0; outcome < OUTCOMES.length; outcome++) {
+            messages[outcome] = Counter.builder("camt59.messages")
+                    .description("camt.059 messages processed")
+                    .tag("outcome", OUTCOMES[outcome])
+                    .register(registry);
+        }
+        PayloadBufferPool.bindTo(registry);
+        XPathRegistry.bindTo(registry);
+    }
+
+    public void record(Stage stage, long startNanos) {
+        record(stage, null, true, startNanos);
+    }
+
+    /**
+     * @param target FC, EPH, or null for stages that are not per target
+     */
+    public void record(Stage stage, String target, boolean success, long startNanos) {
+        timers[index(stage, targetIndex(target), success ? 0 : 1)]
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void message(boolean success, int itemCount, CharSequence payload) {
+        messages[success ? 0 : 1].increment();
+        items.record(itemCount);
+        if (payload != null) {
+            payloadBytes.record(utf8Length(payload));
+        }
+    }
+
+    public void output(String target, int itemCount, CharSequence payload) {
+        int index = targetIndex(target);
+        if (index == 0) {
+            return;
+        }
+        routedItems[index].increment(itemCount);
+        outputBytes[index].record(utf8Length(payload));
+    }
+
+    /**
+     * Encoded size without building the byte array.
+     */
+    static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static int index(Stage stage, int target, int outcome) {
+        return (stage.ordinal() * TARGETS.length + target) * OUTCOMES.length + outcome;
+    }
+
+    private static int targetIndex(String target) {
+        if (FC.equals(target)) {
+            return 1;
+        }
+        if (EPH.equals(target)) {
+            return 2;
+        }
+        return 0;
+    }
+}
@@ -11,4 +11,7 @@ public class Constants {
     public static final String EPH = "EPH";
     public static final String RECEIVED = "RECEIVED";
     public static final String SENT_TO_DISPATCHER="SENT_TO_DISPATCHER";
+    // tracker rows are stored with this status and move to SENT_TO_DISPATCHER once published
+    public static final String PUBLISH_PENDING = "PUBLISH_PENDING";
+    public static final String FAILED = "FAILED";
 }
@@ -1,76 +1,152 @@
 package com.hdfcbank.camt59.utils;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hdfcbank.camt59.exception.NILException;
 import com.hdfcbank.camt59.model.ReqPayload;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 
 @Slf4j
 @Component
 public class NILRouterCommonUtility {
 
+    private static final String DATA_BASE64 = "data_base64";
+
     @Autowired
     ObjectMapper objectMapper;
 
     public String getBizMsgIdr(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        Node msgIdNode = (Node) xpath.evaluate("//*[local-name()='AppHdr']/*[local-name()='BizMsgIdr']", originalDoc, XPathConstants.NODE);
+        Node msgIdNode = (Node) XPathRegistry.evaluate(XPathRegistry.BIZ_MSG_IDR, originalDoc, XPathConstants.NODE);
         String msgId = msgIdNode != null ? msgIdNode.getTextContent().trim() : null;
         return msgId;
     }
 
     public String getMsgDefIdr(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        Node msgIdNode = (Node) xpath.evaluate("//*[local-name()='AppHdr']/*[local-name()='MsgDefIdr']", originalDoc, XPathConstants.NODE);
+        Node msgIdNode = (Node) XPathRegistry.evaluate(XPathRegistry.MSG_DEF_IDR, originalDoc, XPathConstants.NODE);
         String msgId = msgIdNode != null ? msgIdNode.getTextContent().trim() : null;
         return msgId;
 
     }
 
+    /**
+     * Decodes the ReqPayload carried Base64-encoded in a CloudEvent's data_base64.
+     * <p>
+     * The envelope is scanned with a streaming JsonParser rather than read into a tree, and the
+     * data_base64 text is Base64-decoded straight from the request into the ReqPayload reader,
+     * so neither the Base64 text nor the decoded JSON is ever copied out as a whole. A value
+     * holding JSON escapes other than \/ is decoded by the parser instead.
+     */
     public ReqPayload convertToMap(String request) {
         try {
             if (request == null || request.trim().isEmpty()) {
                 return null;
             }
 
-            JsonNode rootNode = objectMapper.readTree(request);
-            String base64Data = rootNode.get("data_base64").asText();
-            String reqPayloadString = new String(Base64.getDecoder().decode(base64Data), StandardCharsets.UTF_8);
-            return objectMapper.readValue(reqPayloadString,  ReqPayload.class);
+            try (JsonParser parser = objectMapper.getFactory().createParser(request)) {
+                return readCloudEvent(parser, location -> {
+                    // the token starts at the opening quote
+                    int start = (int) location.getCharOffset();
+                    return start >= 0 && start < request.length() && request.charAt(start) == '"'
+                            ? new JsonStringInputStream(request::charAt, start + 1, request.length())
+                            : null;
+                });
+            }
         } catch (Exception e) {
             log.error("Failed to convert request string to map", e);
             throw new NILException("Invalid request format. Expecting JSON object.", e);
         }
     }
 
+    /**
+     * {@link #convertToMap(String)} for a request body held in a (pooled) buffer, read in place.
+     * The buffer's indexes are left unchanged and it stays owned by the caller.
+     */
+    public ReqPayload convertToMap(ByteBuf request) {
+        try {
+            if (request == null || request.forEachByte(b -> b >= 0 && b <= ' ') < 0) {
+                return null;
+            }
+
+            int base = request.readerIndex();
+            int end = request.writerIndex();
+            try (JsonParser parser = objectMapper.getFactory().createParser((InputStream) new ByteBufInputStream(request.duplicate()))) {
+                return readCloudEvent(parser, location -> {
+                    long offset = location.getByteOffset();
+                    int start = offset >= 0 && offset < end - base ? base + (int) offset : -1;
+                    return start >= 0 && request.getByte(start) == '"'
+                            ? new JsonStringInputStream(request::getByte, start + 1, end)
+                            : null;
+                });
+            }
+        } catch (Exception e) {
+            log.error("Failed to convert request buffer to map", e);
+            throw new NILException("Invalid request format. Expecting JSON object.", e);
+        }
+    }
+
+    /**
+     * @param dataBase64 the text of the data_base64 value at the location of its token, or null
+     *                   when the request cannot be read in place
+     */
+    private ReqPayload readCloudEvent(JsonParser parser, Function<JsonLocation, InputStream> dataBase64) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("CloudEvent is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (DATA_BASE64.equals(field) && value == JsonToken.VALUE_STRING) {
+                // Base64 needs no JSON escapes apart from an optional \/
+                InputStream text = dataBase64.apply(parser.currentTokenLocation());
+                if (text != null) {
+                    try (InputStream decoded = Base64.getDecoder().wrap(text)) {
+                        return objectMapper.readValue(decoded, ReqPayload.class);
+                    } catch (IOException e) {
+                        if (!(rootCause(e) instanceof NotPlainText)) {
+                            throw e;
+                        }
+                        // the parser has not consumed the value yet, so it can still decode it
+                        log.debug("{} not read in place: {}", DATA_BASE64, rootCause(e).getMessage());
+                    }
+                }
+                // offsets unavailable, or escapes to undo: let the parser decode the value
+                return objectMapper.readValue(parser.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS), ReqPayload.class);
+            }
+            parser.skipChildren();
+        }
+        throw new IllegalArgumentException("CloudEvent has no " + DATA_BASE64);
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null && e.getCause() != e) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
     public BigDecimal getTotalAmount(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        String totalAmountString = (String) xpath.evaluate("//*[local-name()='GrpHdr']/*[local-name()='TtlIntrBkSttlmAmt']", originalDoc, XPathConstants.STRING);
+        String totalAmountString = XPathRegistry.evaluate(XPathRegistry.TOTAL_AMOUNT, originalDoc);
         BigDecimal totalAmount = new BigDecimal(totalAmountString);
         return totalAmount;
 
@@ -86,12 +162,8 @@ public class NILRouterCommonUtility {
     }
 
     public boolean isOutward(String xml) {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setNamespaceAware(true);
-        DocumentBuilder dBuilder = null;
         try {
-            dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(new InputSource(new StringReader(xml)));
+            Document doc = XmlFactoryPool.parse(xml);
 
             String fromMmbId = doc.getElementsByTagName("Fr").item(0)
                     .getTextContent().trim().toUpperCase();
@@ -118,21 +190,71 @@ public class NILRouterCommonUtility {
      * Parses an XML string into a Document object with namespace awareness.
      */
     public static Document parseXmlStringToDocument(String xml) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        return builder.parse(new InputSource(new StringReader(xml)));
+        return XmlFactoryPool.parse(xml);
     }
 
     /**
      * Converts a Document object to its XML string representation.
      */
     public static String documentToXmlString(Document doc) throws Exception {
-        StringWriter writer = new StringWriter();
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.transform(new DOMSource(doc), new StreamResult(writer));
-        return writer.toString();
+        return XmlFactoryPool.toXml(doc);
     }
 
+    /**
+     * ASCII bytes of a JSON string value read in place from the request, up to its closing
+     * quote. An escaped slash is read as a slash; any other escape or a non-ASCII character
+     * fails the read with {@link NotPlainText}, and the value is then left to the parser.
+     */
+    private static final class JsonStringInputStream extends InputStream {
+
+        private final IntUnaryOperator source;
+        private final int end;
+        private int position;
+        private boolean ended;
+
+        JsonStringInputStream(IntUnaryOperator source, int position, int end) {
+            this.source = source;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < length && !ended && position < end) {
+                int c = source.applyAsInt(position++);
+                if (c == '"') {
+                    ended = true;
+                } else if (c == '\\') {
+                    // any other escape (\n, \u002B, ...) would decode to a different Base64 text
+                    int escaped = position < end ? source.applyAsInt(position++) : -1;
+                    if (escaped != '/') {
+                        throw new NotPlainText("Escape in " + DATA_BASE64 + " at offset " + (position - 2));
+                    }
+                    buffer[offset + count++] = '/';
+                } else if (c < 0 || c > 0x7F) {
+                    throw new NotPlainText("Non-ASCII character in " + DATA_BASE64 + " at offset " + (position - 1));
+                } else {
+                    buffer[offset + count++] = (byte) c;
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+    }
+
+    private static final class NotPlainText extends IOException {
+
+        NotPlainText(String message) {
+            super(message);
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package com.hdfcbank.camt59.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point INR amounts held as a long count of paise.
+ * <p>
+ * Parses the decimal text of an Amt element straight into paise, without going through
+ * double or BigDecimal, so sums are exact and cost no allocation per item. The rare amount
+ * written with an exponent or with non-zero digits beyond the paisa is rounded half up to
+ * paise through BigDecimal, which is how a numeric(_, 2) column stores it; before amounts
+ * were parsed here such items were stored that way rather than failing their message.
+ */
+public final class Paise {
+
+    private Paise() {
+    }
+
+    /**
+     * Parses a decimal amount such as "1234.5" or " 100.00 " into paise. Surrounding XML
+     * whitespace is ignored. "100.505" and "1.5E+2" are rounded half up, to 10051 and 15000.
+     *
+     * @throws NumberFormatException if the text is not a decimal amount or does not fit in a long
+     */
+    public static long parse(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        if (start < end && (text.charAt(start) == '-' || text.charAt(start) == '+')) {
+            negative = text.charAt(start) == '-';
+            start++;
+        }
+
+        long value = 0;
+        int fractionDigits = -1;
+        boolean anyDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                int digit = c - '0';
+                if (fractionDigits < 2) {
+                    value = accumulate(value, digit, text);
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (digit != 0) {
+                    return roundToPaise(text);
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if ((c == 'e' || c == 'E') && anyDigit) {
+                return roundToPaise(text);
+            } else {
+                throw new NumberFormatException("Invalid amount: \"" + text + "\"");
+            }
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Invalid amount: \"" + text + "\"");
+        }
+
+        for (int scale = Math.max(fractionDigits, 0); scale < 2; scale++) {
+            value = accumulate(value, 0, text);
+        }
+        return negative ? -value : value;
+    }
+
+    public static BigDecimal toBigDecimal(long paise) {
+        return BigDecimal.valueOf(paise, 2);
+    }
+
+    private static long roundToPaise(CharSequence text) {
+        BigDecimal amount = new BigDecimal(text.toString().trim());
+        // checked before scaling, so that an exponent such as 1E999999999 is not expanded
+        if (amount.precision() - amount.scale() > 18) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+        if (amount.scale() - amount.precision() >= 3) {
+            return 0; // below 0.001
+        }
+        try {
+            return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    private static long accumulate(long value, int digit, CharSequence text) {
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+        return value * 10 + digit;
+    }
+}
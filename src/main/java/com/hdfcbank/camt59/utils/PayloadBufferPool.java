@@ -0,0 +1,149 @@
+package com.hdfcbank.camt59.utils;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Pooled, off-heap buffers for whole payloads.
+ * <p>
+ * A request body or a split output is several megabytes for a large batch; built up in a
+ * String or StringBuilder it is a humongous G1 allocation, copied again each time the builder
+ * grows. Held here instead it lives in direct memory carved from 16 MiB chunks that are reused
+ * from message to message, and only the String an API actually needs is allocated on the heap,
+ * once, at its final size. Every buffer handed out must be released by its owner.
+ */
+public final class PayloadBufferPool {
+
+    private static final int PAGE_SIZE = 8192;
+    // 8 KiB << 11 = 16 MiB chunks, so a payload of up to 16 MiB is served from the pool
+    private static final int MAX_ORDER = 11;
+    private static final int CHUNK_SIZE = PAGE_SIZE << MAX_ORDER;
+    private static final int READ_CHUNK = 8192;
+
+    private static final PooledByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true,
+            0, Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4)), PAGE_SIZE, MAX_ORDER,
+            PooledByteBufAllocator.defaultSmallCacheSize(), PooledByteBufAllocator.defaultNormalCacheSize(),
+            PooledByteBufAllocator.defaultUseCacheForAllThreads());
+
+    private PayloadBufferPool() {
+    }
+
+    public static ByteBuf buffer(int initialCapacity) {
+        return ALLOCATOR.buffer(Math.max(initialCapacity, 256));
+    }
+
+    /**
+     * Reads a whole stream of at most maxLength bytes into a pooled buffer. A declared length
+     * over maxLength is refused before anything is allocated, and the buffer is sized for at
+     * most one chunk up front, so a client cannot make the pool reserve memory it never sends.
+     *
+     * @param expectedLength the declared length (Content-Length), or -1 when unknown
+     * @throws ProcessingRejectedException (413) when the stream is, or claims to be, longer than maxLength
+     */
+    public static ByteBuf read(InputStream in, long expectedLength, long maxLength) throws IOException {
+        if (expectedLength > maxLength) {
+            throw tooLarge(maxLength);
+        }
+        ByteBuf buffer = buffer(expectedLength > 0 ? (int) Math.min(expectedLength + 1, CHUNK_SIZE) : 64 * 1024);
+        try {
+            while (true) {
+                buffer.ensureWritable(READ_CHUNK);
+                if (buffer.writeBytes(in, buffer.writableBytes()) < 0) {
+                    return buffer;
+                }
+                if (buffer.readableBytes() > maxLength) {
+                    throw tooLarge(maxLength);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    private static ProcessingRejectedException tooLarge(long maxLength) {
+        return new ProcessingRejectedException("Request body is over " + maxLength + " bytes", HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    /**
+     * A pooled buffer holding the UTF-8 bytes of the text.
+     */
+    public static ByteBuf copyOf(CharSequence text) {
+        ByteBuf buffer = buffer(ByteBufUtil.utf8MaxBytes(text.length()));
+        ByteBufUtil.writeUtf8(buffer, text);
+        return buffer;
+    }
+
+    /**
+     * The readable bytes decoded as UTF-8, for APIs that only take a String.
+     */
+    public static String toUtf8String(ByteBuf buffer) {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    public static PooledByteBufAllocatorMetric metric() {
+        return ALLOCATOR.metric();
+    }
+
+    /**
+     * Registers the pool statistics: direct and heap memory held, buffers in use, and
+     * allocations by Netty size class, where huge ones (over a chunk) bypass the pool.
+     */
+    public static void bindTo(MeterRegistry registry) {
+        PooledByteBufAllocatorMetric metric = ALLOCATOR.metric();
+        Gauge.builder("camt59.payload.buffers.memory", metric, PooledByteBufAllocatorMetric::usedDirectMemory)
+                .description("Memory held by the payload buffer pool")
+                .baseUnit("bytes")
+                .tag("type", "direct")
+                .register(registry);
+        Gauge.builder("camt59.payload.buffers.memory", metric, PooledByteBufAllocatorMetric::usedHeapMemory)
+                .description("Memory held by the payload buffer pool")
+                .baseUnit("bytes")
+                .tag("type", "heap")
+                .register(registry);
+        Gauge.builder("camt59.payload.buffers.active", metric, m -> sum(m, PoolArenaMetric::numActiveAllocations))
+                .description("Payload buffers allocated and not yet released")
+                .register(registry);
+        Gauge.builder("camt59.payload.buffers.active.bytes", metric, m -> sum(m, PoolArenaMetric::numActiveBytes))
+                .description("Bytes of the payload buffers allocated and not yet released")
+                .baseUnit("bytes")
+                .register(registry);
+        allocations(registry, metric, "small", PoolArenaMetric::numSmallAllocations);
+        allocations(registry, metric, "normal", PoolArenaMetric::numNormalAllocations);
+        allocations(registry, metric, "huge", PoolArenaMetric::numHugeAllocations);
+    }
+
+    private static void allocations(MeterRegistry registry, PooledByteBufAllocatorMetric metric, String size,
+                                    ToLongFunction<PoolArenaMetric> count) {
+        FunctionCounter.builder("camt59.payload.buffers.allocations", metric, m -> sum(m, count))
+                .description("Payload buffers allocated, by size class")
+                .tag("size", size)
+                .register(registry);
+    }
+
+    private static double sum(PooledByteBufAllocatorMetric metric, ToLongFunction<PoolArenaMetric> count) {
+        return sum(metric.directArenas(), count) + sum(metric.heapArenas(), count);
+    }
+
+    private static long sum(List<PoolArenaMetric> arenas, ToLongFunction<PoolArenaMetric> count) {
+        long total = 0;
+        for (PoolArenaMetric arena : arenas) {
+            total += count.applyAsLong(arena);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,112 @@
+package com.hdfcbank.camt59.utils;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking message processing off the request thread.
+ * <p>
+ * BOUNDED_ELASTIC uses a dedicated bounded-elastic scheduler with max-concurrency threads.
+ * VIRTUAL runs each message on its own virtual thread (Java 21 runtime) with at most
+ * max-concurrency running at once, and falls back to BOUNDED_ELASTIC on older runtimes.
+ * In both modes at most max-concurrency + max-queue messages are admitted; anything beyond
+ * that is rejected with 429 rather than queued, and with 503 once the workers are shut down.
+ */
+@Slf4j
+@Component
+public class ProcessingScheduler {
+
+    public enum Mode { BOUNDED_ELASTIC, VIRTUAL }
+
+    @Value("${processing.execution.mode:BOUNDED_ELASTIC}")
+    private Mode mode = Mode.BOUNDED_ELASTIC;
+
+    @Value("${processing.execution.max-concurrency:16}")
+    private int maxConcurrency = 16;
+
+    @Value("${processing.execution.max-queue:256}")
+    private int maxQueue = 256;
+
+    private Scheduler scheduler;
+    private Semaphore admitted;
+    private Semaphore running;
+    private Mode activeMode;
+
+    @PostConstruct
+    public void init() {
+        admitted = new Semaphore(maxConcurrency + maxQueue);
+        ExecutorService virtualThreads = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (virtualThreads != null) {
+            running = new Semaphore(maxConcurrency);
+            scheduler = Schedulers.fromExecutorService(virtualThreads, "camt59-virtual");
+            activeMode = Mode.VIRTUAL;
+        } else {
+            // admission below is the real bound; the per-thread cap only has to never trip first
+            scheduler = Schedulers.newBoundedElastic(maxConcurrency, maxConcurrency + maxQueue, "camt59-worker");
+            activeMode = Mode.BOUNDED_ELASTIC;
+        }
+        log.info("Processing on {} with max-concurrency {} and max-queue {}", activeMode, maxConcurrency, maxQueue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+
+    public <T> Mono<T> execute(Callable<T> task) {
+        return Mono.defer(() -> {
+            if (scheduler.isDisposed()) {
+                return Mono.error(new ProcessingRejectedException("Processing workers are shutting down", HttpStatus.SERVICE_UNAVAILABLE));
+            }
+            if (!admitted.tryAcquire()) {
+                return Mono.error(new ProcessingRejectedException("Processing queue is full", HttpStatus.TOO_MANY_REQUESTS));
+            }
+            return Mono.fromCallable(() -> call(task))
+                    .subscribeOn(scheduler)
+                    .doFinally(signal -> admitted.release());
+        });
+    }
+
+    public Mode getActiveMode() {
+        return activeMode;
+    }
+
+    public int getQueuedOrRunning() {
+        return maxConcurrency + maxQueue - admitted.availablePermits();
+    }
+
+    private <T> T call(Callable<T> task) throws Exception {
+        if (running == null) {
+            return task.call();
+        }
+        // virtual threads are cheap to park, so waiting here is the queue
+        running.acquire();
+        try {
+            return task.call();
+        } finally {
+            running.release();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need a Java 21 runtime, falling back to {}", Mode.BOUNDED_ELASTIC);
+            return null;
+        }
+    }
+}
@@ -4,18 +4,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.io.StringReader;
 import java.math.BigDecimal;
 
 @Slf4j
@@ -23,15 +18,13 @@ import java.math.BigDecimal;
 public class UtilityMethods {
 
     public String getBizMsgIdr(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        Node msgIdNode = (Node) xpath.evaluate("//*[local-name()='AppHdr']/*[local-name()='BizMsgIdr']", originalDoc, XPathConstants.NODE);
+        Node msgIdNode = (Node) XPathRegistry.evaluate(XPathRegistry.BIZ_MSG_IDR, originalDoc, XPathConstants.NODE);
         String msgId = msgIdNode != null ? msgIdNode.getTextContent().trim() : null;
         return msgId;
     }
 
     public String getMsgDefIdr(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        Node msgIdNode = (Node) xpath.evaluate("//*[local-name()='AppHdr']/*[local-name()='MsgDefIdr']", originalDoc, XPathConstants.NODE);
+        Node msgIdNode = (Node) XPathRegistry.evaluate(XPathRegistry.MSG_DEF_IDR, originalDoc, XPathConstants.NODE);
         String msgId = msgIdNode != null ? msgIdNode.getTextContent().trim() : null;
         return msgId;
 
@@ -39,8 +32,7 @@ public class UtilityMethods {
 
 
     public BigDecimal getTotalAmount(Document originalDoc) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        String totalAmountString = (String) xpath.evaluate("//*[local-name()='GrpHdr']/*[local-name()='TtlIntrBkSttlmAmt']", originalDoc, XPathConstants.STRING);
+        String totalAmountString = XPathRegistry.evaluate(XPathRegistry.TOTAL_AMOUNT, originalDoc);
         BigDecimal totalAmount = new BigDecimal(totalAmountString);
         return totalAmount;
 
@@ -56,12 +48,8 @@ public class UtilityMethods {
     }
 
     public boolean isOutward(String xml) {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setNamespaceAware(true);
-        DocumentBuilder dBuilder = null;
         try {
-            dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(new InputSource(new StringReader(xml)));
+            Document doc = XmlFactoryPool.parse(xml);
 
             String fromMmbId = doc.getElementsByTagName("Fr").item(0)
                     .getTextContent().trim().toUpperCase();
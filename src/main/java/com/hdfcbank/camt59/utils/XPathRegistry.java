@@ -0,0 +1,160 @@
+package com.hdfcbank.camt59.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of precompiled XPath expressions.
+ * <p>
+ * XPath and XPathExpression are not thread-safe, so each pooled entry owns one XPath and the
+ * expressions compiled from it; callers borrow an entry for a single evaluation and hand it back.
+ * A new entry compiles every registered expression up front, so once the pool is warm the hot
+ * path never compiles. Pooling rather than a ThreadLocal keeps this cheap on virtual threads too.
+ */
+@Slf4j
+public final class XPathRegistry {
+
+    // AppHdr is a child of the root wrapper (RequestPayload / Envelope) or the root itself
+    public static final String BIZ_MSG_IDR =
+            "/*/*[local-name()='AppHdr']/*[local-name()='BizMsgIdr'] | /*[local-name()='AppHdr']/*[local-name()='BizMsgIdr']";
+    public static final String MSG_DEF_IDR =
+            "/*/*[local-name()='AppHdr']/*[local-name()='MsgDefIdr'] | /*[local-name()='AppHdr']/*[local-name()='MsgDefIdr']";
+    // GrpHdr sits directly under Document or under its message element (e.g. FIToFICstmrCdtTrf)
+    public static final String TOTAL_AMOUNT =
+            "/*/*[local-name()='Document']/*[local-name()='GrpHdr']/*[local-name()='TtlIntrBkSttlmAmt']"
+                    + " | /*/*[local-name()='Document']/*/*[local-name()='GrpHdr']/*[local-name()='TtlIntrBkSttlmAmt']";
+
+    public static final String REQUEST_BIZ_MSG_IDR =
+            "/*[local-name()='RequestPayload']/*[local-name()='AppHdr']/*[local-name()='BizMsgIdr']";
+    public static final String REQUEST_CRE_DT =
+            "/*[local-name()='RequestPayload']/*[local-name()='AppHdr']/*[local-name()='CreDt']";
+    public static final String REQUEST_DOCUMENT =
+            "/*[local-name()='RequestPayload']/*[local-name()='Document']";
+    // items are collected from the whole Document in one scan, matching the streaming engine
+    public static final String REQUEST_ORGNL_ITM_AND_STS =
+            "/*[local-name()='RequestPayload']/*[local-name()='Document']//*[local-name()='OrgnlItmAndSts']";
+
+    public static final String ITEM_AMT = "./*[local-name()='Amt']";
+    public static final String ITEM_ORGNL_ITM_ID = "./*[local-name()='OrgnlItmId']";
+    public static final String ITEM_ORGNL_END_TO_END_ID = "./*[local-name()='OrgnlEndToEndId']";
+
+    private static final Set<String> REGISTERED = ConcurrentHashMap.newKeySet();
+    private static final Queue<CompiledExpressions> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder COMPILES = new LongAdder();
+
+    static {
+        Collections.addAll(REGISTERED, BIZ_MSG_IDR, MSG_DEF_IDR, TOTAL_AMOUNT, REQUEST_BIZ_MSG_IDR,
+                REQUEST_CRE_DT, REQUEST_DOCUMENT, REQUEST_ORGNL_ITM_AND_STS, ITEM_AMT, ITEM_ORGNL_ITM_ID,
+                ITEM_ORGNL_END_TO_END_ID);
+    }
+
+    private XPathRegistry() {
+    }
+
+    /**
+     * Adds an expression to the set every pooled entry precompiles, compiling it once now so
+     * that a malformed expression fails at registration rather than on a message.
+     */
+    public static void register(String expression) throws XPathExpressionException {
+        CompiledExpressions compiled = borrow();
+        try {
+            compiled.get(expression);
+            REGISTERED.add(expression);
+        } finally {
+            POOL.offer(compiled);
+        }
+    }
+
+    public static Object evaluate(String expression, Object item, QName returnType) throws XPathExpressionException {
+        CompiledExpressions compiled = borrow();
+        try {
+            return compiled.get(expression).evaluate(item, returnType);
+        } finally {
+            POOL.offer(compiled);
+        }
+    }
+
+    public static String evaluate(String expression, Object item) throws XPathExpressionException {
+        return (String) evaluate(expression, item, XPathConstants.STRING);
+    }
+
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    public static long getCompileCount() {
+        return COMPILES.sum();
+    }
+
+    public static int getPoolSize() {
+        return POOL.size();
+    }
+
+    /**
+     * Exposes the expression lookups and compilations, and the pooled entries, as camt59 meters.
+     */
+    public static void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("camt59.xpath.lookups", HITS, LongAdder::sum)
+                .description("XPath evaluations served by a precompiled expression")
+                .register(registry);
+        FunctionCounter.builder("camt59.xpath.compiles", COMPILES, LongAdder::sum)
+                .description("XPath expressions compiled, by new pooled entries or for unregistered expressions")
+                .register(registry);
+        Gauge.builder("camt59.xpath.pool.size", POOL, Queue::size)
+                .description("Idle pooled XPath entries")
+                .register(registry);
+    }
+
+    private static CompiledExpressions borrow() throws XPathExpressionException {
+        CompiledExpressions compiled = POOL.poll();
+        return compiled != null ? compiled : new CompiledExpressions();
+    }
+
+    private static final class CompiledExpressions {
+
+        private final XPath xpath = XPathFactory.newInstance().newXPath();
+        private final Map<String, XPathExpression> expressions = new HashMap<>();
+
+        CompiledExpressions() throws XPathExpressionException {
+            for (String expression : REGISTERED) {
+                compile(expression);
+            }
+        }
+
+        XPathExpression get(String expression) throws XPathExpressionException {
+            XPathExpression compiled = expressions.get(expression);
+            if (compiled != null) {
+                HITS.increment();
+                return compiled;
+            }
+            log.debug("Compiling unregistered XPath expression: {}", expression);
+            return compile(expression);
+        }
+
+        private XPathExpression compile(String expression) throws XPathExpressionException {
+            XPathExpression compiled = xpath.compile(expression);
+            COMPILES.increment();
+            expressions.put(expression, compiled);
+            return compiled;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hdfcbank.camt59.utils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Shared DocumentBuilder / Transformer pool.
+ * <p>
+ * The factories are looked up and hardened once (namespace aware, no DOCTYPE, no external
+ * entities, DTDs or stylesheets). Builders and transformers are not thread-safe, so each call
+ * borrows one, resets it and returns it to the pool.
+ */
+public final class XmlFactoryPool {
+
+    private static final DocumentBuilderFactory BUILDER_FACTORY = newBuilderFactory();
+    private static final TransformerFactory TRANSFORMER_FACTORY = newTransformerFactory();
+
+    private static final Queue<DocumentBuilder> BUILDERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Transformer> TRANSFORMERS = new ConcurrentLinkedQueue<>();
+
+    private XmlFactoryPool() {
+    }
+
+    public static Document parse(String xml) throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilder builder = borrowBuilder();
+        try {
+            return builder.parse(new InputSource(new StringReader(xml)));
+        } finally {
+            builder.reset();
+            BUILDERS.offer(builder);
+        }
+    }
+
+    public static Document newDocument() throws ParserConfigurationException {
+        DocumentBuilder builder = borrowBuilder();
+        try {
+            return builder.newDocument();
+        } finally {
+            builder.reset();
+            BUILDERS.offer(builder);
+        }
+    }
+
+    /**
+     * Serializes the node with the identity transformer's default output properties.
+     */
+    public static String toXml(Node node) throws TransformerException {
+        Transformer transformer = borrowTransformer();
+        try {
+            StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(node), new StreamResult(writer));
+            return writer.toString();
+        } finally {
+            transformer.reset();
+            TRANSFORMERS.offer(transformer);
+        }
+    }
+
+    private static DocumentBuilder borrowBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = BUILDERS.poll();
+        return builder != null ? builder : BUILDER_FACTORY.newDocumentBuilder();
+    }
+
+    private static Transformer borrowTransformer() throws TransformerConfigurationException {
+        Transformer transformer = TRANSFORMERS.poll();
+        return transformer != null ? transformer : TRANSFORMER_FACTORY.newTransformer();
+    }
+
+    private static DocumentBuilderFactory newBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            // build every node up front: the whole tree is read anyway, and a deferred DOM
+            // expands itself on first read, which makes concurrent reads unsafe
+            factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to harden DocumentBuilderFactory", e);
+        }
+        return factory;
+    }
+
+    private static TransformerFactory newTransformerFactory() {
+        TransformerFactory factory = TransformerFactory.newInstance();
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException("Unable to harden TransformerFactory", e);
+        }
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        return factory;
+    }
+}
@@ -0,0 +1,23 @@
+-- Outbox behind the msg_event_tracker event feed (msg-event-feed.enabled).
+--
+-- RECEIVED and SENT_TO_DISPATCHER rows are inserted in the transaction that writes the
+-- msg_event_tracker rows, FAILED rows on their own, best effort. The service claims rows for a
+-- lease (claimed_until), relays them in id order to topic.msgeventtrackertopic outside any
+-- transaction and deletes each row once its event is published, so the table only holds
+-- events not yet handed to the broker. Apply the DDL below before enabling.
+
+CREATE TABLE IF NOT EXISTS network_il.msg_event_outbox (
+    id           bigserial    PRIMARY KEY,       -- also the event id consumers deduplicate on
+    msg_id       varchar(64)  NOT NULL,
+    status       varchar(32)  NOT NULL,          -- RECEIVED | SENT_TO_DISPATCHER | FAILED
+    target       varchar(64),                    -- DISPATCHER_FC | DISPATCHER_EPH for SENT_TO_DISPATCHER
+    msg_type     varchar(64),
+    item_count   integer,
+    amount       numeric(20, 2),
+    reason       varchar(256),                   -- FAILED only
+    event_time   timestamp    NOT NULL,
+    claimed_until timestamp                      -- set while a relay publishes the row
+);
+
+-- Rows still waiting after a relay outage, oldest first:
+-- SELECT status, count(*), min(event_time) FROM network_il.msg_event_outbox GROUP BY status;
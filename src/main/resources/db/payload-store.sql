@@ -0,0 +1,55 @@
+-- Content-addressed payload store for msg_event_tracker.original_req (payload-store.enabled).
+--
+-- 1. Apply the DDL below, then deploy with PAYLOAD_STORE_ENABLED=true. New tracker rows then
+--    carry payload_ref instead of their own original_req; old rows keep theirs.
+-- 2. Optionally run the backfill until it updates no more rows, to move existing rows over.
+-- 3. Point operational queries at msg_event_tracker_resolved, which reads the payload from
+--    either place. Payloads the service deflated (codec DEFLATE) cannot be decoded in SQL and
+--    show as NULL there; read them through PayloadStore.findOriginalReq / load.
+
+CREATE TABLE IF NOT EXISTS network_il.msg_payload (
+    payload_hash  varchar(64) PRIMARY KEY,      -- hex SHA-256 of the UTF-8 payload
+    codec         varchar(16) NOT NULL,         -- NONE | DEFLATE
+    original_size integer     NOT NULL,         -- bytes before compression
+    payload       bytea       NOT NULL,
+    created_time  timestamp   NOT NULL DEFAULT now()
+);
+
+-- PostgreSQL 14+: compress stored payloads with lz4 instead of pglz
+ALTER TABLE network_il.msg_payload ALTER COLUMN payload SET COMPRESSION lz4;
+
+ALTER TABLE network_il.msg_event_tracker ADD COLUMN IF NOT EXISTS payload_ref varchar(64);
+
+CREATE INDEX IF NOT EXISTS msg_event_tracker_payload_ref_idx
+    ON network_il.msg_event_tracker (payload_ref);
+
+CREATE OR REPLACE VIEW network_il.msg_event_tracker_resolved AS
+SELECT t.*,
+       COALESCE(t.original_req::text,
+                CASE WHEN p.codec = 'NONE' THEN convert_from(p.payload, 'UTF8') END) AS resolved_original_req
+FROM network_il.msg_event_tracker t
+LEFT JOIN network_il.msg_payload p ON p.payload_hash = t.payload_ref;
+
+-- Backfill, 5000 tracker rows per run; repeat until it reports UPDATE 0.
+WITH batch AS (
+    SELECT ctid AS row_id, encode(sha256(convert_to(original_req::text, 'UTF8')), 'hex') AS payload_hash,
+           convert_to(original_req::text, 'UTF8') AS payload
+    FROM network_il.msg_event_tracker
+    WHERE payload_ref IS NULL AND original_req IS NOT NULL
+    LIMIT 5000
+), stored AS (
+    INSERT INTO network_il.msg_payload (payload_hash, codec, original_size, payload, created_time)
+    SELECT DISTINCT ON (payload_hash) payload_hash, 'NONE', octet_length(payload), payload, now()
+    FROM batch
+    ON CONFLICT (payload_hash) DO NOTHING
+)
+UPDATE network_il.msg_event_tracker t
+SET payload_ref = b.payload_hash, original_req = NULL
+FROM batch b
+WHERE t.ctid = b.row_id;
+
+-- Rollback: copy uncompressed payloads back inline before disabling the store.
+-- UPDATE network_il.msg_event_tracker t
+-- SET original_req = convert_from(p.payload, 'UTF8'), payload_ref = NULL
+-- FROM network_il.msg_payload p
+-- WHERE p.payload_hash = t.payload_ref AND p.codec = 'NONE';
@@ -1,10 +1,21 @@
 package com.hdfcbank.camt59.controller;
 
 import com.hdfcbank.camt59.exception.NILException;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import com.hdfcbank.camt59.model.BulkEntryStatus;
+import com.hdfcbank.camt59.model.BulkSubscribeRequest;
+import com.hdfcbank.camt59.model.BulkSubscribeResponse;
 import com.hdfcbank.camt59.model.ReqPayload;
 import com.hdfcbank.camt59.model.Response;
+import com.hdfcbank.camt59.service.Camt59BulkProcessor;
 import com.hdfcbank.camt59.service.Camt59XmlProcessor;
+import com.hdfcbank.camt59.service.MemoryAdmissionController;
 import com.hdfcbank.camt59.utils.NILRouterCommonUtility;
+import com.hdfcbank.camt59.utils.PayloadBufferPool;
+import com.hdfcbank.camt59.utils.ProcessingScheduler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -12,14 +23,21 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class ProcessControllerTest {
@@ -33,13 +51,26 @@ class ProcessControllerTest {
     @Mock
     private NILRouterCommonUtility nilRouterCommonUtility;
 
+    @Mock
+    private Camt59BulkProcessor camt59BulkProcessor;
+
 
     private ReqPayload mockPayload;
 
+    private ProcessingScheduler processingScheduler;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
         mockPayload = new ReqPayload();
+        processingScheduler = new ProcessingScheduler();
+        processingScheduler.init();
+        ReflectionTestUtils.setField(processController, "processingScheduler", processingScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processingScheduler.shutdown();
     }
     @Test
     void testHealthz() {
@@ -61,14 +92,14 @@ class ProcessControllerTest {
         String base64 = Base64.getEncoder().encodeToString(request.getBytes(StandardCharsets.UTF_8));
         String requestJson = "{\"data_base64\":\"" + base64 + "\"}";
 
-        when(nilRouterCommonUtility.convertToMap(request)).thenReturn(mockPayload);
+        when(nilRouterCommonUtility.convertToMap(body(request))).thenReturn(mockPayload);
         when(camt59XmlProcessor.validateRequest(any(ReqPayload.class))).thenReturn(false);
-        doNothing().when(camt59XmlProcessor).processXML(any(ReqPayload.class));
+        doNothing().when(camt59XmlProcessor).processXML(any(ReqPayload.class), any());
 
-        Mono<ResponseEntity<Response>> result = processController.process(request);
+        Mono<ResponseEntity<Response>> result = processController.process(post(request));
 
 
-//        verify(camt59XmlProcessor, times(1)).processXML(any(ReqPayload.class));
+//        verify(camt59XmlProcessor, times(1)).processXML(any(ReqPayload.class), any());
     }
 
     void testProcess_Success_WhenValidationFailsAndProcessCalled() throws Exception {
@@ -76,11 +107,11 @@ class ProcessControllerTest {
         String base64 = Base64.getEncoder().encodeToString(request.getBytes(StandardCharsets.UTF_8));
         String requestJson = "{\"data_base64\":\"" + base64 + "\"}";
 
-        when(nilRouterCommonUtility.convertToMap(requestJson)).thenReturn(mockPayload);
+        when(nilRouterCommonUtility.convertToMap(body(requestJson))).thenReturn(mockPayload);
         when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(false);
-        doNothing().when(camt59XmlProcessor).processXML(mockPayload);
+        doNothing().when(camt59XmlProcessor).processXML(eq(mockPayload), any());
 
-        Mono<ResponseEntity<Response>> result = processController.process(requestJson);
+        Mono<ResponseEntity<Response>> result = processController.process(post(requestJson));
 
         StepVerifier.create(result)
                 .assertNext(response -> {
@@ -90,7 +121,7 @@ class ProcessControllerTest {
                 })
                 .verifyComplete();
 
-        verify(camt59XmlProcessor, times(1)).processXML(mockPayload);
+        verify(camt59XmlProcessor, times(1)).processXML(eq(mockPayload), any());
     }
 
     @Test
@@ -99,10 +130,10 @@ class ProcessControllerTest {
         String base64 = Base64.getEncoder().encodeToString(request.getBytes(StandardCharsets.UTF_8));
         String requestJson = "{\"data_base64\":\"" + base64 + "\"}";
 
-        when(nilRouterCommonUtility.convertToMap(requestJson)).thenReturn(mockPayload);
+        when(nilRouterCommonUtility.convertToMap(body(requestJson))).thenReturn(mockPayload);
         when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(true);
 
-        Mono<ResponseEntity<Response>> result = processController.process(requestJson);
+        Mono<ResponseEntity<Response>> result = processController.process(post(requestJson));
 
         StepVerifier.create(result)
                 .assertNext(response -> {
@@ -112,7 +143,7 @@ class ProcessControllerTest {
                 })
                 .verifyComplete();
 
-        verify(camt59XmlProcessor, never()).processXML(any());
+        verify(camt59XmlProcessor, never()).processXML(any(), any());
     }
 
     @Test
@@ -121,11 +152,11 @@ class ProcessControllerTest {
         String base64 = Base64.getEncoder().encodeToString(request.getBytes(StandardCharsets.UTF_8));
         String requestJson = "{\"data_base64\":\"" + base64 + "\"}";
 
-        when(nilRouterCommonUtility.convertToMap(requestJson)).thenReturn(mockPayload);
+        when(nilRouterCommonUtility.convertToMap(body(requestJson))).thenReturn(mockPayload);
         when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(false);
-        doThrow(new RuntimeException("Processing failed")).when(camt59XmlProcessor).processXML(mockPayload);
+        doThrow(new RuntimeException("Processing failed")).when(camt59XmlProcessor).processXML(eq(mockPayload), any());
 
-        Mono<ResponseEntity<Response>> result = processController.process(requestJson);
+        Mono<ResponseEntity<Response>> result = processController.process(post(requestJson));
 
         StepVerifier.create(result)
                 .assertNext(response -> {
@@ -136,15 +167,30 @@ class ProcessControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    void testProcess_Rejected429_WhenMemoryBudgetExhausted() throws Exception {
+        when(nilRouterCommonUtility.convertToMap(body("large"))).thenReturn(mockPayload);
+        when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(false);
+        doThrow(new ProcessingRejectedException("Memory budget exhausted", HttpStatus.TOO_MANY_REQUESTS))
+                .when(camt59XmlProcessor).processXML(eq(mockPayload), any());
+
+        StepVerifier.create(processController.process(post("large")))
+                .assertNext(response -> {
+                    assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+                    assertEquals("Memory budget exhausted", response.getBody().getMessage());
+                })
+                .verifyComplete();
+    }
+
     @Test
     void testProcess_Error_WhenConvertToMapThrowsException() throws Exception {
         String request = "{ \"sample\": \"data\" }";
         String base64 = Base64.getEncoder().encodeToString(request.getBytes(StandardCharsets.UTF_8));
         String requestJson = "{\"data_base64\":\"" + base64 + "\"}";
 
-        when(nilRouterCommonUtility.convertToMap(requestJson)).thenThrow(new RuntimeException("Invalid JSON"));
+        when(nilRouterCommonUtility.convertToMap(body(requestJson))).thenThrow(new RuntimeException("Invalid JSON"));
 
-        Mono<ResponseEntity<Response>> result = processController.process(requestJson);
+        Mono<ResponseEntity<Response>> result = processController.process(post(requestJson));
 
         StepVerifier.create(result)
                 .assertNext(response -> {
@@ -154,7 +200,231 @@ class ProcessControllerTest {
                 })
                 .verifyComplete();
 
-        verify(camt59XmlProcessor, never()).processXML(any());
+        verify(camt59XmlProcessor, never()).processXML(any(), any());
+    }
+
+    @Test
+    void testProcess_Rejected429_WhenQueueFull() throws Exception {
+        ProcessingScheduler saturated = new ProcessingScheduler();
+        ReflectionTestUtils.setField(saturated, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(saturated, "maxQueue", 0);
+        saturated.init();
+        ReflectionTestUtils.setField(processController, "processingScheduler", saturated);
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(nilRouterCommonUtility.convertToMap(body("first"))).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return mockPayload;
+        });
+        when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(true);
+
+        Mono<ResponseEntity<Response>> first = processController.process(post("first")).cache();
+        first.subscribe();
+
+        StepVerifier.create(processController.process(post("second")))
+                .assertNext(response -> assertEquals(429, response.getStatusCode().value()))
+                .verifyComplete();
+
+        release.countDown();
+        assertEquals(200, first.block().getStatusCode().value());
+        saturated.shutdown();
     }
 
+    @Test
+    void testProcess_Rejected503_WhenShutDown() throws Exception {
+        processingScheduler.shutdown();
+
+        StepVerifier.create(processController.process(post("request")))
+                .assertNext(response -> assertEquals(503, response.getStatusCode().value()))
+                .verifyComplete();
+
+        verify(nilRouterCommonUtility, never()).convertToMap(any(ByteBuf.class));
+    }
+
+    @Test
+    void testProcessBatch_ReturnsPerEntryStatuses() throws Exception {
+        BulkSubscribeRequest bulkRequest = new BulkSubscribeRequest();
+        BulkSubscribeResponse bulkResponse = new BulkSubscribeResponse(List.of(
+                new BulkEntryStatus("e1", BulkEntryStatus.SUCCESS), new BulkEntryStatus("e2", BulkEntryStatus.DROP)));
+        when(camt59BulkProcessor.parse(body("bulk"))).thenReturn(bulkRequest);
+        when(camt59BulkProcessor.process(eq(bulkRequest), any())).thenReturn(Mono.just(bulkResponse));
+
+        StepVerifier.create(processController.processBatch(post("bulk")))
+                .assertNext(response -> {
+                    assertEquals(200, response.getStatusCode().value());
+                    assertSame(bulkResponse, response.getBody());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testProcessBatch_BadRequestWhenNotAnEnvelope() throws Exception {
+        when(camt59BulkProcessor.parse(body("junk"))).thenThrow(new NILException("Invalid bulk request format."));
+
+        StepVerifier.create(processController.processBatch(post("junk")))
+                .assertNext(response -> assertEquals(400, response.getStatusCode().value()))
+                .verifyComplete();
+
+        verify(camt59BulkProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    void testProcessBatch_ServerErrorWhenProcessingFails() throws Exception {
+        BulkSubscribeRequest bulkRequest = new BulkSubscribeRequest();
+        when(camt59BulkProcessor.parse(body("bulk"))).thenReturn(bulkRequest);
+        when(camt59BulkProcessor.process(eq(bulkRequest), any())).thenReturn(Mono.error(new RuntimeException("boom")));
+
+        StepVerifier.create(processController.processBatch(post("bulk")))
+                .assertNext(response -> assertEquals(500, response.getStatusCode().value()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testProcess_BodyReleasedAfterDecoding() throws Exception {
+        List<ByteBuf> bodies = new java.util.ArrayList<>();
+        when(nilRouterCommonUtility.convertToMap(any(ByteBuf.class))).thenAnswer(inv -> {
+            bodies.add(inv.getArgument(0));
+            return mockPayload;
+        });
+        when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(true);
+
+        assertEquals(200, processController.process(post("{}")).block().getStatusCode().value());
+
+        assertEquals(1, bodies.size());
+        assertEquals(0, bodies.get(0).refCnt());
+    }
+
+    @Test
+    void testProcess_BodyReleasedWhenRejected() throws Exception {
+        processingScheduler.shutdown();
+        long active = activeBuffers();
+
+        MockHttpServletRequest request = post("request");
+        Mono<ResponseEntity<Response>> result = processController.process(request);
+        assertEquals(active + 1, activeBuffers());
+
+        assertEquals(503, result.block().getStatusCode().value());
+        assertEquals(active, activeBuffers());
+    }
+
+    @Test
+    void testProcess_Rejected413BeforeTheBodyIsRead() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(admission, "maxRequestMb", 1L);
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        MockHttpServletRequest request = spy(post("{}"));
+        when(request.getContentLengthLong()).thenReturn(2L * 1024 * 1024);
+
+        ResponseEntity<Response> response = processController.process(request).block();
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        verify(request, never()).getInputStream();
+        verifyNoInteractions(nilRouterCommonUtility, camt59XmlProcessor);
+    }
+
+    @Test
+    void testProcess_Rejected413WhenTheBodyRunsOverTheLimit() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(admission, "maxRequestMb", 1L);
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        // chunked: no declared length to check up front
+        MockHttpServletRequest request = spy(post("x".repeat(2 * 1024 * 1024)));
+        when(request.getContentLengthLong()).thenReturn(-1L);
+        long active = activeBuffers();
+
+        ResponseEntity<Response> response = processController.process(request).block();
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        verify(request).getInputStream();
+        assertEquals(active, activeBuffers());
+        assertEquals(0, admission.getReserved());
+        verifyNoInteractions(nilRouterCommonUtility, camt59XmlProcessor);
+    }
+
+    @Test
+    void testProcess_RequestBudgetHeldUntilAnswered() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        long[] reservedWhileProcessing = new long[1];
+        when(nilRouterCommonUtility.convertToMap(any(ByteBuf.class))).thenReturn(mockPayload);
+        when(camt59XmlProcessor.validateRequest(mockPayload)).thenReturn(false);
+        doAnswer(inv -> reservedWhileProcessing[0] = admission.getReserved()).when(camt59XmlProcessor).processXML(eq(mockPayload), any());
+
+        assertEquals(200, processController.process(post("{\"body\":1}")).block().getStatusCode().value());
+
+        assertEquals(2 * "{\"body\":1}".length(), reservedWhileProcessing[0]);
+        assertEquals(0, admission.getReserved());
+    }
+
+    @Test
+    void testProcessBatch_OverTheRequestLimitIsRejectedBeforeReading() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(admission, "maxRequestMb", 1L);
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        MockHttpServletRequest request = spy(post("{}"));
+        when(request.getContentLengthLong()).thenReturn(2L * 1024 * 1024);
+
+        ResponseEntity<?> response = processController.processBatch(request).block();
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        verify(request, never()).getInputStream();
+        verifyNoInteractions(camt59BulkProcessor);
+    }
+
+    @Test
+    void testProcessBatch_ChunkedBodyOverTheLimitIsRejected() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(admission, "maxRequestMb", 1L);
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        MockHttpServletRequest request = spy(post("x".repeat(2 * 1024 * 1024)));
+        when(request.getContentLengthLong()).thenReturn(-1L);
+        long active = activeBuffers();
+
+        ResponseEntity<?> response = processController.processBatch(request).block();
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        assertEquals(active, activeBuffers());
+        verifyNoInteractions(camt59BulkProcessor);
+        assertEquals(0, admission.getReserved());
+    }
+
+    @Test
+    void testProcessBatch_BudgetHeldUntilEntriesAreAnswered() throws Exception {
+        MemoryAdmissionController admission = admissionController();
+        ReflectionTestUtils.setField(processController, "admissionController", admission);
+        BulkSubscribeRequest bulkRequest = new BulkSubscribeRequest();
+        long[] reservedWhileProcessing = new long[1];
+        when(camt59BulkProcessor.parse(body("bulk"))).thenReturn(bulkRequest);
+        when(camt59BulkProcessor.process(eq(bulkRequest), any())).thenReturn(Mono.fromSupplier(() -> {
+            reservedWhileProcessing[0] = admission.getReserved();
+            return new BulkSubscribeResponse(List.of());
+        }));
+
+        assertEquals(200, processController.processBatch(post("bulk")).block().getStatusCode().value());
+
+        assertEquals(2 * "bulk".length(), reservedWhileProcessing[0]);
+        assertEquals(0, admission.getReserved());
+    }
+
+    private static MemoryAdmissionController admissionController() {
+        MemoryAdmissionController admission = new MemoryAdmissionController();
+        ReflectionTestUtils.setField(admission, "budgetMb", 1L);
+        admission.init();
+        return admission;
+    }
+
+    private static long activeBuffers() {
+        return PayloadBufferPool.metric().directArenas().stream().mapToLong(PoolArenaMetric::numActiveAllocations).sum()
+                + PayloadBufferPool.metric().heapArenas().stream().mapToLong(PoolArenaMetric::numActiveAllocations).sum();
+    }
+
+    private static MockHttpServletRequest post(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/process");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static ByteBuf body(String expected) {
+        return argThat(buffer -> buffer != null && expected.equals(buffer.toString(StandardCharsets.UTF_8)));
+    }
 }
@@ -0,0 +1,284 @@
+package com.hdfcbank.camt59.dao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.model.TransactionAudit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class AuditWriteBehindBufferTest {
+
+    @InjectMocks
+    private AuditWriteBehindBuffer buffer;
+
+    @Mock
+    private NilRepository nilRepository;
+
+    @Captor
+    private ArgumentCaptor<List<TransactionAudit>> rows;
+
+    @TempDir
+    Path spillDir;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        buffer.objectMapper = new ObjectMapper().findAndRegisterModules();
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "spillDir", spillDir.toString());
+        // keep the timer out of the way so flushes happen only when the test asks
+        ReflectionTestUtils.setField(buffer, "flushIntervalMs", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        buffer.shutdown();
+    }
+
+    private static TransactionAudit audit(String txnId) {
+        TransactionAudit tx = new TransactionAudit();
+        tx.setMsgId("MSG123");
+        tx.setTxnId(txnId);
+        tx.setAmount(new BigDecimal("100.50"));
+        tx.setBatchDate(LocalDate.of(2025, 8, 28));
+        tx.setBatchTime(LocalDateTime.of(2025, 8, 28, 10, 15, 30));
+        return tx;
+    }
+
+    private static TransactionAudit audit(String msgId, String txnId) {
+        TransactionAudit tx = audit(txnId);
+        tx.setMsgId(msgId);
+        return tx;
+    }
+
+    private AuditWriteBehindBuffer restart() throws Exception {
+        AuditWriteBehindBuffer restarted = new AuditWriteBehindBuffer();
+        restarted.nilRepository = nilRepository;
+        restarted.objectMapper = buffer.objectMapper;
+        ReflectionTestUtils.setField(restarted, "enabled", true);
+        ReflectionTestUtils.setField(restarted, "spillDir", spillDir.toString());
+        ReflectionTestUtils.setField(restarted, "flushIntervalMs", 60_000L);
+        restarted.start();
+        return restarted;
+    }
+
+    private long spillFiles() throws Exception {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testWrite_CoalescesMessagesIntoOneFlush() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("TXN1")));
+        buffer.write(List.of(audit("TXN2"), audit("TXN3")));
+
+        verify(nilRepository, never()).saveAllTransactionAudits(anyList());
+        assertEquals(3, buffer.getQueueDepth());
+        assertEquals(1, spillFiles());
+
+        buffer.flush();
+
+        verify(nilRepository, times(1)).saveAllTransactionAudits(rows.capture());
+        assertEquals(3, rows.getValue().size());
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(1, buffer.getFlushCount());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testFlush_FailureKeepsRowsAndSpillForRetry() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("TXN1")));
+        doThrow(new RuntimeException("DB down")).doNothing().when(nilRepository).saveAllTransactionAudits(anyList());
+
+        assertThrows(RuntimeException.class, () -> buffer.flush());
+        assertEquals(1, buffer.getQueueDepth());
+        assertEquals(1, spillFiles());
+
+        buffer.flush();
+        verify(nilRepository, times(2)).saveAllTransactionAudits(anyList());
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testStart_ReplaysSpillLeftByCrash() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("TXN1"), audit("TXN2")));
+        // simulate a crash: the segment stays on disk and a new instance starts over it
+        ReflectionTestUtils.invokeMethod(buffer, "closeSegment");
+        Files.writeString(Files.list(spillDir).findFirst().orElseThrow(), "{\"txnId\":\"TO", StandardOpenOption.APPEND);
+
+        AuditWriteBehindBuffer restarted = restart();
+        assertEquals(2, restarted.getQueueDepth());
+
+        restarted.shutdown();
+
+        verify(nilRepository).saveAllTransactionAudits(rows.capture());
+        assertEquals(audit("TXN1"), rows.getValue().get(0));
+        assertEquals(audit("TXN2"), rows.getValue().get(1));
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testWrite_FullBufferWritesSynchronously() throws Exception {
+        ReflectionTestUtils.setField(buffer, "capacity", 1);
+        buffer.start();
+        buffer.write(List.of(audit("TXN1")));
+        buffer.write(List.of(audit("TXN2")));
+
+        verify(nilRepository).saveAllTransactionAudits(rows.capture());
+        assertEquals("TXN2", rows.getValue().get(0).getTxnId());
+        assertEquals(1, buffer.getQueueDepth());
+    }
+
+    @Test
+    void testShutdown_FlushesSynchronously() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("TXN1")));
+
+        buffer.shutdown();
+
+        verify(nilRepository).saveAllTransactionAudits(anyList());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testWrite_BatchSizeTriggersFlush() throws Exception {
+        ReflectionTestUtils.setField(buffer, "batchSize", 2);
+        buffer.start();
+        buffer.write(List.of(audit("TXN1"), audit("TXN2")));
+
+        verify(nilRepository, timeout(5000)).saveAllTransactionAudits(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStart_ReplaySkipsMessagesStoredBeforeTheCrash() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("MSG1", "TXN1"), audit("MSG1", "TXN2")));
+        buffer.write(List.of(audit("MSG2", "TXN3")));
+        // the group commit went through but the process died before deleting the segment
+        ReflectionTestUtils.invokeMethod(buffer, "closeSegment");
+        when(nilRepository.findAuditedMsgIds(anyCollection())).thenReturn(Set.of("MSG1"));
+
+        AuditWriteBehindBuffer restarted = restart();
+        restarted.shutdown();
+
+        verify(nilRepository).saveAllTransactionAudits(rows.capture());
+        assertEquals(List.of(audit("MSG2", "TXN3")), rows.getValue());
+        assertEquals(0, restarted.getQueueDepth());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testStart_ReplayOfFullyStoredSegmentOnlyDeletesIt() throws Exception {
+        buffer.start();
+        buffer.write(List.of(audit("MSG1", "TXN1")));
+        ReflectionTestUtils.invokeMethod(buffer, "closeSegment");
+        when(nilRepository.findAuditedMsgIds(anyCollection())).thenReturn(Set.of("MSG1"));
+
+        AuditWriteBehindBuffer restarted = restart();
+        restarted.shutdown();
+
+        verify(nilRepository, never()).saveAllTransactionAudits(anyList());
+        assertEquals(0, restarted.getQueueDepth());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void testFlush_RecordsDepthAndFlushMeters() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        buffer.meterRegistry = registry;
+        buffer.start();
+        buffer.write(List.of(audit("TXN1"), audit("TXN2")));
+
+        assertEquals(2.0, registry.get("camt59.audit.buffer.depth").gauge().value());
+
+        buffer.flush();
+
+        assertEquals(0.0, registry.get("camt59.audit.buffer.depth").gauge().value());
+        assertEquals(2.0, registry.get("camt59.audit.buffer.flushed").functionCounter().count());
+        assertEquals(1, registry.get("camt59.audit.buffer.flush").tag("outcome", "success").timer().count());
+
+        doThrow(new RuntimeException("db down")).when(nilRepository).saveAllTransactionAudits(anyList());
+        buffer.write(List.of(audit("TXN3")));
+        assertThrows(RuntimeException.class, buffer::flush);
+
+        assertEquals(1.0, registry.get("camt59.audit.buffer.depth").gauge().value());
+        assertEquals(1, registry.get("camt59.audit.buffer.flush").tag("outcome", "failure").timer().count());
+        reset(nilRepository);
+    }
+
+    @Test
+    void testFlush_RefusedSegmentIsSetAsideAfterMaxAttempts() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        buffer.meterRegistry = registry;
+        ReflectionTestUtils.setField(buffer, "maxAttempts", 2);
+        buffer.start();
+        doThrow(new DataIntegrityViolationException("duplicate key"))
+                .when(nilRepository).saveAllTransactionAudits(argThat(rows -> rows.contains(audit("TXN1"))));
+        buffer.write(List.of(audit("TXN1")));
+        assertThrows(DataIntegrityViolationException.class, buffer::flush);
+        buffer.write(List.of(audit("TXN2")));
+
+        buffer.flush();
+
+        verify(nilRepository).saveAllTransactionAudits(List.of(audit("TXN2")));
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(1, buffer.getFailedRows());
+        assertEquals(1.0, registry.get("camt59.audit.buffer.failed").functionCounter().count());
+        try (Stream<Path> files = Files.list(spillDir)) {
+            List<Path> left = files.toList();
+            assertEquals(1, left.size());
+            assertTrue(left.get(0).getFileName().toString().endsWith(".jsonl.failed"));
+        }
+
+        // a set-aside segment is not replayed on startup
+        restart().shutdown();
+        verify(nilRepository, times(3)).saveAllTransactionAudits(anyList());
+    }
+
+    @Test
+    void testFlush_UnreachableDatabaseNeverSetsSegmentAside() throws Exception {
+        ReflectionTestUtils.setField(buffer, "maxAttempts", 1);
+        buffer.start();
+        doThrow(new CannotGetJdbcConnectionException("connection refused"))
+                .when(nilRepository).saveAllTransactionAudits(anyList());
+        buffer.write(List.of(audit("TXN1")));
+
+        assertThrows(CannotGetJdbcConnectionException.class, buffer::flush);
+        assertThrows(CannotGetJdbcConnectionException.class, buffer::flush);
+
+        assertEquals(1, buffer.getQueueDepth());
+        assertEquals(0, buffer.getFailedRows());
+        assertEquals(1, spillFiles());
+        reset(nilRepository);
+    }
+}
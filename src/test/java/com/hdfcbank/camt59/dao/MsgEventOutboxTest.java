@@ -0,0 +1,173 @@
+package com.hdfcbank.camt59.dao;
+
+import com.hdfcbank.camt59.model.MsgEvent;
+import com.hdfcbank.camt59.model.MsgEventTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class MsgEventOutboxTest {
+
+    @InjectMocks
+    private MsgEventOutbox outbox;
+
+    @Mock
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testAppendReceived_OnePerMessageWithItsTotals() {
+        MsgEventTracker fc = tracker("DISPATCHER_FC", 3, "10.50");
+        MsgEventTracker eph = tracker("DISPATCHER_EPH", 2, "4.50");
+
+        outbox.appendReceived(List.of(fc, eph));
+
+        ArgumentCaptor<MapSqlParameterSource[]> batch = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(namedParameterJdbcTemplate).batchUpdate(anyString(), batch.capture());
+        MapSqlParameterSource[] rows = batch.getValue();
+        assertEquals(1, rows.length);
+        assertEquals("RECEIVED", rows[0].getValue("status"));
+        assertNull(rows[0].getValue("target"));
+        assertEquals(5, rows[0].getValue("item_count"));
+        assertEquals(new BigDecimal("15.00"), rows[0].getValue("amount"));
+    }
+
+    @Test
+    void testAppendSent_OnePerTracker() {
+        MsgEventTracker fc = tracker("DISPATCHER_FC", 3, "10.50");
+        MsgEventTracker eph = tracker("DISPATCHER_EPH", 2, "4.50");
+
+        outbox.appendSent(List.of(fc, eph));
+
+        ArgumentCaptor<MapSqlParameterSource[]> batch = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(namedParameterJdbcTemplate).batchUpdate(anyString(), batch.capture());
+        MapSqlParameterSource[] rows = batch.getValue();
+        assertEquals(List.of("SENT_TO_DISPATCHER", "SENT_TO_DISPATCHER"),
+                Arrays.stream(rows).map(row -> row.getValue("status")).toList());
+        assertEquals("DISPATCHER_EPH", rows[1].getValue("target"));
+        assertEquals(2, rows[1].getValue("item_count"));
+        assertEquals(rows[0].getValue("event_time"), rows[1].getValue("event_time"));
+    }
+
+    @Test
+    void testAppend_TruncatesReasonAndSkipsEmpty() {
+        outbox.append(List.of());
+        verifyNoInteractions(namedParameterJdbcTemplate);
+
+        outbox.append(List.of(new MsgEvent(null, "MSG1", "FAILED", null, null, null, null, "x".repeat(1000), null)));
+
+        ArgumentCaptor<MapSqlParameterSource[]> batch = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(namedParameterJdbcTemplate).batchUpdate(anyString(), batch.capture());
+        assertEquals(256, ((String) batch.getValue()[0].getValue("reason")).length());
+        assertNotNull(batch.getValue()[0].getValue("event_time"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_DeletesPublishedEventsAndReleasesTheRest() throws Exception {
+        // RETURNING hands the claimed rows back in no particular order
+        when(namedParameterJdbcTemplate.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of(event(3L), event(1L), event(2L)));
+        List<MsgEvent> handed = new ArrayList<>();
+
+        int published = outbox.relay(100, events -> {
+            handed.addAll(events);
+            return List.of(1L, 3L);
+        });
+
+        assertEquals(2, published);
+        assertEquals(List.of(1L, 2L, 3L), handed.stream().map(MsgEvent::getId).toList());
+        ArgumentCaptor<String> claimSql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> claimParams = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate).query(claimSql.capture(), claimParams.capture(), any(RowMapper.class));
+        assertTrue(claimSql.getValue().startsWith("UPDATE"));
+        assertTrue(claimSql.getValue().contains("SKIP LOCKED"));
+        assertEquals(100, claimParams.getValue().getValue("limit"));
+        assertEquals(120000L, claimParams.getValue().getValue("lease_ms"));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(2)).update(sql.capture(), params.capture());
+        assertTrue(sql.getAllValues().get(0).startsWith("DELETE"));
+        assertEquals(List.of(1L, 3L), params.getAllValues().get(0).getValue("ids"));
+        assertTrue(sql.getAllValues().get(1).contains("claimed_until = NULL"));
+        assertEquals(List.of(2L), params.getAllValues().get(1).getValue("ids"));
+
+        // the publishes run outside any transaction
+        Transactional tx = MsgEventOutbox.class.getMethod("relay", int.class, Function.class)
+                .getAnnotation(Transactional.class);
+        assertNull(tx);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_PublisherErrorReleasesEveryClaim() {
+        when(namedParameterJdbcTemplate.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of(event(1L), event(2L)));
+
+        assertThrows(IllegalStateException.class, () -> outbox.relay(100, events -> {
+            throw new IllegalStateException("broker down");
+        }));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate).update(sql.capture(), params.capture());
+        assertTrue(sql.getValue().contains("claimed_until = NULL"));
+        assertEquals(List.of(1L, 2L), params.getValue().getValue("ids"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_NothingClaimedOrPublished() {
+        when(namedParameterJdbcTemplate.query(anyString(), any(MapSqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(event(1L)));
+        Function<List<MsgEvent>, java.util.Collection<Long>> nonePublished = events -> List.of();
+
+        assertEquals(0, outbox.relay(100, events -> fail("nothing to publish")));
+        assertEquals(0, outbox.relay(100, nonePublished));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(namedParameterJdbcTemplate).update(sql.capture(), any(MapSqlParameterSource.class));
+        assertFalse(sql.getValue().startsWith("DELETE"));
+    }
+
+    private static MsgEventTracker tracker(String target, int items, String amount) {
+        MsgEventTracker tracker = new MsgEventTracker();
+        tracker.setMsgId("MSG123");
+        tracker.setTarget(target);
+        tracker.setStatus("PUBLISH_PENDING");
+        tracker.setMsgType("camt.059.001.06");
+        tracker.setOrgnlReqCount(5);
+        tracker.setIntermediateCount(items);
+        tracker.setConsolidateAmt(new BigDecimal(amount));
+        return tracker;
+    }
+
+    private static MsgEvent event(long id) {
+        return new MsgEvent(id, "MSG" + id, "RECEIVED", null, null, null, null, null, LocalDateTime.now());
+    }
+}
@@ -1,16 +1,35 @@
 package com.hdfcbank.camt59.dao;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.hdfcbank.camt59.model.Body;
+import com.hdfcbank.camt59.model.Header;
 import com.hdfcbank.camt59.model.MsgEventTracker;
+import com.hdfcbank.camt59.model.ReqPayload;
 import com.hdfcbank.camt59.model.TransactionAudit;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.util.PGobject;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -31,9 +50,19 @@ class NilRepositoryTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private PayloadStore payloadStore;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private Camt59Metrics metrics = new Camt59Metrics(registry);
+
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(nilRepository, "meterRegistry", registry);
+        nilRepository.initTxnTargetCache();
     }
 
     @Test
@@ -47,11 +76,140 @@ class NilRepositoryTest {
 
     @Test
     void testFindTargetByTxnIdFailure() {
+        // a timeout or lost connection is no longer reported as a missing row
         when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
-                .thenThrow(new RuntimeException("DB error"));
+                .thenThrow(new QueryTimeoutException("DB error"));
 
-        String result = nilRepository.findTargetByTxnId("TXN123");
-        assert result == null;
+        assertThrows(QueryTimeoutException.class, () -> nilRepository.findTargetByTxnId("TXN123"));
+    }
+
+    @Test
+    void testFindTargetByTxnIdNoOrManyRows() {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenThrow(new EmptyResultDataAccessException(1))
+                .thenThrow(new IncorrectResultSizeDataAccessException(1, 2));
+
+        assertNull(nilRepository.findTargetByTxnId("TXN123"));
+        assertNull(nilRepository.findTargetByTxnId("TXN123"));
+    }
+
+    @Test
+    void testFindTargetByTxnIdIsCached() {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn("DISPATCHED_FC");
+
+        assertEquals("DISPATCHED_FC", nilRepository.findTargetByTxnId("TXN123"));
+        assertEquals("DISPATCHED_FC", nilRepository.findTargetByTxnId("TXN123"));
+
+        verify(namedParameterJdbcTemplate, times(1)).queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class));
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "txnTargets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "txnTargets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testSaveAllTransactionAuditsInvalidatesTargetCache() {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn("DISPATCHED_FC")
+                .thenThrow(new IncorrectResultSizeDataAccessException(1, 2));
+        assertEquals("DISPATCHED_FC", nilRepository.findTargetByTxnId("TXN1"));
+        TransactionAudit replay = new TransactionAudit();
+        replay.setTxnId("TXN1");
+        replay.setTarget("DISPATCHED_EPH");
+
+        nilRepository.saveAllTransactionAudits(List.of(replay));
+
+        // the second row makes the target ambiguous, as the database says
+        assertNull(nilRepository.findTargetByTxnId("TXN1"));
+        verify(namedParameterJdbcTemplate, times(2)).queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class));
+    }
+
+    @Test
+    void testTargetCacheInvalidatedOnCommit() {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn("DISPATCHED_FC")
+                .thenThrow(new IncorrectResultSizeDataAccessException(1, 2));
+        assertEquals("DISPATCHED_FC", nilRepository.findTargetByTxnId("TXN1"));
+        TransactionAudit replay = new TransactionAudit();
+        replay.setTxnId("TXN1");
+        replay.setTarget("DISPATCHED_EPH");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            nilRepository.saveAllTransactionAudits(List.of(replay));
+            assertEquals("DISPATCHED_FC", nilRepository.findTargetByTxnId("TXN1"));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertNull(nilRepository.findTargetByTxnId("TXN1"));
+    }
+
+    @Test
+    void testFindTargetsByTxnIdsLoadsMissesInOneQuery() throws Exception {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn("DISPATCHED_FC");
+        nilRepository.findTargetByTxnId("TXN1");
+
+        java.sql.ResultSet rs = mock(java.sql.ResultSet.class);
+        when(rs.getString(1)).thenReturn("TXN2", "TXN3", "TXN3");
+        when(rs.getString(2)).thenReturn("DISPATCHED_EPH", "DISPATCHED_FC", "DISPATCHED_EPH");
+        java.sql.PreparedStatement ps = mock(java.sql.PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        java.sql.Array array = mock(java.sql.Array.class);
+        when(ps.getConnection()).thenReturn(connection);
+        when(connection.createArrayOf(eq("varchar"), any())).thenReturn(array);
+        doAnswer(inv -> {
+            ((org.springframework.jdbc.core.PreparedStatementSetter) inv.getArgument(1)).setValues(ps);
+            org.springframework.jdbc.core.RowCallbackHandler handler = inv.getArgument(2);
+            handler.processRow(rs); // TXN2
+            handler.processRow(rs); // TXN3
+            handler.processRow(rs); // TXN3 again: ambiguous
+            return null;
+        }).when(jdbcTemplate).query(contains("ANY(?)"), any(org.springframework.jdbc.core.PreparedStatementSetter.class),
+                any(org.springframework.jdbc.core.RowCallbackHandler.class));
+
+        Map<String, String> targets = nilRepository.findTargetsByTxnIds(List.of("TXN1", "TXN2", "TXN3", "TXN2"));
+
+        assertEquals(Map.of("TXN1", "DISPATCHED_FC", "TXN2", "DISPATCHED_EPH"), targets);
+        ArgumentCaptor<Object[]> ids = ArgumentCaptor.forClass(Object[].class);
+        verify(connection).createArrayOf(eq("varchar"), ids.capture());
+        assertArrayEquals(new Object[]{"TXN2", "TXN3"}, ids.getValue());
+        verify(ps).setArray(1, array);
+        assertEquals("DISPATCHED_EPH", nilRepository.findTargetByTxnId("TXN2"));
+    }
+
+    @Test
+    void testFindTargetsByTxnIdsAllCached() {
+        when(namedParameterJdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(String.class)))
+                .thenReturn("DISPATCHED_FC");
+        nilRepository.findTargetByTxnId("TXN1");
+
+        assertEquals(Map.of("TXN1", "DISPATCHED_FC"), nilRepository.findTargetsByTxnIds(List.of("TXN1")));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testFindAuditedMsgIds() throws SQLException {
+        java.sql.ResultSet rs = mock(java.sql.ResultSet.class);
+        when(rs.getString(1)).thenReturn("MSG1");
+        java.sql.PreparedStatement ps = mock(java.sql.PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        when(ps.getConnection()).thenReturn(connection);
+        doAnswer(inv -> {
+            ((org.springframework.jdbc.core.PreparedStatementSetter) inv.getArgument(1)).setValues(ps);
+            ((org.springframework.jdbc.core.RowCallbackHandler) inv.getArgument(2)).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(contains("transaction_audit WHERE msg_id = ANY(?)"),
+                any(org.springframework.jdbc.core.PreparedStatementSetter.class),
+                any(org.springframework.jdbc.core.RowCallbackHandler.class));
+
+        assertEquals(Set.of("MSG1"), nilRepository.findAuditedMsgIds(List.of("MSG1", "MSG2", "MSG1")));
+        ArgumentCaptor<Object[]> ids = ArgumentCaptor.forClass(Object[].class);
+        verify(connection).createArrayOf(eq("varchar"), ids.capture());
+        assertArrayEquals(new Object[]{"MSG1", "MSG2"}, ids.getValue());
+
+        assertTrue(nilRepository.findAuditedMsgIds(List.of()).isEmpty());
     }
 
     @Test
@@ -98,4 +256,251 @@ class NilRepositoryTest {
         nilRepository.saveAllTransactionAudits(List.of(audit));
         verify(namedParameterJdbcTemplate).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
     }
+
+    @Test
+    void testSaveAllTransactionAudits_UsesCopyAtThreshold() throws Exception {
+        ReflectionTestUtils.setField(nilRepository, "copyThreshold", 2);
+        TransactionAudit first = new TransactionAudit();
+        first.setMsgId("MSG123");
+        first.setTxnId("TXN1");
+        first.setAmount(new BigDecimal("100.50"));
+        TransactionAudit second = new TransactionAudit();
+        second.setMsgId("MSG123");
+        second.setTxnId("TXN2");
+
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        CopyIn copyIn = mock(CopyIn.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.endCopy()).thenReturn(2L);
+        when(jdbcTemplate.execute(anyConnectionCallback()))
+                .thenAnswer(inv -> ((ConnectionCallback<?>) inv.getArgument(0)).doInConnection(connection));
+
+        nilRepository.saveAllTransactionAudits(List.of(first, second));
+
+        ArgumentCaptor<byte[]> bytes = ArgumentCaptor.forClass(byte[].class);
+        verify(copyIn).writeToCopy(bytes.capture(), eq(0), anyInt());
+        String csv = new String(bytes.getValue(), StandardCharsets.UTF_8);
+        assertEquals(2, csv.split("\n").length);
+        assertTrue(csv.startsWith("\"MSG123\",\"TXN1\","));
+        verify(copyManager).copyIn(startsWith("COPY network_il.transaction_audit"));
+        verify(copyIn).endCopy();
+        verify(namedParameterJdbcTemplate, never()).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
+    }
+
+    @Test
+    void testSaveAllTransactionAudits_CopyFailureCancelsCopy() throws Exception {
+        ReflectionTestUtils.setField(nilRepository, "copyThreshold", 1);
+        TransactionAudit audit = new TransactionAudit();
+        audit.setTxnId("TXN1");
+
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        CopyIn copyIn = mock(CopyIn.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.isActive()).thenReturn(true);
+        doThrow(new SQLException("broken pipe")).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        when(jdbcTemplate.execute(anyConnectionCallback()))
+                .thenAnswer(inv -> ((ConnectionCallback<?>) inv.getArgument(0)).doInConnection(connection));
+
+        assertThrows(SQLException.class, () -> nilRepository.saveAllTransactionAudits(List.of(audit)));
+        verify(copyIn).cancelCopy();
+    }
+
+    @Test
+    void testSaveMessage_WritesTrackersAndAuditsInOneTransaction() throws Exception {
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        fc.setTarget("DISPATCHER_FC");
+        MsgEventTracker eph = new MsgEventTracker();
+        eph.setMsgId("MSG123");
+        eph.setTarget("DISPATCHER_EPH");
+        TransactionAudit audit = new TransactionAudit();
+        audit.setTxnId("TXN1");
+
+        nilRepository.saveMessage(List.of(fc, eph), List.of(audit));
+
+        verify(namedParameterJdbcTemplate, times(2)).update(anyString(), any(MapSqlParameterSource.class));
+        verify(namedParameterJdbcTemplate).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
+
+        Transactional tx = NilRepository.class.getMethod("saveMessage", List.class, List.class)
+                .getAnnotation(Transactional.class);
+        assertNotNull(tx);
+        assertArrayEquals(new Class<?>[]{Exception.class}, tx.rollbackFor());
+    }
+
+    @Test
+    void testSaveMessage_NoAuditsSkipsBatch() throws Exception {
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+
+        nilRepository.saveMessage(List.of(fc), List.of());
+
+        verify(namedParameterJdbcTemplate).update(anyString(), any(MapSqlParameterSource.class));
+        verify(namedParameterJdbcTemplate, never()).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
+    }
+
+    @Test
+    void testSaveMessage_TimesTrackerInsertAndAuditBatch() throws Exception {
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        TransactionAudit audit = new TransactionAudit();
+        audit.setTxnId("TXN1");
+        when(namedParameterJdbcTemplate.batchUpdate(anyString(), any(MapSqlParameterSource[].class)))
+                .thenThrow(new RuntimeException("DB down"));
+
+        assertThrows(RuntimeException.class, () -> nilRepository.saveMessage(List.of(fc), List.of(audit)));
+
+        assertEquals(1, registry.get("camt59.stage").tag("stage", "tracker_insert").tag("target", "none").tag("outcome", "success").timer().count());
+        assertEquals(1, registry.get("camt59.stage").tag("stage", "audit_batch").tag("target", "none").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void testSaveMessage_PayloadStoreWritesSharedOriginalOnce() throws Exception {
+        when(payloadStore.isEnabled()).thenReturn(true);
+        when(payloadStore.store("CBS<xml>data</xml>")).thenReturn("HASH1");
+        String originalReq = "CBS<xml>data</xml>";
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        fc.setOrgnlReq(originalReq);
+        fc.setTransformedJsonReq(new ReqPayload(new Header(), body("<xml>data</xml>")));
+        MsgEventTracker eph = new MsgEventTracker();
+        eph.setMsgId("MSG123");
+        eph.setOrgnlReq(originalReq);
+
+        nilRepository.saveMessage(List.of(fc, eph), List.of());
+
+        verify(payloadStore, times(1)).store(originalReq);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(2)).update(sql.capture(), params.capture());
+        assertTrue(sql.getValue().contains(":payload_ref"));
+        assertNull(params.getAllValues().get(0).getValue("original_req"));
+        assertEquals("HASH1", params.getAllValues().get(0).getValue("payload_ref"));
+        String json = ((PGobject) params.getAllValues().get(0).getValue("transformed_json_req")).getValue();
+        assertFalse(json.contains("<xml>"));
+        assertEquals("<xml>data</xml>", fc.getTransformedJsonReq().getBody().getPayload());
+    }
+
+    @Test
+    void testSaveMessage_PayloadStoreDisabledKeepsOriginalInline() throws Exception {
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        fc.setOrgnlReq("CBS<xml>data</xml>");
+
+        nilRepository.saveMessage(List.of(fc), List.of());
+
+        verify(payloadStore, never()).store(any());
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate).update(sql.capture(), params.capture());
+        assertFalse(sql.getValue().contains("payload_ref"));
+        assertEquals("CBS<xml>data</xml>", params.getValue().getValue("original_req"));
+    }
+
+    private static Body body(String xml) {
+        Body body = new Body();
+        body.setPayload(xml);
+        return body;
+    }
+
+    @Test
+    void testExistsByMsgId() {
+        when(namedParameterJdbcTemplate.queryForObject(contains("msg_event_tracker"), any(MapSqlParameterSource.class), eq(Boolean.class)))
+                .thenReturn(true, (Boolean) null);
+
+        assertTrue(nilRepository.existsByMsgId("MSG123"));
+        assertFalse(nilRepository.existsByMsgId("MSG456"));
+
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(2)).queryForObject(anyString(), params.capture(), eq(Boolean.class));
+        assertEquals("MSG123", params.getAllValues().get(0).getValue("msgId"));
+    }
+
+    @Test
+    void testSaveMessage_AppendsTrackerEventsToOutboxWhenFeedEnabled() throws Exception {
+        MsgEventOutbox outbox = mock(MsgEventOutbox.class);
+        when(outbox.isEnabled()).thenReturn(true);
+        ReflectionTestUtils.setField(nilRepository, "eventOutbox", outbox);
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+
+        nilRepository.saveMessage(List.of(fc), List.of());
+
+        InOrder order = inOrder(namedParameterJdbcTemplate, outbox);
+        order.verify(namedParameterJdbcTemplate).update(anyString(), any(MapSqlParameterSource.class));
+        order.verify(outbox).appendReceived(List.of(fc));
+        verify(outbox, never()).appendSent(anyList());
+    }
+
+    @Test
+    void testIsPublished_NullWithoutRowsFalseWhilePending() {
+        when(namedParameterJdbcTemplate.queryForObject(contains("bool_and"), any(MapSqlParameterSource.class), eq(Boolean.class)))
+                .thenReturn(true, false, null);
+
+        assertEquals(Boolean.TRUE, nilRepository.isPublished("MSG1"));
+        assertEquals(Boolean.FALSE, nilRepository.isPublished("MSG2"));
+        assertNull(nilRepository.isPublished("MSG3"));
+
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(3)).queryForObject(anyString(), params.capture(), eq(Boolean.class));
+        assertEquals("PUBLISH_PENDING", params.getValue().getValue("pending"));
+    }
+
+    @Test
+    void testMarkSent_UpdatesOnlyPendingRowsAndAppendsSentEvents() {
+        MsgEventOutbox outbox = mock(MsgEventOutbox.class);
+        when(outbox.isEnabled()).thenReturn(true);
+        ReflectionTestUtils.setField(nilRepository, "eventOutbox", outbox);
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        fc.setTarget("DISPATCHER_FC");
+        fc.setStatus("PUBLISH_PENDING");
+        when(namedParameterJdbcTemplate.batchUpdate(anyString(), any(MapSqlParameterSource[].class))).thenReturn(new int[]{1});
+
+        nilRepository.markSent(List.of(fc));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource[]> batch = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        InOrder order = inOrder(namedParameterJdbcTemplate, outbox);
+        order.verify(namedParameterJdbcTemplate).batchUpdate(sql.capture(), batch.capture());
+        order.verify(outbox).appendSent(List.of(fc));
+        assertTrue(sql.getValue().startsWith("UPDATE network_il.msg_event_tracker"));
+        assertTrue(sql.getValue().contains("status = :pending"));
+        assertEquals("DISPATCHER_FC", batch.getValue()[0].getValue("target"));
+        assertEquals("SENT_TO_DISPATCHER", batch.getValue()[0].getValue("status"));
+        assertEquals("SENT_TO_DISPATCHER", fc.getStatus());
+    }
+
+    @Test
+    void testMarkSent_NoEventForRowsAnotherCopyMovedFirst() {
+        MsgEventOutbox outbox = mock(MsgEventOutbox.class);
+        when(outbox.isEnabled()).thenReturn(true);
+        ReflectionTestUtils.setField(nilRepository, "eventOutbox", outbox);
+        MsgEventTracker fc = new MsgEventTracker();
+        fc.setMsgId("MSG123");
+        fc.setTarget("DISPATCHER_FC");
+        MsgEventTracker eph = new MsgEventTracker();
+        eph.setMsgId("MSG123");
+        eph.setTarget("DISPATCHER_EPH");
+        when(namedParameterJdbcTemplate.batchUpdate(anyString(), any(MapSqlParameterSource[].class)))
+                .thenReturn(new int[]{0, 1})
+                .thenReturn(new int[]{0, 0});
+
+        nilRepository.markSent(List.of(fc, eph));
+        nilRepository.markSent(List.of(fc, eph));
+
+        verify(outbox).appendSent(List.of(eph));
+        verifyNoMoreInteractions(ignoreStubs(outbox));
+    }
+
+    private static <T> ConnectionCallback<T> anyConnectionCallback() {
+        return any();
+    }
 }
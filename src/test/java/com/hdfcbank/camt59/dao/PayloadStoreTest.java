@@ -0,0 +1,114 @@
+package com.hdfcbank.camt59.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PayloadStoreTest {
+
+    @InjectMocks
+    private PayloadStore payloadStore;
+
+    @Mock
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private static final String XML = "CBS<RequestPayload>" + "<Item>0123456789</Item>".repeat(500) + "</RequestPayload>";
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testStore_KeyedBySha256AndIdempotent() {
+        String hash = payloadStore.store(XML);
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, payloadStore.store(new String(XML)));
+        assertNotEquals(hash, payloadStore.store(XML + " "));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(3)).update(sql.capture(), params.capture());
+        assertTrue(sql.getValue().contains("ON CONFLICT (payload_hash) DO NOTHING"));
+        MapSqlParameterSource first = params.getAllValues().get(0);
+        assertEquals("NONE", first.getValue("codec"));
+        assertArrayEquals(XML.getBytes(StandardCharsets.UTF_8), (byte[]) first.getValue("payload"));
+    }
+
+    @Test
+    void testStore_DeflatesLargePayloads() {
+        ReflectionTestUtils.setField(payloadStore, "codec", PayloadStore.Codec.DEFLATE);
+        ReflectionTestUtils.setField(payloadStore, "compressMinBytes", 1024);
+
+        payloadStore.store(XML);
+        payloadStore.store("<small/>");
+
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(namedParameterJdbcTemplate, times(2)).update(anyString(), params.capture());
+        MapSqlParameterSource large = params.getAllValues().get(0);
+        byte[] stored = (byte[]) large.getValue("payload");
+        assertEquals("DEFLATE", large.getValue("codec"));
+        assertEquals(XML.length(), large.getValue("original_size"));
+        assertTrue(stored.length < XML.length() / 10);
+        assertEquals(XML, PayloadStore.decode(PayloadStore.Codec.DEFLATE, stored));
+        assertEquals("NONE", params.getAllValues().get(1).getValue("codec"));
+    }
+
+    @Test
+    void testLoad_DecodesStoredPayload() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("codec")).thenReturn("DEFLATE");
+        when(rs.getBytes("payload")).thenReturn(PayloadStore.deflate(XML.getBytes(StandardCharsets.UTF_8)));
+        when(namedParameterJdbcTemplate.query(anyString(), any(MapSqlParameterSource.class), anyRowMapper()))
+                .thenAnswer(inv -> List.of(inv.<RowMapper<String>>getArgument(2).mapRow(rs, 0)));
+
+        assertEquals(XML, payloadStore.load("HASH1"));
+    }
+
+    @Test
+    void testLoad_MissingHash() {
+        when(namedParameterJdbcTemplate.query(anyString(), any(MapSqlParameterSource.class), anyRowMapper()))
+                .thenReturn(List.of());
+
+        assertNull(payloadStore.load("HASH1"));
+    }
+
+    @Test
+    void testFindOriginalReq_InlineOrByReference() {
+        when(namedParameterJdbcTemplate.query(contains("msg_event_tracker"), any(MapSqlParameterSource.class), anyRowMapper()))
+                .thenReturn(Collections.singletonList((Object) new String[]{"CBS<inline/>", null}))
+                .thenReturn(Collections.singletonList((Object) new String[]{null, "HASH1"}))
+                .thenReturn(List.of());
+        when(namedParameterJdbcTemplate.query(contains("msg_payload"), any(MapSqlParameterSource.class), anyRowMapper()))
+                .thenReturn(List.<Object>of("CBS<stored/>"));
+
+        assertEquals("CBS<inline/>", payloadStore.findOriginalReq("MSG1"));
+        assertEquals("CBS<stored/>", payloadStore.findOriginalReq("MSG2"));
+        assertNull(payloadStore.findOriginalReq("MSG3"));
+        verify(namedParameterJdbcTemplate, times(1)).query(eq("SELECT codec, payload FROM network_il.msg_payload WHERE payload_hash = :payload_hash"),
+                any(MapSqlParameterSource.class), anyRowMapper());
+    }
+
+    private static <T> RowMapper<T> anyRowMapper() {
+        return any();
+    }
+}
@@ -0,0 +1,48 @@
+package com.hdfcbank.camt59.dao;
+
+import com.hdfcbank.camt59.model.TransactionAudit;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionAuditCsvTest {
+
+    @Test
+    void testAppendRow_AllColumns() {
+        TransactionAudit tx = new TransactionAudit();
+        tx.setMsgId("MSG123");
+        tx.setTxnId("TXN1");
+        tx.setEndToEndId("E2E1");
+        tx.setSource("SFMS");
+        tx.setTarget("DISPATCHED_FC");
+        tx.setFlowType("INWARD");
+        tx.setMsgType("camt.059.001.06");
+        tx.setAmount(new BigDecimal("1E+3"));
+        tx.setBatchDate(LocalDate.of(2025, 8, 28));
+        tx.setBatchTime(LocalDateTime.of(2025, 8, 28, 10, 15, 30));
+        LocalDateTime now = LocalDateTime.of(2025, 8, 28, 11, 0, 0, 123000000);
+
+        StringBuilder out = new StringBuilder();
+        TransactionAuditCsv.appendRow(out, tx, now);
+
+        assertEquals("\"MSG123\",\"TXN1\",\"E2E1\",\" \",,\"SFMS\",\"DISPATCHED_FC\",\"INWARD\",\"camt.059.001.06\","
+                + "1000,\"INPROGRESS\",1,2025-08-28,2025-08-28T10:15:30,2025-08-28T11:00:00.123,2025-08-28T11:00:00.123\n",
+                out.toString());
+    }
+
+    @Test
+    void testAppendRow_QuotesAndEmptyStrings() {
+        TransactionAudit tx = new TransactionAudit();
+        tx.setMsgId("A\"B,C\nD");
+        tx.setTxnId("");
+
+        StringBuilder out = new StringBuilder();
+        TransactionAuditCsv.appendRow(out, tx, LocalDateTime.of(2025, 1, 1, 0, 0));
+
+        assertTrue(out.toString().startsWith("\"A\"\"B,C\nD\",\"\",,\" \","));
+    }
+}
@@ -0,0 +1,236 @@
+package com.hdfcbank.camt59.kafkaproducer;
+
+import io.dapr.client.DaprPreviewClient;
+import io.dapr.client.domain.BulkPublishEntry;
+import io.dapr.client.domain.BulkPublishRequest;
+import io.dapr.client.domain.BulkPublishResponse;
+import io.dapr.client.domain.BulkPublishResponseFailedEntry;
+import io.dapr.config.Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DaprBulkPublisherTest {
+
+    private static final String PUBSUB = "kafka-pubsub";
+
+    private DaprBulkPublisher publisher;
+    private DaprPreviewClient client;
+    private SimpleMeterRegistry registry;
+    private final List<BulkPublishRequest<String>> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        client = mock(DaprPreviewClient.class);
+        when(client.publishEvents(any(BulkPublishRequest.class))).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return Mono.just(new BulkPublishResponse<String>());
+        });
+        registry = new SimpleMeterRegistry();
+        publisher = new DaprBulkPublisher();
+        ReflectionTestUtils.setField(publisher, "client", client);
+        ReflectionTestUtils.setField(publisher, "meterRegistry", registry);
+        ReflectionTestUtils.setField(publisher, "enabled", true);
+        ReflectionTestUtils.setField(publisher, "maxEntries", 3);
+        ReflectionTestUtils.setField(publisher, "maxBytes", 1000L);
+        ReflectionTestUtils.setField(publisher, "lingerMs", 60000L);
+        publisher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.shutdown();
+    }
+
+    @Test
+    void testPublish_FlushesWhenMaxEntriesReached() {
+        Mono<Void> first = publisher.publish(PUBSUB, "fc", "m1", "id1").cache();
+        Mono<Void> second = publisher.publish(PUBSUB, "fc", "m2", "id2").cache();
+        first.subscribe();
+        second.subscribe();
+        assertTrue(sent.isEmpty());
+
+        publisher.publish(PUBSUB, "fc", "m3", "id3").block(Duration.ofSeconds(5));
+
+        assertEquals(1, sent.size());
+        BulkPublishRequest<String> request = sent.get(0);
+        assertEquals(PUBSUB, request.getPubsubName());
+        assertEquals("fc", request.getTopic());
+        assertEquals(List.of("m1", "m2", "m3"), request.getEntries().stream().map(BulkPublishEntry::getEvent).toList());
+        assertEquals(List.of("id1", "id2", "id3"),
+                request.getEntries().stream().map(entry -> entry.getMetadata().get("partitionKey")).toList());
+        assertNull(first.block(Duration.ofSeconds(5)));
+        assertNull(second.block(Duration.ofSeconds(5)));
+        assertEquals(1, registry.get("camt59.publish.batch.flushes").tags("topic", "fc", "trigger", "count").counter().count());
+        assertEquals(3, registry.get("camt59.publish.batch.size").tag("topic", "fc").summary().max());
+    }
+
+    @Test
+    void testPublish_FlushesWhenMaxBytesReached() {
+        publisher.publish(PUBSUB, "eph", "x".repeat(400), "id1").subscribe();
+        publisher.publish(PUBSUB, "eph", "x".repeat(700), "id2").block(Duration.ofSeconds(5));
+
+        assertEquals(1, sent.size());
+        assertEquals(2, sent.get(0).getEntries().size());
+        assertEquals(1, registry.get("camt59.publish.batch.flushes").tags("topic", "eph", "trigger", "bytes").counter().count());
+        assertEquals(1100, registry.get("camt59.publish.batch.bytes").tag("topic", "eph").summary().totalAmount());
+    }
+
+    @Test
+    void testPublish_FlushesAfterLinger() {
+        publisher.shutdown();
+        ReflectionTestUtils.setField(publisher, "lingerMs", 20L);
+        publisher.init();
+
+        publisher.publish(PUBSUB, "dispatcher", "m1", "id1").block(Duration.ofSeconds(5));
+
+        assertEquals(1, sent.size());
+        assertEquals(1, registry.get("camt59.publish.batch.flushes").tags("topic", "dispatcher", "trigger", "linger").counter().count());
+        assertTrue(registry.get("camt59.publish.batch.linger").tag("topic", "dispatcher").timer()
+                .totalTime(java.util.concurrent.TimeUnit.MILLISECONDS) >= 15);
+    }
+
+    @Test
+    void testPublish_TopicsAreBatchedSeparately() {
+        publisher.publish(PUBSUB, "fc", "f1", "id1").subscribe();
+        publisher.publish(PUBSUB, "eph", "e1", "id1").subscribe();
+        publisher.publish(PUBSUB, "fc", "f2", "id2").subscribe();
+        assertTrue(sent.isEmpty());
+
+        publisher.shutdown();
+
+        assertEquals(2, sent.size());
+        BulkPublishRequest<String> fc = sent.stream().filter(r -> r.getTopic().equals("fc")).findFirst().orElseThrow();
+        assertEquals(2, fc.getEntries().size());
+        assertEquals(2, registry.find("camt59.publish.batch.flushes").tag("trigger", "shutdown").counters()
+                .stream().mapToDouble(c -> c.count()).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublish_FailedEntriesFailOnlyTheirCallers() {
+        when(client.publishEvents(any(BulkPublishRequest.class))).thenAnswer(invocation -> {
+            BulkPublishRequest<String> request = invocation.getArgument(0);
+            BulkPublishEntry<String> rejected = request.getEntries().get(1);
+            return Mono.just(new BulkPublishResponse<>(List.of(new BulkPublishResponseFailedEntry<>(rejected, "broker down"))));
+        });
+
+        Mono<Void> first = publisher.publish(PUBSUB, "fc", "m1", "id1").cache();
+        Mono<Void> second = publisher.publish(PUBSUB, "fc", "m2", "id2").cache();
+        first.subscribe(v -> { }, e -> { });
+        second.subscribe(v -> { }, e -> { });
+        publisher.publish(PUBSUB, "fc", "m3", "id3").block(Duration.ofSeconds(5));
+
+        assertNull(first.block(Duration.ofSeconds(5)));
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> second.block(Duration.ofSeconds(5)));
+        assertTrue(error.getMessage().contains("broker down"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublish_RequestErrorFailsEveryEntry() {
+        when(client.publishEvents(any(BulkPublishRequest.class))).thenReturn(Mono.error(new RuntimeException("sidecar down")));
+
+        Mono<Void> first = publisher.publish(PUBSUB, "fc", "m1", "id1").cache();
+        first.subscribe(v -> { }, e -> { });
+        publisher.publish(PUBSUB, "fc", "m2", "id2").subscribe(v -> { }, e -> { });
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> publisher.publish(PUBSUB, "fc", "m3", "id3").block(Duration.ofSeconds(5)));
+        assertEquals("sidecar down", error.getMessage());
+        assertThrows(RuntimeException.class, () -> first.block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublish_EntriesLeaveContentTypeToTheClientSerializer() {
+        publisher.publish(PUBSUB, "fc", "m1", "id1").subscribe();
+        publisher.shutdown();
+
+        ArgumentCaptor<BulkPublishRequest<String>> request = ArgumentCaptor.forClass(BulkPublishRequest.class);
+        verify(client).publishEvents(request.capture());
+        assertNull(request.getValue().getEntries().get(0).getContentType());
+    }
+
+    @Test
+    void testPublish_CancelledEventIsNotSent() {
+        Disposable disposed = publisher.publish(PUBSUB, "fc", "m1", "id1").subscribe(v -> { }, e -> { });
+        disposed.dispose();
+        // the caller gives up while the batch is still filling
+        publisher.publish(PUBSUB, "fc", "m2", "id2")
+                .timeout(Duration.ofMillis(20))
+                .onErrorResume(e -> Mono.empty())
+                .block(Duration.ofSeconds(5));
+
+        publisher.publish(PUBSUB, "fc", "m3", "id3").subscribe();
+        publisher.publish(PUBSUB, "fc", "m4", "id4").subscribe();
+        assertTrue(sent.isEmpty());
+        assertNull(publisher.publish(PUBSUB, "fc", "m5", "id5").block(Duration.ofSeconds(5)));
+
+        assertEquals(1, sent.size());
+        assertEquals(List.of("m3", "m4", "m5"), sent.get(0).getEntries().stream().map(BulkPublishEntry::getEvent).toList());
+        assertEquals(List.of("0", "1", "2"), sent.get(0).getEntries().stream().map(BulkPublishEntry::getEntryId).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testShutdown_WaitsForRequestsInFlightBeforeClosing() throws Exception {
+        AtomicBoolean answered = new AtomicBoolean();
+        when(client.publishEvents(any(BulkPublishRequest.class))).thenReturn(
+                Mono.delay(Duration.ofMillis(200)).thenReturn(new BulkPublishResponse<String>()));
+        doAnswer(invocation -> {
+            assertTrue(answered.get(), "client closed before the bulk request was answered");
+            return null;
+        }).when(client).close();
+        publisher.publish(PUBSUB, "fc", "m1", "id1").subscribe(v -> { }, e -> { }, () -> answered.set(true));
+
+        publisher.shutdown();
+
+        assertTrue(answered.get());
+        verify(client).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testShutdown_WaitIsBoundedByTheTimeout() throws Exception {
+        ReflectionTestUtils.setField(publisher, "publishTimeoutMs", 100L);
+        when(client.publishEvents(any(BulkPublishRequest.class))).thenReturn(Mono.never());
+        Mono<Void> stuck = publisher.publish(PUBSUB, "fc", "m1", "id1").cache();
+        stuck.subscribe(v -> { }, e -> { });
+
+        long start = System.nanoTime();
+        publisher.shutdown();
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 5000);
+        assertThrows(RuntimeException.class, () -> stuck.block(Duration.ofSeconds(5)));
+        verify(client).close();
+    }
+
+    @Test
+    void testClientProperties_OnlyTheSettingsGiven() {
+        assertTrue(publisher.clientProperties().isEmpty());
+
+        ReflectionTestUtils.setField(publisher, "sidecarIp", "10.0.0.5");
+        ReflectionTestUtils.setField(publisher, "grpcPort", "50001");
+        ReflectionTestUtils.setField(publisher, "apiTimeoutMs", " 3000 ");
+
+        assertEquals(Map.of(Properties.SIDECAR_IP, "10.0.0.5", Properties.GRPC_PORT, "50001", Properties.TIMEOUT, "3000"),
+                publisher.clientProperties());
+    }
+}
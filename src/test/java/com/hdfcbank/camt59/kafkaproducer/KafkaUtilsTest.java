@@ -2,12 +2,22 @@ package com.hdfcbank.camt59.kafkaproducer;
 
 import com.hdfcbank.messageconnect.config.PubSubOptions;
 import com.hdfcbank.messageconnect.dapr.producer.DaprProducer;
+import com.hdfcbank.camt59.model.PublishResult;
 import com.hdfcbank.camt59.utils.Constants;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 
@@ -22,6 +32,7 @@ class KafkaUtilsTest {
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
+        kafkaUtils.init();
     }
 
     @Test
@@ -53,4 +64,111 @@ class KafkaUtilsTest {
 
 //        verify(daprProducer, times(1)).invokeDaprPublishEvent(any(PubSubOptions.class));
     }
+
+    @Test
+    void testPublishAsyncSuccess() {
+        when(daprProducer.invokeDaprPublishEvent(any(PubSubOptions.class)))
+                .thenReturn(Mono.just("Published"));
+
+        PublishResult result = kafkaUtils.publishAsync("Test Message", "test-topic", "msg123").block();
+
+        assertTrue(result.isPublished());
+        assertEquals("test-topic", result.getTopic());
+        assertEquals("msg123", result.getMsgId());
+    }
+
+    @Test
+    void testPublishAsyncErrorIsReported() {
+        when(daprProducer.invokeDaprPublishEvent(any(PubSubOptions.class)))
+                .thenReturn(Mono.error(new RuntimeException("Kafka error")));
+
+        PublishResult result = kafkaUtils.publishAsync("Test Message", "test-topic", "msg123").block();
+
+        assertFalse(result.isPublished());
+        assertTrue(result.getError().contains("Kafka error"));
+    }
+
+    @Test
+    void testPublishAsyncTimeout() {
+        ReflectionTestUtils.setField(kafkaUtils, "publishTimeoutMs", 50L);
+        when(daprProducer.invokeDaprPublishEvent(any(PubSubOptions.class)))
+                .thenReturn(Mono.never());
+
+        PublishResult result = kafkaUtils.publishAsync("Test Message", "test-topic", "msg123").block();
+
+        assertFalse(result.isPublished());
+    }
+
+    @Test
+    void testPublishAsyncBoundsInFlight() {
+        ReflectionTestUtils.setField(kafkaUtils, "maxInFlight", 1);
+        kafkaUtils.init();
+        Sinks.One<String> pending = Sinks.one();
+        when(daprProducer.invokeDaprPublishEvent(any(PubSubOptions.class)))
+                .thenReturn(pending.asMono())
+                .thenReturn(Mono.just("Published"));
+
+        Mono<PublishResult> first = kafkaUtils.publishAsync("m1", "test-topic", "msg1").cache();
+        first.subscribe();
+
+        // the second caller gives up waiting for a slot well before the first publish times out
+        ReflectionTestUtils.setField(kafkaUtils, "publishTimeoutMs", 50L);
+
+        PublishResult second = kafkaUtils.publishAsync("m2", "test-topic", "msg2").block();
+        assertFalse(second.isPublished());
+        verify(daprProducer, times(1)).invokeDaprPublishEvent(any(PubSubOptions.class));
+
+        pending.tryEmitValue("Published");
+        assertTrue(first.block().isPublished());
+        assertTrue(kafkaUtils.publishAsync("m3", "test-topic", "msg3").block().isPublished());
+    }
+
+    @Test
+    void testPublishAsyncWaitsForASlotWithoutBlockingTheWorker() throws Exception {
+        ReflectionTestUtils.setField(kafkaUtils, "maxInFlight", 2);
+        kafkaUtils.init();
+        Sinks.One<String> pending = Sinks.one();
+        when(daprProducer.invokeDaprPublishEvent(any(PubSubOptions.class)))
+                .thenReturn(pending.asMono())
+                .thenReturn(pending.asMono())
+                .thenReturn(Mono.just("Published"));
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        List<PublishResult> results = new CopyOnWriteArrayList<>();
+        try {
+            // two publishes hold the slots, eight more queue behind them, all subscribed on one worker
+            for (int i = 0; i < 10; i++) {
+                String msgId = "msg" + i;
+                worker.execute(() -> kafkaUtils.publishAsync("m", "test-topic", msgId).subscribe(results::add));
+            }
+            // the worker is free again at once; with a blocking wait it would be stuck for publish.timeout-ms
+            assertTrue(worker.submit(() -> true).get(1, TimeUnit.SECONDS));
+            assertTrue(results.isEmpty());
+            verify(daprProducer, times(2)).invokeDaprPublishEvent(any(PubSubOptions.class));
+
+            pending.tryEmitValue("Published");
+
+            verify(daprProducer, timeout(5000).times(10)).invokeDaprPublishEvent(any(PubSubOptions.class));
+            assertEquals(10, results.size());
+            assertTrue(results.stream().allMatch(PublishResult::isPublished));
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPublishAsyncGoesThroughBulkPublisherWhenEnabled() {
+        DaprBulkPublisher bulkPublisher = mock(DaprBulkPublisher.class);
+        when(bulkPublisher.isEnabled()).thenReturn(true);
+        when(bulkPublisher.publish(Constants.KAFKA_RESPONSE_TOPIC_DAPR_BINDING, "test-topic", "m1", "msg1"))
+                .thenReturn(Mono.empty());
+        when(bulkPublisher.publish(Constants.KAFKA_RESPONSE_TOPIC_DAPR_BINDING, "test-topic", "m2", "msg2"))
+                .thenReturn(Mono.error(new IllegalStateException("Event rejected by the sidecar: broker down")));
+        ReflectionTestUtils.setField(kafkaUtils, "bulkPublisher", bulkPublisher);
+
+        assertTrue(kafkaUtils.publishAsync("m1", "test-topic", "msg1").block().isPublished());
+        PublishResult rejected = kafkaUtils.publishAsync("m2", "test-topic", "msg2").block();
+        assertFalse(rejected.isPublished());
+        assertTrue(rejected.getError().contains("broker down"));
+        verifyNoInteractions(daprProducer);
+    }
 }
@@ -0,0 +1,54 @@
+package com.hdfcbank.camt59.kafkaproducer;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublishPermitsTest {
+
+    @Test
+    void testReleaseHandsThePermitToTheOldestWaiter() {
+        PublishPermits permits = new PublishPermits(1);
+        AtomicInteger granted = new AtomicInteger();
+
+        permits.acquire().subscribe(null, null, granted::incrementAndGet);
+        permits.acquire().subscribe(null, null, () -> granted.addAndGet(10));
+        permits.acquire().subscribe(null, null, () -> granted.addAndGet(100));
+
+        assertEquals(1, granted.get());
+        assertEquals(2, permits.waiting());
+        permits.release();
+        assertEquals(11, granted.get());
+        permits.release();
+        assertEquals(111, granted.get());
+        permits.release();
+        assertEquals(1, permits.available());
+    }
+
+    @Test
+    void testCancelledWaiterLeavesTheQueue() {
+        PublishPermits permits = new PublishPermits(1);
+        AtomicInteger granted = new AtomicInteger();
+        permits.acquire().subscribe();
+
+        Disposable waiter = permits.acquire().subscribe(null, null, granted::incrementAndGet);
+        waiter.dispose();
+        permits.release();
+
+        assertEquals(0, granted.get());
+        assertEquals(0, permits.waiting());
+        assertEquals(1, permits.available());
+    }
+
+    @Test
+    void testReleaseNeverExceedsTheLimit() {
+        PublishPermits permits = new PublishPermits(2);
+
+        permits.release();
+
+        assertEquals(2, permits.available());
+    }
+}
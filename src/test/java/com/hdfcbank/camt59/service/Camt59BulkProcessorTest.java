@@ -0,0 +1,338 @@
+package com.hdfcbank.camt59.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.dao.AuditWriteBehindBuffer;
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.exception.NILException;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
+import com.hdfcbank.camt59.model.*;
+import com.hdfcbank.camt59.service.MessageDeduplicator.Claim;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.NILRouterCommonUtility;
+import com.hdfcbank.camt59.utils.ProcessingScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class Camt59BulkProcessorTest {
+
+    @InjectMocks
+    private Camt59XmlProcessor camt59XmlProcessor;
+
+    @Mock
+    private NilRepository dao;
+
+    @Mock
+    private KafkaUtils kafkaUtils;
+
+    @Mock
+    private ErrorHandling errorHandling;
+
+    @Mock
+    private AuditWriteBehindBuffer auditBuffer;
+
+    @Mock
+    private MessageDeduplicator deduplicator;
+
+    @Captor
+    private ArgumentCaptor<List<MsgEventTracker>> trackers;
+
+    @Captor
+    private ArgumentCaptor<List<TransactionAudit>> audits;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private ProcessingScheduler processingScheduler;
+
+    private Camt59BulkProcessor bulkProcessor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(camt59XmlProcessor, "processingEngine", "STAX");
+        ReflectionTestUtils.setField(camt59XmlProcessor, "streamingParser", new Camt59StreamingParser());
+        ReflectionTestUtils.setField(camt59XmlProcessor, "streamingSplitter", new Camt59StreamingSplitter());
+        ReflectionTestUtils.setField(camt59XmlProcessor, "metrics", new Camt59Metrics(registry));
+        ReflectionTestUtils.setField(camt59XmlProcessor, "fcTopic", "FCTOPIC");
+        ReflectionTestUtils.setField(camt59XmlProcessor, "ephTopic", "EPHTOPIC");
+        when(deduplicator.claim(any())).thenAnswer(inv -> claimed.add(inv.getArgument(0)) ? Claim.NEW : Claim.IN_FLIGHT);
+        doAnswer(inv -> claimed.remove(inv.<String>getArgument(0))).when(deduplicator).release(any());
+        when(kafkaUtils.publishAsync(any(), any(), any()))
+                .thenAnswer(inv -> Mono.just(PublishResult.success(inv.getArgument(1), inv.getArgument(2))));
+
+        NILRouterCommonUtility utility = new NILRouterCommonUtility();
+        ReflectionTestUtils.setField(utility, "objectMapper", objectMapper);
+
+        processingScheduler = new ProcessingScheduler();
+        processingScheduler.init();
+
+        bulkProcessor = new Camt59BulkProcessor();
+        bulkProcessor.camt59XmlProcessor = camt59XmlProcessor;
+        bulkProcessor.nilRouterCommonUtility = utility;
+        bulkProcessor.processingScheduler = processingScheduler;
+        bulkProcessor.objectMapper = objectMapper;
+    }
+
+    @AfterEach
+    void tearDown() {
+        processingScheduler.shutdown();
+    }
+
+    @Test
+    void testProcess_messagesShareOneWrite() throws Exception {
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 3)), entry("e2", message("RBIP2", 4)), entry("e3", message("RBIP3", 5))), null).block();
+
+        assertEquals(List.of("e1", "e2", "e3"), entryIds(response));
+        assertEquals(List.of("SUCCESS", "SUCCESS", "SUCCESS"), statuses(response));
+
+        verify(dao, times(1)).saveMessage(trackers.capture(), audits.capture());
+        assertEquals(Set.of("RBIP1", "RBIP2", "RBIP3"), msgIds(trackers.getValue()));
+        assertEquals(12, audits.getValue().size());
+        verify(kafkaUtils, times(trackers.getValue().size())).publishAsync(any(), any(), any());
+        assertEquals(3.0, registry.get("camt59.messages").tag("outcome", "success").counter().count());
+    }
+
+    @Test
+    void testProcess_unreadableEventIsDropped() throws Exception {
+        BulkSubscribeEntry unreadable = new BulkSubscribeEntry("bad", objectMapper.readTree("{\"specversion\":\"1.0\"}"), null, null);
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(entry("ok", message("RBIP1", 2)), unreadable), null).block();
+
+        assertEquals(List.of("SUCCESS", "DROP"), statuses(response));
+        verify(dao, times(1)).saveMessage(anyList(), anyList());
+    }
+
+    @Test
+    void testProcess_malformedXmlIsDroppedAndReleased() throws Exception {
+        ReqPayload broken = Camt59Payloads.inward("<RequestPayload><AppHdr><BizMsgIdr>RBIPX</BizMsgIdr>");
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(entry("ok", message("RBIP1", 2)), entry("bad", broken)), null).block();
+
+        assertEquals(List.of("SUCCESS", "DROP"), statuses(response));
+        verify(deduplicator).release("RBIPX");
+    }
+
+    @Test
+    void testProcess_failedSharedWriteIsRetriedPerMessage() throws Exception {
+        doAnswer(inv -> {
+            List<MsgEventTracker> trackers = inv.getArgument(0);
+            if (trackers.stream().anyMatch(t -> "RBIP2".equals(t.getMsgId()))) {
+                throw new RuntimeException("value too long");
+            }
+            return null;
+        }).when(dao).saveMessage(anyList(), anyList());
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2)), entry("e3", message("RBIP3", 2))), null).block();
+
+        assertEquals(List.of("SUCCESS", "RETRY", "SUCCESS"), statuses(response));
+        // one shared attempt, then one per message
+        verify(dao, times(4)).saveMessage(anyList(), anyList());
+        verify(deduplicator).release("RBIP2");
+        verify(deduplicator, never()).release("RBIP1");
+        verify(kafkaUtils, never()).publishAsync(any(), any(), eq("RBIP2"));
+        assertEquals(1.0, registry.get("camt59.messages").tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    void testProcess_unpublishedMessageIsRetriedAndNotMarkedSent() throws Exception {
+        when(kafkaUtils.publishAsync(any(), any(), any())).thenAnswer(inv -> Mono.just("RBIP2".equals(inv.getArgument(2))
+                ? PublishResult.failure(inv.getArgument(1), "RBIP2", new RuntimeException("broker down"))
+                : PublishResult.success(inv.getArgument(1), inv.getArgument(2))));
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2))), null).block();
+
+        assertEquals(List.of("SUCCESS", "RETRY"), statuses(response));
+        verify(dao).markSent(trackers.capture());
+        assertEquals(Set.of("RBIP1"), msgIds(trackers.getValue()));
+        verify(deduplicator).unpublished("RBIP2");
+        verify(deduplicator, never()).release(any());
+    }
+
+    @Test
+    void testProcess_redeliveryPublishesStoredOutputs() throws Exception {
+        when(deduplicator.claim("RBIP1")).thenReturn(Claim.UNPUBLISHED);
+        MsgEventTracker stored = new MsgEventTracker();
+        stored.setMsgId("RBIP1");
+        stored.setTarget("DISPATCHER_EPH");
+        stored.setStatus("PUBLISH_PENDING");
+        stored.setIntermediateReq("CBS<RequestPayload>eph</RequestPayload>");
+        when(dao.findUnpublished("RBIP1")).thenReturn(List.of(stored));
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(entry("e1", message("RBIP1", 2))), null).block();
+
+        assertEquals(List.of("SUCCESS"), statuses(response));
+        verify(dao, never()).saveMessage(anyList(), anyList());
+        verify(kafkaUtils).publishAsync("<RequestPayload>eph</RequestPayload>", "EPHTOPIC", "RBIP1");
+        verify(dao).markSent(List.of(stored));
+    }
+
+    @Test
+    void testProcess_copyInSameDeliveryIsRetried() throws Exception {
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP1", 2))), null).block();
+
+        // entries are prepared in parallel, so either may be the copy; it is not acked while the
+        // other may still fail
+        assertEquals(Set.of("SUCCESS", "RETRY"), Set.copyOf(statuses(response)));
+        verify(dao).saveMessage(anyList(), audits.capture());
+        assertEquals(2, audits.getValue().size());
+    }
+
+    @Test
+    void testProcess_entriesRetriedWhenWorkersShutDown() throws Exception {
+        processingScheduler.shutdown();
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2))), null).block();
+
+        assertEquals(List.of("RETRY", "RETRY"), statuses(response));
+        verifyNoInteractions(dao, kafkaUtils);
+    }
+
+    @Test
+    void testProcess_entriesOverMemoryBudgetAreRetriedAndReleased() throws Exception {
+        MemoryAdmissionController admission = new MemoryAdmissionController();
+        ReflectionTestUtils.setField(admission, "budgetMb", 1L);
+        ReflectionTestUtils.setField(admission, "maxWaitMs", 0L);
+        admission.init();
+        admission.admit("x".repeat(600_000), true);
+        ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2))), null).block();
+
+        assertEquals(List.of("RETRY", "RETRY"), statuses(response));
+        verify(deduplicator).release("RBIP1");
+        verify(deduplicator).release("RBIP2");
+        verifyNoInteractions(dao, kafkaUtils);
+    }
+
+    @Test
+    void testProcess_budgetHeldUntilTheSharedWriteAndPublishesAreDone() throws Exception {
+        MemoryAdmissionController admission = new MemoryAdmissionController();
+        ReflectionTestUtils.setField(admission, "budgetMb", 1L);
+        admission.init();
+        ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+        List<Long> reserved = new ArrayList<>();
+        doAnswer(inv -> reserved.add(admission.getReserved())).when(dao).saveMessage(anyList(), anyList());
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(
+                entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2))), null).block();
+
+        assertEquals(List.of("SUCCESS", "SUCCESS"), statuses(response));
+        assertTrue(reserved.get(0) > 0);
+        assertEquals(0, admission.getReserved());
+    }
+
+    @Test
+    void testProcess_commitRunsOnTheProcessingWorkers() throws Exception {
+        List<String> threads = new ArrayList<>();
+        doAnswer(inv -> threads.add(Thread.currentThread().getName())).when(dao).saveMessage(anyList(), anyList());
+
+        bulkProcessor.process(request(entry("e1", message("RBIP1", 2)), entry("e2", message("RBIP2", 2))), null).block();
+
+        assertEquals(1, threads.size());
+        assertTrue(threads.get(0).startsWith("camt59-worker"), threads.get(0));
+    }
+
+    @Test
+    void testProcess_commitNotAdmittedRetriesPreparedEntries() throws Exception {
+        ProcessingScheduler scheduler = spy(processingScheduler);
+        doCallRealMethod().doCallRealMethod()
+                .doReturn(Mono.error(new ProcessingRejectedException("Processing queue is full", HttpStatus.TOO_MANY_REQUESTS)))
+                .when(scheduler).execute(any());
+        bulkProcessor.processingScheduler = scheduler;
+        BulkSubscribeEntry unreadable = new BulkSubscribeEntry("bad", objectMapper.readTree("{\"specversion\":\"1.0\"}"), null, null);
+
+        BulkSubscribeResponse response = bulkProcessor.process(request(entry("e1", message("RBIP1", 2)), unreadable), null).block();
+
+        assertEquals(List.of("RETRY", "DROP"), statuses(response));
+        verify(dao, never()).saveMessage(anyList(), anyList());
+        verify(deduplicator).release("RBIP1");
+        assertTrue(claimed.isEmpty());
+    }
+
+    @Test
+    void testParse_rejectsNonEnvelope() {
+        assertThrows(NILException.class, () -> bulkProcessor.parse(Unpooled.copiedBuffer("not json", StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testParse_readsDaprEnvelope() throws Exception {
+        String json = "{\"id\":\"b1\",\"topic\":\"camt59\",\"pubsubname\":\"pubsub\",\"type\":\"com.dapr.event.sent.bulk\"," +
+                "\"entries\":[{\"entryId\":\"e1\",\"contentType\":\"application/cloudevents+json\"," +
+                "\"event\":{\"data_base64\":\"e30=\"},\"metadata\":{}}]}";
+
+        BulkSubscribeRequest request = bulkProcessor.parse(Unpooled.copiedBuffer(json, StandardCharsets.UTF_8));
+
+        assertEquals("camt59", request.getTopic());
+        assertEquals(1, request.getEntries().size());
+        assertEquals("e1", request.getEntries().get(0).getEntryId());
+        assertEquals("e30=", request.getEntries().get(0).getEvent().get("data_base64").asText());
+    }
+
+    private ReqPayload message(String bizMsgIdr, int items) {
+        return Camt59Payloads.inward(Camt59Payloads.requestPayload(bizMsgIdr, items,
+                Camt59Payloads.fcPercentWeights(50), new Random(items)));
+    }
+
+    private BulkSubscribeEntry entry(String entryId, ReqPayload payload) throws Exception {
+        String event = Camt59Payloads.daprEnvelope(objectMapper, payload);
+        return new BulkSubscribeEntry(entryId, objectMapper.readTree(event), "application/cloudevents+json", null);
+    }
+
+    private static BulkSubscribeRequest request(BulkSubscribeEntry... entries) {
+        BulkSubscribeRequest request = new BulkSubscribeRequest();
+        request.setEntries(List.of(entries));
+        return request;
+    }
+
+    private static Set<String> msgIds(List<MsgEventTracker> trackers) {
+        Set<String> ids = new java.util.HashSet<>();
+        trackers.forEach(tracker -> ids.add(tracker.getMsgId()));
+        return ids;
+    }
+
+    private static List<String> entryIds(BulkSubscribeResponse response) {
+        List<String> ids = new ArrayList<>();
+        response.getStatuses().forEach(status -> ids.add(status.getEntryId()));
+        return ids;
+    }
+
+    private static List<String> statuses(BulkSubscribeResponse response) {
+        List<String> statuses = new ArrayList<>();
+        response.getStatuses().forEach(status -> statuses.add(status.getStatus()));
+        return statuses;
+    }
+}
@@ -0,0 +1,94 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import com.hdfcbank.camt59.model.Camt59Fields;
+import com.hdfcbank.camt59.utils.XPathRegistry;
+import com.hdfcbank.camt59.utils.XmlFactoryPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Camt59FieldExtractorTest {
+
+    private Camt59FieldExtractor extractor = new Camt59FieldExtractor();
+
+    @AfterEach
+    void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Test
+    void testExtract_MatchesXPath() throws Exception {
+        NodeList items = items(Camt59Payloads.requestPayload(200, 40, 7));
+
+        List<Camt59Fields> fields = extractor.extract(items, "MSG1", RoutingTable.DEFAULT);
+
+        assertEquals(items.getLength(), fields.size());
+        for (int i = 0; i < items.getLength(); i++) {
+            Element item = (Element) items.item(i);
+            String orgnlItmId = XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_ITM_ID, item);
+            assertEquals(new Camt59Fields("MSG1",
+                    XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_END_TO_END_ID, item), orgnlItmId,
+                    XPathRegistry.evaluate(XPathRegistry.ITEM_AMT, item),
+                    Camt59XmlProcessor.resolveSwitch(orgnlItmId)), fields.get(i));
+        }
+    }
+
+    @Test
+    void testExtract_ParallelKeepsDocumentOrder() throws Exception {
+        ReflectionTestUtils.setField(extractor, "parallelThreshold", 100);
+        ReflectionTestUtils.setField(extractor, "parallelism", 4);
+        extractor.init();
+        NodeList items = items(Camt59Payloads.requestPayload(3000, 50, 11));
+
+        List<Camt59Fields> parallel = extractor.extract(items, "MSG1", RoutingTable.DEFAULT);
+
+        List<Camt59Fields> sequential = new ArrayList<>();
+        for (int i = 0; i < items.getLength(); i++) {
+            sequential.add(Camt59FieldExtractor.read((Element) items.item(i), "MSG1", RoutingTable.DEFAULT));
+        }
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void testRead_PrefixedAndMissingChildren() throws Exception {
+        Document doc = XmlFactoryPool.parse("<x:OrgnlItmAndSts xmlns:x=\"urn:x\"><!-- note -->" +
+                "<x:OrgnlItmId>ABCDEFGHIJKLMN35</x:OrgnlItmId><x:Other><x:Amt>9.99</x:Amt></x:Other></x:OrgnlItmAndSts>");
+
+        Camt59Fields fields = Camt59FieldExtractor.read(doc.getDocumentElement(), "MSG1", RoutingTable.DEFAULT);
+
+        assertEquals("ABCDEFGHIJKLMN35", fields.getTxId());
+        assertEquals("", fields.getAmount());
+        assertEquals("", fields.getEndToEndId());
+        assertEquals("DISPATCHED_FC", fields.getSwtch());
+    }
+
+    @Test
+    void testReadAppHdr_MatchesStreamingParser() throws Exception {
+        String[] payloads = {
+                Camt59Payloads.requestPayload(3, 50, 5),
+                "<h:RequestPayload xmlns:h=\"urn:h\"><h:AppHdr><h:BizMsgIdr> RBIP1 </h:BizMsgIdr>" +
+                        "<h:CreDt>2025-08-28T10:15:30Z</h:CreDt></h:AppHdr><h:AppHdr><h:MsgDefIdr>camt.059</h:MsgDefIdr>" +
+                        "<h:BizMsgIdr>RBIP2</h:BizMsgIdr></h:AppHdr></h:RequestPayload>",
+                "<RequestPayload><Document/></RequestPayload>",
+                "<AppHdr><BizMsgIdr>RBIP3</BizMsgIdr></AppHdr>"};
+        for (String xml : payloads) {
+            assertEquals(new Camt59StreamingParser().parse(xml, f -> { }),
+                    Camt59FieldExtractor.readAppHdr(XmlFactoryPool.parse(xml)), xml);
+        }
+    }
+
+    private static NodeList items(String xml) throws Exception {
+        Document doc = XmlFactoryPool.parse(xml);
+        return (NodeList) XPathRegistry.evaluate(XPathRegistry.REQUEST_ORGNL_ITM_AND_STS, doc, XPathConstants.NODESET);
+    }
+}
@@ -0,0 +1,98 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.model.Camt59AppHdr;
+import com.hdfcbank.camt59.model.Camt59Fields;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Camt59StreamingParserTest {
+
+    private Camt59StreamingParser parser;
+
+    private static final String XML =
+            "<RequestPayload>" +
+                    "<AppHdr>" +
+                    "<BizMsgIdr>MSG123</BizMsgIdr>" +
+                    "<MsgDefIdr>camt.059.001.06</MsgDefIdr>" +
+                    "<CreDt>2025-08-28T10:15:30Z</CreDt>" +
+                    "</AppHdr>" +
+                    "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.059.001.06\">" +
+                    "<NtfctnToRcvStsRpt>" +
+                    "<GrpHdr><MsgId>GH001</MsgId></GrpHdr>" +
+                    "<OrgnlNtfctnAndSts>" +
+                    "<OrgnlNtfctnRef>" +
+                    "<DbtrAgt><FinInstnId><BICFI>HDFCINBB</BICFI></FinInstnId></DbtrAgt>" +
+                    "<OrgnlItmAndSts>" +
+                    "<OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId>" +
+                    "<OrgnlEndToEndId>E2E001</OrgnlEndToEndId>" +
+                    "<Amt Ccy=\"INR\">100.50</Amt>" +
+                    "<ItmSts>RCVD</ItmSts>" +
+                    "</OrgnlItmAndSts>" +
+                    "</OrgnlNtfctnRef>" +
+                    "<OrgnlNtfctnRef>" +
+                    "<OrgnlItmAndSts>" +
+                    "<OrgnlItmId>ABCDEFGHIJKLMN75</OrgnlItmId>" +
+                    "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId>" +
+                    "<Amt Ccy=\"INR\">200.00</Amt>" +
+                    "</OrgnlItmAndSts>" +
+                    "</OrgnlNtfctnRef>" +
+                    "</OrgnlNtfctnAndSts>" +
+                    "</NtfctnToRcvStsRpt>" +
+                    "</Document>" +
+                    "</RequestPayload>";
+
+    @BeforeEach
+    void setUp() {
+        parser = new Camt59StreamingParser();
+    }
+
+    @Test
+    void testParse_AppHdrAndItems() throws Exception {
+        List<Camt59Fields> fields = new ArrayList<>();
+        Camt59AppHdr appHdr = parser.parse(XML, fields::add);
+
+        assertEquals("MSG123", appHdr.getBizMsgIdr());
+        assertEquals("camt.059.001.06", appHdr.getMsgDefIdr());
+        assertEquals("2025-08-28T10:15:30Z", appHdr.getCreDt());
+
+        assertEquals(2, fields.size());
+        assertEquals(new Camt59Fields("MSG123", "E2E001", "ABCDEFGHIJKLMN15", "100.50", "DISPATCHED_FC"), fields.get(0));
+        assertEquals(new Camt59Fields("MSG123", "E2E002", "ABCDEFGHIJKLMN75", "200.00", "DISPATCHED_EPH"), fields.get(1));
+    }
+
+    @Test
+    void testParse_MissingChildrenDefaultToEmpty() throws Exception {
+        String xml = "<RequestPayload><AppHdr><BizMsgIdr>B1</BizMsgIdr></AppHdr>" +
+                "<Document><OrgnlItmAndSts><OrgnlItmId>SHORT</OrgnlItmId></OrgnlItmAndSts></Document></RequestPayload>";
+
+        List<Camt59Fields> fields = new ArrayList<>();
+        Camt59AppHdr appHdr = parser.parse(xml, fields::add);
+
+        assertEquals("", appHdr.getCreDt());
+        assertEquals(1, fields.size());
+        assertEquals("", fields.get(0).getAmount());
+        assertEquals("", fields.get(0).getEndToEndId());
+        assertEquals("DISPATCHED_EPH", fields.get(0).getSwtch());
+    }
+
+    @Test
+    void testParse_ItemsOutsideDocumentIgnored() throws Exception {
+        String xml = "<RequestPayload><AppHdr><OrgnlItmAndSts><OrgnlItmId>X</OrgnlItmId></OrgnlItmAndSts></AppHdr></RequestPayload>";
+
+        List<Camt59Fields> fields = new ArrayList<>();
+        parser.parse(xml, fields::add);
+
+        assertTrue(fields.isEmpty());
+    }
+
+    @Test
+    void testParse_RejectsDoctype() {
+        String xml = "<!DOCTYPE r [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><RequestPayload>&x;</RequestPayload>";
+        assertThrows(Exception.class, () -> parser.parse(xml, f -> { }));
+    }
+}
@@ -0,0 +1,118 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.model.Camt59SplitResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Camt59StreamingSplitterTest {
+
+    private Camt59StreamingSplitter splitter;
+
+    private static final String NAMESPACED_XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<RequestPayload>\n" +
+                    "    <AppHdr xmlns=\"urn:iso:std:iso:20022:tech:xsd:head.001.001.02\">\n" +
+                    "        <BizMsgIdr>RBIP200608226200200080</BizMsgIdr>\n" +
+                    "        <MsgDefIdr>camt.059.001.06</MsgDefIdr>\n" +
+                    "        <CreDt>2006-08-22T12:12:00Z</CreDt>\n" +
+                    "        <Sgntr></Sgntr>\n" +
+                    "    </AppHdr>\n" +
+                    "    <Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.059.001.06\">\n" +
+                    "        <NtfctnToRcvStsRpt>\n" +
+                    "            <GrpHdr><MsgId>RBIP200608226200200080</MsgId></GrpHdr>\n" +
+                    "            <OrgnlNtfctnAndSts>\n" +
+                    "                <OrgnlNtfctnRef>\n" +
+                    "                    <DbtrAgt><FinInstnId><ClrSysMmbId><MmbId>HDFC0065012</MmbId></ClrSysMmbId></FinInstnId></DbtrAgt>\n" +
+                    "                    <OrgnlItmAndSts>\n" +
+                    "                        <OrgnlItmId>HDFCN52022062824954013</OrgnlItmId>\n" +
+                    "                        <Amt Ccy=\"INR\">100.00</Amt>\n" +
+                    "                    </OrgnlItmAndSts>\n" +
+                    "                    <OrgnlItmAndSts>\n" +
+                    "                        <OrgnlItmId>HDFCN52022062874954014</OrgnlItmId>\n" +
+                    "                        <Amt Ccy=\"INR\">200.00</Amt>\n" +
+                    "                    </OrgnlItmAndSts>\n" +
+                    "                </OrgnlNtfctnRef>\n" +
+                    "            </OrgnlNtfctnAndSts>\n" +
+                    "        </NtfctnToRcvStsRpt>\n" +
+                    "    </Document>\n" +
+                    "</RequestPayload>";
+
+    private static final String PREFIXED_XML =
+            "<RequestPayload xmlns:h=\"urn:h\" b=\"2\" a=\"&amp;&lt;\">" +
+                    "<h:AppHdr><h:BizMsgIdr>B1</h:BizMsgIdr><!-- c --><![CDATA[x<y]]></h:AppHdr>" +
+                    "<d:Document xmlns:d=\"urn:d\"><d:NtfctnToRcvStsRpt>" +
+                    "<d:OrgnlNtfctnRef>" +
+                    "<d:OrgnlItmAndSts xmlns:k=\"urn:k\" k:z=\"1\"><d:OrgnlItmId>ABCDEFGHIJKLMN2</d:OrgnlItmId><d:Empty/></d:OrgnlItmAndSts>" +
+                    "<d:DbtrAgt>after the item</d:DbtrAgt>" +
+                    "</d:OrgnlNtfctnRef>" +
+                    "<d:GrpHdr><d:MsgId>late</d:MsgId></d:GrpHdr>" +
+                    "</d:NtfctnToRcvStsRpt></d:Document></RequestPayload>";
+
+    @BeforeEach
+    void setUp() {
+        splitter = new Camt59StreamingSplitter();
+    }
+
+    private static Document parseNamespaceAware(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    private static void assertMatchesDomFilter(String xml, Camt59SplitResult result) throws Exception {
+        Document document = parseNamespaceAware(xml);
+        Camt59XmlProcessor processor = new Camt59XmlProcessor();
+        assertEquals(processor.documentToXml(Camt59XmlProcessor.filterOrgnlItmAndSts(document, 0, 4)), result.getFcXml());
+        assertEquals(processor.documentToXml(Camt59XmlProcessor.filterOrgnlItmAndSts(document, 5, 9)), result.getEphXml());
+    }
+
+    @Test
+    void testSplit_NamespacedPayloadMatchesDomFilter() throws Exception {
+        Camt59SplitResult result = splitter.split(NAMESPACED_XML, 0, 4, 5, 9);
+
+        assertMatchesDomFilter(NAMESPACED_XML, result);
+        assertTrue(result.getFcXml().contains("HDFCN52022062824954013"));
+        assertFalse(result.getFcXml().contains("HDFCN52022062874954014"));
+        assertTrue(result.getEphXml().contains("HDFCN52022062874954014"));
+        assertTrue(result.getEphXml().contains("<AppHdr xmlns=\"urn:iso:std:iso:20022:tech:xsd:head.001.001.02\">"));
+    }
+
+    @Test
+    void testSplit_PrefixesCommentsAndLateElementsMatchDomFilter() throws Exception {
+        Camt59SplitResult result = splitter.split(PREFIXED_XML, 0, 4, 5, 9);
+
+        assertMatchesDomFilter(PREFIXED_XML, result);
+        assertTrue(result.getFcXml().contains("<d:DbtrAgt xmlns:d=\"urn:d\">after the item</d:DbtrAgt>"));
+        assertFalse(result.getEphXml().contains("OrgnlNtfctnAndSts"));
+    }
+
+    @Test
+    void testSplit_NoDocumentMatchesDomFilter() throws Exception {
+        String xml = "<RequestPayload><AppHdr><BizMsgIdr>BIZ123</BizMsgIdr></AppHdr></RequestPayload>";
+
+        Camt59SplitResult result = splitter.split(xml, 0, 4, 5, 9);
+
+        assertMatchesDomFilter(xml, result);
+        assertFalse(result.getFcXml().contains("<Document"));
+    }
+
+    @Test
+    void testSplit_InvalidOrgnlItmIdGoesNowhere() throws Exception {
+        String xml = "<RequestPayload><Document><OrgnlNtfctnRef>" +
+                "<OrgnlItmAndSts><OrgnlItmId>SHORT</OrgnlItmId></OrgnlItmAndSts>" +
+                "</OrgnlNtfctnRef></Document></RequestPayload>";
+
+        Camt59SplitResult result = splitter.split(xml, 0, 4, 5, 9);
+
+        assertMatchesDomFilter(xml, result);
+        assertFalse(result.getFcXml().contains("SHORT"));
+        assertFalse(result.getEphXml().contains("SHORT"));
+    }
+}
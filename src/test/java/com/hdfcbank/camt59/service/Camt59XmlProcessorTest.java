@@ -1,19 +1,27 @@
 package com.hdfcbank.camt59.service;
 
+import com.hdfcbank.camt59.dao.AuditWriteBehindBuffer;
 import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
 import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
 import com.hdfcbank.camt59.model.*;
+import com.hdfcbank.camt59.utils.Camt59Metrics;
+import com.hdfcbank.camt59.utils.Constants;
 import com.hdfcbank.camt59.utils.UtilityMethods;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.http.HttpStatus;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
+import reactor.core.publisher.Mono;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPathExpressionException;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -38,9 +46,35 @@ class Camt59XmlProcessorTest {
     @Mock
     private KafkaUtils kafkaUtils;
 
+    @Mock
+    private AuditWriteBehindBuffer auditBuffer;
+
+    @Mock
+    private MessageDeduplicator deduplicator;
+
+    @Mock
+    private MsgEventFeed eventFeed;
+
+    @Captor
+    private ArgumentCaptor<List<MsgEventTracker>> trackerCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<TransactionAudit>> auditCaptor;
+
+    @Spy
+    private Camt59FieldExtractor fieldExtractor = new Camt59FieldExtractor();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private Camt59Metrics metrics = new Camt59Metrics(registry);
+
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
+        when(deduplicator.claim(any())).thenReturn(MessageDeduplicator.Claim.NEW);
+        when(kafkaUtils.publishAsync(any(), any(), any()))
+                .thenAnswer(inv -> Mono.just(PublishResult.success(inv.getArgument(1), inv.getArgument(2))));
     }
 
     private String sampleXml =
@@ -231,25 +265,171 @@ class Camt59XmlProcessorTest {
 
 
     @Test
-    void testExtractTransactions() throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(new java.io.ByteArrayInputStream(sampleXml.getBytes()));
-
+    void testExtractTransactions() {
         Camt59Fields field = new Camt59Fields("MSG123", "E2E001", "ABCDEFGHIJKLMNO0", "100.00", "DISPATCHED_FC");
+        Camt59MessageContext context = new Camt59MessageContext("MSG123", "MSG123", "camt.059.001.06", null,
+                LocalDate.now(), LocalDateTime.now(), null, null, false, false);
+        Camt59Totals totals = new Camt59Totals();
 
-        when(utilityMethods.getBizMsgIdr(doc)).thenReturn("MSG123");
-        when(utilityMethods.getMsgDefIdr(doc)).thenReturn("camt.059.001.06");
-
-        List<TransactionAudit> audits = camt59XmlProcessor.extractCamt59Transactions(
-                doc, sampleXml, List.of(field), LocalDate.now(), LocalDateTime.now()
-        );
+        List<TransactionAudit> audits = camt59XmlProcessor.extractCamt59Transactions(context, List.of(field), totals);
 
         assertEquals(1, audits.size());
         assertEquals("MSG123", audits.get(0).getMsgId());
         assertEquals("E2E001", audits.get(0).getEndToEndId());
         assertEquals("DISPATCHED_FC", audits.get(0).getTarget());
+        assertEquals(10000L, totals.getTotalPaise());
+    }
+
+    @Test
+    void testProcessXML_streamingEngineMatchesDom() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN75</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(utilityMethods.getMsgDefIdr(any(Document.class))).thenReturn("camt.059.001.06");
+
+        List<TransactionAudit> domAudits = captureAudits(xml);
+
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "processingEngine", "STAX");
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingParser", new Camt59StreamingParser());
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingSplitter", new Camt59StreamingSplitter());
+        List<TransactionAudit> staxAudits = captureAudits(xml);
+
+        assertEquals(2, domAudits.size());
+        assertEquals(domAudits, staxAudits);
+    }
+
+    @Test
+    void testProcessXML_streamingEngineMatchesDomTrackers() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(utilityMethods.getMsgDefIdr(any(Document.class))).thenReturn("");
+
+        List<MsgEventTracker> domTrackers = captureTrackers(xml);
+
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "processingEngine", "STAX");
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingParser", new Camt59StreamingParser());
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingSplitter", new Camt59StreamingSplitter());
+        List<MsgEventTracker> staxTrackers = captureTrackers(xml);
+
+        assertEquals(2, domTrackers.size());
+        assertTrue(domTrackers.get(0).getIntermediateReq().contains("ABCDEFGHIJKLMN15"));
+        assertFalse(domTrackers.get(0).getIntermediateReq().contains("ABCDEFGHIJKLMN555"));
+        assertTrue(domTrackers.get(1).getIntermediateReq().contains("ABCDEFGHIJKLMN555"));
+        assertEquals(domTrackers, staxTrackers);
+    }
+
+    @Test
+    void testProcessXML_dbtrAgtOverridesRouteBothEnginesAlike() throws Exception {
+        String xml = sampleXml
+                .replace("<OrgnlNtfctnRef><DbtrAgt><FinInstnId><BICFI>HDFCINBB</BICFI></FinInstnId></DbtrAgt>",
+                        "<OrgnlNtfctnRef><DbtrAgt><FinInstnId><ClrSysMmbId><MmbId>SBIN0000123</MmbId></ClrSysMmbId></FinInstnId></DbtrAgt>")
+                .replace("ABCDEFGHIJKLMN555", "ABCDEFGHIJKLMN15")
+                .replace("</OrgnlNtfctnAndSts>", "<OrgnlNtfctnRef>" +
+                        "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN75</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts>" +
+                        "<DbtrAgt><FinInstnId><ClrSysMmbId><MmbId> HDFC0000001 </MmbId></ClrSysMmbId></FinInstnId></DbtrAgt>" +
+                        "</OrgnlNtfctnRef></OrgnlNtfctnAndSts>");
+        RoutingEngine routingEngine = new RoutingEngine();
+        org.springframework.test.util.ReflectionTestUtils.setField(routingEngine, "overrides", "SBIN:EPH,HDFC0000001:FC");
+        routingEngine.init();
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "routingEngine", routingEngine);
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(utilityMethods.getMsgDefIdr(any(Document.class))).thenReturn("");
+
+        List<MsgEventTracker> domTrackers = captureTrackers(xml);
+
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "processingEngine", "STAX");
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingParser", new Camt59StreamingParser());
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingSplitter", new Camt59StreamingSplitter());
+        List<MsgEventTracker> staxTrackers = captureTrackers(xml);
+
+        // digit 1 would go to FC and digit 7 to EPH; the DbtrAgt overrides swap them
+        assertEquals("DISPATCHER_FC", domTrackers.get(0).getTarget());
+        assertTrue(domTrackers.get(0).getIntermediateReq().contains("ABCDEFGHIJKLMN75"));
+        assertFalse(domTrackers.get(0).getIntermediateReq().contains("ABCDEFGHIJKLMN15"));
+        assertTrue(domTrackers.get(1).getIntermediateReq().contains("ABCDEFGHIJKLMN15"));
+        assertEquals(domTrackers, staxTrackers);
+        assertEquals(2, routingEngine.getDecisionCount(RoutingTable.FC, RoutingTable.Rule.OVERRIDE));
+        assertEquals(2, routingEngine.getDecisionCount(RoutingTable.EPH, RoutingTable.Rule.OVERRIDE));
+    }
+
+    @Test
+    void testProcessXML_domReadsHeaderOnceIntoEveryRow() throws Exception {
+        String xml = sampleXml.replace("<BizMsgIdr>MSG123</BizMsgIdr>",
+                        "<BizMsgIdr> MSG123 </BizMsgIdr><MsgDefIdr>camt.059.001.06</MsgDefIdr>")
+                .replace("</OrgnlNtfctnRef>", "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+
+        List<MsgEventTracker> trackers = captureTrackers(xml);
+        List<TransactionAudit> audits = captureAudits(xml);
+
+        verify(utilityMethods, never()).getBizMsgIdr(any());
+        verify(utilityMethods, never()).getMsgDefIdr(any());
+        for (MsgEventTracker tracker : trackers) {
+            assertEquals("MSG123", tracker.getMsgId());
+            assertEquals("camt.059.001.06", tracker.getMsgType());
+            assertEquals(LocalDateTime.of(2025, 8, 28, 10, 15, 30), tracker.getBatchCreationTime());
+            assertEquals(LocalDate.of(2025, 8, 28), tracker.getBatchCreationDate());
+            assertEquals(1, tracker.getIntermediateCount());
+            assertEquals(2, tracker.getOrgnlReqCount());
+        }
+        assertEquals(2, audits.size());
+        audits.forEach(audit -> assertEquals("MSG123", audit.getMsgId()));
+    }
+
+    @Test
+    void testProcessXML_publishesFcAndEphAndAuditsWhenOnePublishFails() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "fcTopic", "FCTOPIC");
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "ephTopic", "EPHTOPIC");
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(kafkaUtils.publishAsync(any(), eq("EPHTOPIC"), any()))
+                .thenReturn(Mono.just(PublishResult.failure("EPHTOPIC", "MSG123", new RuntimeException("down"))));
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(xml)));
+
+        verify(dao).saveMessage(anyList(), auditCaptor.capture());
+        List<TransactionAudit> audits = auditCaptor.getValue();
+        verify(kafkaUtils).publishAsync(any(), eq("FCTOPIC"), eq("MSG123"));
+        verify(kafkaUtils).publishAsync(any(), eq("EPHTOPIC"), eq("MSG123"));
+        assertEquals(2, audits.size());
+    }
+
+    private List<MsgEventTracker> captureTrackers(String xml) throws Exception {
+        reset(dao);
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        verify(dao).saveMessage(trackerCaptor.capture(), anyList());
+        assertEquals(2, trackerCaptor.getValue().size());
+        return trackerCaptor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReqPayload inwardPayload(String xml) {
+        ReqPayload payload = new ReqPayload();
+        Header header = new Header();
+        header.setFlowType("INWARD");
+        header.setPrefix("TEST_");
+        payload.setHeader(header);
+        Body body = new Body();
+        body.setPayload(xml);
+        payload.setBody(body);
+        return payload;
+    }
+
+    private List<TransactionAudit> captureAudits(String xml) throws Exception {
+        reset(dao);
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        verify(dao).saveMessage(anyList(), auditCaptor.capture());
+        return auditCaptor.getValue();
     }
 
     @Test
@@ -402,5 +582,359 @@ class Camt59XmlProcessorTest {
 //        verify(dao, atLeastOnce()).saveDataInMsgEventTracker(any());
     }
 
+    @Test
+    void testProcessXML_persistsBeforePublishing() throws Exception {
+        List<String> events = new java.util.ArrayList<>();
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        doAnswer(inv -> events.add("save")).when(dao).saveMessage(anyList(), anyList());
+        when(kafkaUtils.publishAsync(any(), any(), any())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            events.add("publish");
+            return PublishResult.success(inv.getArgument(1), inv.getArgument(2));
+        }));
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        assertEquals(List.of("save", "publish"), events);
+        verify(dao, never()).saveDataInMsgEventTracker(any());
+        verify(dao, never()).saveAllTransactionAudits(any());
+    }
+
+    @Test
+    void testProcessXML_nothingPublishedWhenPersistenceFails() throws Exception {
+        List<String> events = new java.util.ArrayList<>();
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        doThrow(new RuntimeException("DB down")).when(dao).saveMessage(anyList(), anyList());
+        when(kafkaUtils.publishAsync(any(), any(), any())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            events.add("publish");
+            return PublishResult.success(inv.getArgument(1), inv.getArgument(2));
+        }));
+
+        ProcessingRejectedException e = assertThrows(ProcessingRejectedException.class,
+                () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void testProcessXML_writeBehindAuditsGoToBuffer() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(auditBuffer.isEnabled()).thenReturn(true);
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        verify(dao).saveMessage(anyList(), eq(List.of()));
+        verify(auditBuffer).write(auditCaptor.capture());
+        assertEquals(1, auditCaptor.getValue().size());
+    }
+
+    @Test
+    void testProcessXML_consolidatedAmountIsExact() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            items.append("<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN1").append(i)
+                    .append("</OrgnlItmId><OrgnlEndToEndId>E2E").append(i)
+                    .append("</OrgnlEndToEndId><Amt>0.10</Amt></OrgnlItmAndSts>");
+        }
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>", items + "</OrgnlNtfctnRef>");
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        verify(dao).saveMessage(trackerCaptor.capture(), auditCaptor.capture());
+        // ten 0.10 items add up to 0.9999999999999999 as doubles
+        assertEquals(new BigDecimal("1.00"), trackerCaptor.getValue().get(0).getConsolidateAmt());
+        assertEquals(new BigDecimal("100.00"), trackerCaptor.getValue().get(1).getConsolidateAmt());
+        assertEquals(new BigDecimal("0.10"), auditCaptor.getValue().get(1).getAmount());
+    }
+
+    @Test
+    void testProcessXML_subPaisaAndExponentAmountsAreRoundedNotRejected() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN10</OrgnlItmId><OrgnlEndToEndId>E2E1</OrgnlEndToEndId>"
+                        + "<Amt>0.105</Amt></OrgnlItmAndSts>"
+                        + "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN11</OrgnlItmId><OrgnlEndToEndId>E2E2</OrgnlEndToEndId>"
+                        + "<Amt>1.5E+2</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        verify(dao).saveMessage(trackerCaptor.capture(), auditCaptor.capture());
+        assertEquals(new BigDecimal("0.11"), auditCaptor.getValue().get(1).getAmount());
+        assertEquals(new BigDecimal("150.00"), auditCaptor.getValue().get(2).getAmount());
+        assertEquals(new BigDecimal("150.11"), trackerCaptor.getValue().get(0).getConsolidateAmt());
+        verify(eventFeed, never()).failed(any(), any());
+    }
+
+    @Test
+    void testProcessXML_unparseableAmountNamesTheItem() throws Exception {
+        String xml = sampleXml.replace("<Amt>100.00</Amt>", "<Amt>100,00</Amt>");
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        verify(dao, never()).saveMessage(anyList(), anyList());
+        verify(deduplicator).release("MSG123");
+        ArgumentCaptor<String> reason = ArgumentCaptor.forClass(String.class);
+        verify(eventFeed).failed(eq("MSG123"), reason.capture());
+        assertTrue(reason.getValue().contains("ABCDEFGHIJKLMN555"), reason.getValue());
+        assertTrue(reason.getValue().contains("100,00"), reason.getValue());
+    }
+
+    @Test
+    void testProcessXML_recordsStageMetrics() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(xml));
+
+        assertEquals(1, stageCount("parse", "none", "success"));
+        assertEquals(1, stageCount("filter", "FC", "success"));
+        assertEquals(1, stageCount("serialize", "EPH", "success"));
+        assertEquals(1, stageCount("persist", "none", "success"));
+        assertEquals(1, stageCount("publish", "FC", "success"));
+        assertEquals(1, stageCount("publish", "EPH", "success"));
+        assertEquals(1, stageCount("total", "none", "success"));
+        assertEquals(1.0, registry.get("camt59.items").tag("target", "FC").counter().count());
+        assertEquals(1.0, registry.get("camt59.items").tag("target", "EPH").counter().count());
+        assertEquals(2.0, registry.get("camt59.message.items").summary().totalAmount());
+        assertEquals(xml.length(), registry.get("camt59.message.payload").summary().totalAmount());
+    }
+
+    @Test
+    void testProcessXML_failedPublishMarksMessageFailed() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(kafkaUtils.publishAsync(any(), any(), any()))
+                .thenReturn(Mono.just(PublishResult.failure("EPHTOPIC", "MSG123", new RuntimeException("down"))));
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        assertEquals(1, stageCount("publish", "EPH", "failure"));
+        assertEquals(1, stageCount("total", "none", "failure"));
+        assertEquals(1.0, registry.get("camt59.messages").tag("outcome", "failure").counter().count());
+    }
+
+    private long stageCount(String stage, String target, String outcome) {
+        return registry.get("camt59.stage").tag("stage", stage).tag("target", target).tag("outcome", outcome)
+                .timer().count();
+    }
+
+    @Test
+    void testProcessXML_duplicateIsSkippedBeforeParsing() throws Exception {
+        when(deduplicator.claim("MSG123")).thenReturn(MessageDeduplicator.Claim.DUPLICATE);
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        verify(deduplicator).claim("MSG123");
+        verifyNoInteractions(dao, kafkaUtils, utilityMethods);
+        assertEquals(0, stageCount("parse", "none", "success"));
+    }
+
+    @Test
+    void testProcessXML_copyInProgressIsRetriedNotAcked() throws Exception {
+        when(deduplicator.claim("MSG123")).thenReturn(MessageDeduplicator.Claim.IN_FLIGHT);
+
+        ProcessingRejectedException e = assertThrows(ProcessingRejectedException.class,
+                () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
 
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        verify(deduplicator, never()).release(any());
+        verifyNoInteractions(dao, kafkaUtils, utilityMethods);
+    }
+
+    @Test
+    void testProcessXML_claimReleasedWhenNothingStored() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        doThrow(new RuntimeException("DB down")).when(dao).saveMessage(anyList(), anyList());
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        verify(deduplicator).release("MSG123");
+    }
+
+    @Test
+    void testProcessXML_failedPublishIsNotAckedAndLeftPending() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(kafkaUtils.publishAsync(any(), any(), any()))
+                .thenReturn(Mono.just(PublishResult.failure("EPHTOPIC", "MSG123", new RuntimeException("down"))));
+
+        ProcessingRejectedException e = assertThrows(ProcessingRejectedException.class,
+                () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        verify(dao).saveMessage(trackerCaptor.capture(), anyList());
+        assertTrue(trackerCaptor.getValue().stream().allMatch(t -> Constants.PUBLISH_PENDING.equals(t.getStatus())));
+        verify(dao, never()).markSent(anyList());
+        verify(deduplicator, never()).release(any());
+        verify(deduplicator).unpublished("MSG123");
+    }
+
+    @Test
+    void testProcessXML_publishedOutputsAreMarkedSent() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        InOrder order = inOrder(dao, kafkaUtils);
+        order.verify(dao).saveMessage(trackerCaptor.capture(), anyList());
+        order.verify(kafkaUtils).publishAsync(any(), any(), eq("MSG123"));
+        order.verify(dao).markSent(trackerCaptor.getValue());
+        verify(deduplicator, never()).unpublished(any());
+        verify(deduplicator).done("MSG123");
+    }
+
+    @Test
+    void testProcessXML_notAckedWhenMarkingSentFails() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        doThrow(new RuntimeException("DB down")).when(dao).markSent(anyList());
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        verify(deduplicator).unpublished("MSG123");
+        assertEquals(1, stageCount("total", "none", "failure"));
+    }
+
+    @Test
+    void testProcessXML_redeliveryRepublishesStoredOutputs() throws Exception {
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "fcTopic", "FCTOPIC");
+        when(deduplicator.claim("MSG123")).thenReturn(MessageDeduplicator.Claim.UNPUBLISHED);
+        MsgEventTracker stored = new MsgEventTracker();
+        stored.setMsgId("MSG123");
+        stored.setTarget("DISPATCHER_FC");
+        stored.setStatus(Constants.PUBLISH_PENDING);
+        stored.setIntermediateReq("CBS<RequestPayload>fc</RequestPayload>");
+        when(dao.findUnpublished("MSG123")).thenReturn(List.of(stored));
+        ReqPayload payload = inwardPayload(sampleXml);
+        payload.getHeader().setPrefix("CBS");
+
+        camt59XmlProcessor.processXML(payload);
+
+        verify(dao, never()).saveMessage(anyList(), anyList());
+        verify(kafkaUtils).publishAsync("<RequestPayload>fc</RequestPayload>", "FCTOPIC", "MSG123");
+        verify(dao).markSent(List.of(stored));
+        assertEquals(0, stageCount("parse", "none", "success"));
+    }
+
+    @Test
+    void testProcessXML_auditBufferFailureFallsBackAndStillPublishes() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(auditBuffer.isEnabled()).thenReturn(true);
+        doThrow(new java.io.IOException("disk full")).when(auditBuffer).write(anyList());
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        verify(dao).saveAllTransactionAudits(anyList());
+        verify(kafkaUtils, atLeastOnce()).publishAsync(any(), any(), eq("MSG123"));
+        verify(dao).markSent(anyList());
+        verify(deduplicator, never()).unpublished(any());
+    }
+
+    @Test
+    void testProcessXML_domMessageOverBudgetRunsOnStreamingEngine() throws Exception {
+        String xml = sampleXml.replace("</OrgnlNtfctnRef>",
+                "<OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN75</OrgnlItmId>" +
+                        "<OrgnlEndToEndId>E2E002</OrgnlEndToEndId><Amt>250.25</Amt></OrgnlItmAndSts></OrgnlNtfctnRef>");
+        List<TransactionAudit> domAudits = captureAudits(xml);
+
+        MemoryAdmissionController admission = admissionController(1L);
+        org.springframework.test.util.ReflectionTestUtils.setField(admission, "domBytesPerByte", 10_000.0);
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingParser", spy(new Camt59StreamingParser()));
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "streamingSplitter", new Camt59StreamingSplitter());
+        List<TransactionAudit> admittedAudits = captureAudits(xml);
+
+        Camt59StreamingParser parser = (Camt59StreamingParser) org.springframework.test.util.ReflectionTestUtils
+                .getField(camt59XmlProcessor, "streamingParser");
+        verify(parser).parse(eq(xml), any(RoutingTable.class), any());
+        assertEquals(domAudits, admittedAudits);
+        assertEquals(0, admission.getReserved());
+    }
+
+    @Test
+    void testProcessXML_rejectedOverBudgetReleasesClaimAndStoresNothing() {
+        MemoryAdmissionController admission = admissionController(1L);
+        org.springframework.test.util.ReflectionTestUtils.setField(admission, "maxWaitMs", 0L);
+        // a message as large as the budget is already in progress
+        admission.admit("x".repeat(600_000), true);
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+
+        assertThrows(com.hdfcbank.camt59.exception.ProcessingRejectedException.class,
+                () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        verify(deduplicator).release("MSG123");
+        verifyNoInteractions(dao, kafkaUtils);
+        assertEquals(0, stageCount("parse", "none", "success"));
+    }
+
+    @Test
+    void testProcessXML_budgetHeldThroughPersistAndPublish() throws Exception {
+        MemoryAdmissionController admission = admissionController(1L);
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+        List<Long> reserved = new java.util.ArrayList<>();
+        doAnswer(inv -> reserved.add(admission.getReserved())).when(dao).saveMessage(anyList(), anyList());
+        when(kafkaUtils.publishAsync(any(), any(), any())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            reserved.add(admission.getReserved());
+            return PublishResult.success(inv.getArgument(1), inv.getArgument(2));
+        }));
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        assertEquals(2, reserved.size());
+        assertTrue(reserved.stream().allMatch(bytes -> bytes > 0));
+        assertEquals(0, admission.getReserved());
+    }
+
+    @Test
+    void testProcessXML_budgetReleasedWhenNotStored() throws Exception {
+        MemoryAdmissionController admission = admissionController(1L);
+        org.springframework.test.util.ReflectionTestUtils.setField(camt59XmlProcessor, "admissionController", admission);
+        doThrow(new RuntimeException("DB down")).when(dao).saveMessage(anyList(), anyList());
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        assertEquals(0, admission.getReserved());
+    }
+
+    private MemoryAdmissionController admissionController(long budgetMb) {
+        MemoryAdmissionController admission = new MemoryAdmissionController();
+        org.springframework.test.util.ReflectionTestUtils.setField(admission, "budgetMb", budgetMb);
+        admission.init();
+        return admission;
+    }
+
+    @Test
+    void testProcessXML_eventFeedRelaysAfterPersist() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+
+        camt59XmlProcessor.processXML(inwardPayload(sampleXml));
+
+        InOrder order = inOrder(dao, eventFeed);
+        order.verify(dao).saveMessage(anyList(), anyList());
+        order.verify(eventFeed).nudge();
+        verify(eventFeed, never()).failed(any(), any());
+    }
+
+    @Test
+    void testProcessXML_failedPublishEmitsFailedEvent() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        when(kafkaUtils.publishAsync(any(), any(), any()))
+                .thenReturn(Mono.just(PublishResult.failure("EPHTOPIC", "MSG123", new RuntimeException("down"))));
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        verify(eventFeed).failed("MSG123", "publish failed");
+    }
+
+    @Test
+    void testProcessXML_unstoredMessageEmitsFailedEvent() throws Exception {
+        when(utilityMethods.getBizMsgIdr(any(Document.class))).thenReturn("MSG123");
+        doThrow(new RuntimeException("DB down")).when(dao).saveMessage(anyList(), anyList());
+
+        assertThrows(ProcessingRejectedException.class, () -> camt59XmlProcessor.processXML(inwardPayload(sampleXml)));
+
+        verify(eventFeed).failed("MSG123", "not stored");
+        verify(eventFeed, never()).nudge();
+    }
 }
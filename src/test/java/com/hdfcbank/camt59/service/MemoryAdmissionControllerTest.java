@@ -0,0 +1,194 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Admission;
+import com.hdfcbank.camt59.service.MemoryAdmissionController.Credit;
+import com.hdfcbank.camt59.fixtures.Camt59Payloads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryAdmissionControllerTest {
+
+    private static final long BUDGET = 1024 * 1024;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final MemoryAdmissionController controller = new MemoryAdmissionController();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(controller, "meterRegistry", registry);
+        ReflectionTestUtils.setField(controller, "budgetMb", 1L);
+        ReflectionTestUtils.setField(controller, "maxWaitMs", 50L);
+        controller.init();
+    }
+
+    @Test
+    void testAdmit_reservesDomEstimateUntilReleased() {
+        // 100,000 chars * 6
+        Admission admission = controller.admit("x".repeat(100_000), false);
+
+        assertFalse(admission.streaming());
+        assertEquals(600_000, admission.bytes());
+        assertEquals(600_000, controller.getReserved());
+        assertEquals(600_000.0 / BUDGET, registry.get("camt59.admission.budget.utilization").gauge().value(), 1e-9);
+
+        controller.release(admission);
+
+        assertEquals(0, controller.getReserved());
+        assertEquals(1.0, registry.get("camt59.admission").tag("outcome", "admitted").counter().count());
+    }
+
+    @Test
+    void testAdmit_movesToStreamingWhenDomEstimateDoesNotFit() {
+        controller.admit("x".repeat(100_000), false);
+
+        Admission admission = controller.admit("x".repeat(100_000), false);
+
+        assertTrue(admission.streaming());
+        assertEquals(200_000, admission.bytes());
+        assertEquals(800_000.0, registry.get("camt59.admission.budget.reserved").gauge().value());
+        assertEquals(1.0, registry.get("camt59.admission").tag("outcome", "streaming").counter().count());
+    }
+
+    @Test
+    void testAdmit_rejectsWith429WhenBudgetStaysExhausted() {
+        controller.admit("x".repeat(150_000), false);
+
+        ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                () -> controller.admit("x".repeat(150_000), false));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+        assertEquals(900_000, controller.getReserved());
+        assertEquals(1.0, registry.get("camt59.admission").tag("outcome", "queued").counter().count());
+        assertEquals(1.0, registry.get("camt59.admission").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void testAdmit_queuedMessageIsAdmittedWhenBudgetIsReleased() throws Exception {
+        ReflectionTestUtils.setField(controller, "maxWaitMs", 10_000L);
+        Admission first = controller.admit("x".repeat(150_000), false);
+
+        CompletableFuture<Admission> second = CompletableFuture.supplyAsync(() -> controller.admit("x".repeat(150_000), false));
+        while (registry.get("camt59.admission").tag("outcome", "queued").counter().count() < 1) {
+            Thread.sleep(5);
+        }
+        controller.release(first);
+
+        Admission admission = second.get(5, TimeUnit.SECONDS);
+        assertFalse(admission.streaming());
+        assertEquals(900_000, controller.getReserved());
+    }
+
+    @Test
+    void testAdmit_messageLargerThanBudgetStreamsOnItsOwn() {
+        Admission admission = controller.admit("x".repeat(1_000_000), false);
+
+        assertTrue(admission.streaming());
+        assertEquals(BUDGET, admission.bytes());
+        assertThrows(ProcessingRejectedException.class, () -> controller.admit("x", true));
+
+        controller.release(admission);
+
+        assertEquals(2, controller.admit("x", true).bytes());
+    }
+
+    @Test
+    void testAdmit_messageDrawsOnTheBudgetItsRequestHolds() {
+        // the body reserves the whole budget, and the message is larger than it
+        Admission request = controller.admitRequest(BUDGET / 2);
+        Credit credit = new Credit(request);
+
+        Admission message = controller.admit("x".repeat(1_000_000), false, credit);
+
+        assertTrue(message.streaming());
+        assertEquals(0, message.bytes());
+        assertEquals(BUDGET, message.credited());
+        assertEquals(BUDGET, controller.getReserved());
+        assertEquals(0.0, registry.get("camt59.admission").tag("outcome", "queued").counter().count());
+
+        controller.release(message);
+        controller.release(request);
+        assertEquals(0, controller.getReserved());
+    }
+
+    @Test
+    void testAdmit_reservesOnlyWhatTheCreditDoesNotCover() {
+        Admission request = controller.admitRequest(50_000);
+        Admission message = controller.admit("x".repeat(50_000), false, new Credit(request));
+
+        assertEquals(200_000, message.bytes());
+        assertEquals(100_000, message.credited());
+        assertEquals(300_000, controller.getReserved());
+    }
+
+    @Test
+    void testAdmit_rejectedAtOnceWhileSiblingsHoldBudget() {
+        ReflectionTestUtils.setField(controller, "maxWaitMs", 10_000L);
+        Credit credit = new Credit(null);
+        Admission first = controller.admit("x".repeat(150_000), false, credit);
+
+        long started = System.nanoTime();
+        ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                () -> controller.admit("x".repeat(150_000), false, credit));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0.0, registry.get("camt59.admission").tag("outcome", "queued").counter().count());
+
+        controller.release(first);
+        assertFalse(controller.admit("x".repeat(150_000), false, credit).streaming());
+    }
+
+    @Test
+    void testAdmit_chargesPerItem() {
+        String xml = Camt59Payloads.requestPayload(10, 50, 1);
+
+        Admission admission = controller.admit(xml, true);
+
+        assertEquals(10, MemoryAdmissionController.countItems(xml));
+        assertEquals(xml.length() * 2L + 10 * 500, admission.bytes());
+    }
+
+    @Test
+    void testAdmitRequest_reservesOnDeclaredLengthAndRejectsWhenFull() {
+        Admission body = controller.admitRequest(BUDGET / 4);
+
+        assertEquals(BUDGET / 2, body.bytes());
+        ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                () -> controller.admitRequest(BUDGET / 2));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+
+        controller.release(body);
+        assertEquals(0, controller.getReserved());
+        assertNull(controller.admitRequest(-1));
+    }
+
+    @Test
+    void testAdmitRequest_refusesOverTheLimitEvenWhenDisabled() {
+        ReflectionTestUtils.setField(controller, "maxRequestMb", 2L);
+        ReflectionTestUtils.setField(controller, "enabled", false);
+
+        ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                () -> controller.admitRequest(3 * BUDGET));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, ex.getStatus());
+        assertNull(controller.admitRequest(BUDGET));
+        assertEquals(1.0, registry.get("camt59.admission").tag("outcome", "too_large").counter().count());
+    }
+
+    @Test
+    void testCountItems_withAndWithoutPrefix() {
+        assertEquals(2, MemoryAdmissionController.countItems(
+                "<a:OrgnlItmAndSts><a:Amt>1</a:Amt></a:OrgnlItmAndSts><OrgnlItmAndSts></OrgnlItmAndSts>"));
+        assertEquals(0, MemoryAdmissionController.countItems("<Document/>"));
+    }
+}
@@ -0,0 +1,192 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.dao.NilRepository;
+import com.hdfcbank.camt59.model.Body;
+import com.hdfcbank.camt59.model.Header;
+import com.hdfcbank.camt59.model.ReqPayload;
+import com.hdfcbank.camt59.service.MessageDeduplicator.Claim;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class MessageDeduplicatorTest {
+
+    @InjectMocks
+    private MessageDeduplicator deduplicator;
+
+    @Mock
+    private NilRepository nilRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // no tracker rows
+        when(nilRepository.isPublished(anyString())).thenReturn(null);
+        deduplicator.init();
+    }
+
+    @Test
+    void testCopyAfterDoneIsDuplicate() {
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        deduplicator.done("MSG1");
+        assertEquals(Claim.DUPLICATE, deduplicator.claim("MSG1"));
+        assertEquals(Claim.NEW, deduplicator.claim("MSG2"));
+
+        assertEquals(1, deduplicator.getHitCount());
+        assertEquals(2, deduplicator.getMissCount());
+        assertEquals(1.0, meterRegistry.get("camt59.dedup.lookups").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("camt59.dedup.size").gauge().value());
+        verify(nilRepository, times(2)).isPublished(anyString());
+    }
+
+    @Test
+    void testCopyOfMessageInProgressIsInFlightUntilDone() {
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+
+        assertEquals(Claim.IN_FLIGHT, deduplicator.claim("MSG1"));
+        assertEquals(1.0, meterRegistry.get("camt59.dedup.lookups").tag("result", "in_flight").counter().count());
+        assertEquals(0, deduplicator.getHitCount());
+
+        deduplicator.done("MSG1");
+        assertEquals(Claim.DUPLICATE, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testInFlightCopyIsProcessedAfterTheFirstFails() {
+        ReflectionTestUtils.setField(deduplicator, "dbCheck", false);
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        assertEquals(Claim.IN_FLIGHT, deduplicator.claim("MSG1"));
+
+        deduplicator.unpublished("MSG1");
+
+        assertEquals(Claim.UNPUBLISHED, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testStoredMessageIsDuplicateAndAnsweredFromMemoryAfterwards() {
+        when(nilRepository.isPublished("MSG1")).thenReturn(true);
+
+        assertEquals(Claim.DUPLICATE, deduplicator.claim("MSG1"));
+        assertEquals(Claim.DUPLICATE, deduplicator.claim("MSG1"));
+
+        verify(nilRepository, times(1)).isPublished("MSG1");
+        assertEquals(1.0, meterRegistry.get("camt59.dedup.lookups").tag("result", "database_hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("camt59.dedup.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testDatabaseFailureLetsMessageThrough() {
+        when(nilRepository.isPublished("MSG1")).thenThrow(new RuntimeException("DB down"));
+
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        assertEquals(Claim.IN_FLIGHT, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testReleaseAllowsRedelivery() {
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        deduplicator.release("MSG1");
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testStoredButUnpublishedMessageIsClaimedForRepublish() {
+        when(nilRepository.isPublished("MSG1")).thenReturn(false);
+
+        assertEquals(Claim.UNPUBLISHED, deduplicator.claim("MSG1"));
+        // held while the outputs are published again
+        assertEquals(Claim.IN_FLIGHT, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testUnpublishedHandsTheClaimToOneRedelivery() {
+        ReflectionTestUtils.setField(deduplicator, "dbCheck", false);
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+
+        deduplicator.unpublished("MSG1");
+
+        assertEquals(Claim.UNPUBLISHED, deduplicator.claim("MSG1"));
+        assertEquals(Claim.IN_FLIGHT, deduplicator.claim("MSG1"));
+        verifyNoInteractions(nilRepository);
+    }
+
+    @Test
+    void testDbCheckDisabled() {
+        ReflectionTestUtils.setField(deduplicator, "dbCheck", false);
+
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        verifyNoInteractions(nilRepository);
+    }
+
+    @Test
+    void testDisabledOrUnkeyedMessagesAlwaysProcessed() {
+        assertEquals(Claim.NEW, deduplicator.claim(null));
+        assertEquals(Claim.NEW, deduplicator.claim(null));
+
+        ReflectionTestUtils.setField(deduplicator, "enabled", false);
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+        assertEquals(Claim.NEW, deduplicator.claim("MSG1"));
+    }
+
+    @Test
+    void testIndexIsBounded() {
+        ReflectionTestUtils.setField(deduplicator, "maxSize", 10L);
+        ReflectionTestUtils.setField(deduplicator, "dbCheck", false);
+        deduplicator.init();
+
+        for (int i = 0; i < 1000; i++) {
+            deduplicator.claim("MSG" + i);
+        }
+        com.github.benmanes.caffeine.cache.Cache<?, ?> claimed =
+                (com.github.benmanes.caffeine.cache.Cache<?, ?>) ReflectionTestUtils.getField(deduplicator, "claimed");
+        claimed.cleanUp();
+        assertTrue(claimed.estimatedSize() <= 10);
+    }
+
+    @Test
+    void testMessageKeyFromBizMsgIdr() {
+        assertEquals("MSG123", MessageDeduplicator.messageKey(payload(
+                "<RequestPayload><AppHdr><Fr/><BizMsgIdr> MSG123 </BizMsgIdr></AppHdr></RequestPayload>", "HDR1")));
+        assertEquals("MSG456", MessageDeduplicator.messageKey(payload(
+                "<RequestPayload><head:AppHdr xmlns:head=\"urn:x\"><head:BizMsgIdr>MSG456</head:BizMsgIdr>" +
+                        "</head:AppHdr></RequestPayload>", null)));
+        assertEquals("MSG789", MessageDeduplicator.messageKey(payload(
+                "<RequestPayload><OrgnlBizMsgIdr>OTHER</OrgnlBizMsgIdr><AppHdr><BizMsgIdr>MSG789</BizMsgIdr>" +
+                        "</AppHdr></RequestPayload>", null)));
+    }
+
+    @Test
+    void testMessageKeyFallsBackToHeader() {
+        assertEquals("HDR1", MessageDeduplicator.messageKey(payload("<RequestPayload/>", " HDR1 ")));
+        assertNull(MessageDeduplicator.messageKey(payload("<RequestPayload/>", null)));
+        assertNull(MessageDeduplicator.messageKey(payload(null, "")));
+    }
+
+    @Test
+    void testMessageKeyBeyondHeadScansWholePayload() {
+        String padding = "<Pad>" + "x".repeat(10000) + "</Pad>";
+        assertEquals("LATE1", MessageDeduplicator.messageKey(payload(
+                "<RequestPayload>" + padding + "<AppHdr><BizMsgIdr>LATE1</BizMsgIdr></AppHdr></RequestPayload>", null)));
+    }
+
+    private static ReqPayload payload(String xml, String headerMsgId) {
+        Header header = new Header();
+        header.setMsgId(headerMsgId);
+        Body body = new Body();
+        body.setPayload(xml);
+        return new ReqPayload(header, body);
+    }
+}
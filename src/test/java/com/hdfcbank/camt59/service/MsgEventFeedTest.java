@@ -0,0 +1,149 @@
+package com.hdfcbank.camt59.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.dao.MsgEventOutbox;
+import com.hdfcbank.camt59.kafkaproducer.KafkaUtils;
+import com.hdfcbank.camt59.model.MsgEvent;
+import com.hdfcbank.camt59.model.PublishResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MsgEventFeedTest {
+
+    private static final String TOPIC = "MSGEVENTTRACKERTOPIC";
+
+    @InjectMocks
+    private MsgEventFeed feed;
+
+    @Mock
+    private MsgEventOutbox outbox;
+
+    @Mock
+    private KafkaUtils kafkaUtils;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(feed, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(feed, "meterRegistry", registry);
+        ReflectionTestUtils.setField(feed, "msgEventTrackerTopic", TOPIC);
+        ReflectionTestUtils.setField(feed, "enabled", true);
+        ReflectionTestUtils.setField(feed, "pollIntervalMs", 60000L);
+        when(kafkaUtils.publishAsync(anyString(), eq(TOPIC), anyString())).thenAnswer(inv -> {
+            sent.add(inv.getArgument(0));
+            return Mono.just(PublishResult.success(TOPIC, inv.getArgument(2)));
+        });
+        feed.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        feed.shutdown();
+    }
+
+    @Test
+    void testPublish_CompactJsonKeyedOnMsgId() {
+        Collection<Long> published = feed.publish(List.of(
+                new MsgEvent(7L, "MSG1", "RECEIVED", null, "camt.059.001.06", 5, null, null, LocalDateTime.of(2025, 8, 28, 10, 15))));
+
+        assertEquals(List.of(7L), published);
+        verify(kafkaUtils).publishAsync(anyString(), eq(TOPIC), eq("MSG1"));
+        String json = sent.get(0);
+        assertTrue(json.contains("\"id\":7"));
+        assertTrue(json.contains("\"status\":\"RECEIVED\""));
+        assertFalse(json.contains("null"));
+        assertFalse(json.contains("target"));
+        assertEquals(1.0, registry.get("camt59.msg.events").tag("outcome", "published").counter().count());
+    }
+
+    @Test
+    void testPublish_StopsMessageAtFirstFailureButNotOthers() {
+        when(kafkaUtils.publishAsync(anyString(), eq(TOPIC), anyString())).thenAnswer(inv -> {
+            String json = inv.getArgument(0);
+            sent.add(json);
+            boolean published = !json.contains("\"id\":2,");
+            return Mono.just(published ? PublishResult.success(TOPIC, inv.getArgument(2))
+                    : PublishResult.failure(TOPIC, inv.getArgument(2), new RuntimeException("down")));
+        });
+
+        Collection<Long> published = feed.publish(List.of(
+                event(1L, "MSG1", "RECEIVED"), event(2L, "MSG1", "SENT_TO_DISPATCHER"),
+                event(3L, "MSG2", "RECEIVED"), event(4L, "MSG1", "SENT_TO_DISPATCHER")));
+
+        assertEquals(Set.of(1L, 3L), Set.copyOf(published));
+        // the event after the failed one is not sent ahead of it
+        assertTrue(sent.stream().noneMatch(json -> json.contains("\"id\":4,")));
+        assertEquals(2.0, registry.get("camt59.msg.events").tag("outcome", "unpublished").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_RepeatsWhileBatchesComeBackFull() {
+        ReflectionTestUtils.setField(feed, "batchSize", 2);
+        when(outbox.relay(eq(2), any(Function.class))).thenReturn(2, 2, 1);
+
+        assertEquals(5, feed.relay());
+        verify(outbox, times(3)).relay(eq(2), any(Function.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailed_AppendedAndRelayedOffTheCallerThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        doAnswer(inv -> threads.add(Thread.currentThread().getName())).when(outbox).append(anyList());
+        when(outbox.relay(anyInt(), any(Function.class))).thenReturn(0);
+
+        feed.failed("MSG1", "publish failed");
+        feed.failed(null, "no key");
+
+        ArgumentCaptor<List<MsgEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(outbox, timeout(5000)).append(events.capture());
+        verify(outbox, timeout(5000)).relay(anyInt(), any(Function.class));
+        MsgEvent event = events.getValue().get(0);
+        assertEquals("MSG1", event.getMsgId());
+        assertEquals("FAILED", event.getStatus());
+        assertEquals("publish failed", event.getReason());
+        assertEquals(List.of("msg-event-feed"), threads);
+    }
+
+    @Test
+    void testDisabled_NoRelayThread() throws Exception {
+        feed.shutdown();
+        MsgEventFeed disabled = new MsgEventFeed();
+        disabled.start();
+
+        disabled.failed("MSG1", "publish failed");
+        disabled.nudge();
+
+        assertFalse(disabled.isEnabled());
+        verifyNoInteractions(outbox);
+    }
+
+    private static MsgEvent event(long id, String msgId, String status) {
+        return new MsgEvent(id, msgId, status, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,85 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.service.RoutingTable.Rule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingEngineTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final RoutingEngine engine = new RoutingEngine();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void testInit_compilesConfiguredRulesAndCountsDecisions() throws Exception {
+        ReflectionTestUtils.setField(engine, "meterRegistry", registry);
+        ReflectionTestUtils.setField(engine, "mode", "modulo");
+        ReflectionTestUtils.setField(engine, "ephPercentage", 100);
+        engine.init();
+
+        assertEquals("DISPATCHED_EPH", engine.table().resolve("ABCDEFGHIJKLMN1", null));
+        assertEquals(1.0, registry.get("camt59.routing.decisions")
+                .tag("target", "EPH").tag("rule", "modulo").functionCounter().count());
+        assertEquals(0.0, registry.get("camt59.routing.decisions")
+                .tag("target", "FC").tag("rule", "modulo").functionCounter().count());
+    }
+
+    @Test
+    void testInit_failsOnInvalidRules() {
+        ReflectionTestUtils.setField(engine, "digitRanges", "0-4:FC,5-9");
+
+        assertThrows(IllegalArgumentException.class, engine::init);
+    }
+
+    @Test
+    void testReload_swapsInChangedRulesFileAndKeepsCounts() throws Exception {
+        Path rules = dir.resolve("routing.properties");
+        Files.writeString(rules, "digit-ranges=0-4:FC,5-9:EPH\n");
+        ReflectionTestUtils.setField(engine, "rulesFile", rules.toString());
+        engine.init();
+        RoutingTable before = engine.table();
+        assertEquals("DISPATCHED_FC", before.resolve("ABCDEFGHIJKLMN1", null));
+
+        Files.writeString(rules, "overrides=SBIN:EPH\n");
+        Files.setLastModifiedTime(rules, FileTime.fromMillis(Files.getLastModifiedTime(rules).toMillis() + 2000));
+        ReflectionTestUtils.invokeMethod(engine, "reloadIfChanged");
+
+        assertNotSame(before, engine.table());
+        assertEquals("DISPATCHED_EPH", engine.table().resolve("ABCDEFGHIJKLMN1", "SBIN0000001"));
+        // a table already handed out keeps routing with the old rules
+        assertEquals(RoutingTable.FC, before.target("ABCDEFGHIJKLMN1", "SBIN0000001"));
+        assertEquals(1, engine.getDecisionCount(RoutingTable.FC, Rule.DIGIT));
+        assertEquals(1, engine.getDecisionCount(RoutingTable.EPH, Rule.OVERRIDE));
+    }
+
+    @Test
+    void testReload_keepsCurrentTableWhenRulesDoNotCompile() throws Exception {
+        Path rules = dir.resolve("routing.properties");
+        Files.writeString(rules, "default-target=FC\n");
+        ReflectionTestUtils.setField(engine, "rulesFile", rules.toString());
+        engine.init();
+        RoutingTable current = engine.table();
+
+        Files.writeString(rules, "default-target=NEFT\n");
+
+        assertFalse(engine.reload());
+        assertSame(current, engine.table());
+    }
+}
@@ -0,0 +1,85 @@
+package com.hdfcbank.camt59.service;
+
+import com.hdfcbank.camt59.service.RoutingTable.Mode;
+import com.hdfcbank.camt59.service.RoutingTable.Rule;
+import com.hdfcbank.camt59.service.RoutingTable.Rules;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingTableTest {
+
+    private final LongAdder[] decisions = RoutingTable.newDecisionCounters();
+
+    @Test
+    void testDefault_matchesTheFormerSplit() {
+        String[] ids = {"ABCDEFGHIJKLMN0", "ABCDEFGHIJKLMN49", "ABCDEFGHIJKLMN5", "ABCDEFGHIJKLMN9",
+                "ABCDEFGHIJKLMNX", "ABCDEFGHIJKLMN\uFF13", "SHORT", "", null};
+        for (String id : ids) {
+            int digit = Camt59XmlProcessor.extractOrgnlItmIdDigit(id);
+            String expected = digit >= 0 && digit <= 4 ? "DISPATCHED_FC" : "DISPATCHED_EPH";
+            assertEquals(expected, RoutingTable.DEFAULT.resolve(id, null), String.valueOf(id));
+        }
+    }
+
+    @Test
+    void testDigitRanges_unlistedDigitsGoToDefault() {
+        RoutingTable table = compile(new Rules(Mode.DIGIT, "0-2:EPH, 7:FC", "FC", "", 100, 30));
+
+        assertEquals("DISPATCHED_EPH", table.resolve("ABCDEFGHIJKLMN2", null));
+        assertEquals("DISPATCHED_FC", table.resolve("ABCDEFGHIJKLMN7", null));
+        assertEquals("DISPATCHED_FC", table.resolve("ABCDEFGHIJKLMN5", null));
+        assertEquals(1, count(RoutingTable.EPH, Rule.DIGIT));
+        assertEquals(1, count(RoutingTable.FC, Rule.DIGIT));
+        assertEquals(1, count(RoutingTable.FC, Rule.DEFAULT));
+    }
+
+    @Test
+    void testModulo_sendsEphPercentageOfResidues() {
+        RoutingTable table = compile(new Rules(Mode.MODULO, "", "FC", "", 100, 30));
+
+        int eph = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (table.target(String.format("HDFCN520250800%07d", i), null) == RoutingTable.EPH) {
+                eph++;
+            }
+        }
+        assertEquals(300, eph);
+        assertEquals(RoutingTable.EPH, table.target("HDFC29", null));
+        assertEquals(RoutingTable.FC, table.target("HDFC30", null));
+        assertEquals("DISPATCHED_FC", table.resolve("NODIGITS", null));
+        assertEquals(1, count(RoutingTable.FC, Rule.DEFAULT));
+    }
+
+    @Test
+    void testOverrides_ifscBeforeBankCodeBeforeRules() {
+        RoutingTable table = compile(new Rules(Mode.DIGIT, "0-4:FC,5-9:EPH", "EPH", "SBIN:EPH, SBIN0000123:FC", 100, 30));
+
+        assertTrue(table.usesDbtrAgt());
+        assertEquals(RoutingTable.FC, table.target("ABCDEFGHIJKLMN9", "SBIN0000123"));
+        assertEquals(RoutingTable.EPH, table.target("ABCDEFGHIJKLMN1", "SBIN0000999"));
+        assertEquals(RoutingTable.FC, table.target("ABCDEFGHIJKLMN1", "ICIC0000001"));
+        assertEquals(RoutingTable.FC, table.target("ABCDEFGHIJKLMN1", null));
+        assertFalse(RoutingTable.DEFAULT.usesDbtrAgt());
+    }
+
+    @Test
+    void testCompile_rejectsInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.DIGIT, "0-4:XX", "EPH", "", 100, 30)));
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.DIGIT, "0-4:FC,4-9:EPH", "EPH", "", 100, 30)));
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.DIGIT, "10:FC", "EPH", "", 100, 30)));
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.DIGIT, "", "EPH", ":FC", 100, 30)));
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.MODULO, "", "EPH", "", 0, 30)));
+        assertThrows(IllegalArgumentException.class, () -> compile(new Rules(Mode.MODULO, "", "EPH", "", 100, 101)));
+    }
+
+    private RoutingTable compile(Rules rules) {
+        return RoutingTable.compile(rules, decisions);
+    }
+
+    private long count(int target, Rule rule) {
+        return decisions[RoutingTable.counterIndex(target, rule)].sum();
+    }
+}
@@ -0,0 +1,64 @@
+package com.hdfcbank.camt59.utils;
+
+import com.hdfcbank.camt59.utils.Camt59Metrics.Stage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Camt59MetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private Camt59Metrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new Camt59Metrics(registry);
+    }
+
+    @Test
+    void testMetersAreRegisteredUpFront() {
+        int combinations = Stage.values().length * 3 * 2;
+        assertEquals(combinations, registry.find("camt59.stage").timers().size());
+        assertNotNull(registry.find("camt59.items").tag("target", "FC").counter());
+        assertNotNull(registry.find("camt59.output.payload").tag("target", "EPH").summary());
+        assertNull(registry.find("camt59.items").tag("target", "none").counter());
+        assertNotNull(registry.find("camt59.xpath.lookups").functionCounter());
+    }
+
+    @Test
+    void testRecordByStageTargetAndOutcome() {
+        metrics.record(Stage.PUBLISH, Camt59Metrics.FC, false, System.nanoTime() - 5_000_000);
+        metrics.record(Stage.PARSE, System.nanoTime());
+
+        Timer publish = registry.get("camt59.stage").tag("stage", "publish").tag("target", "FC")
+                .tag("outcome", "failure").timer();
+        assertEquals(1, publish.count());
+        assertTrue(publish.totalTime(java.util.concurrent.TimeUnit.MILLISECONDS) >= 5);
+        assertEquals(1, registry.get("camt59.stage").tag("stage", "parse").tag("target", "none")
+                .tag("outcome", "success").timer().count());
+        assertEquals(0, registry.get("camt59.stage").tag("stage", "publish").tag("target", "EPH")
+                .tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void testOutputIgnoresUnknownTarget() {
+        metrics.output("OTHER", 3, "<x/>");
+        metrics.output(Camt59Metrics.EPH, 3, "<x/>");
+
+        assertEquals(3.0, registry.get("camt59.items").tag("target", "EPH").counter().count());
+        assertEquals(0.0, registry.get("camt59.items").tag("target", "FC").counter().count());
+    }
+
+    @Test
+    void testUtf8LengthMatchesEncoder() {
+        String text = "<Nm>Ram\u00e9 \u20b9100 \ud83d\ude00</Nm>";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, Camt59Metrics.utf8Length(text));
+        assertEquals(0, Camt59Metrics.utf8Length(""));
+    }
+}
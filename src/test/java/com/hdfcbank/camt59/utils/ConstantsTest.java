@@ -44,4 +44,14 @@ class ConstantsTest {
     void testSentToDispatcherConstant() {
         assertEquals("SENT_TO_DISPATCHER", Constants.SENT_TO_DISPATCHER);
     }
+
+    @Test
+    void testFailedConstant() {
+        assertEquals("FAILED", Constants.FAILED);
+    }
+
+    @Test
+    void testPublishPendingConstant() {
+        assertEquals("PUBLISH_PENDING", Constants.PUBLISH_PENDING);
+    }
 }
@@ -1,5 +1,9 @@
 package com.hdfcbank.camt59.utils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.exception.NILException;
+import com.hdfcbank.camt59.model.ReqPayload;
+import io.netty.buffer.ByteBuf;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
@@ -8,7 +12,11 @@ import org.w3c.dom.Node;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathFactory;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +56,7 @@ class NILRouterCommonUtilityTest {
     @BeforeEach
     void setUp() throws Exception {
         utility = new NILRouterCommonUtility();
+        utility.objectMapper = new ObjectMapper();
         sampleDoc = NILRouterCommonUtility.parseXmlStringToDocument(sampleXml);
     }
 
@@ -102,4 +111,126 @@ class NILRouterCommonUtilityTest {
         assertTrue(xmlString.contains("ABC123456789"));
         assertTrue(xmlString.contains("camt.059.001.01"));
     }
+
+    @Test
+    void testConvertToMap_DecodesDataBase64() throws Exception {
+        String xml = "<RequestPayload><AppHdr><BizMsgIdr>MSG1</BizMsgIdr></AppHdr><Nm>Caf\u00e9</Nm></RequestPayload>";
+        String event = "{\"specversion\":\"1.0\",\"data\":{\"ignored\":[1,{\"data_base64\":\"x\"}]}," +
+                "\"data_base64\":\"" + base64(reqPayloadJson(xml)) + "\",\"id\":\"1\"}";
+
+        ReqPayload payload = utility.convertToMap(event);
+
+        assertEquals("INWARD", payload.getHeader().getFlowType());
+        assertEquals(xml, payload.getBody().getPayload());
+    }
+
+    @Test
+    void testConvertToMap_AcceptsEscapedSlashes() throws Exception {
+        // ?>> encodes to Pz4+ and ??? to Pz8/, so the Base64 text holds both + and /
+        String xml = "<RequestPayload><A>?>></A><B>???</B></RequestPayload>";
+        String base64 = base64(reqPayloadJson(xml));
+        assertTrue(base64.contains("/"));
+
+        ReqPayload payload = utility.convertToMap("{\"data_base64\":\"" + base64.replace("/", "\\/") + "\"}");
+
+        assertEquals(xml, payload.getBody().getPayload());
+    }
+
+    @Test
+    void testConvertToMap_DecodesOtherEscapesInDataBase64() throws Exception {
+        String xml = "<RequestPayload><A>?>></A><B>???</B></RequestPayload>";
+        String base64 = base64(reqPayloadJson(xml));
+        assertTrue(base64.contains("+"));
+        // valid JSON for the same Base64 text, as a generic JSON writer may produce it
+        String event = "{\"data_base64\":\"" + base64.replace("+", "\\u002B").replace("/", "\\u002F") + "\"}";
+
+        assertEquals(xml, utility.convertToMap(event).getBody().getPayload());
+        ByteBuf buffer = PayloadBufferPool.copyOf(event);
+        try {
+            assertEquals(xml, utility.convertToMap(buffer).getBody().getPayload());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    void testConvertToMap_RejectsEscapesThatAreNotBase64() throws Exception {
+        String base64 = base64(reqPayloadJson("<RequestPayload><A>?>></A></RequestPayload>"));
+        int middle = base64.length() / 2;
+        for (String escape : List.of("\\u002A", "\\\\", "\u00e9")) {
+            String event = "{\"data_base64\":\"" + base64.substring(0, middle) + escape + base64.substring(middle) + "\"}";
+            assertThrows(NILException.class, () -> utility.convertToMap(event), escape);
+            ByteBuf buffer = PayloadBufferPool.copyOf(event);
+            try {
+                assertThrows(NILException.class, () -> utility.convertToMap(buffer), escape);
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    void testConvertToMap_PayloadStaysBytesUntilRead() throws Exception {
+        String xml = "<RequestPayload><AppHdr><BizMsgIdr>MSG1</BizMsgIdr></AppHdr></RequestPayload>";
+
+        ReqPayload payload = utility.convertToMap("{\"data_base64\":\"" + base64(reqPayloadJson(xml)) + "\"}");
+
+        assertEquals("<RequestPayload>", payload.getBody().getPayloadHead(16));
+        try (InputStream in = payload.getBody().openPayload()) {
+            assertEquals(xml, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(xml, payload.getBody().getPayload());
+        // written back out as a plain string
+        assertTrue(utility.objectMapper.writeValueAsString(payload.getBody()).contains("\"payload\":\"<RequestPayload>"));
+    }
+
+    @Test
+    void testConvertToMap_Rejected() {
+        assertNull(utility.convertToMap(" "));
+        assertThrows(NILException.class, () -> utility.convertToMap("{\"id\":\"1\"}"));
+        assertThrows(NILException.class, () -> utility.convertToMap("[\"data_base64\"]"));
+        assertThrows(NILException.class, () -> utility.convertToMap("{\"data_base64\":\"not base64!\"}"));
+    }
+
+    @Test
+    void testConvertToMap_ReadsPooledBufferInPlace() throws Exception {
+        String xml = "<RequestPayload><A>?>></A><Nm>Caf\u00e9</Nm></RequestPayload>";
+        String event = "{\"specversion\":\"1.0\",\"data_base64\":\"" + base64(reqPayloadJson(xml)).replace("/", "\\/") + "\"}";
+        ByteBuf buffer = PayloadBufferPool.buffer(16);
+        // the event does not start at index 0 of the buffer
+        buffer.writeBytes("junk".getBytes(StandardCharsets.UTF_8)).skipBytes(4);
+        buffer.writeCharSequence(event, StandardCharsets.UTF_8);
+        try {
+            ReqPayload payload = utility.convertToMap(buffer);
+
+            assertEquals("INWARD", payload.getHeader().getFlowType());
+            assertEquals(xml, payload.getBody().getPayload());
+            assertEquals(4, buffer.readerIndex());
+            assertEquals(1, buffer.refCnt());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    void testConvertToMap_BufferRejected() {
+        ByteBuf blank = PayloadBufferPool.copyOf(" \r\n");
+        ByteBuf noData = PayloadBufferPool.copyOf("{\"id\":\"1\"}");
+        try {
+            assertNull(utility.convertToMap(blank));
+            assertThrows(NILException.class, () -> utility.convertToMap(noData));
+        } finally {
+            blank.release();
+            noData.release();
+        }
+    }
+
+    private static String reqPayloadJson(String xml) throws Exception {
+        String escaped = new ObjectMapper().writeValueAsString(xml);
+        return "{\"header\":{\"msgId\":\"H1\",\"flowType\":\"INWARD\"},\"body\":{\"payload\":" + escaped + "}}";
+    }
+
+    private static String base64(String json) {
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,99 @@
+package com.hdfcbank.camt59.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaiseTest {
+
+    @Test
+    void testParse_Formats() {
+        assertEquals(10050, Paise.parse("100.50"));
+        assertEquals(10050, Paise.parse("100.5"));
+        assertEquals(10000, Paise.parse("100"));
+        assertEquals(10000, Paise.parse("100."));
+        assertEquals(50, Paise.parse(".5"));
+        assertEquals(12345, Paise.parse(" \n123.45\t"));
+        assertEquals(12345, Paise.parse("123.45000"));
+        assertEquals(-150, Paise.parse("-1.50"));
+        assertEquals(0, Paise.parse("0.00"));
+    }
+
+    @Test
+    void testParse_Rejects() {
+        assertThrows(NumberFormatException.class, () -> Paise.parse(""));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("  "));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("."));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("e3"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("1e"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("1.005x"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("12,50"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("92233720368547758.08"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("92233720368547758.075"));
+        assertThrows(NumberFormatException.class, () -> Paise.parse("1E999999999"));
+    }
+
+    @Test
+    void testParse_RoundsSubPaisaAndExponentsHalfUp() {
+        assertEquals(13, Paise.parse("0.125"));
+        assertEquals(12, Paise.parse("0.1249"));
+        assertEquals(10051, Paise.parse(" 100.505 "));
+        assertEquals(-10051, Paise.parse("-100.505"));
+        assertEquals(100000, Paise.parse("1e3"));
+        assertEquals(15000, Paise.parse("1.5E+2"));
+        assertEquals(1, Paise.parse("1E-2"));
+        assertEquals(0, Paise.parse("1E-999999999"));
+        assertEquals(0, Paise.parse("0.0049"));
+    }
+
+    @Test
+    void testToBigDecimal() {
+        assertEquals(new BigDecimal("100.50"), Paise.toBigDecimal(10050));
+        assertEquals(new BigDecimal("0.05"), Paise.toBigDecimal(5));
+    }
+
+    /**
+     * Property: for random amounts in every shape Amt can take, parse agrees exactly with
+     * BigDecimal, and a running paise sum equals the BigDecimal sum where double drifts.
+     */
+    @Test
+    void testParse_MatchesBigDecimalForRandomAmounts() {
+        Random random = new Random(20250828L);
+        long paiseSum = 0;
+        BigDecimal exactSum = BigDecimal.ZERO;
+        double doubleSum = 0;
+
+        for (int i = 0; i < 200_000; i++) {
+            long rupees = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(10);
+                case 1 -> random.nextInt(100_000);
+                case 2 -> Math.floorMod(random.nextLong(), 10_000_000_000L);
+                default -> Math.floorMod(random.nextLong(), 100_000_000_000_000L);
+            };
+            int fraction = random.nextInt(100);
+            String text = switch (random.nextInt(4)) {
+                case 0 -> rupees + "." + String.format("%02d", fraction);
+                case 1 -> rupees + "." + (fraction / 10);
+                case 2 -> String.valueOf(rupees);
+                default -> rupees + "." + String.format("%02d", fraction) + "000";
+            };
+
+            BigDecimal expected = new BigDecimal(text);
+            long paise = Paise.parse(text);
+            assertEquals(0, expected.compareTo(Paise.toBigDecimal(paise)), text);
+
+            if (rupees < 100_000) {
+                paiseSum += paise;
+                exactSum = exactSum.add(expected);
+                doubleSum += Double.parseDouble(text);
+            }
+        }
+
+        assertEquals(0, exactSum.compareTo(Paise.toBigDecimal(paiseSum)));
+        assertNotEquals(0, exactSum.compareTo(BigDecimal.valueOf(doubleSum)));
+    }
+}
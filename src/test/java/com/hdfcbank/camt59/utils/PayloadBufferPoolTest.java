@@ -0,0 +1,112 @@
+package com.hdfcbank.camt59.utils;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadBufferPoolTest {
+
+    @Test
+    void testRead_wholeStreamWhateverTheDeclaredLength() throws IOException {
+        byte[] body = "x".repeat(100_000).getBytes(StandardCharsets.US_ASCII);
+
+        for (long declared : new long[]{-1, 10, body.length}) {
+            ByteBuf buffer = PayloadBufferPool.read(new ByteArrayInputStream(body), declared, body.length);
+            try {
+                assertEquals(body.length, buffer.readableBytes());
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    void testRead_releasesBufferWhenStreamFails() {
+        long active = activeBuffers();
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        assertThrows(IOException.class, () -> PayloadBufferPool.read(failing, 1000, 1000));
+        assertEquals(active, activeBuffers());
+    }
+
+    @Test
+    void testRead_refusesDeclaredLengthOverTheLimitBeforeAllocating() {
+        long active = activeBuffers();
+
+        ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                () -> PayloadBufferPool.read(new ByteArrayInputStream(new byte[10]), 2_000_000_000L, 1_000_000));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, ex.getStatus());
+        assertEquals(active, activeBuffers());
+    }
+
+    @Test
+    void testRead_refusesStreamLongerThanTheLimit() {
+        long active = activeBuffers();
+        byte[] body = new byte[200_000];
+
+        for (long declared : new long[]{-1, 10}) {
+            ProcessingRejectedException ex = assertThrows(ProcessingRejectedException.class,
+                    () -> PayloadBufferPool.read(new ByteArrayInputStream(body), declared, 100_000));
+            assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, ex.getStatus());
+        }
+        assertEquals(active, activeBuffers());
+    }
+
+    @Test
+    void testRead_preallocatesAtMostOneChunk() throws IOException {
+        ByteBuf buffer = PayloadBufferPool.read(new ByteArrayInputStream(new byte[10]), 1L << 30, 1L << 30);
+        try {
+            assertEquals(10, buffer.readableBytes());
+            assertTrue(buffer.capacity() <= 16 * 1024 * 1024);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    void testCopyOf_roundTripsUtf8() {
+        String text = "<Nm>Caf\u00e9 \u20b9 \ud83d\ude00</Nm>";
+        ByteBuf buffer = PayloadBufferPool.copyOf(text);
+        try {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, buffer.readableBytes());
+            assertEquals(text, PayloadBufferPool.toUtf8String(buffer));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    void testBindTo_registersPoolStatistics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PayloadBufferPool.bindTo(registry);
+        ByteBuf buffer = PayloadBufferPool.buffer(1024);
+        try {
+            assertTrue(registry.get("camt59.payload.buffers.active").gauge().value() >= 1);
+            assertTrue(registry.get("camt59.payload.buffers.allocations").tag("size", "small").functionCounter().count() >= 1);
+            assertNotNull(registry.get("camt59.payload.buffers.memory").tag("type", "direct").gauge());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static long activeBuffers() {
+        return PayloadBufferPool.metric().directArenas().stream().mapToLong(PoolArenaMetric::numActiveAllocations).sum()
+                + PayloadBufferPool.metric().heapArenas().stream().mapToLong(PoolArenaMetric::numActiveAllocations).sum();
+    }
+}
@@ -0,0 +1,90 @@
+package com.hdfcbank.camt59.utils;
+
+import com.hdfcbank.camt59.exception.ProcessingRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingSchedulerTest {
+
+    private ProcessingScheduler scheduler;
+
+    private ProcessingScheduler newScheduler(ProcessingScheduler.Mode mode, int maxConcurrency, int maxQueue) {
+        ProcessingScheduler processingScheduler = new ProcessingScheduler();
+        ReflectionTestUtils.setField(processingScheduler, "mode", mode);
+        ReflectionTestUtils.setField(processingScheduler, "maxConcurrency", maxConcurrency);
+        ReflectionTestUtils.setField(processingScheduler, "maxQueue", maxQueue);
+        processingScheduler.init();
+        return processingScheduler;
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testExecute_RunsOffCallerThread() {
+        scheduler = newScheduler(ProcessingScheduler.Mode.BOUNDED_ELASTIC, 2, 2);
+        Thread caller = Thread.currentThread();
+
+        StepVerifier.create(scheduler.execute(() -> Thread.currentThread() != caller))
+                .expectNext(true)
+                .verifyComplete();
+        assertEquals(0, scheduler.getQueuedOrRunning());
+    }
+
+    @Test
+    void testExecute_RejectsBeyondQueue() throws Exception {
+        scheduler = newScheduler(ProcessingScheduler.Mode.BOUNDED_ELASTIC, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Mono<Boolean> first = scheduler.execute(() -> release.await(5, TimeUnit.SECONDS)).cache();
+        Mono<Boolean> second = scheduler.execute(() -> true).cache();
+        first.subscribe();
+        second.subscribe();
+
+        StepVerifier.create(scheduler.execute(() -> true))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                        ((ProcessingRejectedException) e).getStatus()))
+                .verify();
+
+        release.countDown();
+        assertTrue(first.block());
+        assertTrue(second.block());
+        assertEquals(0, scheduler.getQueuedOrRunning());
+    }
+
+    @Test
+    void testVirtualMode_FallsBackOrRunsOnVirtualThreads() {
+        scheduler = newScheduler(ProcessingScheduler.Mode.VIRTUAL, 2, 2);
+
+        StepVerifier.create(scheduler.execute(() -> "done"))
+                .expectNext("done")
+                .verifyComplete();
+        if (Runtime.version().feature() < 21) {
+            assertEquals(ProcessingScheduler.Mode.BOUNDED_ELASTIC, scheduler.getActiveMode());
+        } else {
+            assertEquals(ProcessingScheduler.Mode.VIRTUAL, scheduler.getActiveMode());
+        }
+    }
+
+    @Test
+    void testExecute_Rejects503AfterShutdown() {
+        scheduler = newScheduler(ProcessingScheduler.Mode.BOUNDED_ELASTIC, 1, 1);
+        scheduler.shutdown();
+
+        StepVerifier.create(scheduler.execute(() -> true))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                        ((ProcessingRejectedException) e).getStatus()))
+                .verify();
+    }
+}
@@ -0,0 +1,103 @@
+package com.hdfcbank.camt59.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XPathRegistryTest {
+
+    private Document requestDoc;
+
+    private final String requestXml = """
+        <RequestPayload>
+            <AppHdr>
+                <BizMsgIdr>MSG123</BizMsgIdr>
+                <MsgDefIdr>camt.059.001.06</MsgDefIdr>
+                <CreDt>2025-08-28T10:15:30Z</CreDt>
+            </AppHdr>
+            <Document xmlns="urn:iso:std:iso:20022:tech:xsd:camt.059.001.06">
+                <NtfctnToRcvStsRpt>
+                    <GrpHdr><MsgId>GH001</MsgId></GrpHdr>
+                    <OrgnlNtfctnAndSts>
+                        <OrgnlNtfctnRef>
+                            <OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN15</OrgnlItmId></OrgnlItmAndSts>
+                        </OrgnlNtfctnRef>
+                        <OrgnlNtfctnRef>
+                            <OrgnlItmAndSts><OrgnlItmId>ABCDEFGHIJKLMN75</OrgnlItmId></OrgnlItmAndSts>
+                        </OrgnlNtfctnRef>
+                    </OrgnlNtfctnAndSts>
+                </NtfctnToRcvStsRpt>
+            </Document>
+        </RequestPayload>
+        """;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        requestDoc = NILRouterCommonUtility.parseXmlStringToDocument(requestXml);
+    }
+
+    @Test
+    void testEvaluate_AnchoredExpressions() throws Exception {
+        assertEquals("MSG123", XPathRegistry.evaluate(XPathRegistry.REQUEST_BIZ_MSG_IDR, requestDoc));
+        assertEquals("MSG123", XPathRegistry.evaluate(XPathRegistry.BIZ_MSG_IDR, requestDoc));
+        assertEquals("2025-08-28T10:15:30Z", XPathRegistry.evaluate(XPathRegistry.REQUEST_CRE_DT, requestDoc));
+
+        NodeList items = (NodeList) XPathRegistry.evaluate(XPathRegistry.REQUEST_ORGNL_ITM_AND_STS, requestDoc, XPathConstants.NODESET);
+        assertEquals(2, items.getLength());
+        assertEquals("ABCDEFGHIJKLMN75", XPathRegistry.evaluate(XPathRegistry.ITEM_ORGNL_ITM_ID, items.item(1)));
+    }
+
+    @Test
+    void testEvaluate_RepeatedCallsDoNotCompile() throws Exception {
+        // warm the pool for this thread
+        XPathRegistry.evaluate(XPathRegistry.REQUEST_BIZ_MSG_IDR, requestDoc);
+
+        long compiles = XPathRegistry.getCompileCount();
+        long hits = XPathRegistry.getHitCount();
+
+        for (int i = 0; i < 100; i++) {
+            XPathRegistry.evaluate(XPathRegistry.REQUEST_BIZ_MSG_IDR, requestDoc);
+            XPathRegistry.evaluate(XPathRegistry.MSG_DEF_IDR, requestDoc);
+        }
+
+        assertEquals(compiles, XPathRegistry.getCompileCount());
+        assertTrue(XPathRegistry.getHitCount() - hits >= 200);
+    }
+
+    @Test
+    void testRegister_PrecompilesExpression() throws Exception {
+        String expression = "/*/*[local-name()='Document']/*/*/*[local-name()='OrgnlNtfctnRef']";
+        XPathRegistry.register(expression);
+
+        long compiles = XPathRegistry.getCompileCount();
+        NodeList refs = (NodeList) XPathRegistry.evaluate(expression, requestDoc, XPathConstants.NODESET);
+
+        assertEquals(2, refs.getLength());
+        assertEquals(compiles, XPathRegistry.getCompileCount());
+    }
+
+    @Test
+    void testRegister_MalformedExpressionFails() {
+        assertThrows(XPathExpressionException.class, () -> XPathRegistry.register("/*[local-name()="));
+    }
+
+    @Test
+    void testBindTo_ExposesLookupsAndCompiles() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        XPathRegistry.bindTo(registry);
+        double lookups = registry.get("camt59.xpath.lookups").functionCounter().count();
+
+        XPathRegistry.evaluate(XPathRegistry.REQUEST_BIZ_MSG_IDR, requestDoc);
+
+        assertEquals(lookups + 1, registry.get("camt59.xpath.lookups").functionCounter().count());
+        assertEquals(XPathRegistry.getCompileCount(), registry.get("camt59.xpath.compiles").functionCounter().count());
+        assertTrue(registry.get("camt59.xpath.pool.size").gauge().value() >= 1);
+    }
+}
@@ -0,0 +1,65 @@
+package com.hdfcbank.camt59.utils;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlFactoryPoolTest {
+
+    private final String xml = "<RequestPayload><AppHdr xmlns=\"urn:iso:std:iso:20022:tech:xsd:head.001.001.02\">"
+            + "<BizMsgIdr>MSG123</BizMsgIdr></AppHdr></RequestPayload>";
+
+    @Test
+    void testParse_NamespaceAware() throws Exception {
+        Document doc = XmlFactoryPool.parse(xml);
+
+        Element appHdr = (Element) doc.getDocumentElement().getFirstChild();
+        assertEquals("AppHdr", appHdr.getLocalName());
+        assertEquals("urn:iso:std:iso:20022:tech:xsd:head.001.001.02", appHdr.getNamespaceURI());
+    }
+
+    @Test
+    void testParse_RejectsDoctype() {
+        String xxe = "<!DOCTYPE r [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><RequestPayload>&x;</RequestPayload>";
+        assertThrows(SAXException.class, () -> XmlFactoryPool.parse(xxe));
+    }
+
+    @Test
+    void testToXml_RoundTrip() throws Exception {
+        String result = XmlFactoryPool.toXml(XmlFactoryPool.parse(xml));
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + xml, result);
+    }
+
+    @Test
+    void testNewDocument_Empty() throws Exception {
+        Document doc = XmlFactoryPool.newDocument();
+        assertNull(doc.getDocumentElement());
+    }
+
+    @Test
+    void testParse_ConcurrentCallers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String payload = "<RequestPayload><Id>" + i + "</Id></RequestPayload>";
+                results.add(executor.submit(() -> XmlFactoryPool.parse(payload).getDocumentElement().getTextContent()));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(String.valueOf(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.hdfcbank.camt59.fixtures;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfcbank.camt59.model.Body;
+import com.hdfcbank.camt59.model.Header;
+import com.hdfcbank.camt59.model.ReqPayload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Generates realistic inbound camt.059.001.06 RequestPayload documents for benchmarks and load tests.
+ * <p>
+ * The 15th character of each OrgnlItmId is the routing digit (0-4 FC, 5-9 EPH); its distribution is
+ * given as ten weights, one per digit.
+ */
+public final class Camt59Payloads {
+
+    private Camt59Payloads() {
+    }
+
+    /**
+     * @param items     number of OrgnlNtfctnRef / OrgnlItmAndSts entries
+     * @param fcPercent share of items routed to FC, the rest go to EPH
+     */
+    public static String requestPayload(int items, int fcPercent, long seed) {
+        Random random = new Random(seed);
+        return requestPayload(bizMsgIdr(random.nextLong()), items, fcPercentWeights(fcPercent), random);
+    }
+
+    public static String requestPayload(String bizMsgIdr, int items, int[] digitWeights, Random random) {
+        int[] cumulative = cumulative(digitWeights);
+        StringBuilder xml = new StringBuilder(600 + items * 420);
+        xml.append("<RequestPayload>")
+                .append("<AppHdr xmlns=\"urn:iso:std:iso:20022:tech:xsd:head.001.001.02\">")
+                .append("<Fr><FIId><FinInstnId><ClrSysMmbId><MmbId>RBIP0NEFTSC</MmbId></ClrSysMmbId></FinInstnId></FIId></Fr>")
+                .append("<To><FIId><FinInstnId><ClrSysMmbId><MmbId>HDFC0000001</MmbId></ClrSysMmbId></FinInstnId></FIId></To>")
+                .append("<BizMsgIdr>").append(bizMsgIdr).append("</BizMsgIdr>")
+                .append("<MsgDefIdr>camt.059.001.06</MsgDefIdr>")
+                .append("<BizSvc>NEFTCustomerCollection</BizSvc>")
+                .append("<CreDt>2025-08-28T10:15:30Z</CreDt>")
+                .append("</AppHdr>")
+                .append("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.059.001.06\">")
+                .append("<NtfctnToRcvStsRpt>")
+                .append("<GrpHdr><MsgId>").append(bizMsgIdr).append("</MsgId>")
+                .append("<CreDtTm>2025-08-28T10:15:30</CreDtTm></GrpHdr>")
+                .append("<OrgnlNtfctnAndSts>");
+        for (int i = 0; i < items; i++) {
+            int digit = pick(cumulative, random);
+            xml.append("<OrgnlNtfctnRef>")
+                    .append("<DbtrAgt><FinInstnId><ClrSysMmbId><MmbId>SBIN0000")
+                    .append(String.format("%03d", random.nextInt(1000)))
+                    .append("</MmbId></ClrSysMmbId></FinInstnId></DbtrAgt>")
+                    .append("<OrgnlItmAndSts>")
+                    .append("<OrgnlItmId>HDFCN5202508")
+                    .append(String.format("%02d", random.nextInt(100)))
+                    .append(digit)
+                    .append(String.format("%07d", i))
+                    .append("</OrgnlItmId>")
+                    .append("<OrgnlEndToEndId>E2E").append(String.format("%012d", i)).append("</OrgnlEndToEndId>")
+                    .append("<Amt Ccy=\"INR\">").append(random.nextInt(5_000_000)).append('.')
+                    .append(String.format("%02d", random.nextInt(100))).append("</Amt>")
+                    .append("<ItmSts>RCVD</ItmSts>")
+                    .append("</OrgnlItmAndSts>")
+                    .append("</OrgnlNtfctnRef>");
+        }
+        xml.append("</OrgnlNtfctnAndSts></NtfctnToRcvStsRpt></Document></RequestPayload>");
+        return xml.toString();
+    }
+
+    public static String bizMsgIdr(long sequence) {
+        return "RBIP" + String.format("%018d", Math.floorMod(sequence, 1_000_000_000_000_000_000L));
+    }
+
+    /**
+     * Digit weights putting fcPercent of the items on FC digits and the rest on EPH digits.
+     */
+    public static int[] fcPercentWeights(int fcPercent) {
+        int[] weights = new int[10];
+        Arrays.fill(weights, 0, 5, fcPercent);
+        Arrays.fill(weights, 5, 10, 100 - fcPercent);
+        return weights;
+    }
+
+    public static ReqPayload inward(String xml) {
+        Header header = new Header();
+        header.setFlowType("INWARD");
+        header.setPrefix("CBS");
+        header.setMsgType("camt.059.001.06");
+        Body body = new Body();
+        body.setPayload(xml);
+        return new ReqPayload(header, body);
+    }
+
+    /**
+     * Wraps the payload in the Dapr cloud-event envelope ProcessController receives.
+     */
+    public static String daprEnvelope(ObjectMapper objectMapper, ReqPayload payload) throws Exception {
+        String json = objectMapper.writeValueAsString(payload);
+        String base64 = Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+        return "{\"specversion\":\"1.0\",\"type\":\"com.dapr.event.sent\",\"source\":\"sfms\"," +
+                "\"datacontenttype\":\"application/json\",\"data_base64\":\"" + base64 + "\"}";
+    }
+
+    private static int[] cumulative(int[] digitWeights) {
+        if (digitWeights.length != 10) {
+            throw new IllegalArgumentException("Expected 10 digit weights, got " + digitWeights.length);
+        }
+        int[] cumulative = new int[10];
+        int total = 0;
+        for (int d = 0; d < 10; d++) {
+            if (digitWeights[d] < 0) {
+                throw new IllegalArgumentException("Digit weights must not be negative");
+            }
+            total += digitWeights[d];
+            cumulative[d] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one digit weight must be positive");
+        }
+        return cumulative;
+    }
+
+    private static int pick(int[] cumulative, Random random) {
+        int r = random.nextInt(cumulative[9]);
+        int digit = 0;
+        while (r >= cumulative[digit]) {
+            digit++;
+        }
+        return digit;
+    }
+}